@@ -127,6 +127,28 @@ public abstract class ArrayListHugeAbstract
   	if (size < aldASize) aldASize = size;
   }
 
+  /**
+   * Sets the list size, allocating segments as needed. Entries beyond the
+   * previous size are undefined until set. Used to fill a list by index,
+   * e.g. concurrently through its segment arrays.
+   * 
+   * @param size The new list size.
+   */
+  public void setSize(long size)
+  {
+    ensureCapacity(size);
+    aldASize = size;
+  }
+
+  /**
+   * Ensures that the capacity of this list is as least as big as the input
+   * capacity. Declared package-private for setSize() only; each concrete
+   * list provides its own public ensureCapacity().
+   * 
+   * @param capacity The minimum capacity of this list.
+   */
+  abstract void ensureCapacity(long capacity);
+
   /**
    * Resets the lists size to the index prescribed by the input segment (si)
    * and element (ei) indices. Note: The list capacity is not changed by this
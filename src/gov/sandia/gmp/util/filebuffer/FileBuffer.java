@@ -44,12 +44,13 @@ import java.io.Serializable;
  * (FileInputBuffer and FileOutputBuffer) are used when large amounts of binary
  * data must be written and read efficiently to and from disk.
  * 
- * The derived classes maintain a byte[] array that is used to read and write
- * data into and out of using a standard DataInputStream and DataOutputStream
- * Java object. In input mode the buffer is filled directly from disk using a
- * single read where the byte count is fixed to some number less than or equal
- * to all file bytes. In output mode the buffer is written directly to disk and
- * then refilled to be written again if necessary.
+ * The derived classes maintain a ByteBuffer that is used to read and write
+ * data in big-endian (DataInputStream / DataOutputStream compatible) order.
+ * The file is a sequence of blocks, each an int byte count followed by that
+ * many bytes. In input mode each block is read completely into the buffer
+ * from a file channel. In output mode the buffer is written to disk as a
+ * block whenever it fills and then refilled to be written again if
+ * necessary. No primitive value straddles two blocks.
  *
  * See the derived concrete classes for an interface description
  */
@@ -132,6 +133,18 @@ public abstract class FileBuffer implements Serializable
     return aFileName;
   }
 
+  /**
+   * Returns the name of the sidecar array index file of the file buffer
+   * file fileName (see FileOutputBuffer.setArrayIndex()).
+   * 
+   * @param fileName The file buffer file name.
+   * @return The name of the array index file.
+   */
+  public static String getIndexFileName(String fileName)
+  {
+    return fileName + ".idx";
+  }
+
   /**
    * Abstract function that sets the buffer size to the input value.
    * 
@@ -0,0 +1,201 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.filebuffer;
+
+import gov.sandia.gmp.util.containers.arraylist.ArrayListLong;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+/**
+ * The block table of a file written by FileOutputBuffer. The file is a
+ * sequence of blocks, each an int byte count followed by that many bytes,
+ * and the stream is the concatenation of the block contents (see
+ * FileOutputBuffer.getStreamPosition()). The table records the file
+ * position of the contents of each block and the stream position of its
+ * first byte, so that any stream position can be located in the file
+ * without decoding the values that precede it.
+ * 
+ * <p> Shared by the random access readers of FileOutputBuffer files (see
+ * FileBufferMappedReader).
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class FileBufferBlockTable
+{
+  /**
+   * The file position of the contents of each block.
+   */
+  private long[] aBlockPos;
+
+  /**
+   * The stream position of the first byte of each block, followed by the
+   * total stream size.
+   */
+  private long[] aBlockOff;
+
+  /**
+   * Builds the block table of the open file fileName by visiting the byte
+   * count of each block.
+   * 
+   * @param channel The open channel of the file.
+   * @param fileName The file name (for error messages).
+   * @throws IOException
+   */
+  public FileBufferBlockTable(FileChannel channel, String fileName)
+         throws IOException
+  {
+    ArrayListLong pos = new ArrayListLong(), off = new ArrayListLong();
+    ByteBuffer hdr = ByteBuffer.allocate(FileBuffer.INT_SIZE);
+    long size = channel.size(), p = 0, o = 0;
+    while (p < size)
+    {
+      hdr.clear();
+      while (hdr.hasRemaining())
+      {
+        if (channel.read(hdr, p + hdr.position()) < 0) break;
+      }
+      int n = hdr.hasRemaining() ? -1 : hdr.getInt(0);
+      if ((n < 0) || (p + FileBuffer.INT_SIZE + n > size))
+        throw new IOException("Error: File \"" + fileName + "\" has an " +
+                              "invalid block at position " + p + " ...");
+      pos.add(p + FileBuffer.INT_SIZE);
+      off.add(o);
+      p += FileBuffer.INT_SIZE + n;
+      o += n;
+    }
+    off.add(o);
+    aBlockPos = Arrays.copyOf(pos.getArray(), pos.size());
+    aBlockOff = Arrays.copyOf(off.getArray(), off.size());
+  }
+
+  /**
+   * Returns the number of blocks in the file.
+   * 
+   * @return The number of blocks in the file.
+   */
+  public int getBlockCount()
+  {
+    return aBlockPos.length;
+  }
+
+  /**
+   * Returns the file position of the contents of block b.
+   * 
+   * @param b The block.
+   * @return The file position of the contents of block b.
+   */
+  public long getBlockPosition(int b)
+  {
+    return aBlockPos[b];
+  }
+
+  /**
+   * Returns the stream position of the first byte of block b. If b is the
+   * block count the stream size is returned.
+   * 
+   * @param b The block (0 &lt;= b &lt;= getBlockCount()).
+   * @return The stream position of the first byte of block b.
+   */
+  public long getBlockOffset(int b)
+  {
+    return aBlockOff[b];
+  }
+
+  /**
+   * Returns the stream size (the file size less the block byte counts).
+   * 
+   * @return The stream size.
+   */
+  public long getStreamSize()
+  {
+    return aBlockOff[aBlockPos.length];
+  }
+
+  /**
+   * Returns the block containing stream position pos. Empty blocks are
+   * skipped.
+   * 
+   * @param pos The stream position.
+   * @return The block containing pos.
+   */
+  public int findBlock(long pos)
+  {
+    int b = Arrays.binarySearch(aBlockOff, pos);
+    if (b < 0) return -b - 2;
+
+    // skip empty blocks
+
+    while ((b < aBlockPos.length - 1) && (aBlockOff[b + 1] == pos)) ++b;
+    return Math.min(b, aBlockPos.length - 1);
+  }
+
+  /**
+   * Fills the remaining bytes of bb from the channel, beginning at stream
+   * position pos, and flips bb for reading. The read may span several
+   * blocks.
+   * 
+   * @param channel The open channel of the file.
+   * @param bb The destination buffer.
+   * @param pos The stream position.
+   * @throws IOException
+   */
+  public void read(FileChannel channel, ByteBuffer bb, long pos)
+         throws IOException
+  {
+    int lim = bb.limit();
+    for (int b = findBlock(pos); bb.hasRemaining(); ++b)
+    {
+      if ((b < 0) || (b >= aBlockPos.length))
+        throw new IOException("Error: Unexpected end of file ...");
+
+      // read the part of bb that lies in block b
+
+      long p = aBlockPos[b] + pos - aBlockOff[b];
+      int n = (int) Math.min(bb.remaining(), aBlockOff[b + 1] - pos);
+      int strt = bb.position();
+      bb.limit(strt + n);
+      while (bb.hasRemaining())
+      {
+        if (channel.read(bb, p + bb.position() - strt) < 0)
+          throw new IOException("Error: Unexpected end of file ...");
+      }
+      bb.limit(lim);
+      pos += n;
+    }
+    bb.flip();
+  }
+}
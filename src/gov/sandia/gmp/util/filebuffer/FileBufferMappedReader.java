@@ -0,0 +1,581 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.filebuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Random access, memory-mapped reader of files written by FileOutputBuffer.
+ * Where FileInputBuffer must decode everything that precedes a value, this
+ * reader locates any value directly by its stream position, so that part
+ * of an array (e.g. a single sub-block row or a range of CSR rows) can be
+ * loaded without reading the rest of a multi-GB file.
+ * 
+ * <p> A FileOutputBuffer file is a sequence of blocks, each an int byte
+ * count followed by that many bytes. The stream is the concatenation of the
+ * block contents, and the stream position of a value is its offset in the
+ * stream (see FileOutputBuffer.getStreamPosition()). Values are contiguous
+ * in the stream and no value spans two blocks, so the stream position of
+ * entry k of an array of type size t at stream position p is
+ * p + INT_SIZE + k * t. The block table is built when the reader is opened
+ * by visiting each block byte count, and each block is memory-mapped when
+ * it is first accessed.
+ * 
+ * <p> Array stream positions are obtained either from the sidecar index
+ * written by a FileOutputBuffer with setArrayIndex(true) (see
+ * getArrayPosition()), or by a first scan of the known file layout with
+ * getInt(), getLong() and skipArray().
+ * 
+ * <p> The typed buffer functions (e.g. getDoubleBuffer()) return zero-copy
+ * read-only views of the mapped file if the requested entries lie in a
+ * single block, and a copy otherwise. Large arrays span many blocks, so
+ * callers requiring views should request ranges that do not cross a block
+ * boundary (see isContiguous()).
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class FileBufferMappedReader
+{
+  /**
+   * The file name.
+   */
+  private String             aFileName;
+
+  /**
+   * The open file.
+   */
+  private RandomAccessFile   aFile;
+
+  /**
+   * The channel of aFile used to map blocks.
+   */
+  private FileChannel        aChannel;
+
+  /**
+   * The block table of the file.
+   */
+  private FileBufferBlockTable aTable;
+
+  /**
+   * The mapping of each block, or null if the block has not been accessed.
+   */
+  private MappedByteBuffer[] aBlockMap;
+
+  /**
+   * The stream position of each array from the sidecar index, or null if
+   * the file has no index.
+   */
+  private long[]             aIndexPos  = null;
+
+  /**
+   * The type size of each array from the sidecar index, or null if the file
+   * has no index.
+   */
+  private byte[]             aIndexType = null;
+
+  /**
+   * Opens the FileOutputBuffer file fileName, builds its block table and
+   * reads its sidecar array index if one exists.
+   * 
+   * @param fileName The FileOutputBuffer file.
+   * @throws IOException
+   */
+  public FileBufferMappedReader(String fileName) throws IOException
+  {
+    aFileName = fileName;
+    aFile = new RandomAccessFile(fileName, "r");
+    aChannel = aFile.getChannel();
+    try
+    {
+      aTable    = new FileBufferBlockTable(aChannel, fileName);
+      aBlockMap = new MappedByteBuffer [aTable.getBlockCount()];
+      String idx = FileBuffer.getIndexFileName(fileName);
+      if (new File(idx).exists()) readIndex(idx);
+    }
+    catch (IOException ex)
+    {
+      close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Reads the sidecar array index idx written by FileOutputBuffer.
+   * 
+   * @param idx The index file name.
+   * @throws IOException
+   */
+  private void readIndex(String idx) throws IOException
+  {
+    long size;
+    FileInputBuffer fib = new FileInputBuffer(idx);
+    try
+    {
+      aIndexPos  = fib.readLongs();
+      aIndexType = fib.readBytes();
+      size       = fib.readLong();
+    }
+    finally
+    {
+      fib.close();
+    }
+
+    // zero length arrays are read as null
+
+    if (aIndexPos == null)  aIndexPos  = new long [0];
+    if (aIndexType == null) aIndexType = new byte [0];
+    if (aIndexPos.length != aIndexType.length)
+      throw new IOException("Error: Index file \"" + idx + "\" is " +
+                            "inconsistent ...");
+    if (size != getStreamSize())
+      throw new IOException("Error: Index file \"" + idx + "\" stream " +
+                            "size (" + size + ") does not match file \"" +
+                            aFileName + "\" (" + getStreamSize() + ") ...");
+    for (int i = 0; i < aIndexPos.length; ++i)
+    {
+      if ((aIndexPos[i] < 0) || (aIndexPos[i] >= getStreamSize()))
+        throw new IOException("Error: Index file \"" + idx + "\" does not " +
+                              "match file \"" + aFileName + "\" ...");
+    }
+  }
+
+  /**
+   * Returns the file name.
+   * 
+   * @return The file name.
+   */
+  public String getFileName()
+  {
+    return aFileName;
+  }
+
+  /**
+   * Returns the number of blocks in the file.
+   * 
+   * @return The number of blocks in the file.
+   */
+  public int getBlockCount()
+  {
+    return aTable.getBlockCount();
+  }
+
+  /**
+   * Returns the stream size (the file size less the block byte counts).
+   * 
+   * @return The stream size.
+   */
+  public long getStreamSize()
+  {
+    return aTable.getStreamSize();
+  }
+
+  /**
+   * Returns true if the file has a sidecar array index.
+   * 
+   * @return True if the file has a sidecar array index.
+   */
+  public boolean hasIndex()
+  {
+    return aIndexPos != null;
+  }
+
+  /**
+   * Returns the number of arrays in the sidecar array index.
+   * 
+   * @return The number of indexed arrays.
+   * @throws IOException
+   */
+  public int getArrayCount() throws IOException
+  {
+    checkIndex();
+    return aIndexPos.length;
+  }
+
+  /**
+   * Returns the stream position of the i'th array written to the file.
+   * 
+   * @param i The array index (0 &lt;= i &lt; getArrayCount()).
+   * @return The stream position of the i'th array.
+   * @throws IOException
+   */
+  public long getArrayPosition(int i) throws IOException
+  {
+    checkIndex();
+    return aIndexPos[i];
+  }
+
+  /**
+   * Returns the type size (e.g. FileBuffer.DOUBLE_SIZE) of the i'th array
+   * written to the file.
+   * 
+   * @param i The array index (0 &lt;= i &lt; getArrayCount()).
+   * @return The type size of the i'th array.
+   * @throws IOException
+   */
+  public int getArrayTypeSize(int i) throws IOException
+  {
+    checkIndex();
+    return aIndexType[i];
+  }
+
+  /**
+   * Throws an IOException if the file has no sidecar array index.
+   * 
+   * @throws IOException
+   */
+  private void checkIndex() throws IOException
+  {
+    if (aIndexPos == null)
+      throw new IOException("Error: File \"" + aFileName + "\" has no " +
+                            "array index ...");
+  }
+
+  /**
+   * Returns the int at stream position pos.
+   * 
+   * @param pos The stream position.
+   * @return The int at pos.
+   * @throws IOException
+   */
+  public int getInt(long pos) throws IOException
+  {
+    return getBytes(pos, FileBuffer.INT_SIZE).getInt(0);
+  }
+
+  /**
+   * Returns the long at stream position pos.
+   * 
+   * @param pos The stream position.
+   * @return The long at pos.
+   * @throws IOException
+   */
+  public long getLong(long pos) throws IOException
+  {
+    return getBytes(pos, FileBuffer.LONG_SIZE).getLong(0);
+  }
+
+  /**
+   * Returns the double at stream position pos.
+   * 
+   * @param pos The stream position.
+   * @return The double at pos.
+   * @throws IOException
+   */
+  public double getDouble(long pos) throws IOException
+  {
+    return getBytes(pos, FileBuffer.DOUBLE_SIZE).getDouble(0);
+  }
+
+  /**
+   * Returns the entry count of the array at stream position pos.
+   * 
+   * @param pos The stream position of the array.
+   * @return The entry count of the array.
+   * @throws IOException
+   */
+  public int getArrayLength(long pos) throws IOException
+  {
+    return getInt(pos);
+  }
+
+  /**
+   * Returns the stream position following the array at stream position
+   * pos with entries of size typeSize. Used to scan a file of known layout.
+   * 
+   * @param pos The stream position of the array.
+   * @param typeSize The array type size (e.g. FileBuffer.DOUBLE_SIZE).
+   * @return The stream position following the array.
+   * @throws IOException
+   */
+  public long skipArray(long pos, int typeSize) throws IOException
+  {
+    return pos + FileBuffer.INT_SIZE + (long) typeSize * getArrayLength(pos);
+  }
+
+  /**
+   * Returns true if entries [first, first + n) of the array at stream
+   * position pos, with entries of size typeSize, lie in a single block, in
+   * which case the typed buffer functions return views of the mapped file.
+   * 
+   * @param pos The stream position of the array.
+   * @param typeSize The array type size.
+   * @param first The first entry.
+   * @param n The number of entries.
+   * @return True if the entries lie in a single block.
+   */
+  public boolean isContiguous(long pos, int typeSize, int first, int n)
+  {
+    long p = entryPosition(pos, typeSize, first);
+    int b = aTable.findBlock(p);
+    return (n == 0) ||
+           (p + (long) typeSize * n <= aTable.getBlockOffset(b + 1));
+  }
+
+  /**
+   * Returns entries [first, first + n) of the double array at stream
+   * position pos.
+   * 
+   * @param pos The stream position of the array.
+   * @param first The first entry.
+   * @param n The number of entries.
+   * @return The entries (a read-only view if they lie in a single block).
+   * @throws IOException
+   */
+  public DoubleBuffer getDoubleBuffer(long pos, int first, int n)
+         throws IOException
+  {
+    return getEntries(pos, FileBuffer.DOUBLE_SIZE, first, n).asDoubleBuffer();
+  }
+
+  /**
+   * Returns entries [first, first + n) of the float array at stream
+   * position pos.
+   * 
+   * @param pos The stream position of the array.
+   * @param first The first entry.
+   * @param n The number of entries.
+   * @return The entries (a read-only view if they lie in a single block).
+   * @throws IOException
+   */
+  public FloatBuffer getFloatBuffer(long pos, int first, int n)
+         throws IOException
+  {
+    return getEntries(pos, FileBuffer.FLOAT_SIZE, first, n).asFloatBuffer();
+  }
+
+  /**
+   * Returns entries [first, first + n) of the long array at stream position
+   * pos.
+   * 
+   * @param pos The stream position of the array.
+   * @param first The first entry.
+   * @param n The number of entries.
+   * @return The entries (a read-only view if they lie in a single block).
+   * @throws IOException
+   */
+  public LongBuffer getLongBuffer(long pos, int first, int n)
+         throws IOException
+  {
+    return getEntries(pos, FileBuffer.LONG_SIZE, first, n).asLongBuffer();
+  }
+
+  /**
+   * Returns entries [first, first + n) of the int array at stream position
+   * pos.
+   * 
+   * @param pos The stream position of the array.
+   * @param first The first entry.
+   * @param n The number of entries.
+   * @return The entries (a read-only view if they lie in a single block).
+   * @throws IOException
+   */
+  public IntBuffer getIntBuffer(long pos, int first, int n)
+         throws IOException
+  {
+    return getEntries(pos, FileBuffer.INT_SIZE, first, n).asIntBuffer();
+  }
+
+  /**
+   * Returns entries [first, first + n) of the short array at stream
+   * position pos.
+   * 
+   * @param pos The stream position of the array.
+   * @param first The first entry.
+   * @param n The number of entries.
+   * @return The entries (a read-only view if they lie in a single block).
+   * @throws IOException
+   */
+  public ShortBuffer getShortBuffer(long pos, int first, int n)
+         throws IOException
+  {
+    return getEntries(pos, FileBuffer.SHORT_SIZE, first, n).asShortBuffer();
+  }
+
+  /**
+   * Returns entries [first, first + n) of the byte (or boolean) array at
+   * stream position pos.
+   * 
+   * @param pos The stream position of the array.
+   * @param first The first entry.
+   * @param n The number of entries.
+   * @return The entries (a read-only view if they lie in a single block).
+   * @throws IOException
+   */
+  public ByteBuffer getByteBuffer(long pos, int first, int n)
+         throws IOException
+  {
+    return getEntries(pos, FileBuffer.BYTE_SIZE, first, n);
+  }
+
+  /**
+   * Returns the stream position of entry k of the array at stream position
+   * pos with entries of size typeSize.
+   * 
+   * @param pos The stream position of the array.
+   * @param typeSize The array type size.
+   * @param k The entry.
+   * @return The stream position of entry k.
+   */
+  private long entryPosition(long pos, int typeSize, int k)
+  {
+    return pos + FileBuffer.INT_SIZE + (long) typeSize * k;
+  }
+
+  /**
+   * Returns entries [first, first + n) of the array at stream position pos
+   * with entries of size typeSize after checking them against the array
+   * length.
+   * 
+   * @param pos The stream position of the array.
+   * @param typeSize The array type size.
+   * @param first The first entry.
+   * @param n The number of entries.
+   * @return The entries.
+   * @throws IOException
+   */
+  private ByteBuffer getEntries(long pos, int typeSize, int first, int n)
+          throws IOException
+  {
+    int len = getArrayLength(pos);
+    if ((first < 0) || (n < 0) || (first > len - n))
+      throw new IOException("Error: Entries [" + first + ", " +
+                            ((long) first + n) + ") are outside the array " +
+                            "of length " + len + " at stream position " +
+                            pos + " ...");
+    return getBytes(entryPosition(pos, typeSize, first), (long) typeSize * n);
+  }
+
+  /**
+   * Returns the n bytes at stream position pos as a big-endian buffer with
+   * position 0 and limit n. If the bytes lie in a single block the buffer
+   * is a read-only view of the mapped block, otherwise the bytes are copied
+   * from each block they span.
+   * 
+   * @param pos The stream position.
+   * @param n The number of bytes.
+   * @return The bytes.
+   * @throws IOException
+   */
+  private ByteBuffer getBytes(long pos, long n) throws IOException
+  {
+    if ((pos < 0) || (n < 0) || (pos + n > getStreamSize()))
+      throw new IOException("Error: Stream range [" + pos + ", " +
+                            (pos + n) + ") is outside file \"" + aFileName +
+                            "\" (stream size = " + getStreamSize() +
+                            ") ...");
+    if (n == 0) return ByteBuffer.allocate(0);
+
+    // return a view if the bytes lie in a single block
+
+    int b = aTable.findBlock(pos);
+    if (pos + n <= aTable.getBlockOffset(b + 1))
+      return getView(b, pos, (int) n);
+
+    // otherwise copy them from each block
+
+    if (n > Integer.MAX_VALUE)
+      throw new IOException("Error: Stream range [" + pos + ", " +
+                            (pos + n) + ") is too large to copy ...");
+    ByteBuffer bb = ByteBuffer.allocate((int) n);
+    while (bb.hasRemaining())
+    {
+      int m = (int) Math.min(bb.remaining(),
+                             aTable.getBlockOffset(b + 1) - pos);
+      bb.put(getView(b, pos, m));
+      pos += m;
+      ++b;
+    }
+    bb.flip();
+    return bb;
+  }
+
+  /**
+   * Returns a read-only view of the n bytes at stream position pos that lie
+   * in block b.
+   * 
+   * @param b The block.
+   * @param pos The stream position.
+   * @param n The number of bytes.
+   * @return The view.
+   * @throws IOException
+   */
+  private ByteBuffer getView(int b, long pos, int n) throws IOException
+  {
+    ByteBuffer bb = getBlock(b).duplicate();
+    int p = (int) (pos - aTable.getBlockOffset(b));
+    bb.position(p);
+    bb.limit(p + n);
+    return bb.slice();
+  }
+
+  /**
+   * Returns the read-only mapping of block b, mapping it on first access.
+   * 
+   * @param b The block.
+   * @return The mapping of block b.
+   * @throws IOException
+   */
+  private synchronized MappedByteBuffer getBlock(int b) throws IOException
+  {
+    if (aBlockMap[b] == null)
+      aBlockMap[b] = aChannel.map(FileChannel.MapMode.READ_ONLY,
+                                  aTable.getBlockPosition(b),
+                                  aTable.getBlockOffset(b + 1) -
+                                  aTable.getBlockOffset(b));
+    return aBlockMap[b];
+  }
+
+  /**
+   * Closes the file. Mapped blocks are released when they are no longer
+   * referenced.
+   * 
+   * @throws IOException
+   */
+  public void close() throws IOException
+  {
+    if (aFile != null) aFile.close();
+    aFile = null;
+  }
+}
@@ -36,18 +36,22 @@
 package gov.sandia.gmp.util.filebuffer;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Input file buffer object allows for easy buffered file input when large
  * amounts of binary data must be read efficiently from disk.
  * 
- * This class maintains a byte[] array that is used to contain data read
- * directly from a file based DataInputStream using byte[] array input.
- * A new buffer is read from disk every time the current internal buffer
- * has been completely parsed by high level read functions. This action
+ * This class maintains a ByteBuffer that is filled directly from a file
+ * channel. A new buffer is read from disk every time the current internal
+ * buffer has been completely parsed by high level read functions. This action
  * is automatic and does not require any user intervention. Buffering
  * the input data avoids many small reads from disk and speeds up overall
- * operation for large files.
+ * operation for large files. Each buffer is read completely (the read is
+ * repeated until the whole buffer has arrived) and primitive arrays are
+ * transferred out of the buffer in bulk through typed views of the
+ * ByteBuffer rather than one element at a time.
  * 
  * This function extends the standard interface of the Java DataInput object
  * to include array reads. The following read functions are defined
@@ -71,6 +75,18 @@ import java.io.*;
  *       float[]   f = readFloats();
  *       double[]  d = readDoubles();
  *       String[]  s = readStrings();
+ *
+ *    Array entity into a caller supplied array (returns the entry count):
+ *       int n = readBytes(byte[] dst, int off, int len);
+ *       int n = readBooleans(boolean[] dst, int off, int len);
+ *       int n = readShorts(short[] dst, int off, int len);
+ *       int n = readInts(int[] dst, int off, int len);
+ *       int n = readLongs(long[] dst, int off, int len);
+ *       int n = readFloats(float[] dst, int off, int len);
+ *       int n = readDoubles(double[] dst, int off, int len);
+ *
+ *    Individually written values read in bulk (no array size is read):
+ *       readDoubleValues(double[] dst, int off, int len);
  * 
  *    The array entity functions assume that the equivalent array was
  *    written with the corresponding FileOutputBuffer command. If this is
@@ -84,36 +100,25 @@ import java.io.*;
 public class FileInputBuffer extends FileBuffer
 {
   /**
-   * Array of bytes that backs the ByteArrayInputStream aBAIS.
-   */
-  private byte[] aBytes = new byte [aBufSize];
-
-  /**
-   * ByteArrayInputStream that handles low-level input processing.
-   */
-  private ByteArrayInputStream aBAIS = new ByteArrayInputStream(aBytes);
-
-  /**
-   * DataInputStream that provides a high level interface for writing into
-   * the low level ByteArrayInputStream (aBAIS).
+   * The in-core buffer holding the current block of data read from disk. Its
+   * position is the current read location and its limit is the block size.
    */
-  private DataInputStream aBufDIS    = new DataInputStream(aBAIS);
+  private ByteBuffer aBuf            = emptyBuffer(aBufSize);
 
   /**
-   * Disk based DataInputStream that reads chucks of data (byte arrays) at a
-   * time from the disk into the internal buffer.
+   * The buffer used to read the byte count that precedes each block.
    */
-  DataInputStream aDIS               = null;
+  private ByteBuffer aHdr            = ByteBuffer.allocate(INT_SIZE);
 
   /**
-   * The current internal buffer read count.
+   * Disk based file stream from which blocks are read.
    */
-  private int     aReadCount         = 0;
+  private FileInputStream aFIS       = null;
 
   /**
-   * The current internal buffer data size count.
+   * The channel of aFIS through which all blocks are read.
    */
-  private int     aBufCount          = 0;
+  private FileChannel     aChannel   = null;
 
   /**
    * Default constructor.
@@ -124,14 +129,29 @@ public class FileInputBuffer extends FileBuffer
   public FileInputBuffer(String filenm) throws FileNotFoundException
   {
     aFileName = filenm;
-    aDIS      = new DataInputStream(new FileInputStream(filenm));
+    aFIS      = new FileInputStream(filenm);
+    aChannel  = aFIS.getChannel();
+  }
+
+  /**
+   * Returns a new buffer of capacity sze with no data remaining.
+   * 
+   * @param sze The buffer capacity.
+   * @return A new empty buffer.
+   */
+  private static ByteBuffer emptyBuffer(int sze)
+  {
+    ByteBuffer b = ByteBuffer.allocate(sze);
+    b.limit(0);
+    return b;
   }
 
   /**
    * Changes the size of the input buffer used to hold data read from disk.
    * This size should only be changed before reading begins. If an internal
    * buffer is read only part way before calling this function all remaining
-   * data will be lost and program operation may be compromised.
+   * data will be lost and program operation may be compromised. The buffer
+   * grows automatically if a block larger than this size is encountered.
    * 
    * @param sze The size of the new internal buffer.
    */
@@ -139,9 +159,7 @@ public class FileInputBuffer extends FileBuffer
   public void setByteBufferSize(int sze)
   {
     aBufSize = sze;
-    aBytes   = new byte [aBufSize];
-    aBAIS    = new ByteArrayInputStream(aBytes);
-    aBufDIS  = new DataInputStream(aBAIS);
+    aBuf     = emptyBuffer(aBufSize);
   }
 
   /**
@@ -155,7 +173,7 @@ public class FileInputBuffer extends FileBuffer
     // make sure the next byte is available and read it
 
     checkReadNextType(FileBuffer.BYTE_SIZE);
-    return aBufDIS.readByte();
+    return aBuf.get();
   }
 
   /**
@@ -174,16 +192,46 @@ public class FileInputBuffer extends FileBuffer
     
     // read entire array through as many buffers as required
 
-    while (readNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) a[i] = aBufDIS.readByte();
-    }
+    readByteArray(a, 0);
 
     // return result
 
     return a;
   }
 
+  /**
+   * Reads an array of bytes, written with the corresponding FileOutputBuffer
+   * array write, directly into dst starting at off.
+   * 
+   * @param dst The destination array.
+   * @param off The destination start offset.
+   * @param len The number of entries available in dst from off.
+   * @return The number of entries read.
+   * @throws IOException If the stored array is longer than len.
+   */
+  public int readBytes(byte[] dst, int off, int len) throws IOException
+  {
+    setBufferSize(FileBuffer.BYTE_SIZE, len);
+    readByteArray(dst, off);
+    return aArrayCount;
+  }
+
+  /**
+   * Reads the aArrayCount entries of the current array into a starting at
+   * off through as many buffers as required.
+   * 
+   * @param a The destination array.
+   * @param off The destination start offset.
+   * @throws IOException
+   */
+  private void readByteArray(byte[] a, int off) throws IOException
+  {
+    while (readNext())
+    {
+      aBuf.get(a, aIStrt + off, aIEnd - aIStrt);
+    }
+  }
+
   /**
    * Read a single boolean from the input buffer.
    * 
@@ -195,7 +243,7 @@ public class FileInputBuffer extends FileBuffer
     // make sure the next boolean is available and read it
 
     checkReadNextType(FileBuffer.BOOLEAN_SIZE);
-    return aBufDIS.readBoolean();
+    return (aBuf.get() != 0);
   }
 
   /**
@@ -214,16 +262,46 @@ public class FileInputBuffer extends FileBuffer
     
     // read entire array through as many buffers as required
 
-    while (readNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) a[i] = aBufDIS.readBoolean();
-    }
+    readBooleanArray(a, 0);
 
     // return result
 
     return a;
   }
 
+  /**
+   * Reads an array of booleans, written with the corresponding FileOutputBuffer
+   * array write, directly into dst starting at off.
+   * 
+   * @param dst The destination array.
+   * @param off The destination start offset.
+   * @param len The number of entries available in dst from off.
+   * @return The number of entries read.
+   * @throws IOException If the stored array is longer than len.
+   */
+  public int readBooleans(boolean[] dst, int off, int len) throws IOException
+  {
+    setBufferSize(FileBuffer.BOOLEAN_SIZE, len);
+    readBooleanArray(dst, off);
+    return aArrayCount;
+  }
+
+  /**
+   * Reads the aArrayCount entries of the current array into a starting at
+   * off through as many buffers as required.
+   * 
+   * @param a The destination array.
+   * @param off The destination start offset.
+   * @throws IOException
+   */
+  private void readBooleanArray(boolean[] a, int off) throws IOException
+  {
+    while (readNext())
+    {
+      for (int i = aIStrt; i < aIEnd ; ++i) a[i + off] = (aBuf.get() != 0);
+    }
+  }
+
   /**
    * Read a single short from the input buffer.
    * 
@@ -235,7 +313,7 @@ public class FileInputBuffer extends FileBuffer
     // make sure the next short is available and read it
 
     checkReadNextType(FileBuffer.SHORT_SIZE);
-    return aBufDIS.readShort();
+    return aBuf.getShort();
   }
 
   /**
@@ -254,16 +332,48 @@ public class FileInputBuffer extends FileBuffer
     
     // read entire array through as many buffers as required
 
-    while (readNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) a[i] = aBufDIS.readShort();
-    }
+    readShortArray(a, 0);
 
     // return result
 
     return a;
   }
 
+  /**
+   * Reads an array of shorts, written with the corresponding FileOutputBuffer
+   * array write, directly into dst starting at off.
+   * 
+   * @param dst The destination array.
+   * @param off The destination start offset.
+   * @param len The number of entries available in dst from off.
+   * @return The number of entries read.
+   * @throws IOException If the stored array is longer than len.
+   */
+  public int readShorts(short[] dst, int off, int len) throws IOException
+  {
+    setBufferSize(FileBuffer.SHORT_SIZE, len);
+    readShortArray(dst, off);
+    return aArrayCount;
+  }
+
+  /**
+   * Reads the aArrayCount entries of the current array into a starting at
+   * off through as many buffers as required.
+   * 
+   * @param a The destination array.
+   * @param off The destination start offset.
+   * @throws IOException
+   */
+  private void readShortArray(short[] a, int off) throws IOException
+  {
+    while (readNext())
+    {
+      int n = aIEnd - aIStrt;
+      aBuf.asShortBuffer().get(a, aIStrt + off, n);
+      advance(n);
+    }
+  }
+
   /**
    * Read a single int from the input buffer.
    * 
@@ -275,7 +385,7 @@ public class FileInputBuffer extends FileBuffer
     // make sure the next int is available and read it
 
     checkReadNextType(FileBuffer.INT_SIZE);
-    return aBufDIS.readInt();
+    return aBuf.getInt();
   }
 
   /**
@@ -294,16 +404,48 @@ public class FileInputBuffer extends FileBuffer
     
     // read entire array through as many buffers as required
 
-    while (readNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) a[i] = aBufDIS.readInt();
-    }
+    readIntArray(a, 0);
 
     // return result
 
     return a;
   }
 
+  /**
+   * Reads an array of ints, written with the corresponding FileOutputBuffer
+   * array write, directly into dst starting at off.
+   * 
+   * @param dst The destination array.
+   * @param off The destination start offset.
+   * @param len The number of entries available in dst from off.
+   * @return The number of entries read.
+   * @throws IOException If the stored array is longer than len.
+   */
+  public int readInts(int[] dst, int off, int len) throws IOException
+  {
+    setBufferSize(FileBuffer.INT_SIZE, len);
+    readIntArray(dst, off);
+    return aArrayCount;
+  }
+
+  /**
+   * Reads the aArrayCount entries of the current array into a starting at
+   * off through as many buffers as required.
+   * 
+   * @param a The destination array.
+   * @param off The destination start offset.
+   * @throws IOException
+   */
+  private void readIntArray(int[] a, int off) throws IOException
+  {
+    while (readNext())
+    {
+      int n = aIEnd - aIStrt;
+      aBuf.asIntBuffer().get(a, aIStrt + off, n);
+      advance(n);
+    }
+  }
+
   /**
    * Read a single long from the input buffer.
    * 
@@ -315,7 +457,7 @@ public class FileInputBuffer extends FileBuffer
     // make sure the next long is available and read it
 
     checkReadNextType(FileBuffer.LONG_SIZE);
-    return aBufDIS.readLong();
+    return aBuf.getLong();
   }
 
   /**
@@ -334,16 +476,48 @@ public class FileInputBuffer extends FileBuffer
     
     // read entire array through as many buffers as required
 
-    while (readNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) a[i] = aBufDIS.readLong();
-    }
+    readLongArray(a, 0);
 
     // return result
 
     return a;
   }
 
+  /**
+   * Reads an array of longs, written with the corresponding FileOutputBuffer
+   * array write, directly into dst starting at off.
+   * 
+   * @param dst The destination array.
+   * @param off The destination start offset.
+   * @param len The number of entries available in dst from off.
+   * @return The number of entries read.
+   * @throws IOException If the stored array is longer than len.
+   */
+  public int readLongs(long[] dst, int off, int len) throws IOException
+  {
+    setBufferSize(FileBuffer.LONG_SIZE, len);
+    readLongArray(dst, off);
+    return aArrayCount;
+  }
+
+  /**
+   * Reads the aArrayCount entries of the current array into a starting at
+   * off through as many buffers as required.
+   * 
+   * @param a The destination array.
+   * @param off The destination start offset.
+   * @throws IOException
+   */
+  private void readLongArray(long[] a, int off) throws IOException
+  {
+    while (readNext())
+    {
+      int n = aIEnd - aIStrt;
+      aBuf.asLongBuffer().get(a, aIStrt + off, n);
+      advance(n);
+    }
+  }
+
   /**
    * Read a single float from the input buffer.
    * 
@@ -355,7 +529,7 @@ public class FileInputBuffer extends FileBuffer
     // make sure the next float is available and read it
 
     checkReadNextType(FileBuffer.FLOAT_SIZE);
-    return aBufDIS.readFloat();
+    return aBuf.getFloat();
   }
 
   /**
@@ -374,16 +548,48 @@ public class FileInputBuffer extends FileBuffer
     
     // read entire array through as many buffers as required
 
-    while (readNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) a[i] = aBufDIS.readFloat();
-    }
+    readFloatArray(a, 0);
 
     // return result
 
     return a;
   }
 
+  /**
+   * Reads an array of floats, written with the corresponding FileOutputBuffer
+   * array write, directly into dst starting at off.
+   * 
+   * @param dst The destination array.
+   * @param off The destination start offset.
+   * @param len The number of entries available in dst from off.
+   * @return The number of entries read.
+   * @throws IOException If the stored array is longer than len.
+   */
+  public int readFloats(float[] dst, int off, int len) throws IOException
+  {
+    setBufferSize(FileBuffer.FLOAT_SIZE, len);
+    readFloatArray(dst, off);
+    return aArrayCount;
+  }
+
+  /**
+   * Reads the aArrayCount entries of the current array into a starting at
+   * off through as many buffers as required.
+   * 
+   * @param a The destination array.
+   * @param off The destination start offset.
+   * @throws IOException
+   */
+  private void readFloatArray(float[] a, int off) throws IOException
+  {
+    while (readNext())
+    {
+      int n = aIEnd - aIStrt;
+      aBuf.asFloatBuffer().get(a, aIStrt + off, n);
+      advance(n);
+    }
+  }
+
   /**
    * Read a single double from the input buffer.
    * 
@@ -395,7 +601,7 @@ public class FileInputBuffer extends FileBuffer
     // make sure the next double is available and read it
 
     checkReadNextType(FileBuffer.DOUBLE_SIZE);
-    return aBufDIS.readDouble();
+    return aBuf.getDouble();
   }
 
   /**
@@ -411,19 +617,71 @@ public class FileInputBuffer extends FileBuffer
     setBufferSize(FileBuffer.DOUBLE_SIZE);
     if (aArrayCount == 0) return null;
     double[] a = new double [aArrayCount];
-
+    
     // read entire array through as many buffers as required
 
-    while (readNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) a[i] = aBufDIS.readDouble();
-    }
+    readDoubleArray(a, 0);
 
     // return result
 
     return a;
   }
 
+  /**
+   * Reads an array of doubles, written with the corresponding FileOutputBuffer
+   * array write, directly into dst starting at off.
+   * 
+   * @param dst The destination array.
+   * @param off The destination start offset.
+   * @param len The number of entries available in dst from off.
+   * @return The number of entries read.
+   * @throws IOException If the stored array is longer than len.
+   */
+  public int readDoubles(double[] dst, int off, int len) throws IOException
+  {
+    setBufferSize(FileBuffer.DOUBLE_SIZE, len);
+    readDoubleArray(dst, off);
+    return aArrayCount;
+  }
+
+  /**
+   * Reads len doubles, each written as an individual value (see
+   * FileOutputBuffer.writeDoubleValues() and writeDouble()), directly into
+   * dst starting at off. Unlike readDoubles(dst, off, len) no array size is
+   * read, and the values are decoded in bulk from each buffer.
+   * 
+   * @param dst The destination array.
+   * @param off The destination start offset.
+   * @param len The number of values to read.
+   * @throws IOException
+   */
+  public void readDoubleValues(double[] dst, int off, int len)
+         throws IOException
+  {
+    aArrayCount = len;
+    aTypSize = FileBuffer.DOUBLE_SIZE;
+    aIEnd = 0;
+    readDoubleArray(dst, off);
+  }
+
+  /**
+   * Reads the aArrayCount entries of the current array into a starting at
+   * off through as many buffers as required.
+   * 
+   * @param a The destination array.
+   * @param off The destination start offset.
+   * @throws IOException
+   */
+  private void readDoubleArray(double[] a, int off) throws IOException
+  {
+    while (readNext())
+    {
+      int n = aIEnd - aIStrt;
+      aBuf.asDoubleBuffer().get(a, aIStrt + off, n);
+      advance(n);
+    }
+  }
+
   /**
    * Read a single string from the input buffer. Note: the string
    * is read as a byte array.
@@ -476,25 +734,37 @@ public class FileInputBuffer extends FileBuffer
   {
     // exit if done
 
-    if ((aIEnd > 0) && (aIEnd == aArrayCount)) return false;
+    if (aIEnd == aArrayCount) return false;
 
     // if no bytes remain then readBufferX
 
-    if (aReadCount == aBufCount) readBufferX();
-
+    if (!aBuf.hasRemaining()) readBufferX();
+    if (aBuf.remaining() < aTypSize)
+      throw new IOException("Error: Array entry straddles a buffer " +
+                            "boundary in file \"" + aFileName + "\" ...");
 
-    // set aIStrt and aIEnd and update the read count
+    // set aIStrt and aIEnd
     
     aIStrt = aIEnd;
-    aIEnd += (aBufCount - aReadCount) / aTypSize;
+    aIEnd += aBuf.remaining() / aTypSize;
     if (aIEnd > aArrayCount) aIEnd = aArrayCount;
-    aReadCount += (aIEnd - aIStrt) * aTypSize;
 
     // done ... return true
 
     return true;
   }
 
+  /**
+   * Advances the buffer position past n entries of the current array type
+   * after they were transferred through a typed view of the buffer.
+   * 
+   * @param n The number of entries transferred.
+   */
+  private void advance(int n)
+  {
+    aBuf.position(aBuf.position() + n * aTypSize);
+  }
+
   /**
    * Used by array reads to input the array size, set the type size, and
    * rest the read end count to 0.
@@ -509,6 +779,24 @@ public class FileInputBuffer extends FileBuffer
     aIEnd = 0;
   }
 
+  /**
+   * Used by array reads into a caller supplied array to input the array
+   * size, verify that it fits, set the type size, and reset the read end
+   * count to 0.
+   * 
+   * @param typesze The array type size.
+   * @param len The number of entries available in the destination array.
+   * @throws IOException If the array size exceeds len.
+   */
+  private void setBufferSize(int typesze, int len) throws IOException
+  {
+    setBufferSize(typesze);
+    if (aArrayCount > len)
+      throw new IOException("Error: Stored array size (" + aArrayCount +
+                            ") exceeds the destination size (" + len +
+                            ") in file \"" + aFileName + "\" ...");
+  }
+
   /**
    * Reads in another buffer full of data and initializes to continue read
    * processing.
@@ -517,16 +805,33 @@ public class FileInputBuffer extends FileBuffer
    */
   private void readBufferX() throws IOException
   {
-    // read in the buffer size and reset the byte buffer stream
+    // read in the buffer size ... grow the buffer if it is too small
 
-    aBufCount = aDIS.readInt();
-    aBAIS.reset();
+    aHdr.clear();
+    readFully(aHdr);
+    int n = aHdr.getInt(0);
+    if (n > aBuf.capacity()) aBuf = ByteBuffer.allocate(n);
 
-    // read in all bytes into the byte buffer backing array (abytes) and
-    // reset the read count to 0
+    // read in all bytes into the buffer and prepare it for reading
 
-    aDIS.read(aBytes, 0, aBufCount);
-    aReadCount = 0;
+    aBuf.clear();
+    aBuf.limit(n);
+    readFully(aBuf);
+    aBuf.flip();
+  }
+
+  /**
+   * Reads from the channel until b is full.
+   * 
+   * @param b The buffer to be filled.
+   * @throws IOException If the end of the file is reached first.
+   */
+  private void readFully(ByteBuffer b) throws IOException
+  {
+    while (b.hasRemaining())
+      if (aChannel.read(b) < 0)
+        throw new EOFException("Error: Unexpected end of file \"" +
+                               aFileName + "\" ...");
   }
 
   /**
@@ -537,10 +842,9 @@ public class FileInputBuffer extends FileBuffer
    */
   private void checkReadNextType(int typesze) throws IOException
   {
-    // read more data if required and update the read count
+    // read more data if required
 
-    if (aReadCount == aBufCount) readBufferX();
-    aReadCount += typesze;
+    if (!aBuf.hasRemaining()) readBufferX();
   }
 
   /**
@@ -549,6 +853,6 @@ public class FileInputBuffer extends FileBuffer
   @Override
   public void close() throws IOException
   {
-    aDIS.close();
+    aFIS.close();
   }
 }
@@ -35,23 +35,25 @@
 
 package gov.sandia.gmp.util.filebuffer;
 
+import gov.sandia.gmp.util.containers.arraylist.ArrayListByte;
+import gov.sandia.gmp.util.containers.arraylist.ArrayListLong;
 import java.io.*;
-
-/**
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 /**
  * Output (write only) file buffer object allows for easy buffered file output.
  * This object is used when large amounts of binary data must be written
  * efficiently to disk.
  * 
- * This class maintains a ByteArrayOutputStream that is used to contain data
- * from a standard DataOutputStream Java object. These two objects comprise the
- * in-core temporary storage for all data written into the FileOutputBuffer.
- * The class also maintains a out-of-core disk-based DataOutputStream opened
- * for a user defined file name into which all data in the ByteArrayOutputStream
- * is written after the byte array becomes full. Every time the internal buffer
- * is filled it is automatically written to disk. This avoids many small writes
- * to disk and speeds up overall operation for large files.
+ * This class maintains an in-core ByteBuffer into which all data is written
+ * in big-endian order. The class also maintains a FileChannel opened for a
+ * user defined file name into which the ByteBuffer contents are written,
+ * preceded by their byte count, after the buffer becomes full. Every time
+ * the internal buffer is filled it is automatically written to disk. This
+ * avoids many small writes to disk and speeds up overall operation for large
+ * files. Primitive arrays are transferred into the buffer in bulk through
+ * typed views of the ByteBuffer rather than one element at a time.
  * 
  * This function extends the standard interface of the Java DataOutput object
  * to include array writes. The following write functions are defined
@@ -84,34 +86,72 @@ import java.io.*;
  *       writeDoubles(double[] d, int offst, int len);
  *       writeStrings(String[] s, int offst, int len);
  * 
+ *    The offset forms write the len entries starting at offst.
+ *
+ *    Individual values written in bulk (no array size is written):
+ *       writeDoubleValues(double[] d, int offst, int len);
+ * 
  *    Note that if an array is written of zero size that the corresponding
  *    input function defined in FileInputBuffer will return a null array.
+ * 
+ * If setArrayIndex(true) is called before writing, the stream position
+ * (see getStreamPosition()) and type size of every array written (strings
+ * are byte arrays) are recorded and written on close to the sidecar file
+ * FileBuffer.getIndexFileName(filenm), which FileBufferMappedReader uses for
+ * random access to the arrays. The index also records the stream size of
+ * the file so that a reader can reject an index that does not belong to it.
+ * Any existing index file is deleted when the file is opened, so a file
+ * rewritten without an index is never paired with a stale one.
  */
 @SuppressWarnings("serial")
 public class FileOutputBuffer extends FileBuffer
 {
   /**
-   * The in-core byte array of size aBuffSize used to contain all written
-   * information before it is written in its entirety to the disk based
-   * stream.
+   * The in-core buffer of size aBufSize used to contain all written
+   * information before it is written in its entirety to the disk.
    */
-  private ByteArrayOutputStream aBAOS = new ByteArrayOutputStream(aBufSize);
+  private ByteBuffer aBuf            = ByteBuffer.allocate(aBufSize);
 
   /**
-   * The in-core file stream through which all information is written in a
-   * standard formatted fashion into the in-core byte buffer.
+   * The buffer used to write the byte count that precedes each buffer
+   * written to disk.
    */
-  private DataOutputStream aBufDOS    = new DataOutputStream(aBAOS);
+  private ByteBuffer aHdr            = ByteBuffer.allocate(INT_SIZE);
 
   /**
    * The output disk-based file stream assigned at construction.
    */
-  DataOutputStream aDOS               = null;
+  private FileOutputStream aFOS      = null;
+
+  /**
+   * The channel of aFOS through which all buffers are written.
+   */
+  private FileChannel      aChannel  = null;
+
+  /**
+   * The number of bytes of block contents (excluding the block byte counts)
+   * written to disk so far.
+   */
+  private long             aFlushed  = 0;
+
+  /**
+   * The stream position of each array written if array indexing is on
+   * (see setArrayIndex()), null otherwise.
+   */
+  private ArrayListLong    aIndexPos  = null;
+
+  /**
+   * The type size of each array written if array indexing is on, null
+   * otherwise.
+   */
+  private ArrayListByte    aIndexType = null;
 
   /**
-   * Standard constructor. Creates an internal in-core data output stream and an
-   * out-of-core disk based data output stream opened with the input file name.
+   * Standard constructor. Creates an internal in-core buffer and an
+   * out-of-core disk based file channel opened with the input file name.
    * The FileOutputBuffer is ready for use immediately following construction.
+   * Any existing array index file of filenm is deleted (see
+   * setArrayIndex()).
    * 
    * @param filenm The name of the file into which all data from this object will
    *               be written.
@@ -120,7 +160,9 @@ public class FileOutputBuffer extends FileBuffer
   public FileOutputBuffer(String filenm) throws FileNotFoundException
   {
     aFileName = filenm;
-    aDOS = new DataOutputStream(new FileOutputStream(filenm));
+    aFOS      = new FileOutputStream(filenm);
+    aChannel  = aFOS.getChannel();
+    new File(getIndexFileName(filenm)).delete();
   }
 
   /**
@@ -136,8 +178,34 @@ public class FileOutputBuffer extends FileBuffer
   public void setByteBufferSize(int sze)
   {
     aBufSize = sze;
-    aBAOS    = new ByteArrayOutputStream(aBufSize);
-    aBufDOS  = new DataOutputStream(aBAOS);
+    aBuf     = ByteBuffer.allocate(aBufSize);
+  }
+
+  /**
+   * Turns recording of the array index on or off. If on, the index is
+   * written to the sidecar file FileBuffer.getIndexFileName(getFileName())
+   * when this buffer is closed. This should only be called before writing
+   * begins.
+   * 
+   * @param index True to record and write the array index.
+   */
+  public void setArrayIndex(boolean index)
+  {
+    aIndexPos  = index ? new ArrayListLong() : null;
+    aIndexType = index ? new ArrayListByte() : null;
+  }
+
+  /**
+   * Returns the stream position of the next value to be written. The stream
+   * is the concatenation of the block contents of the file, i.e. it excludes
+   * the block byte counts, so that the position does not depend on the
+   * buffer size. Values are contiguous in the stream.
+   * 
+   * @return The stream position of the next value to be written.
+   */
+  public long getStreamPosition()
+  {
+    return aFlushed + aBuf.position();
   }
 
   /**
@@ -152,7 +220,7 @@ public class FileOutputBuffer extends FileBuffer
     // write the byte to the buffer
 
     checkWriteNextType(FileBuffer.BYTE_SIZE);
-    aBufDOS.writeByte(b);
+    aBuf.put(b);
   }
 
   /**
@@ -163,13 +231,7 @@ public class FileOutputBuffer extends FileBuffer
    */
   public void writeBytes(byte[] b) throws IOException
   {
-    // set the array and type sizes and write the array to disk
-
-    setBufferSize(b.length, FileBuffer.BYTE_SIZE);
-    while (writeNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) aBufDOS.writeByte(b[i]);
-    }
+    writeBytes(b, 0, b.length);
   }
 
   /**
@@ -184,11 +246,8 @@ public class FileOutputBuffer extends FileBuffer
   {
     // set the array and type sizes and write the array to disk
 
-    setBufferSize(len - offst, FileBuffer.BYTE_SIZE);
-    while (writeNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) aBufDOS.writeByte(b[i+offst]);
-    }
+    setBufferSize(len, FileBuffer.BYTE_SIZE);
+    while (writeNext()) aBuf.put(b, aIStrt + offst, aIEnd - aIStrt);
   }
 
   /**
@@ -203,7 +262,7 @@ public class FileOutputBuffer extends FileBuffer
     // write the boolean to the buffer
 
     checkWriteNextType(FileBuffer.BOOLEAN_SIZE);
-    aBufDOS.writeBoolean(b);
+    aBuf.put(b ? (byte) 1 : (byte) 0);
   }
 
   /**
@@ -214,13 +273,7 @@ public class FileOutputBuffer extends FileBuffer
    */
   public void writeBooleans(boolean[] b) throws IOException
   {
-    // set the array and type sizes and write the array to disk
-
-    setBufferSize(b.length, FileBuffer.BOOLEAN_SIZE);
-    while (writeNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) aBufDOS.writeBoolean(b[i]);
-    }
+    writeBooleans(b, 0, b.length);
   }
 
   /**
@@ -235,10 +288,11 @@ public class FileOutputBuffer extends FileBuffer
   {
     // set the array and type sizes and write the array to disk
 
-    setBufferSize(len - offst, FileBuffer.BOOLEAN_SIZE);
+    setBufferSize(len, FileBuffer.BOOLEAN_SIZE);
     while (writeNext())
     {
-      for (int i = aIStrt; i < aIEnd ; ++i) aBufDOS.writeBoolean(b[i+offst]);
+      for (int i = aIStrt; i < aIEnd ; ++i)
+        aBuf.put(b[i+offst] ? (byte) 1 : (byte) 0);
     }
   }
 
@@ -254,7 +308,7 @@ public class FileOutputBuffer extends FileBuffer
     // write the short to the buffer
 
     checkWriteNextType(FileBuffer.SHORT_SIZE);
-    aBufDOS.writeInt(s);
+    aBuf.putShort(s);
   }
 
   /**
@@ -265,13 +319,7 @@ public class FileOutputBuffer extends FileBuffer
    */
   public void writeShorts(short[] s) throws IOException
   {
-    // set the array and type sizes and write the array to disk
-
-    setBufferSize(s.length, FileBuffer.SHORT_SIZE);
-    while (writeNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) aBufDOS.writeShort(s[i]);
-    }
+    writeShorts(s, 0, s.length);
   }
 
   /**
@@ -286,10 +334,12 @@ public class FileOutputBuffer extends FileBuffer
   {
     // set the array and type sizes and write the array to disk
 
-    setBufferSize(len - offst, FileBuffer.SHORT_SIZE);
+    setBufferSize(len, FileBuffer.SHORT_SIZE);
     while (writeNext())
     {
-      for (int i = aIStrt; i < aIEnd ; ++i) aBufDOS.writeShort(s[i+offst]);
+      int n = aIEnd - aIStrt;
+      aBuf.asShortBuffer().put(s, aIStrt + offst, n);
+      advance(n);
     }
   }
 
@@ -305,7 +355,7 @@ public class FileOutputBuffer extends FileBuffer
     // write the int to the buffer
 
     checkWriteNextType(FileBuffer.INT_SIZE);
-    aBufDOS.writeInt(i);
+    aBuf.putInt(i);
   }
 
   /**
@@ -316,13 +366,7 @@ public class FileOutputBuffer extends FileBuffer
    */
   public void writeInts(int[] i) throws IOException
   {
-    // set the array and type sizes and write the array to disk
-
-    setBufferSize(i.length, FileBuffer.INT_SIZE);
-    while (writeNext())
-    {
-      for (int j = aIStrt; j < aIEnd ; ++j) aBufDOS.writeInt(i[j]);
-    }
+    writeInts(i, 0, i.length);
   }
 
   /**
@@ -337,10 +381,12 @@ public class FileOutputBuffer extends FileBuffer
   {
     // set the array and type sizes and write the array to disk
 
-    setBufferSize(len - offst, FileBuffer.INT_SIZE);
+    setBufferSize(len, FileBuffer.INT_SIZE);
     while (writeNext())
     {
-      for (int j = aIStrt; j < aIEnd ; ++j) aBufDOS.writeInt(i[j+offst]);
+      int n = aIEnd - aIStrt;
+      aBuf.asIntBuffer().put(i, aIStrt + offst, n);
+      advance(n);
     }
   }
 
@@ -356,7 +402,7 @@ public class FileOutputBuffer extends FileBuffer
     // write the long to the buffer
 
     checkWriteNextType(FileBuffer.LONG_SIZE);
-    aBufDOS.writeLong(l);
+    aBuf.putLong(l);
   }
 
   /**
@@ -367,13 +413,7 @@ public class FileOutputBuffer extends FileBuffer
    */
   public void writeLongs(long[] l) throws IOException
   {
-    // set the array and type sizes and write the array to disk
-
-    setBufferSize(l.length, FileBuffer.LONG_SIZE);
-    while (writeNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) aBufDOS.writeLong(l[i]);
-    }
+    writeLongs(l, 0, l.length);
   }
 
   /**
@@ -388,10 +428,12 @@ public class FileOutputBuffer extends FileBuffer
   {
     // set the array and type sizes and write the array to disk
 
-    setBufferSize(len - offst, FileBuffer.LONG_SIZE);
+    setBufferSize(len, FileBuffer.LONG_SIZE);
     while (writeNext())
     {
-      for (int i = aIStrt; i < aIEnd ; ++i) aBufDOS.writeLong(l[i+offst]);
+      int n = aIEnd - aIStrt;
+      aBuf.asLongBuffer().put(l, aIStrt + offst, n);
+      advance(n);
     }
   }
 
@@ -407,7 +449,7 @@ public class FileOutputBuffer extends FileBuffer
     // write the float to the buffer
 
     checkWriteNextType(FileBuffer.FLOAT_SIZE);
-    aBufDOS.writeFloat(f);
+    aBuf.putFloat(f);
   }
 
   /**
@@ -418,13 +460,7 @@ public class FileOutputBuffer extends FileBuffer
    */
   public void writeFloats(float[] f) throws IOException
   {
-    // set the array and type sizes and write the array to disk
-
-    setBufferSize(f.length, FileBuffer.FLOAT_SIZE);
-    while (writeNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) aBufDOS.writeFloat(f[i]);
-    }
+    writeFloats(f, 0, f.length);
   }
 
   /**
@@ -439,10 +475,12 @@ public class FileOutputBuffer extends FileBuffer
   {
     // set the array and type sizes and write the array to disk
 
-    setBufferSize(len - offst, FileBuffer.FLOAT_SIZE);
+    setBufferSize(len, FileBuffer.FLOAT_SIZE);
     while (writeNext())
     {
-      for (int i = aIStrt; i < aIEnd ; ++i) aBufDOS.writeFloat(f[i+offst]);
+      int n = aIEnd - aIStrt;
+      aBuf.asFloatBuffer().put(f, aIStrt + offst, n);
+      advance(n);
     }
   }
 
@@ -458,7 +496,7 @@ public class FileOutputBuffer extends FileBuffer
     // write the double to the buffer
 
     checkWriteNextType(FileBuffer.DOUBLE_SIZE);
-    aBufDOS.writeDouble(d);
+    aBuf.putDouble(d);
   }
 
   /**
@@ -469,13 +507,7 @@ public class FileOutputBuffer extends FileBuffer
    */
   public void writeDoubles(double[] d) throws IOException
   {
-    // set the array and type sizes and write the array to disk
-
-    setBufferSize(d.length, FileBuffer.DOUBLE_SIZE);
-    while (writeNext())
-    {
-      for (int i = aIStrt; i < aIEnd ; ++i) aBufDOS.writeDouble(d[i]);
-    }
+    writeDoubles(d, 0, d.length);
   }
 
   /**
@@ -490,10 +522,37 @@ public class FileOutputBuffer extends FileBuffer
   {
     // set the array and type sizes and write the array to disk
 
-    setBufferSize(len - offst, FileBuffer.DOUBLE_SIZE);
+    setBufferSize(len, FileBuffer.DOUBLE_SIZE);
     while (writeNext())
     {
-      for (int i = aIStrt; i < aIEnd ; ++i) aBufDOS.writeDouble(d[i+offst]);
+      int n = aIEnd - aIStrt;
+      aBuf.asDoubleBuffer().put(d, aIStrt + offst, n);
+      advance(n);
+    }
+  }
+
+  /**
+   * Writes len doubles from d, starting at offst, as individual values. The
+   * file contents are identical to calling writeDouble() for each value (no
+   * array size is written and the values are not recorded in the array
+   * index), but the values are encoded in bulk into each buffer.
+   * 
+   * @param d The source array.
+   * @param offst The start offset in the array.
+   * @param len The number of values to write.
+   * @throws IOException
+   */
+  public void writeDoubleValues(double[] d, int offst, int len)
+         throws IOException
+  {
+    aArrayCount = len;
+    aTypSize = FileBuffer.DOUBLE_SIZE;
+    aIEnd = 0;
+    while (writeNext())
+    {
+      int n = aIEnd - aIStrt;
+      aBuf.asDoubleBuffer().put(d, aIStrt + offst, n);
+      advance(n);
     }
   }
 
@@ -519,10 +578,7 @@ public class FileOutputBuffer extends FileBuffer
    */
   public void writeStrings(String[] s) throws IOException
   {
-    // write array size and array to disk
-
-    writeInt(s.length);
-    for (int i = 0; i < s.length; ++i) writeString(s[i]);
+    writeStrings(s, 0, s.length);
   }
 
   /**
@@ -537,8 +593,8 @@ public class FileOutputBuffer extends FileBuffer
   {
     // write array size and array to disk
 
-    writeInt(len - offst);
-    for (int i = 0; i < s.length; ++i) writeString(s[i+offst]);
+    writeInt(len);
+    for (int i = 0; i < len; ++i) writeString(s[i+offst]);
   }
 
   /**
@@ -552,6 +608,11 @@ public class FileOutputBuffer extends FileBuffer
    */
   private void setBufferSize(int arraysze, int typesze) throws IOException
   {
+    if (aIndexPos != null)
+    {
+      aIndexPos.add(getStreamPosition());
+      aIndexType.add((byte) typesze);
+    }
     writeInt(arraysze);
     aArrayCount = arraysze;
     aTypSize = typesze;
@@ -574,29 +635,45 @@ public class FileOutputBuffer extends FileBuffer
     checkWriteNextType(aTypSize);
 
     aIStrt = aIEnd;
-    aIEnd += (aBufSize - aBAOS.size()) / aTypSize;
+    aIEnd += (aBufSize - aBuf.position()) / aTypSize;
     if (aIEnd > aArrayCount) aIEnd = aArrayCount;
 
     return true;
   }
 
   /**
-   * Writes out the buffer to disk, flushes, and resets the internal buffer so that 
-   * it is ready to accept more data.
+   * Advances the buffer position past n entries of the current array type
+   * after they were transferred through a typed view of the buffer.
+   * 
+   * @param n The number of entries transferred.
+   */
+  private void advance(int n)
+  {
+    aBuf.position(aBuf.position() + n * aTypSize);
+  }
+
+  /**
+   * Writes out the buffer to disk, preceded by its byte count, and resets
+   * the internal buffer so that it is ready to accept more data.
    *  
    * @throws IOException
    */
   private void writeBufferX() throws IOException
   {
-    // write the buffer size and the buffer to disk
-    
-    aDOS.writeInt(aBAOS.size());
-    aBAOS.writeTo(aDOS);
+    // write the buffer size and the buffer to disk (a channel write may
+    // transfer fewer bytes than requested so loop until done)
+
+    aBuf.flip();
+    aHdr.clear();
+    aHdr.putInt(aBuf.remaining());
+    aHdr.flip();
+    aFlushed += aBuf.remaining();
+    ByteBuffer[] b = {aHdr, aBuf};
+    while (aHdr.hasRemaining() || aBuf.hasRemaining()) aChannel.write(b);
 
-    // flush the buffer and reset the internal buffer\
+    // reset the internal buffer
 
-    aDOS.flush();
-    aBAOS.reset();
+    aBuf.clear();
   }
 
   /**
@@ -606,7 +683,7 @@ public class FileOutputBuffer extends FileBuffer
    */
   private void checkWriteNextType(int typesze) throws IOException
   {
-    if (aBAOS.size() + typesze > aBufSize) writeBufferX();    
+    if (aBuf.position() + typesze > aBufSize) writeBufferX();    
   }
 
   /**
@@ -616,7 +693,19 @@ public class FileOutputBuffer extends FileBuffer
    */
   public void flush() throws IOException
   {
-    if (aBAOS.size() > 0) writeBufferX();
+    if (aBuf.position() > 0) writeBufferX();
+  }
+
+  /**
+   * Flushes the file stream and forces its content (and metadata) to the
+   * storage device (see FileChannel.force()).
+   *  
+   * @throws IOException
+   */
+  public void force() throws IOException
+  {
+    flush();
+    aChannel.force(true);
   }
 
   /**
@@ -628,6 +717,18 @@ public class FileOutputBuffer extends FileBuffer
   public void close() throws IOException
   {
     flush();
-    aDOS.close();
+    aFOS.close();
+
+    // write the array index if requested
+
+    if (aIndexPos != null)
+    {
+      FileOutputBuffer fob = new FileOutputBuffer(getIndexFileName(aFileName));
+      fob.writeLongs(aIndexPos.getArray(), 0, aIndexPos.size());
+      fob.writeBytes(aIndexType.getArray(), 0, aIndexType.size());
+      fob.writeLong(aFlushed);
+      fob.close();
+      setArrayIndex(false);
+    }
   }
 }
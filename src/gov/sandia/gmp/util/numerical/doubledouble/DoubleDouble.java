@@ -463,22 +463,14 @@ public class DoubleDouble implements Serializable
    */
   public static void multFast(double[] t, double ahi, double alo)
   {
-    double chi, clo, bhi, blo, hi, lo;
+    double hi, lo;
 
     // perform y *= scl in DoubleDouble
-    // perform twoProd ... first split y[0] and sclhi
-
-    chi  = QD_SPLITTER * t[0];
-    chi += t[0] - chi;
-    clo  = t[0] - chi;
-    bhi  = QD_SPLITTER * ahi;
-    bhi += ahi - bhi;
-    blo  = ahi - bhi;
-
-    // finish twoProd storing result in hi, lo
+    // perform twoProd (the exact product error is shared with the array
+    // kernels, which use FMA when available)
 
     hi = t[0] * ahi;
-    lo = ((chi * bhi - hi) + chi * blo + clo * bhi) + clo * blo +
+    lo = DoubleDoubleKernels.twoProdErr(t[0], ahi, hi) +
          (t[0] * alo + t[1] * ahi);
 
     // perform quickTwoSum on hi,lo storing result in y
@@ -494,23 +486,13 @@ public class DoubleDouble implements Serializable
    */
   public static void addMultFast(double[] t, double a, double bhi, double blo)
   {
-    double sahi, salo, sbhi, sblo, sthi, stlo;
+    double sthi, stlo;
     double chi, clo, dhi, dlo, bb;
 
-    // split va[i] and hivi (first part of twoProd ... split)
-
-    sahi  = QD_SPLITTER * a;
-    sahi += a - sahi;
-    salo  = a - sahi;
-    sbhi  = QD_SPLITTER * bhi;
-    sbhi += bhi - sbhi;
-    sblo  = bhi - sbhi;
-
     // store twoprod results
 
     chi = a * bhi;
-    clo = ((sahi * sbhi - chi) + sahi * sblo + salo * sbhi) +
-          salo * sblo + blo * a;
+    clo = DoubleDoubleKernels.twoProdErr(a, bhi, chi) + blo * a;
 
     // perform quickTwoSum
 
@@ -680,18 +662,12 @@ public class DoubleDouble implements Serializable
    */
   public static void addSqrFast(double[] t, double ahi, double alo)
   {
-    double sahi, salo, bhi, blo, chi, clo, dhi, dlo, bb;
-
-    // split vhi[i] (first part of twoSqr ... split)
-
-    sahi  = QD_SPLITTER * ahi;
-    sahi += ahi - sahi;
-    salo  = ahi - sahi;
+    double bhi, blo, chi, clo, dhi, dlo, bb;
 
     // store twoSqr results
 
     chi = ahi * ahi;
-    clo = ((sahi * sahi - chi) + 2.0 * sahi * salo) + salo * salo +
+    clo = DoubleDoubleKernels.twoProdErr(ahi, ahi, chi) +
           2.0 * ahi * alo + alo * alo;
 
     // perform quickTwoSum
@@ -0,0 +1,710 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.doubledouble;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.ManagementFactory;
+import java.lang.management.PlatformManagedObject;
+import java.lang.reflect.Method;
+
+/**
+ * Allocation-free array kernels for DoubleDouble arithmetic. Each kernel
+ * loops over a range of a vector holding its running DoubleDouble value in
+ * local variables, so that no temporary objects are created and the
+ * accumulator is read and written once per call rather than once per
+ * element (as with repeated calls to DoubleDouble.addMultFast(), etc.).
+ * 
+ * <p> Two tiers are provided. The DoubleDouble kernels (addMult, scale,
+ * addSqr) produce the same results, bit for bit, as the equivalent
+ * sequence of DoubleDouble static fast function calls. The compensated
+ * kernels (addMultCompensated, addSqrCompensated) operate on plain double
+ * vectors and only accumulate in extended precision: each product and sum
+ * error is captured exactly (two-product and two-sum) and the errors are
+ * summed in a single double correction term (the "Dot2" algorithm of
+ * Ogita, Rump, and Oishi), which gives a result as accurate as if computed
+ * in twice the working precision at a fraction of the DoubleDouble cost.
+ * 
+ * <p> The two-product error term uses a fused multiply-add (Math.fma, Java
+ * 9 and later) when it is available and not known to be emulated in
+ * software, and the Dekker split otherwise (see lookupFMA()). Both are exact
+ * as long as no intermediate overflows or underflows, so within that range
+ * the choice does not change any result, only its cost. The Dekker split
+ * multiplies each factor by 2^27 + 1, so it overflows (and the results
+ * differ from FMA) for factors above about 1e300 in magnitude, and either
+ * error term can lose bits when a * b is within about 2^53 of the smallest
+ * normal double (about 1e-292).
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public final class DoubleDoubleKernels
+{
+  /**
+   * The Dekker splitter (2^27 + 1).
+   */
+  private static final double       SPLITTER = 134217729.0;
+
+  /**
+   * Math.fma if it is available and hardware supported, otherwise null.
+   */
+  private static final MethodHandle FMA      = lookupFMA();
+
+  /**
+   * True if the two-product error is evaluated with FMA. Volatile so that a
+   * change made with setFMAEnabled() is seen by all threads. Each kernel
+   * reads it once per call and runs a separate FMA or Dekker loop.
+   */
+  private static volatile boolean   aUseFMA  = (FMA != null);
+
+  /**
+   * Static functions only.
+   */
+  private DoubleDoubleKernels()
+  {
+  }
+
+  /**
+   * Returns a handle to Math.fma(double, double, double), or null if it
+   * should not be used. Null is returned if the method does not exist (pre
+   * Java 9), if it fails an exactness probe, or if the virtual machine
+   * reports that it is emulated in software (the software fallback is far
+   * slower than the Dekker split). The software check reads the HotSpot
+   * UseFMA option by reflection, so that no vendor classes are required. On
+   * virtual machines without that option the probed Math.fma is used.
+   * 
+   * @return The Math.fma handle or null.
+   */
+  private static MethodHandle lookupFMA()
+  {
+    MethodHandle fma;
+    try
+    {
+      fma = MethodHandles.lookup().findStatic(Math.class, "fma",
+              MethodType.methodType(double.class, double.class,
+                                    double.class, double.class));
+
+      // (1 + 2^-30)^2 - (1 + 2^-29) = 2^-60 exactly (a separate multiply
+      // and add gives 0)
+
+      double a = 1.0 + 0x1.0p-30;
+      if ((double) fma.invokeExact(a, a, -(1.0 + 0x1.0p-29)) != 0x1.0p-60)
+        return null;
+    }
+    catch (Throwable ex)
+    {
+      // no Math.fma
+
+      return null;
+    }
+
+    return "false".equals(getHotSpotOption("UseFMA")) ? null : fma;
+  }
+
+  /**
+   * Returns the value of the input HotSpot virtual machine option, or null
+   * if the virtual machine is not HotSpot or has no such option. The
+   * diagnostic bean is accessed by reflection.
+   * 
+   * @param name The option name.
+   * @return The option value or null.
+   */
+  private static String getHotSpotOption(String name)
+  {
+    try
+    {
+      Class<?> cls = Class.forName("com.sun.management." +
+                                   "HotSpotDiagnosticMXBean");
+      Object bean = ManagementFactory.getPlatformMXBean(
+                      cls.asSubclass(PlatformManagedObject.class));
+      if (bean == null) return null;
+      Method getVMOption = cls.getMethod("getVMOption", String.class);
+      Object option = getVMOption.invoke(bean, name);
+      return (String) option.getClass().getMethod("getValue").invoke(option);
+    }
+    catch (Throwable ex)
+    {
+      // not a HotSpot VM or no such option
+
+      return null;
+    }
+  }
+
+  /**
+   * Returns true if the two-product error is evaluated with a hardware
+   * fused multiply-add.
+   * 
+   * @return True if FMA is in use.
+   */
+  public static boolean isFMAEnabled()
+  {
+    return aUseFMA;
+  }
+
+  /**
+   * Enables or disables the use of FMA for the two-product error. FMA can
+   * only be enabled if it is available (see isFMAEnabled()). This is a
+   * global setting intended for testing and benchmarking. Since both
+   * evaluations are exact (see the class description) a change made while
+   * kernels are running in other threads does not change their results
+   * within that range.
+   * 
+   * @param useFMA True to use FMA if available.
+   */
+  public static void setFMAEnabled(boolean useFMA)
+  {
+    aUseFMA = useFMA && (FMA != null);
+  }
+
+  /**
+   * Returns the exact error of the product p = a * b (i.e. a * b - p, which
+   * is exactly representable in the absence of overflow or underflow).
+   * 
+   * @param a The first factor.
+   * @param b The second factor.
+   * @param p The rounded product a * b.
+   * @return The exact error a * b - p.
+   */
+  public static double twoProdErr(double a, double b, double p)
+  {
+    if (!aUseFMA) return dekkerErr(a, b, p);
+    try
+    {
+      return fmaErr(a, b, p);
+    }
+    catch (Throwable ex)
+    {
+      throw unchecked(ex);
+    }
+  }
+
+  /**
+   * Returns the exact error a * b - p evaluated with FMA. Must only be
+   * called if FMA is not null.
+   * 
+   * @param a The first factor.
+   * @param b The second factor.
+   * @param p The rounded product a * b.
+   * @return The exact error a * b - p.
+   * @throws Throwable Declared by MethodHandle.invokeExact().
+   */
+  private static double fmaErr(double a, double b, double p) throws Throwable
+  {
+    return (double) FMA.invokeExact(a, b, -p);
+  }
+
+  /**
+   * Returns the exact error a * b - p evaluated with the Dekker split.
+   * 
+   * @param a The first factor.
+   * @param b The second factor.
+   * @param p The rounded product a * b.
+   * @return The exact error a * b - p.
+   */
+  private static double dekkerErr(double a, double b, double p)
+  {
+    double ahi, alo, bhi, blo;
+    ahi  = SPLITTER * a;
+    ahi += a - ahi;
+    alo  = a - ahi;
+    bhi  = SPLITTER * b;
+    bhi += b - bhi;
+    blo  = b - bhi;
+    return ((ahi * bhi - p) + ahi * blo + alo * bhi) + alo * blo;
+  }
+
+  /**
+   * Returns the input throwable, thrown by an FMA kernel loop, as an
+   * unchecked exception. Errors are rethrown directly.
+   * 
+   * @param ex The throwable.
+   * @return The unchecked exception to be thrown.
+   */
+  private static RuntimeException unchecked(Throwable ex)
+  {
+    if (ex instanceof Error) throw (Error) ex;
+    if (ex instanceof RuntimeException) return (RuntimeException) ex;
+    return new IllegalStateException(ex);
+  }
+
+  /**
+   * Performs t(hi,lo) += sum(val[k] * x[indx[k]](hi,lo)) for k in
+   * [strt, stop). The result is identical to calling
+   * DoubleDouble.addMultFast(t, val[k], xhi[indx[k]], xlo[indx[k]]) for
+   * each k.
+   * 
+   * @param t The DoubleDouble accumulator {hi, lo}.
+   * @param val The sparse entry values.
+   * @param indx The sparse entry indices into x.
+   * @param strt The first entry.
+   * @param stop One past the last entry.
+   * @param xhi The high part of the multiplied vector.
+   * @param xlo The low part of the multiplied vector.
+   */
+  public static void addMult(double[] t, double[] val, int[] indx, int strt,
+                             int stop, double[] xhi, double[] xlo)
+  {
+    // read the FMA setting once and run the matching loop
+
+    if (!aUseFMA)
+    {
+      addMultDekker(t, val, indx, strt, stop, xhi, xlo);
+      return;
+    }
+    try
+    {
+      addMultFMA(t, val, indx, strt, stop, xhi, xlo);
+    }
+    catch (Throwable ex)
+    {
+      throw unchecked(ex);
+    }
+  }
+
+  /**
+   * The FMA loop of addMult().
+   * 
+   * @throws Throwable Declared by MethodHandle.invokeExact().
+   */
+  private static void addMultFMA(double[] t, double[] val, int[] indx,
+                                 int strt, int stop, double[] xhi,
+                                 double[] xlo)
+          throws Throwable
+  {
+    double thi = t[0], tlo = t[1];
+    double chi, clo, dhi, dlo, bb, shi, slo;
+    for (int k = strt; k < stop; ++k)
+    {
+      double a = val[k];
+      int j = indx[k];
+      double bhi = xhi[j];
+
+      // twoProd a * b(hi,lo) followed by quickTwoSum
+
+      chi = a * bhi;
+      clo = fmaErr(a, bhi, chi) + xlo[j] * a;
+      dhi = chi + clo;
+      dlo = clo - (dhi - chi);
+
+      // twoSum on thi, dhi and on tlo, dlo, then renormalize
+
+      chi = thi + dhi;
+      bb  = chi - thi;
+      clo = (thi - (chi - bb)) + (dhi - bb);
+
+      dhi = tlo + dlo;
+      bb  = dhi - tlo;
+      dlo = (tlo - (dhi - bb)) + (dlo - bb);
+
+      clo += dhi;
+      shi  = chi + clo;
+      slo  = clo - (shi - chi) + dlo;
+      thi  = shi + slo;
+      tlo  = slo - (thi - shi);
+    }
+    t[0] = thi;
+    t[1] = tlo;
+  }
+
+  /**
+   * The Dekker split loop of addMult().
+   */
+  private static void addMultDekker(double[] t, double[] val, int[] indx,
+                                    int strt, int stop, double[] xhi,
+                                    double[] xlo)
+  {
+    double thi = t[0], tlo = t[1];
+    double chi, clo, dhi, dlo, bb, shi, slo;
+    for (int k = strt; k < stop; ++k)
+    {
+      double a = val[k];
+      int j = indx[k];
+      double bhi = xhi[j];
+
+      // twoProd a * b(hi,lo) followed by quickTwoSum
+
+      chi = a * bhi;
+      clo = dekkerErr(a, bhi, chi) + xlo[j] * a;
+      dhi = chi + clo;
+      dlo = clo - (dhi - chi);
+
+      // twoSum on thi, dhi and on tlo, dlo, then renormalize
+
+      chi = thi + dhi;
+      bb  = chi - thi;
+      clo = (thi - (chi - bb)) + (dhi - bb);
+
+      dhi = tlo + dlo;
+      bb  = dhi - tlo;
+      dlo = (tlo - (dhi - bb)) + (dlo - bb);
+
+      clo += dhi;
+      shi  = chi + clo;
+      slo  = clo - (shi - chi) + dlo;
+      thi  = shi + slo;
+      tlo  = slo - (thi - shi);
+    }
+    t[0] = thi;
+    t[1] = tlo;
+  }
+
+  /**
+   * Returns y + sum(val[k] * x[indx[k]]) for k in [strt, stop) evaluated
+   * with compensated (twice working precision) accumulation and rounded to
+   * double.
+   * 
+   * @param y The initial value.
+   * @param val The sparse entry values.
+   * @param indx The sparse entry indices into x.
+   * @param strt The first entry.
+   * @param stop One past the last entry.
+   * @param x The multiplied vector.
+   * @return The compensated sum.
+   */
+  public static double addMultCompensated(double y, double[] val, int[] indx,
+                                          int strt, int stop, double[] x)
+  {
+    // read the FMA setting once and run the matching loop
+
+    if (!aUseFMA) return addMultCompensatedDekker(y, val, indx, strt, stop, x);
+    try
+    {
+      return addMultCompensatedFMA(y, val, indx, strt, stop, x);
+    }
+    catch (Throwable ex)
+    {
+      throw unchecked(ex);
+    }
+  }
+
+  /**
+   * The FMA loop of addMultCompensated().
+   * 
+   * @throws Throwable Declared by MethodHandle.invokeExact().
+   */
+  private static double addMultCompensatedFMA(double y, double[] val,
+                                              int[] indx, int strt, int stop,
+                                              double[] x)
+          throws Throwable
+  {
+    double s = y, c = 0.0, p, t, bb;
+    for (int k = strt; k < stop; ++k)
+    {
+      double a = val[k], b = x[indx[k]];
+      p  = a * b;
+      t  = s + p;
+      bb = t - s;
+      c += ((s - (t - bb)) + (p - bb)) + fmaErr(a, b, p);
+      s  = t;
+    }
+    return s + c;
+  }
+
+  /**
+   * The Dekker split loop of addMultCompensated().
+   */
+  private static double addMultCompensatedDekker(double y, double[] val,
+                                                 int[] indx, int strt,
+                                                 int stop, double[] x)
+  {
+    double s = y, c = 0.0, p, t, bb;
+    for (int k = strt; k < stop; ++k)
+    {
+      double a = val[k], b = x[indx[k]];
+      p  = a * b;
+      t  = s + p;
+      bb = t - s;
+      c += ((s - (t - bb)) + (p - bb)) + dekkerErr(a, b, p);
+      s  = t;
+    }
+    return s + c;
+  }
+
+  /**
+   * Performs x(hi,lo) *= s(hi,lo) for each entry in [strt, stop). The result
+   * is identical to calling DoubleDouble.multFast() for each entry.
+   * 
+   * @param xhi The high part of the scaled vector.
+   * @param xlo The low part of the scaled vector.
+   * @param strt The first entry.
+   * @param stop One past the last entry.
+   * @param shi The high part of the scale.
+   * @param slo The low part of the scale.
+   */
+  public static void scale(double[] xhi, double[] xlo, int strt, int stop,
+                           double shi, double slo)
+  {
+    // read the FMA setting once and run the matching loop
+
+    if (!aUseFMA)
+    {
+      scaleDekker(xhi, xlo, strt, stop, shi, slo);
+      return;
+    }
+    try
+    {
+      scaleFMA(xhi, xlo, strt, stop, shi, slo);
+    }
+    catch (Throwable ex)
+    {
+      throw unchecked(ex);
+    }
+  }
+
+  /**
+   * The FMA loop of scale().
+   * 
+   * @throws Throwable Declared by MethodHandle.invokeExact().
+   */
+  private static void scaleFMA(double[] xhi, double[] xlo, int strt,
+                               int stop, double shi, double slo)
+          throws Throwable
+  {
+    for (int i = strt; i < stop; ++i)
+    {
+      double a = xhi[i];
+      double hi = a * shi;
+      double lo = fmaErr(a, shi, hi) + (a * slo + xlo[i] * shi);
+      double r = hi + lo;
+      xhi[i] = r;
+      xlo[i] = lo - (r - hi);
+    }
+  }
+
+  /**
+   * The Dekker split loop of scale().
+   */
+  private static void scaleDekker(double[] xhi, double[] xlo, int strt,
+                                  int stop, double shi, double slo)
+  {
+    for (int i = strt; i < stop; ++i)
+    {
+      double a = xhi[i];
+      double hi = a * shi;
+      double lo = dekkerErr(a, shi, hi) + (a * slo + xlo[i] * shi);
+      double r = hi + lo;
+      xhi[i] = r;
+      xlo[i] = lo - (r - hi);
+    }
+  }
+
+  /**
+   * Performs t(hi,lo) += sum(x[i](hi,lo)^2) for i in [strt, stop). The
+   * result is identical to calling DoubleDouble.addSqrFast() for each
+   * entry.
+   * 
+   * @param t The DoubleDouble accumulator {hi, lo}.
+   * @param xhi The high part of the vector.
+   * @param xlo The low part of the vector.
+   * @param strt The first entry.
+   * @param stop One past the last entry.
+   */
+  public static void addSqr(double[] t, double[] xhi, double[] xlo,
+                            int strt, int stop)
+  {
+    // read the FMA setting once and run the matching loop
+
+    if (!aUseFMA)
+    {
+      addSqrDekker(t, xhi, xlo, strt, stop);
+      return;
+    }
+    try
+    {
+      addSqrFMA(t, xhi, xlo, strt, stop);
+    }
+    catch (Throwable ex)
+    {
+      throw unchecked(ex);
+    }
+  }
+
+  /**
+   * The FMA loop of addSqr().
+   * 
+   * @throws Throwable Declared by MethodHandle.invokeExact().
+   */
+  private static void addSqrFMA(double[] t, double[] xhi, double[] xlo,
+                                int strt, int stop)
+          throws Throwable
+  {
+    double thi = t[0], tlo = t[1];
+    double chi, clo, dhi, dlo, bb, shi, slo;
+    for (int i = strt; i < stop; ++i)
+    {
+      double a = xhi[i], alo = xlo[i];
+
+      // twoSqr a(hi,lo) followed by quickTwoSum
+
+      chi = a * a;
+      clo = fmaErr(a, a, chi) + 2.0 * a * alo + alo * alo;
+      dhi = chi + clo;
+      dlo = clo - (dhi - chi);
+
+      // twoSum on thi, dhi and on tlo, dlo, then renormalize
+
+      chi = thi + dhi;
+      bb  = chi - thi;
+      clo = (thi - (chi - bb)) + (dhi - bb);
+
+      dhi = tlo + dlo;
+      bb  = dhi - tlo;
+      dlo = (tlo - (dhi - bb)) + (dlo - bb);
+
+      clo += dhi;
+      shi  = chi + clo;
+      slo  = clo - (shi - chi) + dlo;
+      thi  = shi + slo;
+      tlo  = slo - (thi - shi);
+    }
+    t[0] = thi;
+    t[1] = tlo;
+  }
+
+  /**
+   * The Dekker split loop of addSqr().
+   */
+  private static void addSqrDekker(double[] t, double[] xhi, double[] xlo,
+                                   int strt, int stop)
+  {
+    double thi = t[0], tlo = t[1];
+    double chi, clo, dhi, dlo, bb, shi, slo;
+    for (int i = strt; i < stop; ++i)
+    {
+      double a = xhi[i], alo = xlo[i];
+
+      // twoSqr a(hi,lo) followed by quickTwoSum
+
+      chi = a * a;
+      clo = dekkerErr(a, a, chi) + 2.0 * a * alo + alo * alo;
+      dhi = chi + clo;
+      dlo = clo - (dhi - chi);
+
+      // twoSum on thi, dhi and on tlo, dlo, then renormalize
+
+      chi = thi + dhi;
+      bb  = chi - thi;
+      clo = (thi - (chi - bb)) + (dhi - bb);
+
+      dhi = tlo + dlo;
+      bb  = dhi - tlo;
+      dlo = (tlo - (dhi - bb)) + (dlo - bb);
+
+      clo += dhi;
+      shi  = chi + clo;
+      slo  = clo - (shi - chi) + dlo;
+      thi  = shi + slo;
+      tlo  = slo - (thi - shi);
+    }
+    t[0] = thi;
+    t[1] = tlo;
+  }
+
+  /**
+   * Performs t(hi,lo) += sum(x[i]^2) for i in [strt, stop) with compensated
+   * accumulation. The product and sum errors are accumulated in a single
+   * correction term which is folded into t(hi,lo) on exit.
+   * 
+   * @param t The accumulator {hi, lo}.
+   * @param x The vector.
+   * @param strt The first entry.
+   * @param stop One past the last entry.
+   */
+  public static void addSqrCompensated(double[] t, double[] x, int strt,
+                                       int stop)
+  {
+    // read the FMA setting once and run the matching loop
+
+    if (!aUseFMA)
+    {
+      addSqrCompensatedDekker(t, x, strt, stop);
+      return;
+    }
+    try
+    {
+      addSqrCompensatedFMA(t, x, strt, stop);
+    }
+    catch (Throwable ex)
+    {
+      throw unchecked(ex);
+    }
+  }
+
+  /**
+   * The FMA loop of addSqrCompensated().
+   * 
+   * @throws Throwable Declared by MethodHandle.invokeExact().
+   */
+  private static void addSqrCompensatedFMA(double[] t, double[] x, int strt,
+                                           int stop)
+          throws Throwable
+  {
+    double s = t[0], c = t[1], p, r, bb;
+    for (int i = strt; i < stop; ++i)
+    {
+      double a = x[i];
+      p  = a * a;
+      r  = s + p;
+      bb = r - s;
+      c += ((s - (r - bb)) + (p - bb)) + fmaErr(a, a, p);
+      s  = r;
+    }
+    r = s + c;
+    t[0] = r;
+    t[1] = c - (r - s);
+  }
+
+  /**
+   * The Dekker split loop of addSqrCompensated().
+   */
+  private static void addSqrCompensatedDekker(double[] t, double[] x,
+                                              int strt, int stop)
+  {
+    double s = t[0], c = t[1], p, r, bb;
+    for (int i = strt; i < stop; ++i)
+    {
+      double a = x[i];
+      p  = a * a;
+      r  = s + p;
+      bb = r - s;
+      c += ((s - (r - bb)) + (p - bb)) + dekkerErr(a, a, p);
+      s  = r;
+    }
+    r = s + c;
+    t[0] = r;
+    t[1] = c - (r - s);
+  }
+}
@@ -0,0 +1,274 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.matrix;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes a set of independent tasks concurrently and returns only after
+ * every task has finished. The calling thread participates in the work by
+ * claiming tasks from the same shared index as the worker threads, so no
+ * thread is left idle waiting on the others, and the caller blocks on a latch
+ * (no polling) for any tasks still in flight once the index is exhausted.
+ * 
+ * <p> The worker threads are daemon threads held in a single static pool that
+ * is shared by all runners and survives from one invocation (and one solve)
+ * to the next. The pool only grows (to the largest thread count requested
+ * by any runner) and is never rebuilt, so runners with different thread
+ * counts can be used concurrently. It can be released explicitly with
+ * shutdown().
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class ConcurrentTaskRunner
+{
+  /**
+   * The shared worker pool. Created on first use.
+   */
+  private static ThreadPoolExecutor aPool     = null;
+
+  /**
+   * The number of threads in aPool.
+   */
+  private static int                aPoolSize = 0;
+
+  /**
+   * The number of threads (including the caller) used to execute each task
+   * set.
+   */
+  private int                    aNThreads = 1;
+
+  /**
+   * A single invocation of invokeAll. Worker runnables capture the round they
+   * were submitted for so that a runnable that starts late (after the caller
+   * has already drained and finished the round) finds no work and exits
+   * without touching a later round.
+   */
+  private static class Round implements Runnable
+  {
+    /**
+     * The tasks to be executed.
+     */
+    private Callable<?>[]  aTasks  = null;
+
+    /**
+     * The index of the next unclaimed task.
+     */
+    private AtomicInteger  aNext   = new AtomicInteger(0);
+
+    /**
+     * Counted down once per finished task.
+     */
+    private CountDownLatch aDone   = null;
+
+    /**
+     * The first failure thrown by any task, or null.
+     */
+    private volatile Throwable aError = null;
+
+    /**
+     * Standard constructor.
+     * 
+     * @param tasks The tasks to be executed.
+     */
+    private Round(Callable<?>[] tasks)
+    {
+      aTasks = tasks;
+      aDone  = new CountDownLatch(tasks.length);
+    }
+
+    /**
+     * Claims and executes tasks until none remain.
+     */
+    @Override
+    public void run()
+    {
+      int i;
+      while ((i = aNext.getAndIncrement()) < aTasks.length)
+      {
+        try
+        {
+          aTasks[i].call();
+        }
+        catch (Throwable ex)
+        {
+          if (aError == null) aError = ex;
+        }
+        finally
+        {
+          aDone.countDown();
+        }
+      }
+    }
+  }
+
+  /**
+   * Standard constructor.
+   * 
+   * @param nThreads The total number of threads, including the calling
+   *                 thread, that will execute each task set.
+   */
+  public ConcurrentTaskRunner(int nThreads)
+  {
+    aNThreads = Math.max(nThreads, 1);
+  }
+
+  /**
+   * Returns the total number of threads (including the caller) used by this
+   * runner.
+   * 
+   * @return The total number of threads used by this runner.
+   */
+  public int getThreadCount()
+  {
+    return aNThreads;
+  }
+
+  /**
+   * Executes all input tasks and returns when every one has completed. Any
+   * exception thrown by a task is rethrown here after all tasks have
+   * finished (checked exceptions are wrapped in an IllegalStateException).
+   * 
+   * @param tasks The tasks to be executed.
+   */
+  public void invokeAll(Callable<?>[] tasks)
+  {
+    if (tasks.length == 0) return;
+
+    // submit one worker per additional thread (never more than there are
+    // tasks beyond the one the caller will take), then join in
+
+    Round round = new Round(tasks);
+    int nWorkers = Math.min(aNThreads - 1, tasks.length - 1);
+    if (nWorkers > 0) submit(round, nWorkers, aNThreads - 1);
+    round.run();
+
+    // wait for any tasks still executing on worker threads
+
+    boolean interrupted = false;
+    while (true)
+    {
+      try
+      {
+        round.aDone.await();
+        break;
+      }
+      catch (InterruptedException ex)
+      {
+        interrupted = true;
+      }
+    }
+    if (interrupted) Thread.currentThread().interrupt();
+
+    // rethrow any task failure
+
+    Throwable err = round.aError;
+    if (err != null)
+    {
+      if (err instanceof RuntimeException) throw (RuntimeException) err;
+      if (err instanceof Error) throw (Error) err;
+      throw new IllegalStateException("Error: Concurrent task failed ...", err);
+    }
+  }
+
+  /**
+   * Submits nWorkers copies of the input round to the shared worker pool,
+   * first creating the pool or growing it to at least nThreads threads. The
+   * pool only grows, so runners with different thread counts share it
+   * without ever shutting it down under one another. The lookup and the
+   * submission are made under the same lock so that a concurrent shutdown()
+   * cannot intervene. A round submitted while all pool threads are busy
+   * simply waits in the pool queue, as the caller executes any tasks the
+   * pool threads have not claimed.
+   * 
+   * @param round    The round to be submitted.
+   * @param nWorkers The number of copies submitted.
+   * @param nThreads The minimum number of pool threads.
+   */
+  private static synchronized void submit(Round round, int nWorkers,
+                                          int nThreads)
+  {
+    if (aPool == null)
+    {
+      aPool = new ThreadPoolExecutor(nThreads, nThreads, 0L,
+                                     TimeUnit.MILLISECONDS,
+                                     new LinkedBlockingQueue<Runnable>(),
+                                     new ThreadFactory()
+      {
+        private AtomicInteger aCount = new AtomicInteger(0);
+
+        @Override
+        public Thread newThread(Runnable r)
+        {
+          Thread t = new Thread(r, "ConcurrentTaskRunner-" +
+                                aCount.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+      aPoolSize = nThreads;
+    }
+    else if (aPoolSize < nThreads)
+    {
+      // grow the maximum first so that it never falls below the core size
+
+      aPool.setMaximumPoolSize(nThreads);
+      aPool.setCorePoolSize(nThreads);
+      aPoolSize = nThreads;
+    }
+    for (int i = 0; i < nWorkers; ++i) aPool.execute(round);
+  }
+
+  /**
+   * Releases the shared worker pool threads once their queued rounds have
+   * finished. A new pool is created the next time any runner needs one.
+   */
+  public static synchronized void shutdown()
+  {
+    if (aPool != null)
+    {
+      aPool.shutdown();
+      aPool = null;
+      aPoolSize = 0;
+    }
+  }
+}
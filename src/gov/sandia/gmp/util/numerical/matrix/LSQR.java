@@ -40,10 +40,16 @@ package gov.sandia.gmp.util.numerical.matrix;
 
 import gov.sandia.gmp.util.containers.arraylist.ArrayListDouble;
 import gov.sandia.gmp.util.containers.arraylist.ArrayListInt;
+import gov.sandia.gmp.util.filebuffer.FileInputBuffer;
+import gov.sandia.gmp.util.filebuffer.FileOutputBuffer;
 import gov.sandia.gmp.util.globals.Globals;
 import gov.sandia.gmp.util.logmanager.ScreenWriterOutput;
 
+import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.concurrent.*;
 
 import static gov.sandia.gmp.util.globals.Globals.NL;
@@ -128,6 +134,18 @@ import static java.lang.Math.sqrt;
 * new column in the column-ordered sparse matrix. This vector is also only used
 * by the concurrent solution.
 *
+* <p> Any LinearOperator (e.g. a SparseMatrix) can also be solved directly
+* with solve(LinearOperator a, ArrayListDouble bRHS, double[] x, double[] se),
+* in which case the operator forms the products A * v and A' * u.
+*
+* <p> A right preconditioner (see LSQRPreconditioner and
+* setPreconditioner(...)) can be applied inside the bidiagonalization to
+* reduce the number of iterations for poorly scaled or poorly conditioned
+* systems. Diagonal (LSQRDiagonalPreconditioner) and block-Jacobi or
+* block incomplete Cholesky (LSQRBlockJacobiPreconditioner) forms are
+* provided. The estimates of each iteration can be recorded with
+* setConvergenceHistory(...).
+*
 * <p> The original analytic description of the solution methodology follows:
 * ****************************************************************************
 *
@@ -427,7 +445,8 @@ public class LSQR
 
   /**
    * The column-ordered sparse matrix. This matrix is only used by the
-   * concurrent solution.
+   * concurrent solution. It is null in the transpose-free concurrent
+   * solution, which evaluates A' * u from the row-ordered matrix alone.
    */
   private double[] aSprsCol = null;
 
@@ -444,6 +463,34 @@ public class LSQR
    */
   private int[]    aColPtr  = null;
 
+  /**
+   * The compressed row-ordered sparse matrix. If not null it replaces
+   * aSprsRow and aColIndx in the concurrent solution.
+   */
+  private CompressedSparseMatrix aRowCSM = null;
+
+  /**
+   * The compressed column-ordered sparse matrix. If not null it replaces
+   * aSprsCol and aRowIndx in the concurrent solution.
+   */
+  private CompressedSparseMatrix aColCSM = null;
+
+  /**
+   * The linear operator used in place of the sparse matrix arrays by
+   * solve(LinearOperator, ...), or null.
+   */
+  private LinearOperator aOp = null;
+
+  /**
+   * The operator product A * v (rows) used to update u when aOp is set.
+   */
+  private double[] aOpU = null;
+
+  /**
+   * The operator product A' * u (columns) used to update v when aOp is set.
+   */
+  private double[] aOpV = null;
+
   /**
    * The solution result vector used by both concurrent and sequential solvers.
    * This vector is the same size as aV.
@@ -636,6 +683,83 @@ public class LSQR
    */
   private String             aOutputIndent = "";
 
+  /**
+   * The iteration checkpoint file name (null if no checkpoints are written).
+   */
+  private String             aChkPntFile   = null;
+
+  /**
+   * The number of iterations between checkpoints (0 = not iteration based).
+   */
+  private int                aChkPntIters  = 0;
+
+  /**
+   * The time (seconds) between checkpoints (0 = not time based).
+   */
+  private double             aChkPntSecs   = 0.0;
+
+  /**
+   * The checkpoint file from which the next solve will resume (null if the
+   * next solve starts from the beginning).
+   */
+  private String             aResumeFile   = null;
+
+  /**
+   * The checkpoint file format identifier.
+   */
+  private static final String CHKPNT_ID    = "LSQRCheckpoint";
+
+  /**
+   * The right preconditioner, or null if none is used.
+   */
+  private LSQRPreconditioner     aPrcnd     = null;
+
+  /**
+   * Work vector used to hold v while the preconditioner is applied to it
+   * (allocated only when a preconditioner is used).
+   */
+  private double[]               aPrcndV    = null;
+
+  /**
+   * Work vector holding inv(M) * w (allocated only when a preconditioner is
+   * used).
+   */
+  private double[]               aPrcndW    = null;
+
+  /**
+   * The per-iteration convergence history, or null if none is recorded.
+   */
+  private LSQRConvergenceHistory aHistory   = null;
+
+  /**
+   * The initial solution (warm start) of subsequent solves, or null if they
+   * start from x = 0.
+   */
+  private double[]               aX0        = null;
+
+  /**
+   * The row task cut points of the last balanced or transpose-free task
+   * partition (null if none). Reused, and extended over appended rows, by
+   * subsequent solves.
+   */
+  private int[]                  aRowCut    = null;
+
+  /**
+   * The column task cut points of the last balanced or transpose-free task
+   * partition (null if none).
+   */
+  private int[]                  aColCut    = null;
+
+  /**
+   * True if aRowCut and aColCut were built for the transpose-free solution.
+   */
+  private boolean                aCutTF     = false;
+
+  /**
+   * The requested task count for which aRowCut and aColCut were built.
+   */
+  private int                    aCutTasks  = 0;
+
   /**
    * Default constructor.
    */
@@ -643,6 +767,128 @@ public class LSQR
   {
   }
 
+  /**
+   * Turns iteration checkpointing on (or off if chkPntFile is null). During
+   * each solve the complete Golub-Kahan bidiagonalization state (u, v, w, x,
+   * the error estimates, and all carried scalars and norms) is written to
+   * chkPntFile after every iters iterations or secs seconds, whichever comes
+   * first. Each checkpoint is written to a temporary file that is then
+   * renamed over chkPntFile so that a preempted run always leaves a complete
+   * checkpoint. See resume(String).
+   * 
+   * @param chkPntFile The checkpoint file name, or null to turn checkpointing
+   *                   off.
+   * @param iters The number of iterations between checkpoints (0 = not
+   *              iteration based).
+   * @param secs The time (seconds) between checkpoints (0 = not time based).
+   */
+  public void setCheckpoint(String chkPntFile, int iters, double secs)
+  {
+    aChkPntFile  = chkPntFile;
+    aChkPntIters = iters;
+    aChkPntSecs  = secs;
+  }
+
+  /**
+   * Arms a resume from the checkpoint file written by a previous solve (see
+   * setCheckpoint(...)). The next solve(...) call, which must be given the
+   * same matrix and rhs as the checkpointed solve, continues the iterations
+   * from the checkpointed state rather than from the beginning. With the
+   * same thread count and task partition the resumed solve reproduces the
+   * uninterrupted solve bit for bit (the transpose-free solve sums its
+   * partial vectors in a thread dependent order and is reproducible only to
+   * rounding).
+   * 
+   * @param chkPntFile The checkpoint file to resume from.
+   * @throws IOException
+   */
+  public void resume(String chkPntFile) throws IOException
+  {
+    if (!(new File(chkPntFile)).exists())
+      throw new IOException("Error: Checkpoint file \"" + chkPntFile +
+                            "\" does not exist ...");
+    aResumeFile = chkPntFile;
+  }
+
+  /**
+   * Sets the right preconditioner M used by subsequent solves (null for
+   * none). LSQR then solves min || A * inv(M) * y - b || and returns
+   * x = inv(M) * y together with the standard error estimate of x. Damping
+   * (see damp(double)) applies to y rather than x, and the norm and
+   * condition estimates refer to the preconditioned operator A * inv(M). A
+   * checkpoint can only be resumed with the preconditioner it was written
+   * with.
+   * 
+   * @param prcnd The right preconditioner, or null.
+   */
+  public void setPreconditioner(LSQRPreconditioner prcnd)
+  {
+    aPrcnd = prcnd;
+  }
+
+  /**
+   * Returns the right preconditioner (null if none is used).
+   * 
+   * @return The right preconditioner.
+   */
+  public LSQRPreconditioner getPreconditioner()
+  {
+    return aPrcnd;
+  }
+
+  /**
+   * Sets the convergence history into which the estimates of each iteration
+   * of subsequent solves are recorded (null to turn recording off). The
+   * history is cleared at the start of each solve.
+   * 
+   * @param hist The convergence history, or null.
+   */
+  public void setConvergenceHistory(LSQRConvergenceHistory hist)
+  {
+    aHistory = hist;
+  }
+
+  /**
+   * Sets the initial solution x0 of subsequent solves (null to start from
+   * x = 0). LSQR then solves for the correction dx against the residual
+   * r0 = b - A * x0 and returns x = x0 + dx. When x0 is close to the
+   * solution (for example the previous solution after a few rows were
+   * appended or the damping was changed slightly) far fewer iterations are
+   * required. The damping, the standard error estimate, and the norm and
+   * condition estimates apply to the correction. The input is copied, so
+   * the solution vector of the previous solve can be passed directly. A
+   * checkpoint can only be resumed with the initial solution it was written
+   * with.
+   * 
+   * @param x0 The initial solution, or null.
+   */
+  public void setInitialSolution(double[] x0)
+  {
+    aX0 = (x0 == null) ? null : x0.clone();
+  }
+
+  /**
+   * Discards the task partition retained from the previous solve so that
+   * the next concurrent solve partitions the tasks from scratch. The
+   * partition is otherwise reused (and extended over any appended rows) as
+   * long as the column count and task count are unchanged (see
+   * appendRows(...)).
+   */
+  public void resetTaskPartition()
+  {
+    aRowCut = aColCut = null;
+  }
+
+  /**
+   * Returns the convergence history (null if none is recorded).
+   * 
+   * @return The convergence history.
+   */
+  public LSQRConvergenceHistory getConvergenceHistory()
+  {
+    return aHistory;
+  }
+
   /**
    * Returns the ScreenWriterOutput object so that its properties can
    * be set.
@@ -980,6 +1226,7 @@ public class LSQR
     aColIndx = sprsColIndxMtrx.getArray();
     aRowPtr  = sprsRowPtr.getArray();
     aColPtr  = sprsColPtr.getArray();
+    aRowCSM  = aColCSM = null;
     aNRowPtr = sprsRowPtr.size();
     aNColPtr = sprsColPtr.size();
 
@@ -998,22 +1245,186 @@ public class LSQR
     aU = bRHS.toArray();
     for (int i = 0; i < lsqrRows; ++i) aU[i] = bRHS.get(i);
 
-    // start threads, create task queue, build tasks
+    // get the task runner (its worker threads persist between solves) and
+    // build tasks
+
+    if ((aTaskRunner == null) || (aTaskRunner.getThreadCount() != aNThreads))
+      aTaskRunner = new ConcurrentTaskRunner(aNThreads);
+    buildParallelTasks();
+
+    // solve and return
+
+    return solve();
+  }
+
+  /**
+   * The primary function responsible for performing the transpose-free
+   * concurrent LSQR solution. Only the row-ordered sparse matrix is needed.
+   * A * v is evaluated by row as in the two copy solution while A' * u is
+   * evaluated by scattering each row into a per-thread partial vector,
+   * after which the partial vectors are summed into v in parallel by column
+   * range. This replaces the column-ordered matrix copy (12 bytes per entry)
+   * with at most one partial vector per thread (8 bytes per column each),
+   * roughly halving the matrix storage whenever the entry count is large
+   * compared to the column count times the thread count.
+   * 
+   * @param sprsRowMtrx The lhs row-ordered sparse input matrix.
+   * @param sprsColIndxMtrx The column index into the aV vector for each
+   *                        entry in the row-ordered sparse matrix.
+   * @param sprsRowPtr The entry offset start into the row-ordered sparse
+   *                   matrix for each matrix row (the number of rows + 1
+   *                   entries).
+   * @param bRHS The rhs residual vector.
+   * @param x The solution vector.
+   * @param se The solution error vector.
+   * @return The final stop condition.
+   * @throws IOException
+   */
+  public int solveTransposeFree(ArrayListDouble sprsRowMtrx,
+                                ArrayListInt sprsColIndxMtrx,
+                                ArrayListInt sprsRowPtr, ArrayListDouble bRHS,
+                                double[] x, double[] se)
+             throws IOException
+  {
+    // get row, column, and sparse matrix size and set arrays from lists ...
+    // the column-ordered matrix is not used
+
+    aSprsRow = sprsRowMtrx.getArray();
+    aColIndx = sprsColIndxMtrx.getArray();
+    aRowPtr  = sprsRowPtr.getArray();
+    aNRowPtr = sprsRowPtr.size();
+    aSprsCol = null;
+    aRowIndx = null;
+    aColPtr  = null;
+    aNColPtr = 0;
+    aRowCSM  = aColCSM = null;
+
+    aX       = x;
+    aSE      = se;
+    aNSprs   = sprsRowMtrx.size();
+    lsqrRows = bRHS.size(); // M
+    lsqrCols = x.length; // N
+
+    // create temporary arrays and copy bRHS into u
+
+    aV = new double [lsqrCols];
+    aU = bRHS.toArray();
+
+    // get the task runner (its worker threads persist between solves) and
+    // build tasks
+
+    if ((aTaskRunner == null) || (aTaskRunner.getThreadCount() != aNThreads))
+      aTaskRunner = new ConcurrentTaskRunner(aNThreads);
+    buildParallelTasks();
+
+    // solve and return
+
+    return solve();
+  }
+
+  /**
+   * The primary function responsible for performing the concurrent LSQR
+   * solution using the reduced precision, index compressed matrix form (see
+   * CompressedSparseMatrix). The matrix values are held in single precision
+   * while all products and vectors are double precision. If colMtrx is null
+   * the transpose-free solution is used (see solveTransposeFree(...)).
+   * 
+   * @param rowMtrx The compressed row-ordered sparse matrix.
+   * @param colMtrx The compressed column-ordered sparse matrix, or null.
+   * @param bRHS The rhs residual vector.
+   * @param x The solution vector.
+   * @param se The solution error vector.
+   * @return The final stop condition.
+   * @throws IOException
+   */
+  public int solve(CompressedSparseMatrix rowMtrx,
+                   CompressedSparseMatrix colMtrx,
+                   ArrayListDouble bRHS, double[] x, double[] se)
+             throws IOException
+  {
+    // set the compressed matrices ... the pointer vectors are used to
+    // partition the tasks
+
+    aSprsRow = aSprsCol = null;
+    aRowIndx = aColIndx = null;
+    aRowCSM  = rowMtrx;
+    aColCSM  = colMtrx;
+    aRowPtr  = rowMtrx.getPointerArray();
+    aNRowPtr = aRowPtr.length;
+    aColPtr  = (colMtrx == null) ? null : colMtrx.getPointerArray();
+    aNColPtr = (colMtrx == null) ? 0 : aColPtr.length;
+
+    aX       = x;
+    aSE      = se;
+    aNSprs   = rowMtrx.getEntryCount();
+    lsqrRows = bRHS.size(); // M
+    lsqrCols = x.length; // N
+
+    // create temporary arrays and copy bRHS into u
+
+    aV = new double [lsqrCols];
+    aU = bRHS.toArray();
+
+    // get the task runner (its worker threads persist between solves) and
+    // build tasks
 
-    aThreadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(aNThreads);
-    aQueue = new ExecutorCompletionService<PartialResult>(aThreadPool);
+    if ((aTaskRunner == null) || (aTaskRunner.getThreadCount() != aNThreads))
+      aTaskRunner = new ConcurrentTaskRunner(aNThreads);
     buildParallelTasks();
 
-    // solve
+    // solve and return
+
+    return solve();
+  }
+
+  /**
+   * Performs the LSQR solution of the input linear operator (e.g. a
+   * SparseMatrix) directly, without copying it into the sparse matrix
+   * arrays. The products A * v and A' * u are formed by the operator (which
+   * may itself be parallel) while the LSQR vector updates are sequential.
+   * 
+   * @param a The linear operator.
+   * @param bRHS The rhs residual vector (at least a.getRowCount() entries).
+   * @param x The solution vector (at least a.getColumnCount() entries).
+   * @param se The solution error vector.
+   * @return The final stop condition.
+   * @throws IOException
+   */
+  public int solve(LinearOperator a, ArrayListDouble bRHS, double[] x,
+                   double[] se)
+             throws IOException
+  {
+    if ((bRHS.size() < a.getRowCount()) || (x.length < a.getColumnCount()))
+      throw new IOException("Error: Operator size (" + a.getRowCount() +
+                            " x " + a.getColumnCount() + ") exceeds the " +
+                            "rhs/solution size (" + bRHS.size() + "/" +
+                            x.length + ") ...");
+
+    // no sparse matrix arrays or concurrent tasks are used
+
+    aSprsRow = aSprsCol = null;
+    aRowIndx = aColIndx = null;
+    aRowCSM  = aColCSM = null;
+    uTasks   = vTasks = null;
+    tTasks   = null;
+    aOp      = a;
+    aNSprs   = 0;
+
+    aX       = x;
+    aSE      = se;
+    lsqrRows = bRHS.size(); // M
+    lsqrCols = x.length; // N
+
+    // create temporary arrays and copy bRHS into u
 
-    int solvestatus = solve();
+    aV   = new double [lsqrCols];
+    aU   = bRHS.toArray();
+    aOpU = new double [lsqrRows];
+    aOpV = new double [lsqrCols];
 
-    // shutdown and return
+    // solve and return
 
-    aThreadPool.shutdown();
-    aThreadPool = null;
-    aQueue = null;
-    return solvestatus;
+    return solve();
   }
 
   /**
@@ -1034,6 +1445,16 @@ public class LSQR
     // create temporary arrays
 
     double[] w = new double [lsqrCols];
+    if (aPrcnd != null)
+    {
+      if (aPrcnd.getColumnCount() != lsqrCols)
+        throw new IOException("Error: Preconditioner column count (" +
+                              aPrcnd.getColumnCount() + ") does not " +
+                              "match the solve (" + lsqrCols + ") ...");
+      aPrcndV = new double [lsqrCols];
+      aPrcndW = new double [lsqrCols];
+    }
+    if (aHistory != null) aHistory.clear();
 
     // output header if requested
 
@@ -1062,11 +1483,25 @@ public class LSQR
     
     for (i = 0; i < lsqrCols; ++i) aV[i] = aX[i] = aSE[i] = 0.0;
 
+    // if warm starting solve for the correction to x0 ... replace u = b with
+    // the residual b - A * x0
+
+    if (aX0 != null)
+    {
+      if (aX0.length != lsqrCols)
+        throw new IOException("Error: Initial solution size (" +
+                              aX0.length + ") does not match the solve (" +
+                              lsqrCols + ") ...");
+      for (i = 0; i < lsqrCols; ++i) aV[i] = -aX0[i];
+      multiplyAV();
+      for (i = 0; i < lsqrCols; ++i) aV[i] = 0.0;
+    }
+
     // set up the first vectors u and v for the bidiagonalization.
     // these satisfy  beta * u = b,  alfa * v = A' * U.
 
     alfa = 0.0;
-    if (aSprsCol == null)
+    if (uTasks == null)
     {
       beta = dnrm2(aU);
   
@@ -1076,7 +1511,7 @@ public class LSQR
   
         // use parallel solve if aSprsCol is not null
   
-        aprod(aNSprs, aSprsRow, aV, aColIndx, aU, aRowIndx);
+        productATU();
         alfa = dnrm2(aV);
       }
   
@@ -1095,7 +1530,7 @@ public class LSQR
       {
         //dscl(1.0 / beta, aU);
         concurrentScale(1.0 / beta, uTasks);  
-        concurrentUpdate(vTasks);
+        productATU();
         //alfa = dnrm2(aV);
         alfa = concurrent2Norm(vTasks);
       }
@@ -1120,8 +1555,9 @@ public class LSQR
     lsqrARNorm = alfa * beta;
     if (lsqrARNorm == 0.0)
     {
-      // output x = 0 solution if requested
+      // output x = 0 (x = x0 if warm starting) solution if requested
 
+      addInitialSolution();
       lsqrExTime = System.nanoTime() - start;
       if (aScrnWrtr.isOutputOn()) writeOutput("Exit");
 
@@ -1129,6 +1565,28 @@ public class LSQR
       return lsqrIStop;
     }
 
+    // if a resume was requested replace the initial state with the
+    // checkpointed state
+
+    if (aResumeFile != null)
+    {
+      double[] st = readCheckpoint(w);
+      alfa   = st[0];
+      beta   = st[1];
+      rhoBar = st[2];
+      phiBar = st[3];
+      bbnorm = st[4];
+      ddnorm = st[5];
+      xxnorm = st[6];
+      res2   = st[7];
+      sn2    = st[8];
+      cs2    = st[9];
+      z      = st[10];
+      nstop  = (int) st[11];
+    }
+    int  chkPntIter = lsqrIter;
+    long chkPntTime = System.nanoTime();
+
     // ready to enter iteration loop ... output data header
 
     if (aScrnWrtr.isOutputOn()) 
@@ -1152,12 +1610,12 @@ public class LSQR
       //       beta * u  =  A * v  -  alfa * u,
       //       alfa * v  =  A' * u - beta * v.
 
-      if (aSprsCol == null)
+      if (uTasks == null)
       {
         // perform sequential scale/update
 
         dscl(-alfa, aU);
-        aprod(aNSprs, aSprsRow, aU, aRowIndx, aV, aColIndx);
+        productAV();
         beta = dnrm2(aU);
         bbnorm += alfa * alfa + beta * beta + dampSq;
   
@@ -1165,7 +1623,7 @@ public class LSQR
         {
           dscl(1.0 / beta, aU);
           dscl(-beta, aV);
-          aprod(aNSprs, aSprsRow, aV, aColIndx, aU, aRowIndx);
+          productATU();
           alfa = dnrm2(aV);
           if (alfa > 0.0) dscl(1.0 / alfa, aV);
         }
@@ -1176,7 +1634,7 @@ public class LSQR
 
         //dscl(-alfa, aU);
         concurrentScale(-alfa, uTasks);
-        concurrentUpdate(uTasks);
+        productAV();
         //beta = dnrm2(aU);
         beta = concurrent2Norm(uTasks);
         bbnorm += alfa * alfa + beta * beta + dampSq;
@@ -1187,7 +1645,7 @@ public class LSQR
           //dscl(-beta, aV);
           concurrentScale(1.0 / beta, uTasks);
           concurrentScale(-beta, vTasks);
-          concurrentUpdate(vTasks);
+          productATU();
           //alfa = dnrm2(aV);
           alfa = concurrent2Norm(vTasks);
           //if (alfa > 0.0) dscl(1.0 / alfa, aV);
@@ -1223,14 +1681,34 @@ public class LSQR
       t2   = -theta / rho;
       t3   =  1.0   / rho;
       t3sq =  t3    * t3;
-      for (i = 0; i < lsqrCols; ++i)
+      if (aPrcnd == null)
+      {
+        for (i = 0; i < lsqrCols; ++i)
+        {
+          t       = w[i];
+          aX[i]  += t1 * t;
+          w[i]    = t2 * t + aV[i];
+          t      *= t3sq * t;
+          aSE[i] += t;
+          ddnorm += t;
+        }
+      }
+      else
       {
-        t       = w[i];
-        aX[i]  += t1 * t;
-        w[i]    = t2 * t + aV[i];
-        t      *= t3sq * t;
-        aSE[i] += t;
-        ddnorm += t;
+        // w is a search direction for y = M * x ... x and its standard
+        // error are updated with inv(M) * w
+
+        System.arraycopy(w, 0, aPrcndW, 0, lsqrCols);
+        aPrcnd.solve(aPrcndW);
+        for (i = 0; i < lsqrCols; ++i)
+        {
+          double p = aPrcndW[i];
+          t       = w[i];
+          aX[i]  += t1 * p;
+          aSE[i] += t3sq * p * p;
+          w[i]    = t2 * t + aV[i];
+          ddnorm += t3sq * t * t;
+        }
       }
 
       // Use a plane rotation on the right to eliminate the
@@ -1289,6 +1767,12 @@ public class LSQR
       if (lsqrLSAcc  <= lsqrATol) lsqrIStop = 2;
       if (lsqrCmptbl <= rTol)     lsqrIStop = 1;
 
+      // record the iteration telemetry if requested
+
+      if (aHistory != null)
+        aHistory.add(lsqrRNorm, lsqrARNorm, lsqrANorm, lsqrACond, lsqrXNorm,
+                     System.nanoTime() - start);
+
       // See if it is time to print something.
 
       if (aScrnWrtr.isOutputOn() &&
@@ -1315,6 +1799,20 @@ public class LSQR
         ++nstop;
         if ((nstop < nconv) && (lsqrIter < lsqrItnLim)) lsqrIStop = 0;
       }
+
+      // write a checkpoint if one is due
+
+      if ((lsqrIStop == 0) && (aChkPntFile != null) &&
+          (((aChkPntIters > 0) && (lsqrIter - chkPntIter >= aChkPntIters)) ||
+           ((aChkPntSecs > 0.0) &&
+            (System.nanoTime() - chkPntTime >= aChkPntSecs * 1.0e9))))
+      {
+        writeCheckpoint(new double [] {alfa, beta, rhoBar, phiBar, bbnorm,
+                                       ddnorm, xxnorm, res2, sn2, cs2, z,
+                                       nstop}, w);
+        chkPntIter = lsqrIter;
+        chkPntTime = System.nanoTime();
+      }
     } while (lsqrIStop == 0);
 
     // ------------------------------------------------------------------
@@ -1329,6 +1827,7 @@ public class LSQR
     t = lsqrRNorm / sqrt(t);
 
     for (i = 0; i < lsqrCols; ++i) aSE[i] = t * sqrt(aSE[i]);
+    addInitialSolution();
 
     // Print the stopping condition.
 
@@ -1342,49 +1841,216 @@ public class LSQR
   }
 
   /**
-   * Sequential Sparse matrix multiply. Multiplies Asprs[i] * y[iysprs[i]] and
-   * sums the result to x[ixsprs[i]].
+   * Atomically writes the current iteration state to the checkpoint file.
+   * The file contains an identifier, the problem dimensions (used to verify
+   * a resume), the iteration count, the carried scalars, and the u, v, w, x,
+   * and standard error vectors.
    * 
-   * @param nsprs The number of entries in Asprs.
-   * @param Asprs The sparse matrix.
-   * @param y The vector to be updated.
-   * @param iysprs The indirect address vector into y for each entry, i, in
-   *               Asprs.
-   * @param x The vector multiplying Asprs to update y.
-   * @param ixsprs The indirect address vector into x for each entry, i, in
-   *               Asprs.
+   * @param st The carried scalars of solve().
+   * @param w The solve() w vector.
+   * @throws IOException
    */
-  private void aprod(int nsprs, double[] Asprs,
-                     double[] y, int[] iysprs,
-                     double[] x, int[] ixsprs)
+  private void writeCheckpoint(double[] st, double[] w) throws IOException
   {
-    //for (int i = 0; i < nsprs; ++i) y[iysprs[i]] += Asprs[i] * x[ixsprs[i]];
-    System.out.println("");
-    System.out.println("i, ixsprs[i], x[ixsprs[i]], Asprs[i], iysprs[i], y[iysprs[i]], yafter");
-    for (int i = 0; i < nsprs; ++i)
+    File tmp = new File(aChkPntFile + ".tmp");
+    FileOutputBuffer fob = new FileOutputBuffer(tmp.getPath());
+    fob.writeString(CHKPNT_ID);
+    fob.writeInt(lsqrRows);
+    fob.writeInt(lsqrCols);
+    fob.writeInt(aNSprs);
+    fob.writeInt(lsqrIter);
+    fob.writeDoubles(st);
+    fob.writeDoubles(aU);
+    fob.writeDoubles(aV);
+    fob.writeDoubles(w);
+    fob.writeDoubles(aX);
+    fob.writeDoubles(aSE);
+    fob.force();
+    fob.close();
+
+    // replace the previous checkpoint atomically so that a crash always
+    // leaves a complete checkpoint
+
+    try
     {
-      if (iysprs[i] == 0)
-        System.out.print(i + ", " + ixsprs[i] + ", " + x[ixsprs[i]] + ", " + Asprs[i] + ", " +
-                         iysprs[i] + ", " + y[iysprs[i]]);
-
-      y[iysprs[i]] += Asprs[i] * x[ixsprs[i]];
-
-      if (iysprs[i] == 0)
-        System.out.println(", " + y[iysprs[i]]);
+      Files.move(tmp.toPath(), new File(aChkPntFile).toPath(),
+                 StandardCopyOption.ATOMIC_MOVE,
+                 StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (IOException ex)
+    {
+      throw new IOException("Error: Could not write checkpoint file \"" +
+                            aChkPntFile + "\" ...", ex);
     }
   }
 
   /**
-   * Finds the 2 norm of the input vector.
-   * 
-   * @param x The input vector whose 2 norm will be returned.
+   * Reads the iteration state from the resume file (see resume(String)) into
+   * u, v, w, x, and the standard error vectors, sets the iteration count, and
+   * returns the carried scalars. The vectors are copied into the existing
+   * arrays as they are shared with the concurrent tasks. The resume request
+   * is cleared.
    * 
-   * @return The input vectors 2 norm.
+   * @param w The solve() w vector.
+   * @return The carried scalars of solve().
+   * @throws IOException
    */
-  private double dnrm2(double[] x)
+  private double[] readCheckpoint(double[] w) throws IOException
   {
-    double d = 0.0;
-    int n = x.length;
+    String fn = aResumeFile;
+    aResumeFile = null;
+
+    FileInputBuffer fib = new FileInputBuffer(fn);
+    try
+    {
+      if (!fib.readString().equals(CHKPNT_ID))
+        throw new IOException("Error: \"" + fn + "\" is not an LSQR " +
+                              "checkpoint file ...");
+      int rows = fib.readInt();
+      int cols = fib.readInt();
+      int nsprs = fib.readInt();
+      if ((rows != lsqrRows) || (cols != lsqrCols) || (nsprs != aNSprs))
+        throw new IOException("Error: Checkpoint problem size (" + rows +
+                              " x " + cols + ", " + nsprs + " entries) " +
+                              "does not match the solve (" + lsqrRows +
+                              " x " + lsqrCols + ", " + aNSprs +
+                              " entries) ...");
+      lsqrIter = fib.readInt();
+      double[] st = fib.readDoubles();
+      System.arraycopy(fib.readDoubles(), 0, aU,  0, lsqrRows);
+      System.arraycopy(fib.readDoubles(), 0, aV,  0, lsqrCols);
+      System.arraycopy(fib.readDoubles(), 0, w,   0, lsqrCols);
+      System.arraycopy(fib.readDoubles(), 0, aX,  0, lsqrCols);
+      System.arraycopy(fib.readDoubles(), 0, aSE, 0, lsqrCols);
+      return st;
+    }
+    finally
+    {
+      fib.close();
+    }
+  }
+
+  /**
+   * Adds the initial solution (if warm starting) to the solved correction
+   * in aX.
+   */
+  private void addInitialSolution()
+  {
+    if (aX0 != null)
+      for (int i = 0; i < lsqrCols; ++i) aX[i] += aX0[i];
+  }
+
+  /**
+   * Performs u += A * v using the operator, sequential, or concurrent
+   * product.
+   */
+  private void multiplyAV() throws IOException
+  {
+    if (aOp != null)
+    {
+      aOp.multiply(aV, aOpU);
+      for (int i = 0; i < lsqrRows; ++i) aU[i] += aOpU[i];
+    }
+    else if (uTasks == null)
+      aprod(aNSprs, aSprsRow, aU, aRowIndx, aV, aColIndx);
+    else
+      concurrentUpdate(uTasks);
+  }
+
+  /**
+   * Performs u += A * inv(M) * v (u += A * v if no preconditioner is set)
+   * using the sequential or concurrent product. The preconditioner is
+   * applied to v in place and v is restored afterwards, as the concurrent
+   * tasks reference aV directly.
+   */
+  private void productAV() throws IOException
+  {
+    if (aPrcnd != null)
+    {
+      System.arraycopy(aV, 0, aPrcndV, 0, lsqrCols);
+      aPrcnd.solve(aV);
+    }
+
+    multiplyAV();
+
+    if (aPrcnd != null) System.arraycopy(aPrcndV, 0, aV, 0, lsqrCols);
+  }
+
+  /**
+   * Performs v += inv(M)' * A' * u (v += A' * u if no preconditioner is set)
+   * using the sequential or concurrent product. With a preconditioner A' * u
+   * is formed in aV (after saving v), transformed in place, and v is added
+   * back.
+   */
+  private void productATU() throws IOException
+  {
+    if (aPrcnd != null)
+    {
+      System.arraycopy(aV, 0, aPrcndV, 0, lsqrCols);
+      for (int i = 0; i < lsqrCols; ++i) aV[i] = 0.0;
+    }
+
+    if (aOp != null)
+    {
+      aOp.multiplyTranspose(aU, aOpV);
+      for (int i = 0; i < lsqrCols; ++i) aV[i] += aOpV[i];
+    }
+    else if (uTasks == null)
+      aprod(aNSprs, aSprsRow, aV, aColIndx, aU, aRowIndx);
+    else
+      concurrentTransposeUpdate();
+
+    if (aPrcnd != null)
+    {
+      aPrcnd.solveTranspose(aV);
+      for (int i = 0; i < lsqrCols; ++i) aV[i] += aPrcndV[i];
+    }
+  }
+
+  /**
+   * Sequential Sparse matrix multiply. Multiplies Asprs[i] * y[iysprs[i]] and
+   * sums the result to x[ixsprs[i]].
+   * 
+   * @param nsprs The number of entries in Asprs.
+   * @param Asprs The sparse matrix.
+   * @param y The vector to be updated.
+   * @param iysprs The indirect address vector into y for each entry, i, in
+   *               Asprs.
+   * @param x The vector multiplying Asprs to update y.
+   * @param ixsprs The indirect address vector into x for each entry, i, in
+   *               Asprs.
+   */
+  private void aprod(int nsprs, double[] Asprs,
+                     double[] y, int[] iysprs,
+                     double[] x, int[] ixsprs)
+  {
+    //for (int i = 0; i < nsprs; ++i) y[iysprs[i]] += Asprs[i] * x[ixsprs[i]];
+    System.out.println("");
+    System.out.println("i, ixsprs[i], x[ixsprs[i]], Asprs[i], iysprs[i], y[iysprs[i]], yafter");
+    for (int i = 0; i < nsprs; ++i)
+    {
+      if (iysprs[i] == 0)
+        System.out.print(i + ", " + ixsprs[i] + ", " + x[ixsprs[i]] + ", " + Asprs[i] + ", " +
+                         iysprs[i] + ", " + y[iysprs[i]]);
+
+      y[iysprs[i]] += Asprs[i] * x[ixsprs[i]];
+
+      if (iysprs[i] == 0)
+        System.out.println(", " + y[iysprs[i]]);
+    }
+  }
+
+  /**
+   * Finds the 2 norm of the input vector.
+   * 
+   * @param x The input vector whose 2 norm will be returned.
+   * 
+   * @return The input vectors 2 norm.
+   */
+  static double dnrm2(double[] x)
+  {
+    double d = 0.0;
+    int n = x.length;
     for (int i = 0; i < n; ++i) d += x[i] * x[i];
     //if (true)
     //{
@@ -1406,7 +2072,7 @@ public class LSQR
    * @param scl The scaling factor.
    * @param x the vector to be scaled.
    */
-  private void dscl(double scl, double[] x)
+  static void dscl(double scl, double[] x)
   {
     int n = x.length;
     for (int i = 0; i < n; ++i) x[i] *= scl;
@@ -1510,8 +2176,8 @@ public class LSQR
   //***************************************************************************
 
   /**
-   * A dummy CompletionService<SolveAProd> result class returned to the
-   * caller after each task is finished. The result contains the row/column
+   * The result class returned by each SolveAProd task after it is
+   * finished. The result contains the row/column
    * start/stop values for each task.
    */
   public class PartialResult
@@ -1637,6 +2303,22 @@ public class LSQR
      */
     boolean a2NormFlg = false;
 
+    /**
+     * The compressed form of aSpM / aXIndx (aRowCSM for uTasks and aColCSM
+     * for vTasks) or null if the standard form is used.
+     */
+    CompressedSparseMatrix aCSM = null;
+
+    /**
+     * The accumulated time (nanoseconds) spent by this task in update().
+     */
+    long    aUpdateTime  = 0;
+
+    /**
+     * The number of times update() was called for this task.
+     */
+    int     aUpdateCount = 0;
+
     /**
      * Standard constructor for the parallel aProd task. Sets the input
      * arguments in preparation for solving for aU or aV. 
@@ -1703,7 +2385,12 @@ public class LSQR
       else if (a2NormFlg)
         twoNorm();
       else
+      {
+        long strt = System.nanoTime();
         update();
+        aUpdateTime += System.nanoTime() - strt;
+        ++aUpdateCount;
+      }
 
       // return partial result
 
@@ -1717,6 +2404,23 @@ public class LSQR
      */
     private void update()
     {
+      // vTasks of the transpose-free solution have no column-ordered matrix
+      // ... they sum the partial A' * u vectors instead
+
+      if (aPtr == null)
+      {
+        reduce();
+        return;
+      }
+
+      // use the compressed kernel if this task has a compressed matrix
+
+      if (aCSM != null)
+      {
+        aCSM.multiplyAdd(aY, aX, aPR.startIndex, aPR.stopIndex);
+        return;
+      }
+
       // loop over all rows or columns from startIndex to stopIndex-1
 
       for (int i = aPR.startIndex; i < aPR.stopIndex; ++i)
@@ -1765,6 +2469,89 @@ public class LSQR
 
       a2NormFlg = false;
     }
+
+    /**
+     * The parallel call used by the transpose-free solution to add the
+     * partial A' * u vectors, built by the tTasks, into aY (aV) over this
+     * task's column range. Each partial vector range is reset to zero as it
+     * is summed so that the partials are ready for the next A' * u.
+     */
+    private void reduce()
+    {
+      for (int k = 0; k < aPartials.size(); ++k)
+      {
+        double[] p = aPartials.get(k);
+        for (int i = aPR.startIndex; i < aPR.stopIndex; ++i)
+        {
+          aY[i] += p[i];
+          p[i] = 0.0;
+        }
+      }
+    }
+  }
+
+  /**
+   * Parallel task used by the transpose-free solution to evaluate the
+   * contribution of a range of rows of the row-ordered sparse matrix to
+   * A' * u. The task claims a partial vector (one per concurrently executing
+   * thread at most), scatters its rows into it
+   *
+   *     for (i = row_start; i < row_stop; ++i)
+   *     {
+   *       double ui = aU[i];
+   *       for (int j = aRowPtr[i]; j < aRowPtr[i+1]; ++j)
+   *         p[aColIndx[j]] += aSprsRow[j] * ui;
+   *     }
+   *
+   * and returns the partial vector to the free list. The partial vectors are
+   * summed into aV by the vTasks once all tTasks have finished.
+   */
+  public class SolveATransProd implements Callable<PartialResult>
+  {
+    /**
+     * Contains the row start and stop indices processed by this task.
+     */
+    PartialResult aPR = null;
+
+    /**
+     * The accumulated time (nanoseconds) spent by this task in call().
+     */
+    long    aUpdateTime  = 0;
+
+    /**
+     * Standard constructor.
+     * 
+     * @param strt First row processed by this task.
+     * @param stop Last - 1 row processed by this task.
+     */
+    public SolveATransProd(int strt, int stop)
+    {
+      aPR = new PartialResult(strt, stop);
+    }
+
+    /**
+     * Concurrent entry. Scatters the task rows into a partial vector.
+     */
+    public PartialResult call()
+    {
+      long strt = System.nanoTime();
+      double[] p = checkoutPartial();
+      if (aRowCSM != null)
+        aRowCSM.scatterAdd(p, aU, aPR.startIndex, aPR.stopIndex);
+      else for (int i = aPR.startIndex; i < aPR.stopIndex; ++i)
+      {
+        double ui = aU[i];
+        if (ui == 0.0) continue;
+
+        int stop = aRowPtr[i+1];
+        for (int j = aRowPtr[i]; j < stop; ++j)
+          p[aColIndx[j]] += aSprsRow[j] * ui;
+      }
+      returnPartial(p);
+      aUpdateTime += System.nanoTime() - strt;
+
+      return aPR;
+    }
   }
 
   /**
@@ -1787,16 +2574,76 @@ public class LSQR
   private static int aNThreads = (int) (aNProcessors * aProcMult);
 
   /**
-   * The local thread pool on which the processes will execute the
-   * concurrent uTasks and vTasks (SolveAProd tasks).
+   * The method used by buildParallelTasks() to split rows (uTasks) and
+   * columns (vTasks) into tasks.
+   * 
+   * <p> ENTRY_STEP is the original scheme which creates one task per thread
+   * by stepping through the pointer vector and cutting a task each time
+   * another 1/aNThreads of the entries has been passed.
+   * 
+   * <p> BALANCED splits the rows (or columns) using a binary search of the
+   * pointer prefix sums so that each task carries an equal share of the
+   * total memory traffic, where a row costs its entry count plus
+   * aRowCostWeight (the per row load and store of aY and the pointer
+   * vector). aTaskMultiplier tasks are built per thread. Because threads
+   * claim the next unprocessed task as they become free, a thread that
+   * draws a slow (e.g. cache unfriendly) task simply claims fewer of the
+   * remaining ones, so the over-decomposition gives dynamic load balancing
+   * at the end of each sweep.
+   */
+  public enum TaskPartition
+  {
+    ENTRY_STEP,
+    BALANCED;
+  }
+
+  /**
+   * The partitioning used to build the concurrent tasks.
+   */
+  private static TaskPartition aTaskPartition = TaskPartition.BALANCED;
+
+  /**
+   * The number of tasks built per thread by the BALANCED partition.
+   */
+  private static int    aTaskMultiplier = 4;
+
+  /**
+   * The cost of a row (or column) relative to a single sparse matrix entry
+   * used by the BALANCED partition.
+   */
+  private static double aRowCostWeight  = 1.0;
+
+  /**
+   * The total aProd time (nanoseconds) spent by each uTask during the last
+   * concurrent solve.
+   */
+  private long[] aUTaskTimes = null;
+
+  /**
+   * The total aProd time (nanoseconds) spent by each vTask during the last
+   * concurrent solve.
+   */
+  private long[] aVTaskTimes = null;
+
+  /**
+   * The accumulated wall clock time (nanoseconds) of all concurrent aProd
+   * sweeps during the last concurrent solve.
+   */
+  private long   aAProdWallTime = 0;
+
+  /**
+   * The accumulated task time (nanoseconds) of all concurrent aProd sweeps
+   * during the last concurrent solve.
    */
-  private ThreadPoolExecutor aThreadPool = null;
+  private long   aAProdTaskTime = 0;
 
   /**
-   * The completion service results queue used to save the concurrent results
-   * as they return from the thread pool.
+   * Executes the concurrent uTasks and vTasks (SolveAProd tasks). The calling
+   * thread takes part in each task set and blocks (without polling) until the
+   * set is complete. The worker threads are shared and persist between
+   * solves.
    */
-  private CompletionService<PartialResult> aQueue = null;
+  private ConcurrentTaskRunner aTaskRunner = null;
 
   /**
    * Used to execute the concurrent tasks in a sequential manner. This is
@@ -1822,6 +2669,25 @@ public class LSQR
    */
   private SolveAProd[] vTasks = null;
 
+  /**
+   * The set of tTasks used by the transpose-free solution to scatter the
+   * rows of aSprsRow times aU into the partial A' * u vectors. Null unless
+   * solveTransposeFree(...) was called.
+   */
+  private SolveATransProd[] tTasks = null;
+
+  /**
+   * All partial A' * u vectors created by the tTasks. A new partial vector
+   * is only created when a tTask finds the free list empty, so there are
+   * never more than the number of threads.
+   */
+  private ArrayList<double[]> aPartials    = new ArrayList<double[]>();
+
+  /**
+   * The partial A' * u vectors not currently claimed by a tTask.
+   */
+  private ArrayList<double[]> aPartialFree = new ArrayList<double[]>();
+
   /**
    * The parallel equivalent of aProd which is used to process the sparse matrix
    * to obtain aU or aV in a parallel fashion. If the boolean seqUpdateFlg is
@@ -1839,19 +2705,76 @@ public class LSQR
     }
     else
     {
-      // submit all tasks in concurrent mode
-  
-      for (int i = 0; i < tasks.length; ++i) aQueue.submit(tasks[i]);
-  
-      // wait until all tasks have returned before exiting.
-  
-      int cnt = 0; 
-      while (cnt < tasks.length)
+      // execute all tasks in concurrent mode and wait until all have
+      // returned before exiting ... accumulate the sweep wall clock time and
+      // the total task time to measure how well the threads were utilized
+
+      long taskTime = 0;
+      for (int i = 0; i < tasks.length; ++i) taskTime -= tasks[i].aUpdateTime;
+      long strt = System.nanoTime();
+      aTaskRunner.invokeAll(tasks);
+      aAProdWallTime += System.nanoTime() - strt;
+      for (int i = 0; i < tasks.length; ++i) taskTime += tasks[i].aUpdateTime;
+      aAProdTaskTime += taskTime;
+    }
+  }
+
+  /**
+   * Updates aV with A' * aU. If the column-ordered matrix is available this
+   * is the concurrent update of the vTasks. Otherwise (transpose-free
+   * solution) the tTasks first scatter the rows into the partial vectors,
+   * which the vTasks then sum into aV by column range.
+   */
+  private void concurrentTransposeUpdate()
+  {
+    if (tTasks != null)
+    {
+      if (seqUpdateFlg)
+      {
+        // execute each task sequentially
+
+        for (int i = 0; i < tTasks.length; ++i) tTasks[i].call();
+      }
+      else
       {
-        Future<PartialResult> pr = aQueue.poll();
-        if (pr != null) cnt++;
+        long taskTime = 0;
+        for (int i = 0; i < tTasks.length; ++i)
+          taskTime -= tTasks[i].aUpdateTime;
+        long strt = System.nanoTime();
+        aTaskRunner.invokeAll(tTasks);
+        aAProdWallTime += System.nanoTime() - strt;
+        for (int i = 0; i < tTasks.length; ++i)
+          taskTime += tTasks[i].aUpdateTime;
+        aAProdTaskTime += taskTime;
       }
     }
+    concurrentUpdate(vTasks);
+  }
+
+  /**
+   * Returns a partial A' * u vector from the free list, or a new zeroed
+   * partial vector if the free list is empty.
+   * 
+   * @return A zeroed partial A' * u vector.
+   */
+  private synchronized double[] checkoutPartial()
+  {
+    if (aPartialFree.size() > 0)
+      return aPartialFree.remove(aPartialFree.size() - 1);
+
+    double[] p = new double [lsqrCols];
+    aPartials.add(p);
+    return p;
+  }
+
+  /**
+   * Returns a partial A' * u vector to the free list.
+   * 
+   * @param p The partial vector to be returned.
+   */
+  private synchronized void returnPartial(double[] p)
+  {
+    aPartialFree.add(p);
   }
 
   /**
@@ -1875,22 +2798,11 @@ public class LSQR
     }
     else
     {
-      // submit all tasks in concurrent mode
-  
-      for (int i = 0; i < tasks.length; ++i)
-      {
-        tasks[i].setScale(scl);
-        aQueue.submit(tasks[i]);
-      }
-  
-      // wait until all tasks have returned before exiting.
-  
-      int cnt = 0; 
-      while (cnt < tasks.length)
-      {
-        Future<PartialResult> pr = aQueue.poll();
-        if (pr != null) cnt++;
-      }
+      // execute all tasks in concurrent mode and wait until all have
+      // returned before exiting.
+
+      for (int i = 0; i < tasks.length; ++i) tasks[i].setScale(scl);
+      aTaskRunner.invokeAll(tasks);
     }
   }
 
@@ -1916,33 +2828,15 @@ public class LSQR
     }
     else
     {
-      // submit all tasks in concurrent mode
+      // execute all tasks in concurrent mode
   
-      for (int i = 0; i < tasks.length; ++i)
-      {
-        tasks[i].set2Norm();
-        aQueue.submit(tasks[i]);
-      }
+      for (int i = 0; i < tasks.length; ++i) tasks[i].set2Norm();
+      aTaskRunner.invokeAll(tasks);
   
-      // sum result from each task to d
+      // sum result from each task to d (in task order so that the result
+      // does not depend on the order in which the tasks finished)
   
-      int cnt = 0; 
-      try
-      {
-        while (cnt < tasks.length)
-        {
-          Future<PartialResult> pr = aQueue.poll();
-          if (pr != null)
-          {
-            cnt++;
-            d += pr.get().rslt;          
-          }
-        }
-      }
-      catch (Exception ex)
-      {
-        ex.printStackTrace();
-      }
+      for (int i = 0; i < tasks.length; ++i) d += tasks[i].aPR.rslt;
     }
 
     // return sqrt(d)
@@ -1956,6 +2850,66 @@ public class LSQR
    */
   private void buildParallelTasks()
   {
+    buildParallelTaskRanges();
+
+    // attach the compressed matrices if in use
+
+    if (aRowCSM != null)
+      for (int i = 0; i < uTasks.length; ++i) uTasks[i].aCSM = aRowCSM;
+    if (aColCSM != null)
+      for (int i = 0; i < vTasks.length; ++i) vTasks[i].aCSM = aColCSM;
+  }
+
+  /**
+   * Builds the row and column ranges of the parallel U and V tasks (uTasks,
+   * and vTasks) and, for the transpose-free solution, the tTasks.
+   */
+  private void buildParallelTaskRanges()
+  {
+    aAProdWallTime = aAProdTaskTime = 0;
+    aUTaskTimes = aVTaskTimes = null;
+    tTasks = null;
+    if (aColPtr == null)
+    {
+      // transpose-free solution ... the tTasks cover the same row ranges as
+      // the uTasks while the vTasks (which only scale, norm, and reduce aV)
+      // split the columns evenly
+
+      int nTasks = Math.max(aNThreads * aTaskMultiplier, 1);
+      int[] cut = rowPartition(nTasks, true);
+      uTasks = new SolveAProd [cut.length - 1];
+      tTasks = new SolveATransProd [cut.length - 1];
+      for (int i = 0; i < uTasks.length; ++i)
+      {
+        uTasks[i] = new SolveAProd(cut[i], cut[i+1], aU, aV,
+                                   aRowPtr, aSprsRow, aColIndx);
+        tTasks[i] = new SolveATransProd(cut[i], cut[i+1]);
+      }
+
+      cut = aColCut;
+      vTasks = new SolveAProd [cut.length - 1];
+      for (int i = 0; i < vTasks.length; ++i)
+        vTasks[i] = new SolveAProd(cut[i], cut[i+1], aV, aU,
+                                   null, null, null);
+      return;
+    }
+    if (aTaskPartition == TaskPartition.BALANCED)
+    {
+      int nTasks = Math.max(aNThreads * aTaskMultiplier, 1);
+      int[] cut = rowPartition(nTasks, false);
+      uTasks = new SolveAProd [cut.length - 1];
+      for (int i = 0; i < uTasks.length; ++i)
+        uTasks[i] = new SolveAProd(cut[i], cut[i+1], aU, aV,
+                                   aRowPtr, aSprsRow, aColIndx);
+
+      cut = aColCut;
+      vTasks = new SolveAProd [cut.length - 1];
+      for (int i = 0; i < vTasks.length; ++i)
+        vTasks[i] = new SolveAProd(cut[i], cut[i+1], aV, aU,
+                                   aColPtr, aSprsCol, aRowIndx);
+      return;
+    }
+
     // use number of processors as target number of tasks to create ...
     // nEntsPerTask is the rough number of entries in the sparse matrix that
     // will be assigned to an individual task. It is usually slightly larger
@@ -2039,15 +2993,308 @@ public class LSQR
     }
   }
 
+  /**
+   * Returns the row task cut points of a balanced (transposeFree = false) or
+   * transpose-free task partition and sets the matching column cut points
+   * into aColCut. If the previous partition was built for the same kind of
+   * solution, task count, and column count it is reused. Rows appended
+   * since it was built are split into additional tasks in proportion to
+   * their cost, until the task count has doubled, after which the rows are
+   * partitioned from scratch.
+   * 
+   * @param nTasks The requested number of tasks.
+   * @param transposeFree True for the transpose-free solution.
+   * @return The row task cut points.
+   */
+  private int[] rowPartition(int nTasks, boolean transposeFree)
+  {
+    int rows = aNRowPtr - 1;
+    if ((aRowCut != null) && (aCutTF == transposeFree) &&
+        (aCutTasks == nTasks) && (aColCut[aColCut.length - 1] == lsqrCols) &&
+        (aRowCut[aRowCut.length - 1] <= rows) &&
+        (aRowCut.length - 1 < 2 * nTasks))
+    {
+      // reuse the previous partition ... split any appended rows
+
+      int last = aRowCut[aRowCut.length - 1];
+      if (last < rows)
+      {
+        int[] ptr = new int [rows - last + 1];
+        for (int i = 0; i < ptr.length; ++i)
+          ptr[i] = aRowPtr[last + i] - aRowPtr[last];
+        double tail  = ptr[rows - last] + aRowCostWeight * (rows - last);
+        double total = aRowPtr[rows] + aRowCostWeight * rows;
+        int nTail = Math.max((int) Math.round(nTasks * tail / total), 1);
+        int[] tailCut = balancedPartition(ptr, rows - last, nTail,
+                                          aRowCostWeight);
+
+        int[] cut = new int [aRowCut.length + tailCut.length - 1];
+        System.arraycopy(aRowCut, 0, cut, 0, aRowCut.length);
+        for (int i = 1; i < tailCut.length; ++i)
+          cut[aRowCut.length - 1 + i] = last + tailCut[i];
+        aRowCut = cut;
+      }
+      return aRowCut;
+    }
+
+    // build a new partition
+
+    aRowCut = balancedPartition(aRowPtr, rows, nTasks, aRowCostWeight);
+    if (transposeFree)
+      aColCut = balancedPartition(null, lsqrCols, nTasks, 1.0);
+    else
+      aColCut = balancedPartition(aColPtr, aNColPtr - 1, nTasks,
+                                  aRowCostWeight);
+    aCutTF    = transposeFree;
+    aCutTasks = nTasks;
+    return aRowCut;
+  }
+
+  /**
+   * Appends rows to the row-ordered and (if sprsColMtrx is not null)
+   * column-ordered sparse matrix forms used by the concurrent solve, in
+   * place and without re-sorting. The new rows are appended to the
+   * row-ordered form and, because their row indices follow all existing
+   * rows, each of their entries belongs at the end of its column in the
+   * column-ordered form. The column-ordered form is therefore updated by a
+   * single backward pass that shifts each column by the number of new
+   * entries in the columns before it. The rhs entries of the new rows must
+   * be appended to bRHS by the caller. Subsequent solves of an LSQR object
+   * reuse its task partition over the original rows (see
+   * resetTaskPartition()) and, combined with setInitialSolution(...), avoid
+   * a cold re-solve.
+   * 
+   * @param sprsRowMtrx The row-ordered sparse matrix.
+   * @param sprsColIndxMtrx The column index of each row-ordered entry.
+   * @param sprsRowPtr The row-ordered entry offset of each row (the number
+   *                   of rows + 1 entries).
+   * @param sprsColMtrx The column-ordered sparse matrix (null for the
+   *                    transpose-free form).
+   * @param sprsRowIndxMtrx The row index of each column-ordered entry (null
+   *                        for the transpose-free form).
+   * @param sprsColPtr The column-ordered entry offset of each column (the
+   *                   number of columns + 1 entries, or null for the
+   *                   transpose-free form).
+   * @param newRowMtrx The entries of the new rows.
+   * @param newColIndx The column index of each new entry.
+   * @param newRowPtr The offset into newRowMtrx of each new row (the number
+   *                  of new rows + 1 entries).
+   */
+  public static void appendRows(ArrayListDouble sprsRowMtrx,
+                                ArrayListInt sprsColIndxMtrx,
+                                ArrayListInt sprsRowPtr,
+                                ArrayListDouble sprsColMtrx,
+                                ArrayListInt sprsRowIndxMtrx,
+                                ArrayListInt sprsColPtr,
+                                ArrayListDouble newRowMtrx,
+                                ArrayListInt newColIndx,
+                                ArrayListInt newRowPtr)
+  {
+    int rows    = sprsRowPtr.size() - 1;
+    int newRows = newRowPtr.size() - 1;
+    int base    = sprsRowMtrx.size();
+    int newBase = newRowPtr.get(0);
+    int nNew    = newRowPtr.get(newRows) - newBase;
+
+    // append to the row-ordered form
+
+    for (int e = newBase; e < newBase + nNew; ++e)
+    {
+      sprsRowMtrx.add(newRowMtrx.get(e));
+      sprsColIndxMtrx.add(newColIndx.get(e));
+    }
+    for (int r = 1; r <= newRows; ++r)
+      sprsRowPtr.add(base + newRowPtr.get(r) - newBase);
+    if (sprsColMtrx == null) return;
+
+    // count the new entries of each column and bucket them (in row order)
+    // by column
+
+    int cols = sprsColPtr.size() - 1;
+    int[] cnt = new int [cols + 1];
+    for (int e = newBase; e < newBase + nNew; ++e)
+    {
+      int j = newColIndx.get(e);
+      if ((j < 0) || (j >= cols))
+        throw new IllegalArgumentException("Error: New entry column index (" +
+                                           j + ") is outside [0, " + cols +
+                                           ") ...");
+      ++cnt[j + 1];
+    }
+    for (int j = 0; j < cols; ++j) cnt[j + 1] += cnt[j];
+    double[] bVal = new double [nNew];
+    int[]    bRow = new int [nNew];
+    int[]    fill = cnt.clone();
+    for (int r = 0; r < newRows; ++r)
+      for (int e = newRowPtr.get(r); e < newRowPtr.get(r + 1); ++e)
+      {
+        int k = fill[newColIndx.get(e)]++;
+        bVal[k] = newRowMtrx.get(e);
+        bRow[k] = rows + r;
+      }
+
+    // grow the column-ordered form and shift each column (last to first)
+    // by the number of new entries in the columns before it, then place the
+    // new entries at the end of the column
+
+    int oldSize = sprsColMtrx.size();
+    sprsColMtrx.setSize(oldSize + nNew);
+    sprsRowIndxMtrx.setSize(oldSize + nNew);
+    double[] val = sprsColMtrx.getArray();
+    int[]    idx = sprsRowIndxMtrx.getArray();
+    int[]    ptr = sprsColPtr.getArray();
+    for (int j = cols - 1; j >= 0; --j)
+    {
+      int strt = ptr[j];
+      int len  = ptr[j + 1] - strt;
+      int dst  = strt + cnt[j];
+      System.arraycopy(val, strt, val, dst, len);
+      System.arraycopy(idx, strt, idx, dst, len);
+      int n = cnt[j + 1] - cnt[j];
+      System.arraycopy(bVal, cnt[j], val, dst + len, n);
+      System.arraycopy(bRow, cnt[j], idx, dst + len, n);
+    }
+    for (int j = 0; j <= cols; ++j) ptr[j] += cnt[j];
+  }
+
+  /**
+   * Splits the n rows (or columns) described by the pointer vector ptr
+   * (ptr[i] is the first entry of row i and ptr[n] is the total entry count)
+   * into at most nTasks contiguous ranges of nearly equal cost, where the
+   * cost of rows [0, r) is ptr[r] + rowWght * r (rowWght * r if ptr is
+   * null). Each cut point is found by
+   * a binary search of the monotone cost prefix sum. Empty ranges, which
+   * occur when a single row is heavier than a task, are dropped.
+   * 
+   * @param ptr The row (or column) pointer vector (at least n+1 entries),
+   *            or null if all rows have equal cost.
+   * @param n The number of rows (or columns).
+   * @param nTasks The requested number of tasks.
+   * @param rowWght The cost of a row relative to a single entry.
+   * @return The task cut points. Task i covers rows [cut[i], cut[i+1]). The
+   *         first entry is 0 and the last is n.
+   */
+  static int[] balancedPartition(int[] ptr, int n, int nTasks, double rowWght)
+  {
+    double total = ((ptr == null) ? 0 : ptr[n]) + rowWght * n;
+    ArrayListInt cut = new ArrayListInt(nTasks + 1);
+    cut.add(0);
+    for (int t = 1; t < nTasks; ++t)
+    {
+      // find the smallest r with cost(r) >= t * total / nTasks
+
+      double trgt = total * t / nTasks;
+      int lo = cut.getLast(), hi = n;
+      while (lo < hi)
+      {
+        int mid = (lo + hi) >>> 1;
+        if (((ptr == null) ? 0 : ptr[mid]) + rowWght * mid < trgt)
+          lo = mid + 1;
+        else
+          hi = mid;
+      }
+      if ((lo > cut.getLast()) && (lo < n)) cut.add(lo);
+    }
+    if ((n > 0) || (cut.size() == 1)) cut.add(n);
+
+    int[] c = new int [cut.size()];
+    for (int i = 0; i < c.length; ++i) c[i] = cut.get(i);
+    return c;
+  }
+
+  /**
+   * Returns the accumulated aProd time (nanoseconds) spent by each task in
+   * the row ordered (A * v) step of the last concurrent solve. Comparing the
+   * entries exposes task imbalance.
+   * 
+   * @return The per task aProd times of the last concurrent solve, or null
+   *         if no concurrent solve has been performed.
+   */
+  public long[] getUTaskTimes()
+  {
+    return aUTaskTimes;
+  }
+
+  /**
+   * Returns the accumulated aProd time (nanoseconds) spent by each task in
+   * the column ordered (A' * u) step of the last concurrent solve. For the
+   * transpose-free solution these are the row scatter (tTask) times.
+   * 
+   * @return The per task aProd times of the last concurrent solve, or null
+   *         if no concurrent solve has been performed.
+   */
+  public long[] getVTaskTimes()
+  {
+    return aVTaskTimes;
+  }
+
+  /**
+   * Returns the fraction of the available thread time that was spent
+   * performing aProd work during the concurrent sweeps of the last solve
+   * (the total task time divided by the sweep wall clock time times the
+   * number of threads). A value well below 1 indicates that threads sat idle
+   * waiting for the slowest task of each sweep.
+   * 
+   * @return The aProd thread utilization of the last concurrent solve.
+   */
+  public double getAProdUtilization()
+  {
+    if (aAProdWallTime == 0) return 0.0;
+    return (double) aAProdTaskTime / aAProdWallTime /
+           aTaskRunner.getThreadCount();
+  }
+
+  /**
+   * Returns the task times stored in the input tasks.
+   * 
+   * @param tasks The tasks whose aProd times will be returned.
+   * @return The per task aProd times.
+   */
+  private static long[] getTaskTimes(SolveAProd[] tasks)
+  {
+    long[] t = new long [tasks.length];
+    for (int i = 0; i < tasks.length; ++i) t[i] = tasks[i].aUpdateTime;
+    return t;
+  }
+
+  /**
+   * Returns the task times stored in the input transpose-free tasks.
+   * 
+   * @param tasks The tasks whose aProd times will be returned.
+   * @return The per task aProd times.
+   */
+  private static long[] getTaskTimes(SolveATransProd[] tasks)
+  {
+    long[] t = new long [tasks.length];
+    for (int i = 0; i < tasks.length; ++i) t[i] = tasks[i].aUpdateTime;
+    return t;
+  }
+
   /**
    * Resets all large matrix/vector assignments to null to free memory.
    */
   private void resetLargeReferences()
   {
+    if (uTasks != null)
+    {
+      aUTaskTimes = getTaskTimes(uTasks);
+      aVTaskTimes = (tTasks == null) ? getTaskTimes(vTasks) :
+                                       getTaskTimes(tTasks);
+    }
+    tTasks   = null;
+    aRowCSM  = null;
+    aColCSM  = null;
+    aOp      = null;
+    aOpU     = null;
+    aOpV     = null;
+    aPartials.clear();
+    aPartialFree.clear();
     uTasks   = null;
     vTasks   = null;
     aU       = null;
     aV       = null;
+    aPrcndV  = null;
+    aPrcndW  = null;
 
     aSprsRow = null;
     aRowIndx = null;
@@ -2093,4 +3340,37 @@ public class LSQR
     aProcMult = tmc;    
     aNThreads = (int) (aNProcessors * aProcMult);
   }
+
+  /**
+   * Sets the partitioning used to build the concurrent aProd tasks.
+   * 
+   * @param tp The new task partitioning.
+   */
+  public static void setTaskPartition(TaskPartition tp)
+  {
+    aTaskPartition = tp;
+  }
+
+  /**
+   * Sets the number of tasks built per thread by the BALANCED task
+   * partition (over-decomposition). Values greater than one allow threads
+   * that finish early to claim additional work.
+   * 
+   * @param tm The new number of tasks per thread (at least 1).
+   */
+  public static void setTaskMultiplier(int tm)
+  {
+    aTaskMultiplier = Math.max(tm, 1);
+  }
+
+  /**
+   * Sets the cost of a row (or column) relative to a single sparse matrix
+   * entry used by the BALANCED task partition.
+   * 
+   * @param w The new row cost weight (at least 0).
+   */
+  public static void setRowCostWeight(double w)
+  {
+    aRowCostWeight = Math.max(w, 0.0);
+  }
 }
@@ -0,0 +1,943 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.matrix;
+
+import gov.sandia.gmp.util.containers.arraylist.ArrayListDouble;
+import gov.sandia.gmp.util.containers.arraylist.ArrayListInt;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import static java.lang.Math.abs;
+import static java.lang.Math.sqrt;
+
+/**
+ * Block LSQR solver for many right-hand sides that share one sparse matrix.
+ * The k recurrences of the standard LSQR algorithm (see LSQR) are advanced
+ * in lockstep. The u and v vectors of all k systems are stored as dense
+ * panels (u is rows x k and v is columns x k, interleaved so that the k
+ * values of a row, or column, are contiguous) which allows each iteration to
+ * perform a single sweep of the row-ordered sparse matrix (A * V) and a
+ * single sweep of the column-ordered sparse matrix (A' * U) for all k
+ * systems. Each matrix entry is loaded once per sweep and applied to k
+ * contiguous panel values, which converts the memory bound sparse
+ * matrix-vector product of LSQR into a compute bound sparse matrix - dense
+ * matrix product.
+ * 
+ * <p> The stopping conditions of each system are evaluated independently. A
+ * system that has converged (or reached the iteration limit) keeps its
+ * solution and its u, v panel columns are zeroed so that the remaining sweeps
+ * leave it unchanged. The solve ends when all systems have stopped.
+ * 
+ * <p> The scaling, norm, and product steps are fused into three passes per
+ * iteration: u = A * v - alfa * u with the partial norms of u, the
+ * normalization of u, and v = A' * u - beta * v with the partial norms of v.
+ * A fourth pass normalizes v and updates the x, w, and standard error panels.
+ * Each pass is executed concurrently over nonzero balanced row (or column)
+ * ranges (see LSQR.balancedPartition()) and the norm partial sums are
+ * reduced in task order, so results do not depend on thread scheduling.
+ * 
+ * <p> Memory required beyond the matrix is (rows + 4 * columns) * k * 8
+ * bytes for the u, v, w, x, and standard error panels. Each panel is a single
+ * double[] so max(rows, columns) * k may not exceed MAX_PANEL_SIZE. Larger
+ * problems must be solved in smaller groups of right-hand sides.
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class LSQRBlock
+{
+  /**
+   * Pass identifier: u = A * v + sclU * u, accumulating the norms of u.
+   */
+  private static final int PASS_AV       = 0;
+
+  /**
+   * Pass identifier: u = sclU * u.
+   */
+  private static final int PASS_SCALE_U  = 1;
+
+  /**
+   * Pass identifier: v = A' * u + sclV * v, accumulating the norms of v.
+   */
+  private static final int PASS_ATU      = 2;
+
+  /**
+   * Pass identifier: v = sclV * v, w = v.
+   */
+  private static final int PASS_INIT_W   = 3;
+
+  /**
+   * Pass identifier: v = sclV * v followed by the x, w, and standard error
+   * updates, accumulating ddnorm.
+   */
+  private static final int PASS_UPDATE_X = 4;
+
+  /**
+   * The largest panel (max(rows, columns) * k entries) that can be allocated
+   * as a single double[].
+   */
+  public static final long MAX_PANEL_SIZE = Integer.MAX_VALUE - 8;
+
+  /**
+   * The number of tasks built per thread for each pass.
+   */
+  private static final int TASK_MULTIPLIER = 4;
+
+  /**
+   * The number of threads used to perform each pass.
+   */
+  private int                  aNThreads  =
+                               Runtime.getRuntime().availableProcessors();
+
+  /**
+   * The task runner used to execute each pass.
+   */
+  private ConcurrentTaskRunner aTaskRunner = null;
+
+  /**
+   * The damping parameter.
+   */
+  private double               lsqrDamp   = 0.0;
+
+  /**
+   * The estimated relative error in the matrix A.
+   */
+  private double               lsqrATol   = 1.0e-6;
+
+  /**
+   * The estimated relative error in each right-hand side.
+   */
+  private double               lsqrBTol   = 1.0e-6;
+
+  /**
+   * The upper limit on cond(Abar).
+   */
+  private double               lsqrConLim = 1.0 / sqrt(LSQR.RELPR) / 10.0;
+
+  /**
+   * The iteration limit. If less than or equal to zero 4 * columns is used.
+   */
+  private int                  lsqrItnLim = 0;
+
+  /**
+   * The number of right-hand sides (panel width) of the current solve.
+   */
+  private int                  aK         = 0;
+
+  /**
+   * The row-ordered sparse matrix entries.
+   */
+  private double[]             aSprsRow   = null;
+
+  /**
+   * The column index of each row-ordered sparse matrix entry.
+   */
+  private int[]                aColIndx   = null;
+
+  /**
+   * The first row-ordered entry of each row (rows + 1 entries).
+   */
+  private int[]                aRowPtr    = null;
+
+  /**
+   * The column-ordered sparse matrix entries.
+   */
+  private double[]             aSprsCol   = null;
+
+  /**
+   * The row index of each column-ordered sparse matrix entry.
+   */
+  private int[]                aRowIndx   = null;
+
+  /**
+   * The first column-ordered entry of each column (columns + 1 entries).
+   */
+  private int[]                aColPtr    = null;
+
+  /**
+   * The u panel (rows x k, u[i * k + r]).
+   */
+  private double[]             aU         = null;
+
+  /**
+   * The v panel (columns x k, v[j * k + r]).
+   */
+  private double[]             aV         = null;
+
+  /**
+   * The w panel (columns x k).
+   */
+  private double[]             aW         = null;
+
+  /**
+   * The solution panel (columns x k).
+   */
+  private double[]             aX         = null;
+
+  /**
+   * The standard error panel (columns x k) before final scaling.
+   */
+  private double[]             aSE        = null;
+
+  /**
+   * The per system scale factor applied to u by the PASS_AV and
+   * PASS_SCALE_U passes.
+   */
+  private double[]             aSclU      = null;
+
+  /**
+   * The per system scale factor applied to v by the PASS_ATU, PASS_INIT_W,
+   * and PASS_UPDATE_X passes.
+   */
+  private double[]             aSclV      = null;
+
+  /**
+   * The per system x update coefficients of PASS_UPDATE_X.
+   */
+  private double[]             aT1, aT2, aT3Sq;
+
+  /**
+   * The per task partial sums (norms or ddnorm) of the current pass.
+   */
+  private double[][]           aPartial   = null;
+
+  /**
+   * The stopping condition of each system of the last solve.
+   */
+  private int[]                lsqrIStop  = null;
+
+  /**
+   * The iteration count of each system of the last solve.
+   */
+  private int[]                lsqrIter   = null;
+
+  /**
+   * The estimated residual norm of each system of the last solve.
+   */
+  private double[]             lsqrRNorm  = null;
+
+  /**
+   * The estimated Frobenius norm of Abar for each system of the last solve.
+   */
+  private double[]             lsqrANorm  = null;
+
+  /**
+   * The estimated condition of Abar for each system of the last solve.
+   */
+  private double[]             lsqrACond  = null;
+
+  /**
+   * The estimated norm of the solution of each system of the last solve.
+   */
+  private double[]             lsqrXNorm  = null;
+
+  /**
+   * The total number of lockstep iterations (sparse sweep pairs) performed
+   * by the last solve.
+   */
+  private int                  aSweeps    = 0;
+
+  /**
+   * Default constructor.
+   */
+  public LSQRBlock()
+  {
+  }
+
+  /**
+   * Sets the number of threads used to perform each pass.
+   * 
+   * @param nThreads The new thread count (at least 1).
+   */
+  public void setThreadCount(int nThreads)
+  {
+    aNThreads = Math.max(1, nThreads);
+  }
+
+  /**
+   * Sets the relative error of the matrix A.
+   * 
+   * @param atol The relative error of the matrix A.
+   */
+  public void aTol(double atol)
+  {
+    lsqrATol = atol;
+  }
+
+  /**
+   * Sets the relative error of each right-hand side.
+   * 
+   * @param btol The relative error of each right-hand side.
+   */
+  public void bTol(double btol)
+  {
+    lsqrBTol = btol;
+  }
+
+  /**
+   * Sets the upper limit on cond(Abar).
+   * 
+   * @param cl The condition limit.
+   */
+  public void conditionLimit(double cl)
+  {
+    lsqrConLim = cl;
+  }
+
+  /**
+   * Sets the maximum allowed iteration limit of each system.
+   * 
+   * @param il The maximum allowed iteration limit.
+   */
+  public void iterationLimit(int il)
+  {
+    lsqrItnLim = il;
+  }
+
+  /**
+   * Sets the damping factor.
+   * 
+   * @param damp The least-squares solution damping factor.
+   */
+  public void damp(double damp)
+  {
+    lsqrDamp = damp;
+  }
+
+  /**
+   * Returns the stopping condition of each system of the last solve. The
+   * values are those of LSQR.solve().
+   * 
+   * @return The stopping condition of each system.
+   */
+  public int[] stopConditions()
+  {
+    return lsqrIStop;
+  }
+
+  /**
+   * Returns the iteration count of each system of the last solve.
+   * 
+   * @return The iteration count of each system.
+   */
+  public int[] iterationCounts()
+  {
+    return lsqrIter;
+  }
+
+  /**
+   * Returns the estimated residual norm of each system of the last solve.
+   * 
+   * @return The estimated residual norm of each system.
+   */
+  public double[] rNorms()
+  {
+    return lsqrRNorm;
+  }
+
+  /**
+   * Returns the estimated Frobenius norm of Abar for each system of the last
+   * solve.
+   * 
+   * @return The estimated Frobenius norm of Abar for each system.
+   */
+  public double[] aNorms()
+  {
+    return lsqrANorm;
+  }
+
+  /**
+   * Returns the estimated condition of Abar for each system of the last
+   * solve.
+   * 
+   * @return The estimated condition of Abar for each system.
+   */
+  public double[] aConditions()
+  {
+    return lsqrACond;
+  }
+
+  /**
+   * Returns the estimated solution norm of each system of the last solve.
+   * 
+   * @return The estimated solution norm of each system.
+   */
+  public double[] xNorms()
+  {
+    return lsqrXNorm;
+  }
+
+  /**
+   * Returns the number of lockstep iterations performed by the last solve.
+   * Each performs one row-ordered and one column-ordered matrix sweep.
+   * 
+   * @return The number of lockstep iterations of the last solve.
+   */
+  public int sweepCount()
+  {
+    return aSweeps;
+  }
+
+  /**
+   * Solves the k least-squares problems A * x[r] = b[r] (r = 0, ..., k-1)
+   * in lockstep. The matrix is supplied in both row- and column-ordered
+   * compressed form, as for the concurrent LSQR.solve().
+   * 
+   * @param sprsRowMtrx The lhs row-ordered sparse input matrix.
+   * @param sprsColMtrx The lhs column-ordered sparse input matrix.
+   * @param sprsRowIndxMtrx The row index of each column-ordered entry.
+   * @param sprsColIndxMtrx The column index of each row-ordered entry.
+   * @param sprsRowPtr The first row-ordered entry of each row (rows + 1
+   *                   entries).
+   * @param sprsColPtr The first column-ordered entry of each column
+   *                   (columns + 1 entries).
+   * @param bRHS The k rhs vectors (each with rows entries).
+   * @param x The k solution vectors (each with columns entries). Output.
+   * @param se The k solution error vectors (each with columns entries).
+   *           Output.
+   * @return The stopping condition of each system.
+   * @throws IOException If the vector counts or sizes do not match the
+   *                     matrix, or the panel size exceeds MAX_PANEL_SIZE.
+   */
+  public int[] solve(ArrayListDouble sprsRowMtrx, ArrayListDouble sprsColMtrx,
+                     ArrayListInt sprsRowIndxMtrx,
+                     ArrayListInt sprsColIndxMtrx,
+                     ArrayListInt sprsRowPtr, ArrayListInt sprsColPtr,
+                     double[][] bRHS, double[][] x, double[][] se)
+         throws IOException
+  {
+    int nRows = sprsRowPtr.size() - 1;
+    int nCols = sprsColPtr.size() - 1;
+    if ((bRHS.length != x.length) || (bRHS.length != se.length))
+      throw new IOException("Error: RHS, solution, and solution error " +
+                            "vector counts differ (" + bRHS.length + ", " +
+                            x.length + ", " + se.length + ") ...");
+
+    // the panels are indexed as i * k + r in int arithmetic so their size
+    // must fit in a single array
+
+    long pnlSize = (long) Math.max(nRows, nCols) * bRHS.length;
+    if (pnlSize > MAX_PANEL_SIZE)
+      throw new IOException("Error: Panel size (" + pnlSize + " = " +
+                            Math.max(nRows, nCols) + " x " + bRHS.length +
+                            " systems) exceeds the maximum (" +
+                            MAX_PANEL_SIZE + ") ... solve the systems in " +
+                            "smaller groups ...");
+
+    for (int r = 0; r < bRHS.length; ++r)
+    {
+      if ((bRHS[r].length != nRows) || (x[r].length != nCols) ||
+          (se[r].length != nCols))
+        throw new IOException("Error: System " + r + " vector sizes (" +
+                              bRHS[r].length + ", " + x[r].length + ", " +
+                              se[r].length + ") do not match the matrix " +
+                              "size (" + nRows + " x " + nCols + ") ...");
+    }
+
+    aSprsRow = sprsRowMtrx.getArray();
+    aSprsCol = sprsColMtrx.getArray();
+    aRowIndx = sprsRowIndxMtrx.getArray();
+    aColIndx = sprsColIndxMtrx.getArray();
+    aRowPtr  = sprsRowPtr.getArray();
+    aColPtr  = sprsColPtr.getArray();
+    try
+    {
+      solve(nRows, nCols, bRHS, x, se);
+    }
+    finally
+    {
+      resetLargeReferences();
+    }
+    return lsqrIStop;
+  }
+
+  /**
+   * The block LSQR iteration.
+   * 
+   * @param nRows The number of matrix rows.
+   * @param nCols The number of matrix columns.
+   * @param bRHS The k rhs vectors.
+   * @param x The k solution vectors (output).
+   * @param se The k solution error vectors (output).
+   */
+  private void solve(int nRows, int nCols, double[][] bRHS, double[][] x,
+                     double[][] se)
+  {
+    int k = aK = bRHS.length;
+    int itnLim = (lsqrItnLim <= 0) ? 4 * nCols : lsqrItnLim;
+    double dampSq = lsqrDamp * lsqrDamp;
+    double cTol = (lsqrConLim > 0.0) ? 1.0 / lsqrConLim : 0.0;
+
+    // build the row and column task ranges and the runner
+
+    int nTasks = TASK_MULTIPLIER * aNThreads;
+    int[] rowCut = LSQR.balancedPartition(aRowPtr, nRows, nTasks, 1.0);
+    int[] colCut = LSQR.balancedPartition(aColPtr, nCols, nTasks, 1.0);
+    if ((aTaskRunner == null) || (aTaskRunner.getThreadCount() != aNThreads))
+      aTaskRunner = new ConcurrentTaskRunner(aNThreads);
+    aPartial = new double [Math.max(rowCut.length, colCut.length)][k];
+
+    // create the panels and per system state
+
+    aU = new double [nRows * k];
+    aV = new double [nCols * k];
+    aW = new double [nCols * k];
+    aX = new double [nCols * k];
+    aSE = new double [nCols * k];
+    aSclU = new double [k];
+    aSclV = new double [k];
+    aT1 = new double [k];
+    aT2 = new double [k];
+    aT3Sq = new double [k];
+
+    lsqrIStop = new int [k];
+    lsqrIter  = new int [k];
+    lsqrRNorm = new double [k];
+    lsqrANorm = new double [k];
+    lsqrACond = new double [k];
+    lsqrXNorm = new double [k];
+
+    double[] alfa   = new double [k];
+    double[] beta   = new double [k];
+    double[] rhoBar = new double [k];
+    double[] phiBar = new double [k];
+    double[] bnorm  = new double [k];
+    double[] bbnorm = new double [k];
+    double[] ddnorm = new double [k];
+    double[] xxnorm = new double [k];
+    double[] res2   = new double [k];
+    double[] sn2    = new double [k];
+    double[] cs2    = new double [k];
+    double[] z      = new double [k];
+    double[] seScl  = new double [k];
+    double[] arnorm = new double [k];
+    boolean[] actv  = new boolean [k];
+
+    // set up the first vectors u and v for the bidiagonalization.
+    // these satisfy  beta * u = b,  alfa * v = A' * U.
+
+    for (int r = 0; r < k; ++r)
+    {
+      double[] b = bRHS[r];
+      for (int i = 0; i < nRows; ++i) aU[i * k + r] = b[i];
+      cs2[r] = -1.0;
+      aSclU[r] = 1.0;
+    }
+    reduce(pass(PASS_SCALE_U, rowCut, true), rowCut.length - 1, beta);
+    for (int r = 0; r < k; ++r)
+    {
+      beta[r] = sqrt(beta[r]);
+      aSclU[r] = (beta[r] > 0.0) ? 1.0 / beta[r] : 1.0;
+      aSclV[r] = 0.0;
+    }
+    pass(PASS_SCALE_U, rowCut, false);
+    reduce(pass(PASS_ATU, colCut, true), colCut.length - 1, alfa);
+    for (int r = 0; r < k; ++r)
+    {
+      alfa[r] = (beta[r] > 0.0) ? sqrt(alfa[r]) : 0.0;
+      aSclV[r] = (alfa[r] > 0.0) ? 1.0 / alfa[r] : 1.0;
+    }
+    pass(PASS_INIT_W, colCut, false);
+
+    // finish initialization. Systems for which x = 0 is the exact solution
+    // are stopped immediately.
+
+    int nActv = 0;
+    for (int r = 0; r < k; ++r)
+    {
+      rhoBar[r] = alfa[r];
+      phiBar[r] = bnorm[r] = lsqrRNorm[r] = beta[r];
+      seScl[r] = 0.0;
+      if (alfa[r] * beta[r] == 0.0)
+        deactivate(r, nRows, nCols);
+      else
+      {
+        actv[r] = true;
+        ++nActv;
+      }
+    }
+
+    // ------------------------------------------------------------------
+    // Main iteration loop.
+    // ------------------------------------------------------------------
+
+    aSweeps = 0;
+    while (nActv > 0)
+    {
+      ++aSweeps;
+
+      // beta * u = A * v - alfa * u (stopped systems have u = v = 0)
+
+      for (int r = 0; r < k; ++r) aSclU[r] = actv[r] ? -alfa[r] : 0.0;
+      reduce(pass(PASS_AV, rowCut, true), rowCut.length - 1, aT1);
+      for (int r = 0; r < k; ++r)
+      {
+        if (actv[r])
+        {
+          beta[r] = sqrt(aT1[r]);
+          bbnorm[r] += alfa[r] * alfa[r] + beta[r] * beta[r] + dampSq;
+          aSclU[r] = (beta[r] > 0.0) ? 1.0 / beta[r] : 1.0;
+          aSclV[r] = (beta[r] > 0.0) ? -beta[r] : 1.0;
+        }
+        else
+          aSclU[r] = aSclV[r] = 0.0;
+      }
+
+      // alfa * v = A' * u - beta * v (if beta = 0 u is zero and v is left
+      // unchanged)
+
+      pass(PASS_SCALE_U, rowCut, false);
+      reduce(pass(PASS_ATU, colCut, true), colCut.length - 1, aT1);
+
+      // update the scalar recurrences of each active system
+
+      for (int r = 0; r < k; ++r)
+      {
+        if (!actv[r])
+        {
+          aSclV[r] = aT1[r] = aT2[r] = aT3Sq[r] = 0.0;
+          continue;
+        }
+        if (beta[r] > 0.0) alfa[r] = sqrt(aT1[r]);
+        aSclV[r] = ((beta[r] > 0.0) && (alfa[r] > 0.0)) ? 1.0 / alfa[r] : 1.0;
+
+        // Use a plane rotation to eliminate the damping parameter, then a
+        // plane rotation to eliminate the subdiagonal element (beta).
+
+        double rhBar2 = rhoBar[r] * rhoBar[r] + dampSq;
+        double rhBar1 = sqrt(rhBar2);
+        double cs1    = rhoBar[r] / rhBar1;
+        double sn1    = lsqrDamp / rhBar1;
+        double psi    = sn1 * phiBar[r];
+        phiBar[r] *= cs1;
+
+        double rho    =  sqrt(rhBar2 + beta[r] * beta[r]);
+        double cs     =  rhBar1 / rho;
+        double sn     =  beta[r] / rho;
+        double theta  =  sn * alfa[r];
+        rhoBar[r]     = -cs * alfa[r];
+        double phi    =  cs * phiBar[r];
+        phiBar[r]    *=  sn;
+        double tau    =  sn * phi;
+
+        aT1[r]   =  phi / rho;
+        aT2[r]   = -theta / rho;
+        aT3Sq[r] =  1.0 / (rho * rho);
+
+        // Use a plane rotation on the right to eliminate the super-diagonal
+        // element (theta) and estimate norm(x).
+
+        double delta  =  sn2[r] * rho;
+        double gamBar = -cs2[r] * rho;
+        double rhs    =  phi - delta * z[r];
+        double zBar   =  rhs / gamBar;
+        lsqrXNorm[r]  =  sqrt(xxnorm[r] + zBar * zBar);
+        double gamma  =  sqrt(gamBar * gamBar + theta * theta);
+        cs2[r]        =  gamBar / gamma;
+        sn2[r]        =  theta / gamma;
+        z[r]          =  rhs / gamma;
+        xxnorm[r]    +=  z[r] * z[r];
+
+        // save the residual terms for the convergence test (ddnorm is not
+        // known until the x update pass is complete)
+
+        res2[r] += psi * psi;
+        lsqrRNorm[r] = sqrt(phiBar[r] * phiBar[r] + res2[r]);
+        arnorm[r] = alfa[r] * abs(tau);
+      }
+
+      // normalize v and update x, w, and the standard error estimates
+
+      double[][] prt = pass(PASS_UPDATE_X, colCut, true);
+      for (int t = 0; t < colCut.length - 1; ++t)
+      {
+        double[] p = prt[t];
+        for (int r = 0; r < k; ++r) ddnorm[r] += p[r];
+      }
+
+      // Test each active system for convergence.
+
+      for (int r = 0; r < k; ++r)
+      {
+        if (!actv[r]) continue;
+        int itn = ++lsqrIter[r];
+        lsqrANorm[r] = sqrt(bbnorm[r]);
+        lsqrACond[r] = lsqrANorm[r] * sqrt(ddnorm[r]);
+        double cmptbl = lsqrRNorm[r] / bnorm[r];
+        double lsacc = 0.0;
+        if (lsqrRNorm[r] > 0.0)
+          lsacc = arnorm[r] / (lsqrANorm[r] * lsqrRNorm[r]);
+        double test3 = 1.0 / lsqrACond[r];
+        double t1 = cmptbl /
+                    (1.0 + lsqrANorm[r] * lsqrXNorm[r] / bnorm[r]);
+        double rTol = lsqrBTol +
+                      lsqrATol * lsqrANorm[r] * lsqrXNorm[r] / bnorm[r];
+
+        int istop = 0;
+        if (itn >= itnLim) istop = 7;
+        if (1.0 + test3 <= 1.0) istop = 6;
+        if (1.0 + lsacc <= 1.0) istop = 5;
+        if (1.0 + t1 <= 1.0) istop = 4;
+        if (test3 <= cTol) istop = 3;
+        if (lsacc <= lsqrATol) istop = 2;
+        if (cmptbl <= rTol) istop = 1;
+
+        if (istop != 0)
+        {
+          // stop this system: record the standard error scale and zero its
+          // u and v panel columns
+
+          lsqrIStop[r] = istop;
+          double t = 1.0;
+          if (nRows > nCols) t = nRows - nCols;
+          if (dampSq > 0.0) t = nRows;
+          seScl[r] = lsqrRNorm[r] / sqrt(t);
+          actv[r] = false;
+          --nActv;
+          deactivate(r, nRows, nCols);
+        }
+      }
+    }
+
+    // ------------------------------------------------------------------
+    // End of main iteration loop
+    // ------------------------------------------------------------------
+
+    // copy out the solution and the finished standard error estimates
+
+    for (int r = 0; r < k; ++r)
+    {
+      double[] xr = x[r], ser = se[r];
+      double t = seScl[r];
+      for (int j = 0; j < nCols; ++j)
+      {
+        xr[j]  = aX[j * k + r];
+        ser[j] = t * sqrt(aSE[j * k + r]);
+      }
+    }
+  }
+
+  /**
+   * Zeroes the u and v panel columns of system r so that subsequent sweeps
+   * leave it unchanged.
+   * 
+   * @param r The stopped system.
+   * @param nRows The number of matrix rows.
+   * @param nCols The number of matrix columns.
+   */
+  private void deactivate(int r, int nRows, int nCols)
+  {
+    for (int i = 0; i < nRows; ++i) aU[i * aK + r] = 0.0;
+    for (int j = 0; j < nCols; ++j) aV[j * aK + r] = 0.0;
+  }
+
+  /**
+   * Sums the first nTasks per task partial sums into sum (which is
+   * overwritten), in task order.
+   * 
+   * @param prt The per task partial sums.
+   * @param nTasks The number of tasks.
+   * @param sum The per system sums (output).
+   */
+  private void reduce(double[][] prt, int nTasks, double[] sum)
+  {
+    for (int r = 0; r < aK; ++r) sum[r] = 0.0;
+    for (int t = 0; t < nTasks; ++t)
+    {
+      double[] p = prt[t];
+      for (int r = 0; r < aK; ++r) sum[r] += p[r];
+    }
+  }
+
+  /**
+   * Executes the requested pass concurrently over the task ranges defined
+   * by cut.
+   * 
+   * @param pass The pass identifier.
+   * @param cut The task range cut points.
+   * @param norm If true the norm of the u panel is accumulated by a
+   *             PASS_SCALE_U pass (before scaling). Other passes always
+   *             accumulate their partial sums.
+   * @return The per task partial sums.
+   */
+  private double[][] pass(final int pass, int[] cut, final boolean norm)
+  {
+    Callable<?>[] tasks = new Callable<?> [cut.length - 1];
+    for (int t = 0; t < tasks.length; ++t)
+    {
+      final int id = t, strt = cut[t], stop = cut[t + 1];
+      tasks[t] = new Callable<Object>()
+      {
+        @Override
+        public Object call()
+        {
+          double[] p = aPartial[id];
+          for (int r = 0; r < aK; ++r) p[r] = 0.0;
+          switch (pass)
+          {
+            case PASS_AV:
+              sweep(aRowPtr, aSprsRow, aColIndx, aU, aV, aSclU, p, strt,
+                    stop);
+              break;
+            case PASS_ATU:
+              sweep(aColPtr, aSprsCol, aRowIndx, aV, aU, aSclV, p, strt,
+                    stop);
+              break;
+            case PASS_SCALE_U:
+              scale(aU, aSclU, norm ? p : null, strt, stop);
+              break;
+            case PASS_INIT_W:
+              scale(aV, aSclV, null, strt, stop);
+              System.arraycopy(aV, strt * aK, aW, strt * aK,
+                               (stop - strt) * aK);
+              break;
+            case PASS_UPDATE_X:
+              updateX(p, strt, stop);
+              break;
+          }
+          return null;
+        }
+      };
+    }
+    aTaskRunner.invokeAll(tasks);
+    return aPartial;
+  }
+
+  /**
+   * Performs y[i] = scl * y[i] + sum(A[i][j] * x[j]) for the panel rows
+   * i = strt, ..., stop-1 of the compressed matrix (ptr, val, indx), and
+   * accumulates the squared result of each system into prt. Each matrix
+   * entry is applied to the k contiguous values of panel row x[j].
+   * 
+   * @param ptr The compressed matrix pointer vector.
+   * @param val The compressed matrix entries.
+   * @param indx The compressed matrix entry indices.
+   * @param y The result panel.
+   * @param x The multiplied panel.
+   * @param scl The per system scale applied to y.
+   * @param prt The per system squared norm accumulators.
+   * @param strt The first row.
+   * @param stop One past the last row.
+   */
+  private void sweep(int[] ptr, double[] val, int[] indx, double[] y,
+                     double[] x, double[] scl, double[] prt, int strt,
+                     int stop)
+  {
+    int k = aK;
+    double[] acc = new double [k];
+    for (int i = strt; i < stop; ++i)
+    {
+      int yo = i * k;
+      for (int r = 0; r < k; ++r) acc[r] = scl[r] * y[yo + r];
+      for (int e = ptr[i]; e < ptr[i + 1]; ++e)
+      {
+        double a = val[e];
+        int xo = indx[e] * k;
+        for (int r = 0; r < k; ++r) acc[r] += a * x[xo + r];
+      }
+      for (int r = 0; r < k; ++r)
+      {
+        double v = acc[r];
+        y[yo + r] = v;
+        prt[r] += v * v;
+      }
+    }
+  }
+
+  /**
+   * Scales panel rows strt, ..., stop-1 by the per system scale scl. If prt
+   * is not null the squared values (before scaling) are accumulated into it.
+   * 
+   * @param y The panel.
+   * @param scl The per system scale.
+   * @param prt The per system squared norm accumulators, or null.
+   * @param strt The first row.
+   * @param stop One past the last row.
+   */
+  private void scale(double[] y, double[] scl, double[] prt, int strt,
+                     int stop)
+  {
+    int k = aK;
+    for (int i = strt; i < stop; ++i)
+    {
+      int yo = i * k;
+      for (int r = 0; r < k; ++r)
+      {
+        double v = y[yo + r];
+        if (prt != null) prt[r] += v * v;
+        y[yo + r] = scl[r] * v;
+      }
+    }
+  }
+
+  /**
+   * Normalizes the v panel and updates the x, w, and standard error panels
+   * for columns strt, ..., stop-1, accumulating the ddnorm increment of each
+   * system into prt.
+   * 
+   * @param prt The per system ddnorm accumulators.
+   * @param strt The first column.
+   * @param stop One past the last column.
+   */
+  private void updateX(double[] prt, int strt, int stop)
+  {
+    int k = aK;
+    for (int j = strt; j < stop; ++j)
+    {
+      int o = j * k;
+      for (int r = 0; r < k; ++r)
+      {
+        double v = aSclV[r] * aV[o + r];
+        aV[o + r] = v;
+        double t = aW[o + r];
+        aX[o + r] += aT1[r] * t;
+        aW[o + r]  = aT2[r] * t + v;
+        t *= aT3Sq[r] * t;
+        aSE[o + r] += t;
+        prt[r] += t;
+      }
+    }
+  }
+
+  /**
+   * Releases the matrix and panel references held by the last solve.
+   */
+  private void resetLargeReferences()
+  {
+    aSprsRow = aSprsCol = null;
+    aRowIndx = aColIndx = aRowPtr = aColPtr = null;
+    aU = aV = aW = aX = aSE = null;
+    aPartial = null;
+  }
+}
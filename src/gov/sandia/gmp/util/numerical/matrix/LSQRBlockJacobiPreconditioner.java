@@ -0,0 +1,313 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.matrix;
+
+import gov.sandia.gmp.util.containers.arraylist.ArrayListDouble;
+import gov.sandia.gmp.util.containers.arraylist.ArrayListInt;
+
+import static java.lang.Math.sqrt;
+
+/**
+ * Block-Jacobi LSQR preconditioner. The columns are divided into contiguous
+ * blocks (for example one block per model layer) and, for each block b, the
+ * diagonal block G_b = A_b' * A_b of the normal matrix is factored as
+ * G_b = L_b * L_b'. The preconditioner is M = blockdiag(L_b'), which makes
+ * the columns of each block of A * inv(M) orthonormal. The diagonal
+ * preconditioner is the special case of blocks with a single column.
+ * 
+ * <p> If the incomplete option is selected each block is factored with a
+ * zero fill incomplete Cholesky decomposition (IC(0)) that keeps only the
+ * nonzero pattern of G_b. This is cheaper to apply when G_b is sparse (for
+ * example when the columns of a layer are only coupled to their neighbors)
+ * and it is often nearly as effective.
+ * 
+ * <p> If a factorization breaks down (a pivot that is not sufficiently
+ * positive, which can happen for IC(0) or for rank deficient blocks) the
+ * block is refactored with its diagonal increased by a growing relative
+ * shift until the factorization succeeds. Empty columns are left unscaled.
+ * 
+ * <p> Each block is held as a dense packed lower triangle, so the blocks
+ * must be small (a few thousand columns at most).
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class LSQRBlockJacobiPreconditioner implements LSQRPreconditioner
+{
+  /**
+   * The relative pivot size below which a factorization is considered to
+   * have broken down.
+   */
+  private static final double PIVOT_TOL = 1.0e-10;
+
+  /**
+   * The largest supported block size (columns).
+   */
+  private static final int    MAX_BLOCK = 46000;
+
+  /**
+   * The first column of each block followed by the number of columns.
+   */
+  private int[]      aBlockPtr = null;
+
+  /**
+   * The packed lower triangular factor L_b of each block. Row j of block b
+   * starts at index j * (j + 1) / 2.
+   */
+  private double[][] aFactor   = null;
+
+  /**
+   * The relative diagonal shift that was required to factor each block
+   * (0 if none was needed).
+   */
+  private double[]   aShift    = null;
+
+  /**
+   * Builds the preconditioner from a row-ordered sparse matrix.
+   * 
+   * @param sprsRowMtrx The row-ordered sparse matrix entries.
+   * @param sprsColIndx The column index of each entry.
+   * @param sprsRowPtr The entry offset start of each row (the number of rows
+   *                   + 1 entries).
+   * @param blockPtr The first column of each block followed by the number of
+   *                 columns (the number of blocks + 1 entries, starting at
+   *                 0 and increasing).
+   * @param incomplete If true each block is factored with IC(0). Otherwise
+   *                   the complete Cholesky factor is used.
+   */
+  public LSQRBlockJacobiPreconditioner(ArrayListDouble sprsRowMtrx,
+                                       ArrayListInt sprsColIndx,
+                                       ArrayListInt sprsRowPtr,
+                                       int[] blockPtr, boolean incomplete)
+  {
+    int nBlocks = blockPtr.length - 1;
+    int cols    = blockPtr[nBlocks];
+    if ((nBlocks < 1) || (blockPtr[0] != 0))
+      throw new IllegalArgumentException("Error: The block pointer must " +
+                                         "start at 0 and contain at least " +
+                                         "one block ...");
+
+    // find the block and block relative column of each column
+
+    int[] blk = new int [cols];
+    int[] loc = new int [cols];
+    aBlockPtr = blockPtr.clone();
+    aFactor   = new double [nBlocks][];
+    aShift    = new double [nBlocks];
+    for (int b = 0; b < nBlocks; ++b)
+    {
+      int n = blockPtr[b+1] - blockPtr[b];
+      if ((n < 0) || (n > MAX_BLOCK))
+        throw new IllegalArgumentException("Error: Block " + b + " size (" +
+                                           n + ") must be in [0, " +
+                                           MAX_BLOCK + "] ...");
+      aFactor[b] = new double [n * (n + 1) / 2];
+      for (int j = blockPtr[b]; j < blockPtr[b+1]; ++j)
+      {
+        blk[j] = b;
+        loc[j] = j - blockPtr[b];
+      }
+    }
+
+    // accumulate G_b = A_b' * A_b (into aFactor) one row at a time ... a
+    // pair of entries in the same column of a row contributes twice
+
+    double[] a    = sprsRowMtrx.getArray();
+    int[]    indx = sprsColIndx.getArray();
+    int[]    ptr  = sprsRowPtr.getArray();
+    for (int r = 0; r < sprsRowPtr.size() - 1; ++r)
+    {
+      for (int e1 = ptr[r]; e1 < ptr[r+1]; ++e1)
+      {
+        int b = blk[indx[e1]];
+        int j = loc[indx[e1]];
+        double[] g = aFactor[b];
+        for (int e2 = ptr[r]; e2 <= e1; ++e2)
+        {
+          if (blk[indx[e2]] != b) continue;
+
+          int k = loc[indx[e2]];
+          double p = a[e1] * a[e2];
+          if (j > k)
+            g[j * (j + 1) / 2 + k] += p;
+          else if (j < k)
+            g[k * (k + 1) / 2 + j] += p;
+          else
+            g[j * (j + 1) / 2 + j] += (e1 == e2) ? p : 2.0 * p;
+        }
+      }
+    }
+
+    // factor each block, shifting the diagonal if required
+
+    for (int b = 0; b < nBlocks; ++b)
+    {
+      double[] g = aFactor[b];
+      int n = blockPtr[b+1] - blockPtr[b];
+      double[] l = new double [g.length];
+      double shift = 0.0;
+      while (!factor(g, l, n, incomplete, shift))
+        shift = (shift == 0.0) ? 1.0e-3 : 10.0 * shift;
+      aFactor[b] = l;
+      aShift[b]  = shift;
+    }
+  }
+
+  /**
+   * Factors the packed lower triangle g (with its diagonal scaled by 1 +
+   * shift) into the packed lower triangular factor l.
+   * 
+   * @param g The packed lower triangle of G_b.
+   * @param l The packed lower triangular factor (output).
+   * @param n The block size.
+   * @param incomplete If true entries of l outside the nonzero pattern of g
+   *                   are dropped (IC(0)).
+   * @param shift The relative diagonal shift.
+   * @return False if the factorization broke down.
+   */
+  private static boolean factor(double[] g, double[] l, int n,
+                                boolean incomplete, double shift)
+  {
+    for (int j = 0; j < n; ++j)
+    {
+      int rj = j * (j + 1) / 2;
+      double gjj = g[rj + j];
+      if (gjj == 0.0)
+      {
+        // empty column ... leave it unscaled (all its couplings are zero)
+
+        for (int k = 0; k < j; ++k) l[rj + k] = 0.0;
+        l[rj + j] = 1.0;
+        continue;
+      }
+
+      double d = gjj * (1.0 + shift);
+      for (int k = 0; k < j; ++k)
+      {
+        double gjk = g[rj + k];
+        if (incomplete && (gjk == 0.0))
+        {
+          l[rj + k] = 0.0;
+          continue;
+        }
+
+        int rk = k * (k + 1) / 2;
+        double s = gjk;
+        for (int i = 0; i < k; ++i) s -= l[rk + i] * l[rj + i];
+        s /= l[rk + k];
+        l[rj + k] = s;
+        d -= s * s;
+      }
+
+      if (d <= PIVOT_TOL * gjj) return false;
+      l[rj + j] = sqrt(d);
+    }
+
+    return true;
+  }
+
+  /**
+   * Returns the number of blocks.
+   * 
+   * @return The number of blocks.
+   */
+  public int getBlockCount()
+  {
+    return aFactor.length;
+  }
+
+  /**
+   * Returns the relative diagonal shift that was required to factor block b
+   * (0 if the factorization succeeded without one).
+   * 
+   * @param b The block index.
+   * @return The relative diagonal shift of block b.
+   */
+  public double getShift(int b)
+  {
+    return aShift[b];
+  }
+
+  @Override
+  public int getColumnCount()
+  {
+    return aBlockPtr[aBlockPtr.length - 1];
+  }
+
+  /**
+   * Replaces x with inv(L_b') * x for each block (back substitution).
+   * 
+   * @param x The vector to be transformed in place.
+   */
+  @Override
+  public void solve(double[] x)
+  {
+    for (int b = 0; b < aFactor.length; ++b)
+    {
+      double[] l = aFactor[b];
+      int off = aBlockPtr[b];
+      for (int j = aBlockPtr[b+1] - off - 1; j >= 0; --j)
+      {
+        int rj = j * (j + 1) / 2;
+        double xj = x[off + j] / l[rj + j];
+        x[off + j] = xj;
+        if (xj != 0.0)
+          for (int k = 0; k < j; ++k) x[off + k] -= l[rj + k] * xj;
+      }
+    }
+  }
+
+  /**
+   * Replaces x with inv(L_b) * x for each block (forward substitution).
+   * 
+   * @param x The vector to be transformed in place.
+   */
+  @Override
+  public void solveTranspose(double[] x)
+  {
+    for (int b = 0; b < aFactor.length; ++b)
+    {
+      double[] l = aFactor[b];
+      int off = aBlockPtr[b];
+      int n   = aBlockPtr[b+1] - off;
+      for (int j = 0; j < n; ++j)
+      {
+        int rj = j * (j + 1) / 2;
+        double s = x[off + j];
+        for (int k = 0; k < j; ++k) s -= l[rj + k] * x[off + k];
+        x[off + j] = s / l[rj + j];
+      }
+    }
+  }
+}
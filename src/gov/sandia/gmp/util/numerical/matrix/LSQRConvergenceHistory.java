@@ -0,0 +1,221 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.matrix;
+
+import gov.sandia.gmp.util.containers.arraylist.ArrayListDouble;
+import gov.sandia.gmp.util.containers.arraylist.ArrayListLong;
+
+import static gov.sandia.gmp.util.globals.Globals.NL;
+
+/**
+ * Per-iteration convergence telemetry of an LSQR solve (see
+ * LSQR.setConvergenceHistory(...)). For each iteration the estimates of
+ * norm(rbar), norm(Abar' * rbar), norm(Abar), cond(Abar), norm(x), and the
+ * elapsed time since the start of the solve are recorded. When a
+ * preconditioner is used Abar is the preconditioned operator and norm(x) is
+ * the norm of the preconditioned unknowns y = M * x.
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class LSQRConvergenceHistory
+{
+  /**
+   * The residual norm estimate of each iteration.
+   */
+  private ArrayListDouble aRNorm  = new ArrayListDouble();
+
+  /**
+   * The norm(Abar' * rbar) estimate of each iteration.
+   */
+  private ArrayListDouble aARNorm = new ArrayListDouble();
+
+  /**
+   * The norm(Abar) estimate of each iteration.
+   */
+  private ArrayListDouble aANorm  = new ArrayListDouble();
+
+  /**
+   * The cond(Abar) estimate of each iteration.
+   */
+  private ArrayListDouble aACond  = new ArrayListDouble();
+
+  /**
+   * The solution norm estimate of each iteration.
+   */
+  private ArrayListDouble aXNorm  = new ArrayListDouble();
+
+  /**
+   * The elapsed time (nanoseconds) at the end of each iteration.
+   */
+  private ArrayListLong   aTime   = new ArrayListLong();
+
+  /**
+   * Default constructor.
+   */
+  public LSQRConvergenceHistory()
+  {
+  }
+
+  /**
+   * Removes all recorded iterations.
+   */
+  public void clear()
+  {
+    aRNorm.clear();
+    aARNorm.clear();
+    aANorm.clear();
+    aACond.clear();
+    aXNorm.clear();
+    aTime.clear();
+  }
+
+  /**
+   * Records the next iteration.
+   * 
+   * @param rNorm The residual norm estimate.
+   * @param arNorm The norm(Abar' * rbar) estimate.
+   * @param aNorm The norm(Abar) estimate.
+   * @param aCond The cond(Abar) estimate.
+   * @param xNorm The solution norm estimate.
+   * @param time The elapsed time (nanoseconds).
+   */
+  public void add(double rNorm, double arNorm, double aNorm, double aCond,
+                  double xNorm, long time)
+  {
+    aRNorm.add(rNorm);
+    aARNorm.add(arNorm);
+    aANorm.add(aNorm);
+    aACond.add(aCond);
+    aXNorm.add(xNorm);
+    aTime.add(time);
+  }
+
+  /**
+   * Returns the number of recorded iterations.
+   * 
+   * @return The number of recorded iterations.
+   */
+  public int size()
+  {
+    return aRNorm.size();
+  }
+
+  /**
+   * Returns the residual norm estimate of iteration i (0 based).
+   * 
+   * @param i The iteration index.
+   * @return The residual norm estimate.
+   */
+  public double getRNorm(int i)
+  {
+    return aRNorm.get(i);
+  }
+
+  /**
+   * Returns the norm(Abar' * rbar) estimate of iteration i (0 based).
+   * 
+   * @param i The iteration index.
+   * @return The norm(Abar' * rbar) estimate.
+   */
+  public double getARNorm(int i)
+  {
+    return aARNorm.get(i);
+  }
+
+  /**
+   * Returns the norm(Abar) estimate of iteration i (0 based).
+   * 
+   * @param i The iteration index.
+   * @return The norm(Abar) estimate.
+   */
+  public double getANorm(int i)
+  {
+    return aANorm.get(i);
+  }
+
+  /**
+   * Returns the cond(Abar) estimate of iteration i (0 based).
+   * 
+   * @param i The iteration index.
+   * @return The cond(Abar) estimate.
+   */
+  public double getACond(int i)
+  {
+    return aACond.get(i);
+  }
+
+  /**
+   * Returns the solution norm estimate of iteration i (0 based).
+   * 
+   * @param i The iteration index.
+   * @return The solution norm estimate.
+   */
+  public double getXNorm(int i)
+  {
+    return aXNorm.get(i);
+  }
+
+  /**
+   * Returns the elapsed time (nanoseconds) at the end of iteration i
+   * (0 based).
+   * 
+   * @param i The iteration index.
+   * @return The elapsed time (nanoseconds).
+   */
+  public long getTime(int i)
+  {
+    return aTime.get(i);
+  }
+
+  /**
+   * Returns the history as a table with one line per iteration.
+   * 
+   * @return The history as a table.
+   */
+  @Override
+  public String toString()
+  {
+    StringBuilder s = new StringBuilder();
+    s.append(String.format("%6s  %14s  %14s  %10s  %10s  %14s  %10s",
+                           "Itn", "norm(r)", "norm(A'r)", "norm(A)",
+                           "cond(A)", "norm(x)", "time(s)")).append(NL);
+    for (int i = 0; i < size(); ++i)
+      s.append(String.format("%6d  %14.7e  %14.7e  %10.3e  %10.3e  %14.7e" +
+                             "  %10.3f", i + 1, getRNorm(i), getARNorm(i),
+                             getANorm(i), getACond(i), getXNorm(i),
+                             1.0e-9 * getTime(i))).append(NL);
+    return s.toString();
+  }
+}
@@ -42,10 +42,13 @@ import gov.sandia.gmp.util.filebuffer.FileOutputBuffer;
 import gov.sandia.gmp.util.globals.Globals;
 import gov.sandia.gmp.util.logmanager.ScreenWriterOutput;
 import gov.sandia.gmp.util.numerical.doubledouble.DoubleDouble;
+import gov.sandia.gmp.util.numerical.doubledouble.DoubleDoubleKernels;
 
 import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedList;
@@ -123,6 +126,13 @@ import static java.lang.Math.sqrt;
 * fashion as the parallel concurrency setting, to perform any part of the
 * calculation using DoubleDouble precision.
 * 
+* <p> The PrecisionTier setting selects how the extended precision parts are
+* evaluated. DOUBLE_DOUBLE (the default) carries full DoubleDouble vectors.
+* COMPENSATED keeps the vectors in double but evaluates the aProd sums and
+* norms with compensated accumulation, which is nearly as accurate for the long
+* sums and much cheaper. The inner DoubleDouble kernels use a hardware fused
+* multiply-add when the JVM provides one (see DoubleDoubleKernels).
+* 
 * <p> The default parallel and DoubleDouble calculation settings are
 *     aUseParallel     = SolveType.NORM_SCALE_APROD;
 *     aUseDoubleDouble = SolveType.NORM_SCALE;
@@ -519,6 +529,21 @@ public class LSQRDD implements Serializable
     public abstract boolean isNorm();
   }
 
+  /**
+   * The precision used for the components selected by aUseDoubleDouble.
+   * DOUBLE_DOUBLE carries the u and v vectors in DoubleDouble (hi,lo) form.
+   * COMPENSATED carries plain double vectors (the lo parts are zero) but
+   * evaluates the aProd sums and the norms with compensated accumulation
+   * (twice working precision, rounded to double), and scales in double. It
+   * recovers most of the benefit of DoubleDouble for the long sums at a
+   * small fraction of the cost.
+   */
+  public enum PrecisionTier
+  {
+    DOUBLE_DOUBLE,
+    COMPENSATED
+  }
+
   //private HashMapIntegerKey<Statistic> ddStat = new HashMapIntegerKey<Statistic>(8);
 
   /**
@@ -539,6 +564,11 @@ public class LSQRDD implements Serializable
    */
   private SolveType aUseDoubleDouble = SolveType.NORM_SCALE;
 
+  /**
+   * The precision used for the components selected by aUseDoubleDouble.
+   */
+  private PrecisionTier aPrecisionTier = PrecisionTier.DOUBLE_DOUBLE;
+
   /**
    * The row-ordered sparse matrix.
    */
@@ -549,6 +579,18 @@ public class LSQRDD implements Serializable
    */
   private ArrayList<SparseMatrixVector> aColSprs = null;
 
+  /**
+   * The contiguous (flat) row-ordered sparse matrix. If not null it is used
+   * in place of aRowSprs (which is then null).
+   */
+  private SparseMatrixVectorArrayFixed  aRowFixed = null;
+
+  /**
+   * The contiguous (flat) column-ordered sparse matrix. If not null it is
+   * used in place of aColSprs (which is then null).
+   */
+  private SparseMatrixVectorArrayFixed  aColFixed = null;
+
   /**
    * The RHS vector which must have the same number of entries as aRowSprs.
    * This vector is unchanged after solution.
@@ -753,6 +795,38 @@ public class LSQRDD implements Serializable
    */
   LinkedList<String>         aEndOfOutTable    = null;
 
+  /**
+   * The iteration checkpoint file name (null if no checkpoints are written).
+   */
+  private String             aChkPntFile       = null;
+
+  /**
+   * The number of iterations between checkpoints (0 = not iteration based).
+   */
+  private int                aChkPntIters      = 0;
+
+  /**
+   * The time (seconds) between checkpoints (0 = not time based).
+   */
+  private double             aChkPntSecs       = 0.0;
+
+  /**
+   * The checkpoint file from which the next solve will resume (null if the
+   * next solve starts from the beginning).
+   */
+  private String             aResumeFile       = null;
+
+  /**
+   * The initial solution (warm start) of subsequent solves, or null if they
+   * start from x = 0.
+   */
+  private double[]           aX0               = null;
+
+  /**
+   * The checkpoint file format identifier.
+   */
+  private static final String CHKPNT_ID        = "LSQRDDCheckpoint";
+
   /**
    * Default constructor.
    */
@@ -780,6 +854,139 @@ public class LSQRDD implements Serializable
     aUseDoubleDouble = pm;
   }
 
+  /**
+   * Set the precision tier used for the components selected by the
+   * precision mode.
+   * 
+   * @param pt The new precision tier.
+   */
+  public void precisionTier(PrecisionTier pt)
+  {
+    aPrecisionTier = pt;
+  }
+
+  /**
+   * Returns the precision tier.
+   * 
+   * @return The precision tier.
+   */
+  public PrecisionTier precisionTier()
+  {
+    return aPrecisionTier;
+  }
+
+  /**
+   * Returns true if aProd is evaluated in DoubleDouble precision.
+   * 
+   * @return True if aProd is evaluated in DoubleDouble precision.
+   */
+  private boolean isDDAProd()
+  {
+    return aUseDoubleDouble.isAProd() &&
+           (aPrecisionTier == PrecisionTier.DOUBLE_DOUBLE);
+  }
+
+  /**
+   * Returns true if scaling is performed in DoubleDouble precision.
+   * 
+   * @return True if scaling is performed in DoubleDouble precision.
+   */
+  private boolean isDDScale()
+  {
+    return aUseDoubleDouble.isScale() &&
+           (aPrecisionTier == PrecisionTier.DOUBLE_DOUBLE);
+  }
+
+  /**
+   * Returns true if norms are evaluated in DoubleDouble precision.
+   * 
+   * @return True if norms are evaluated in DoubleDouble precision.
+   */
+  private boolean isDDNorm()
+  {
+    return aUseDoubleDouble.isNorm() &&
+           (aPrecisionTier == PrecisionTier.DOUBLE_DOUBLE);
+  }
+
+  /**
+   * Returns true if aProd is evaluated with compensated accumulation.
+   * 
+   * @return True if aProd is evaluated with compensated accumulation.
+   */
+  private boolean isCompAProd()
+  {
+    return aUseDoubleDouble.isAProd() &&
+           (aPrecisionTier == PrecisionTier.COMPENSATED);
+  }
+
+  /**
+   * Returns true if norms are evaluated with compensated accumulation.
+   * 
+   * @return True if norms are evaluated with compensated accumulation.
+   */
+  private boolean isCompNorm()
+  {
+    return aUseDoubleDouble.isNorm() &&
+           (aPrecisionTier == PrecisionTier.COMPENSATED);
+  }
+
+  /**
+   * Turns iteration checkpointing on (or off if chkPntFile is null). During
+   * each solve the complete Golub-Kahan bidiagonalization state (u(hi,lo),
+   * v(hi,lo), w, x, the error estimates, and all carried scalars and norms)
+   * is written to chkPntFile after every iters iterations or secs seconds,
+   * whichever comes first. Each checkpoint is written to a temporary file
+   * that is then renamed over chkPntFile so that a preempted run always
+   * leaves a complete checkpoint. See resume(String).
+   * 
+   * @param chkPntFile The checkpoint file name, or null to turn checkpointing
+   *                   off.
+   * @param iters The number of iterations between checkpoints (0 = not
+   *              iteration based).
+   * @param secs The time (seconds) between checkpoints (0 = not time based).
+   */
+  public void setCheckpoint(String chkPntFile, int iters, double secs)
+  {
+    aChkPntFile  = chkPntFile;
+    aChkPntIters = iters;
+    aChkPntSecs  = secs;
+  }
+
+  /**
+   * Arms a resume from the checkpoint file written by a previous solve (see
+   * setCheckpoint(...)). The next solve(...) or resolve() call, which must be
+   * given the same matrix and rhs as the checkpointed solve, continues the
+   * iterations from the checkpointed state rather than from the beginning.
+   * With the same thread count the resumed solve reproduces the
+   * uninterrupted solve bit for bit.
+   * 
+   * @param chkPntFile The checkpoint file to resume from.
+   * @throws IOException
+   */
+  public void resume(String chkPntFile) throws IOException
+  {
+    if (!(new File(chkPntFile)).exists())
+      throw new IOException("Error: Checkpoint file \"" + chkPntFile +
+                            "\" does not exist ...");
+    aResumeFile = chkPntFile;
+  }
+
+  /**
+   * Sets the initial solution x0 of subsequent solves (null to start from
+   * x = 0). LSQR then solves for the correction dx against the residual
+   * r0 = b - A * x0 (evaluated with the aProd precision setting) and
+   * returns x = x0 + dx. The damping, the standard error estimate, and the
+   * norm and condition estimates apply to the correction. The input is
+   * copied, so the solution vector of the previous solve can be passed
+   * directly.
+   * 
+   * @param x0 The initial solution, or null.
+   */
+  public void setInitialSolution(double[] x0)
+  {
+    aX0 = (x0 == null) ? null : x0.clone();
+  }
+
   /**
    * Returns the ScreenWriterOutput object so that its properties can
    * be set.
@@ -1069,6 +1276,7 @@ public class LSQRDD implements Serializable
 
     aRowSprs = rowSprs;
     aColSprs = colSprs;
+    aRowFixed = aColFixed = null;
     aX       = x;
     aSE      = se;
     aRHS     = bRHS;
@@ -1078,6 +1286,96 @@ public class LSQRDD implements Serializable
     return resolve();
   }
 
+  /**
+   * The public interface to perform the LSQR solution using the contiguous
+   * (flat) row start / index / value sparse matrix form. This avoids the per
+   * row object and array overhead of the SparseMatrixVector list form and
+   * lets the aProd sweep stream through memory rather than follow a pointer
+   * per row. See flattenAndClearSparseMatrix() to convert an already
+   * assigned list form.
+   *  
+   * @param rowSprs The input row oriented sparse matrix. The number of rows
+   *                is the number of rows in the solution.
+   * @param colSprs The input column oriented sparse matrix. The number of
+   *                rows is the number of columns in the solution.
+   * @param bRHS The RHS input matrix. Must have the same number of entries as
+   *             rowSprs has rows.
+   * @param x The output solution vector.
+   * @param se The output solution error vector.
+   * 
+   * @return The LSQR stopping criteria.
+   * 
+   * @throws IOException
+   */
+  public int solve(SparseMatrixVectorArrayFixed rowSprs,
+                   SparseMatrixVectorArrayFixed colSprs,
+                   ArrayListDouble bRHS, double[] x, double[] se)
+         throws IOException
+  {
+    // assign inputs
+
+    aRowSprs  = aColSprs = null;
+    aRowFixed = rowSprs;
+    aColFixed = colSprs;
+    aX        = x;
+    aSE       = se;
+    aRHS      = bRHS;
+
+    // calculate solution
+
+    return resolve();
+  }
+
+  /**
+   * Converts the currently assigned SparseMatrixVector list form of the
+   * row and column ordered sparse matrices to the contiguous (flat) form
+   * used by subsequent calls to resolve(). The lists passed to solve() by
+   * the caller are EMPTIED (see
+   * SparseMatrixVectorArrayFixed.createFixedSMVArrayAndClear()) so that only
+   * the flat form is retained. The peak memory during the conversion of
+   * each matrix is two copies of that matrix. Does nothing if the flat form
+   * is already in use.
+   */
+  public void flattenAndClearSparseMatrix()
+  {
+    if (aRowSprs != null)
+    {
+      aRowFixed = SparseMatrixVectorArrayFixed.
+                  createFixedSMVArrayAndClear(aRowSprs);
+      aRowSprs = null;
+    }
+    if (aColSprs != null)
+    {
+      aColFixed = SparseMatrixVectorArrayFixed.
+                  createFixedSMVArrayAndClear(aColSprs);
+      aColSprs = null;
+    }
+  }
+
+  /**
+   * Returns the number of rows in the row-ordered sparse matrix (list or flat
+   * form) or -1 if it is not assigned.
+   * 
+   * @return The number of rows in the row-ordered sparse matrix.
+   */
+  private int getRowCount()
+  {
+    if (aRowFixed != null) return aRowFixed.size();
+    return (aRowSprs == null) ? -1 : aRowSprs.size();
+  }
+
+  /**
+   * Returns the number of rows in the column-ordered sparse matrix (list or
+   * flat form) or -1 if it is not assigned.
+   * 
+   * @return The number of rows in the column-ordered sparse matrix.
+   */
+  private int getColumnCount()
+  {
+    if (aColFixed != null) return aColFixed.size();
+    return (aColSprs == null) ? -1 : aColSprs.size();
+  }
+
   /**
    * Performs the LSQR solution given the settings in aRowSprs, aX, aSE, and
    * aRHS. This function creates a transpose sparse matrix and necessary local
@@ -1093,24 +1391,25 @@ public class LSQRDD implements Serializable
     // verify inputs have been set and that aRowSprs and aRHS sizes are
     // consistent
 
-    if ((aRowSprs == null) || (aRHS == null) || (aX == null) || (aSE == null))
+    if ((getRowCount() < 0) || (aRHS == null) || (aX == null) ||
+        (aSE == null))
     {
       String s = "Input row-ordered sparse matrix, RHS vector, " +
                  "solution vector, and solution error vector, " +
                  "have not been assigned (null) ...";
       throw new IOException(s);
     }
-    if (aRowSprs.size() != aRHS.size())
+    if (getRowCount() != aRHS.size())
     {
-      String s = "Sparse matrix size (" + aRowSprs.size() +
+      String s = "Sparse matrix size (" + getRowCount() +
                  ") and RHS vector size (" + aRHS.size() +
                  ") must be the same ...";
       throw new IOException(s);
     }
 
-    if (aColSprs.size() != aX.length)
+    if (getColumnCount() != aX.length)
     {
-      String s = "Column-ordered sparse matrix size (" + aColSprs.size() +
+      String s = "Column-ordered sparse matrix size (" + getColumnCount() +
                  ") and solution vector size (" + aX.length +
                  ") must be the same ...";
       throw new IOException(s);
@@ -1128,24 +1427,26 @@ public class LSQRDD implements Serializable
     aU   = aRHS.toArray();
     aULo = new double [aU.length];
 
-    // start threads, create task queue, build tasks if any parallel
+    // get the task runner (its worker threads persist between solves) and
+    // build tasks if any parallel
     // calculations are requested ... if parallel is not requested build a
     // single U task and a single V task to hold the solution components
 
     if (!aUseParallel.isNone())
     {
-      aThreadPool = (ThreadPoolExecutor) Executors.newFixedThreadPool(aNThreads);
-      aQueue = new ExecutorCompletionService<PartialResult>(aThreadPool);
+      if ((aTaskRunner == null) ||
+          (aTaskRunner.getThreadCount() != aNThreads))
+        aTaskRunner = new ConcurrentTaskRunner(aNThreads);
       buildParallelTasks();
     }
     else
     {
       uTasks = new SolveAProd [1];
-      uTasks[0] = new SolveAProd(0, aRowSprs.size(), 0, aRowSprs.size(),
-                                 aU, aULo, aV, aVLo, aRowSprs);
+      uTasks[0] = new SolveAProd(0, lsqrRows, 0, lsqrRows,
+                                 aU, aULo, aV, aVLo, aRowSprs, aRowFixed);
       vTasks = new SolveAProd [1];
-      vTasks[0] = new SolveAProd(0, aColSprs.size(), 0, aColSprs.size(),
-                                 aV, aVLo, aU, aULo, aColSprs);
+      vTasks[0] = new SolveAProd(0, lsqrCols, 0, lsqrCols,
+                                 aV, aVLo, aU, aULo, aColSprs, aColFixed);
     }
 
     // solve
@@ -1177,15 +1478,6 @@ public class LSQRDD implements Serializable
     }
     */
 
-    // shutdown
-
-    if (!aUseParallel.isNone())
-    {
-      aThreadPool.shutdown();
-      aThreadPool = null;
-      aQueue = null;
-    }
-
     // exit
 
     uTasks = vTasks = null;
@@ -1241,6 +1533,20 @@ public class LSQRDD implements Serializable
     
     for (i = 0; i < lsqrCols; ++i) aV[i] = aX[i] = aSE[i] = 0.0;
 
+    // if warm starting solve for the correction to x0 ... replace u = b with
+    // the residual b - A * x0
+
+    if (aX0 != null)
+    {
+      if (aX0.length != lsqrCols)
+        throw new IOException("Error: Initial solution size (" +
+                              aX0.length + ") does not match the solve (" +
+                              lsqrCols + ") ...");
+      for (i = 0; i < lsqrCols; ++i) aV[i] = -aX0[i];
+      updateVector(uTasks);
+      for (i = 0; i < lsqrCols; ++i) aV[i] = 0.0;
+    }
+
     // set up the first vectors u and v for the bidiagonalization.
     // these satisfy  beta * u = b,  alfa * v = A' * U.
 
@@ -1271,8 +1577,9 @@ public class LSQRDD implements Serializable
     lsqrARNorm = alfa[0] * beta[0];
     if (lsqrARNorm == 0.0)
     {
-      // output x = 0 solution if requested
+      // output x = 0 (x = x0 if warm starting) solution if requested
 
+      addInitialSolution();
       lsqrExTime = (new Date()).getTime() - start;
       if (aScrnWrtr.isOutputOn()) writeOutput("Exit");
 
@@ -1280,6 +1587,30 @@ public class LSQRDD implements Serializable
       return lsqrIStop;
     }
 
+    // if a resume was requested replace the initial state with the
+    // checkpointed state
+
+    if (aResumeFile != null)
+    {
+      double[] st = readCheckpoint(w);
+      alfa[0] = st[0];
+      alfa[1] = st[1];
+      beta[0] = st[2];
+      beta[1] = st[3];
+      rhoBar  = st[4];
+      phiBar  = st[5];
+      bbnorm  = st[6];
+      ddnorm  = st[7];
+      xxnorm  = st[8];
+      res2    = st[9];
+      sn2     = st[10];
+      cs2     = st[11];
+      z       = st[12];
+      nstop   = (int) st[13];
+    }
+    int  chkPntIter = lsqrIter;
+    long chkPntTime = (new Date()).getTime();
+
     // ready to enter iteration loop ... output data header
 
     if (aScrnWrtr.isOutputOn()) 
@@ -1439,6 +1770,20 @@ public class LSQRDD implements Serializable
         ++nstop;
         if ((nstop < nconv) && (lsqrIter < lsqrItnLim)) lsqrIStop = 0;
       }
+
+      // write a checkpoint if one is due
+
+      if ((lsqrIStop == 0) && (aChkPntFile != null) &&
+          (((aChkPntIters > 0) && (lsqrIter - chkPntIter >= aChkPntIters)) ||
+           ((aChkPntSecs > 0.0) &&
+            ((new Date()).getTime() - chkPntTime >= aChkPntSecs * 1000.0))))
+      {
+        writeCheckpoint(new double [] {alfa[0], alfa[1], beta[0], beta[1],
+                                       rhoBar, phiBar, bbnorm, ddnorm,
+                                       xxnorm, res2, sn2, cs2, z, nstop}, w);
+        chkPntIter = lsqrIter;
+        chkPntTime = (new Date()).getTime();
+      }
     } while (lsqrIStop == 0);
 
     // ------------------------------------------------------------------
@@ -1453,6 +1798,7 @@ public class LSQRDD implements Serializable
     t = lsqrRNorm / sqrt(t);
 
     for (i = 0; i < lsqrCols; ++i) aSE[i] = t * sqrt(aSE[i]);
+    addInitialSolution();
 
     // Print the stopping condition.
 
@@ -1464,6 +1810,16 @@ public class LSQRDD implements Serializable
     return lsqrIStop;
   }
 
+  /**
+   * Adds the initial solution (if warm starting) to the solved correction
+   * in aX.
+   */
+  private void addInitialSolution()
+  {
+    if (aX0 != null)
+      for (int i = 0; i < lsqrCols; ++i) aX[i] += aX0[i];
+  }
+
   /**
    * Performs an inverse scaling of the Y vector defined in the input set of
    * tasks. The Y vector is scaled by the inverse of the input scale factor
@@ -1573,7 +1929,10 @@ public class LSQRDD implements Serializable
     else
     {
       SolveAProd t = tasks[0];
-      aprod(t.aSpM, t.aY, t.aYLo, t.aX, t.aXLo);    
+      if (t.aSpMF != null)
+        aprod(t.aSpMF, 0, t.aSpMF.size(), t.aY, t.aYLo, t.aX, t.aXLo);
+      else
+        aprod(t.aSpM, t.aY, t.aYLo, t.aX, t.aXLo);    
     }
   }
 
@@ -1595,7 +1954,7 @@ public class LSQRDD implements Serializable
   private void aprod(ArrayList<SparseMatrixVector> aSprs,
                      double[] yhi, double[] ylo, double[] xhi, double[] xlo)
   {
-    if (aUseDoubleDouble.isAProd())
+    if (isDDAProd())
     {
       // use DoubleDouble precision
 
@@ -1609,6 +1968,16 @@ public class LSQRDD implements Serializable
         ylo[i] = t[1];
       }
     }
+    else if (isCompAProd())
+    {
+      // use compensated accumulation
+
+      for (int i = 0; i < aSprs.size(); ++i)
+      {
+        yhi[i] = aSprs.get(i).updateCompensated(yhi[i], xhi);
+        ylo[i] = 0.0;
+      }
+    }
     else
     {
       // use double precision
@@ -1620,6 +1989,152 @@ public class LSQRDD implements Serializable
       }
     }
   }
+  /**
+   * Atomically writes the current iteration state to the checkpoint file.
+   * The file contains an identifier, the problem dimensions (used to verify
+   * a resume), the iteration count, the carried scalars, and the u(hi,lo),
+   * v(hi,lo), w, x, and standard error vectors.
+   * 
+   * @param st The carried scalars of solve().
+   * @param w The solve() w vector.
+   * @throws IOException
+   */
+  private void writeCheckpoint(double[] st, double[] w) throws IOException
+  {
+    File tmp = new File(aChkPntFile + ".tmp");
+    FileOutputBuffer fob = new FileOutputBuffer(tmp.getPath());
+    fob.writeString(CHKPNT_ID);
+    fob.writeInt(lsqrRows);
+    fob.writeInt(lsqrCols);
+    fob.writeInt(lsqrIter);
+    fob.writeDoubles(st);
+    fob.writeDoubles(aU);
+    fob.writeDoubles(aULo);
+    fob.writeDoubles(aV);
+    fob.writeDoubles(aVLo);
+    fob.writeDoubles(w);
+    fob.writeDoubles(aX);
+    fob.writeDoubles(aSE);
+    fob.force();
+    fob.close();
+
+    // replace the previous checkpoint atomically so that a crash always
+    // leaves a complete checkpoint
+
+    try
+    {
+      Files.move(tmp.toPath(), new File(aChkPntFile).toPath(),
+                 StandardCopyOption.ATOMIC_MOVE,
+                 StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (IOException ex)
+    {
+      throw new IOException("Error: Could not write checkpoint file \"" +
+                            aChkPntFile + "\" ...", ex);
+    }
+  }
+
+  /**
+   * Reads the iteration state from the resume file (see resume(String)) into
+   * the u(hi,lo), v(hi,lo), w, x, and standard error vectors, sets the
+   * iteration count, and returns the carried scalars. The vectors are copied
+   * into the existing arrays as they are shared with the concurrent tasks.
+   * The resume request is cleared.
+   * 
+   * @param w The solve() w vector.
+   * @return The carried scalars of solve().
+   * @throws IOException
+   */
+  private double[] readCheckpoint(double[] w) throws IOException
+  {
+    String fn = aResumeFile;
+    aResumeFile = null;
+
+    FileInputBuffer fib = new FileInputBuffer(fn);
+    try
+    {
+      if (!fib.readString().equals(CHKPNT_ID))
+        throw new IOException("Error: \"" + fn + "\" is not an LSQRDD " +
+                              "checkpoint file ...");
+      int rows = fib.readInt();
+      int cols = fib.readInt();
+      if ((rows != lsqrRows) || (cols != lsqrCols))
+        throw new IOException("Error: Checkpoint problem size (" + rows +
+                              " x " + cols + ") does not match the solve (" +
+                              lsqrRows + " x " + lsqrCols + ") ...");
+      lsqrIter = fib.readInt();
+      double[] st = fib.readDoubles();
+      System.arraycopy(fib.readDoubles(), 0, aU,   0, lsqrRows);
+      System.arraycopy(fib.readDoubles(), 0, aULo, 0, lsqrRows);
+      System.arraycopy(fib.readDoubles(), 0, aV,   0, lsqrCols);
+      System.arraycopy(fib.readDoubles(), 0, aVLo, 0, lsqrCols);
+      System.arraycopy(fib.readDoubles(), 0, w,    0, lsqrCols);
+      System.arraycopy(fib.readDoubles(), 0, aX,   0, lsqrCols);
+      System.arraycopy(fib.readDoubles(), 0, aSE,  0, lsqrCols);
+      return st;
+    }
+    finally
+    {
+      fib.close();
+    }
+  }
+
+  /**
+   * Flat sparse matrix multiply over rows [strt, stop). Performs the same
+   * operation as aprod(ArrayList<SparseMatrixVector>, ...) using the
+   * contiguous row start / index / value form.
+   * 
+   * @param aSprs The flat sparse matrix.
+   * @param strt The first row to process.
+   * @param stop The last + 1 row to process.
+   * @param yhi The vector to be updated (high component if DoubleDouble
+   *          precision is requested).
+   * @param ylo The low component of the DoubleDouble precision vector to be
+   *          updated (set to 0.0 for each entry if double precision is used).
+   * @param xhi The vector multiplying aSprs to update y (high component if
+   *          DoubleDouble precision is requested).
+   * @param xlo The low component of the DoubleDouble precision vector used
+   *            to multiply aSprs. (not used for double precision calculation).
+   */
+  private void aprod(SparseMatrixVectorArrayFixed aSprs, int strt, int stop,
+                     double[] yhi, double[] ylo, double[] xhi, double[] xlo)
+  {
+    if (isDDAProd())
+    {
+      // use DoubleDouble precision
+
+      double[] t = {0.0, 0.0};
+      for (int i = strt; i < stop; ++i)
+      {
+        t[0] = yhi[i];
+        t[1] = ylo[i];
+        aSprs.update(i, t, xhi, xlo);
+        yhi[i] = t[0];
+        ylo[i] = t[1];
+      }
+    }
+    else if (isCompAProd())
+    {
+      // use compensated accumulation
+
+      for (int i = strt; i < stop; ++i)
+      {
+        yhi[i] = aSprs.updateCompensated(i, yhi[i], xhi);
+        ylo[i] = 0.0;
+      }
+    }
+    else
+    {
+      // use double precision
+
+      for (int i = strt; i < stop; ++i)
+      {
+        yhi[i] = aSprs.update(i, yhi[i], xhi);
+        ylo[i] = 0.0;
+      }
+    }
+  }
+
 
   /**
    * Sequential vector 2 norm. Finds the 2 norm of the input vector x(hi, lo)
@@ -1638,16 +2153,22 @@ public class LSQRDD implements Serializable
    */
   private void dnrm2(double[] n, double[] xhi, double[] xlo)
   {
-    if (aUseDoubleDouble.isNorm())
+    if (isDDNorm())
     {
       n[0] = n[1] = 0.0;
-      for (int i = 0; i < xhi.length; ++i)
-        DoubleDouble.addSqrFast(n, xhi[i], xlo[i]);
+      DoubleDoubleKernels.addSqr(n, xhi, xlo, 0, xhi.length);
       DoubleDouble sq = new DoubleDouble(n[0], n[1]);
       sq.sqrt();
       n[0] = sq.hi;
       n[1] = sq.lo;
     }
+    else if (isCompNorm())
+    {
+      n[0] = n[1] = 0.0;
+      DoubleDoubleKernels.addSqrCompensated(n, xhi, 0, xhi.length);
+      n[0] = sqrt(n[0]);
+      n[1] = 0.0;
+    }
     else
     {
       double d = 0.0;
@@ -1682,18 +2203,8 @@ public class LSQRDD implements Serializable
    */
   private void dscl(double sclhi, double scllo, double[] xhi, double[] xlo)
   {
-    if (aUseDoubleDouble.isScale())
-    {
-      double[] y = {0.0, 0.0};
-      for (int i = 0; i < xhi.length; ++i)
-      {
-        y[0] = xhi[i];
-        y[1] = xlo[i];
-        DoubleDouble.multFast(y, sclhi, scllo);
-        xhi[i] = y[0];
-        xlo[i] = y[1];
-      }
-    }
+    if (isDDScale())
+      DoubleDoubleKernels.scale(xhi, xlo, 0, xhi.length, sclhi, scllo);
     else
     {
       for (int i = 0; i < xhi.length; ++i)
@@ -1841,6 +2352,7 @@ public class LSQRDD implements Serializable
 
     readSolutionExecutionControl(f + "ExecutionControl");
     readSolutionRHS(f + "RHS");
+    aRowFixed = aColFixed = null;
     aRowSprs = readSolutionSparseMatrix(f);
     aColSprs = readSolutionSparseMatrix(f + "Transpose");
     aX  = readSolutionVector(f + "Solution");
@@ -1874,8 +2386,16 @@ public class LSQRDD implements Serializable
 
     writeSolutionExecutionControl(f + "ExecutionControl");
     writeSolutionRHS(f + "RHS");
-    writeSolutionSparseMatrix(f, aRowSprs);
-    writeSolutionSparseMatrix(f + "Transpose", aColSprs);
+    if (aRowFixed != null)
+    {
+      writeSolutionSparseMatrix(f, aRowFixed);
+      writeSolutionSparseMatrix(f + "Transpose", aColFixed);
+    }
+    else
+    {
+      writeSolutionSparseMatrix(f, aRowSprs);
+      writeSolutionSparseMatrix(f + "Transpose", aColSprs);
+    }
     writeSolutionVector(f + "Solution", aX);
     writeSolutionVector(f + "SolutionError", aSE);
   }
@@ -2096,6 +2616,31 @@ public class LSQRDD implements Serializable
 
     fob.close();
   }
+  /**
+   * Writes the input flat sparse matrix to the file fn in the same format
+   * as writeSolutionSparseMatrix(String, ArrayList<SparseMatrixVector>) so
+   * that it can be read by readSolutionSparseMatrix(String).
+   * 
+   * @param fn The file into which the sparse matrix is written.
+   * @param sm The flat sparse matrix to be written.
+   * @throws IOException
+   */
+  private void writeSolutionSparseMatrix(String fn,
+                                         SparseMatrixVectorArrayFixed sm)
+          throws IOException
+  {
+    FileOutputBuffer fob = new FileOutputBuffer(fn);
+    fob.writeInt(sm.size());
+    for (int i = 0; i < sm.size(); ++i)
+    {
+      int n = sm.getSize(i);
+      fob.writeInt(n);
+      for (int j = 0; j < n; ++j) fob.writeInt(sm.getIndex(i, j));
+      for (int j = 0; j < n; ++j) fob.writeDouble(sm.getValue(i, j));
+    }
+    fob.close();
+  }
+
 
   /**
    * Reads and returns a double array read from the input file fn. If no data
@@ -2220,8 +2765,8 @@ public class LSQRDD implements Serializable
   //***************************************************************************
 
   /**
-   * A dummy CompletionService<SolveAProd> result class returned to the
-   * caller after each task is finished. The result contains the row/column
+   * The result class returned by each SolveAProd task after it is
+   * finished. The result contains the row/column
    * start/stop values for each task.
    */
   public class PartialResult
@@ -2335,6 +2880,13 @@ public class LSQRDD implements Serializable
      */
     ArrayList<SparseMatrixVector> aSpM = null; //  aRowSprs      aColSprs
 
+    /**
+     * The flat form of the sparse matrix that multiplies aX to update aY
+     * (aRowFixed for uTasks and aColFixed for vTasks). If not null it is
+     * used in place of aSpM.
+     */
+    SparseMatrixVectorArrayFixed aSpMF = null; //  aRowFixed  aColFixed
+
     /**
      * Used by the scaling operation to scale the aY vector.
      */
@@ -2369,10 +2921,14 @@ public class LSQRDD implements Serializable
      *            precision calculations).
      * @param sprs The row oriented or column oriented sparse matrix (aRowSprs
      *             for uTasks or aColSprs for vTasks).
+     * @param sprsFixed The flat row oriented or column oriented sparse matrix
+     *                  (aRowFixed for uTasks or aColFixed for vTasks). If not
+     *                  null it is used in place of sprs.
      */
     public SolveAProd(int strtProd, int stopProd, int strt, int stop,
                       double[] y, double[] ylo, double[] x, double[] xlo,
-                      ArrayList<SparseMatrixVector> sprs)
+                      ArrayList<SparseMatrixVector> sprs,
+                      SparseMatrixVectorArrayFixed sprsFixed)
     {
       // set input values into class variables
 
@@ -2381,6 +2937,7 @@ public class LSQRDD implements Serializable
       aX     = x;
       aXLo   = xlo;
       aSpM   = sprs;
+      aSpMF  = sprsFixed;
 
       aPR = new PartialResult(strtProd, stopProd, strt, stop);
     }
@@ -2440,9 +2997,18 @@ public class LSQRDD implements Serializable
      */
     private void update()
     {
+      // use the flat matrix kernel if the flat form was assigned
+
+      if (aSpMF != null)
+      {
+        aprod(aSpMF, aPR.startIndexProd, aPR.stopIndexProd,
+              aY, aYLo, aX, aXLo);
+        return;
+      }
+
       // loop over all rows or columns from startIndex to stopIndex-1
 
-      if (aUseDoubleDouble.isAProd())
+      if (isDDAProd())
       {
         // use DoubleDouble precision
 
@@ -2456,6 +3022,16 @@ public class LSQRDD implements Serializable
           aYLo[i] = y[1];
         }
       }
+      else if (isCompAProd())
+      {
+        // use compensated accumulation
+
+        for (int i = aPR.startIndexProd; i < aPR.stopIndexProd; ++i)
+        {
+          aY[i]   = aSpM.get(i).updateCompensated(aY[i], aX);
+          aYLo[i] = 0.0;
+        }
+      }
       else
       {
         // use double precision
@@ -2479,19 +3055,12 @@ public class LSQRDD implements Serializable
     {
       // scale each aY(hi,lo) entry
       
-      if (aUseDoubleDouble.isScale())
+      if (isDDScale())
       {
         // use DoubleDouble precision
 
-        double[] y = {0.0, 0.0};
-        for (int i = aPR.startIndex; i < aPR.stopIndex; ++i)
-        {
-          y[0] = aY[i];
-          y[1] = aYLo[i];
-          DoubleDouble.multFast(y, aScale, aScaleLo);
-          aY[i] = y[0];
-          aYLo[i] = y[1];
-        }
+        DoubleDoubleKernels.scale(aY, aYLo, aPR.startIndex, aPR.stopIndex,
+                                  aScale, aScaleLo);
       }
       else
       {
@@ -2522,7 +3091,7 @@ public class LSQRDD implements Serializable
       // sum the square of each aY(hi,lo) entry ... place result in
       // aPR.rslt(hi, lo) for return
 
-      if (aUseDoubleDouble.isNorm())
+      if (isDDNorm())
       {
         // use DoubleDouble precision
 
@@ -2531,6 +3100,16 @@ public class LSQRDD implements Serializable
         aPR.rsltHi = y[0];
         aPR.rsltLo = y[1];
       }
+      else if (isCompNorm())
+      {
+        // use compensated accumulation
+
+        double[] y = {0.0, 0.0};
+        DoubleDoubleKernels.addSqrCompensated(y, aY, aPR.startIndex,
+                                              aPR.stopIndex);
+        aPR.rsltHi = y[0];
+        aPR.rsltLo = y[1];
+      }
       else
       {
         // use double precision
@@ -2562,8 +3141,7 @@ public class LSQRDD implements Serializable
     private void normDoubleDouble(double[] y, double[] vhi, double[] vlo)
     {
       // perform y += v*v;
-      for (int i = aPR.startIndex; i < aPR.stopIndex; ++i)
-        DoubleDouble.addSqrFast(y, vhi[i], vlo[i]);
+      DoubleDoubleKernels.addSqr(y, vhi, vlo, aPR.startIndex, aPR.stopIndex);
     }
   }
 
@@ -2587,16 +3165,12 @@ public class LSQRDD implements Serializable
   private static int aNThreads = (int) (aNProcessors * aProcMult);
 
   /**
-   * The local thread pool on which the processes will execute the
-   * concurrent uTasks and vTasks (SolveAProd tasks).
+   * Executes the concurrent uTasks and vTasks (SolveAProd tasks). The calling
+   * thread takes part in each task set and blocks (without polling) until the
+   * set is complete. The worker threads are shared and persist between
+   * solves.
    */
-  private ThreadPoolExecutor aThreadPool = null;
-
-  /**
-   * The completion service results queue used to save the concurrent results
-   * as they return from the thread pool.
-   */
-  private CompletionService<PartialResult> aQueue = null;
+  private transient ConcurrentTaskRunner aTaskRunner = null;
 
   /**
    * The set of uTasks which solve for aU concurrently given aSprsRow,
@@ -2622,18 +3196,10 @@ public class LSQRDD implements Serializable
    */
   private void concurrentUpdate(SolveAProd[] tasks)
   {
-    // submit all tasks in concurrent mode
-
-    for (int i = 0; i < tasks.length; ++i) aQueue.submit(tasks[i]);
-
-    // wait until all tasks have returned before exiting.
+    // execute all tasks in concurrent mode and wait until all have returned
+    // before exiting.
 
-    int cnt = 0; 
-    while (cnt < tasks.length)
-    {
-      Future<PartialResult> pr = aQueue.poll();
-      if (pr != null) cnt++;
-    }
+    aTaskRunner.invokeAll(tasks);
   }
 
   /**
@@ -2647,22 +3213,11 @@ public class LSQRDD implements Serializable
    */
   private void concurrentScale(double scl, double sclLo, SolveAProd[] tasks)
   {
-    // submit all tasks in concurrent mode
-
-    for (int i = 0; i < tasks.length; ++i)
-    {
-      tasks[i].setScale(scl, sclLo);
-      aQueue.submit(tasks[i]);
-    }
+    // execute all tasks in concurrent mode and wait until all have returned
+    // before exiting.
 
-    // wait until all tasks have returned before exiting.
-
-    int cnt = 0; 
-    while (cnt < tasks.length)
-    {
-      Future<PartialResult> pr = aQueue.poll();
-      if (pr != null) cnt++;
-    }
+    for (int i = 0; i < tasks.length; ++i) tasks[i].setScale(scl, sclLo);
+    aTaskRunner.invokeAll(tasks);
   }
 
   /**
@@ -2679,64 +3234,31 @@ public class LSQRDD implements Serializable
   {
     double[] t = {0.0, 0.0};
 
-    // submit all tasks in concurrent mode
+    // execute all tasks in concurrent mode
 
-    for (int i = 0; i < tasks.length; ++i)
-    {
-      tasks[i].set2Norm();
-      aQueue.submit(tasks[i]);
-    }
+    for (int i = 0; i < tasks.length; ++i) tasks[i].set2Norm();
+    aTaskRunner.invokeAll(tasks);
 
-    // sum result from each task to d
+    // sum result from each task to t (in task order so that the result does
+    // not depend on the order in which the tasks finished)
 
-    int cnt = 0; 
     if (aUseDoubleDouble.isNorm())
     {
       // use DoubleDouble precision
 
-      try
-      {
-        while (cnt < tasks.length)
-        {
-          Future<PartialResult> pr = aQueue.poll();
-          if (pr != null)
-          {
-            cnt++;
-            PartialResult rslt = pr.get();
-            DoubleDouble.addFast(t, rslt.rsltHi, rslt.rsltLo);
-          }
-        }
-      }
-      catch (Exception ex)
-      {
-        ex.printStackTrace();
-      }
+      for (int i = 0; i < tasks.length; ++i)
+        DoubleDouble.addFast(t, tasks[i].aPR.rsltHi, tasks[i].aPR.rsltLo);
     }
     else
     {
       // use double precision
 
-      try
-      {
-        while (cnt < tasks.length)
-        {
-          Future<PartialResult> pr = aQueue.poll();
-          if (pr != null)
-          {
-            cnt++;
-            t[0] += pr.get().rsltHi;
-          }
-        }
-      }
-      catch (Exception ex)
-      {
-        ex.printStackTrace();
-      }
+      for (int i = 0; i < tasks.length; ++i) t[0] += tasks[i].aPR.rsltHi;
     }
 
     // return sqrt(d)
 
-    if (aUseDoubleDouble.isNorm())
+    if (isDDNorm())
     {
       // use DoubleDouble precision
 
@@ -2764,7 +3286,7 @@ public class LSQRDD implements Serializable
    */
   private void invertScale(double[] invScl, double[] scale)
   {
-    if (aUseDoubleDouble.isScale())
+    if (isDDScale())
     {
       // use DoubleDouble precision
 
@@ -2796,7 +3318,8 @@ public class LSQRDD implements Serializable
     // exactly
 
     long aNSprs   = 0;
-    for (int i = 0; i < lsqrRows; ++i) aNSprs += aRowSprs.get(i).size();
+    for (int i = 0; i < lsqrRows; ++i)
+      aNSprs += getRowSize(aRowSprs, aRowFixed, i);
 
     int trgtTaskCnt = aNThreads;
     int nEntsPerTaskProd = (int) (aNSprs / trgtTaskCnt);
@@ -2830,7 +3353,7 @@ public class LSQRDD implements Serializable
       // save index i as a task cutoff point and increment the cutoff
       // count until it exceeds the current entry index in count.
 
-      count += aRowSprs.get(i).size();
+      count += getRowSize(aRowSprs, aRowFixed, i);
       if (count >= entStep)
       {
         cntProd.add(i);
@@ -2856,7 +3379,8 @@ public class LSQRDD implements Serializable
       if (i == cntProd.size() - 2) cnt1 = lsqrRows;
 
       uTasks[i] = new SolveAProd(cntProd.get(i), cntProd.get(i+1),
-                                 cnt0, cnt1, aU, aULo, aV, aVLo, aRowSprs);
+                                 cnt0, cnt1, aU, aULo, aV, aVLo,
+                                 aRowSprs, aRowFixed);
     }
 
     // clear the temporary curoff vector to hold the task stop and start
@@ -2873,7 +3397,7 @@ public class LSQRDD implements Serializable
       // save index i as a task cutoff point and increment the cutoff
       // count until it exceeds the current entry index in count.
 
-      count += aColSprs.get(i).size();
+      count += getRowSize(aColSprs, aColFixed, i);
       if (count >= entStep)
       {
         cntProd.add(i);
@@ -2899,16 +3423,34 @@ public class LSQRDD implements Serializable
       if (i == cntProd.size() - 2) cnt1 = lsqrCols;
 
       vTasks[i] = new SolveAProd(cntProd.get(i), cntProd.get(i+1),
-                                 cnt0, cnt1, aV, aVLo, aU, aULo, aColSprs);
+                                 cnt0, cnt1, aV, aVLo, aU, aULo,
+                                 aColSprs, aColFixed);
     }
   }
 
+  /**
+   * Returns the number of entries in row i of the input sparse matrix, which
+   * is given in either the list (sprs) or flat (sprsFixed) form.
+   * 
+   * @param sprs The list form of the sparse matrix (used if sprsFixed is
+   *             null).
+   * @param sprsFixed The flat form of the sparse matrix, or null.
+   * @param i The row.
+   * @return The number of entries in row i.
+   */
+  private static int getRowSize(ArrayList<SparseMatrixVector> sprs,
+                                SparseMatrixVectorArrayFixed sprsFixed, int i)
+  {
+    return (sprsFixed != null) ? sprsFixed.getSize(i) : sprs.get(i).size();
+  }
+
   /**
    * Resets all large matrix/vector assignments to null to free memory.
    */
   public void resetLargeReferences()
   {
     aRowSprs = aColSprs = null;
+    aRowFixed = aColFixed = null;
   }
 
   /**
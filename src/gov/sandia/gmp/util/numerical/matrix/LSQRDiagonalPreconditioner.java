@@ -0,0 +1,129 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.matrix;
+
+import gov.sandia.gmp.util.containers.arraylist.ArrayListDouble;
+import gov.sandia.gmp.util.containers.arraylist.ArrayListInt;
+
+import static java.lang.Math.sqrt;
+
+/**
+ * Diagonal (column scaling) LSQR preconditioner M = diag(s). By default s
+ * holds the 2 norm of each column of A so that every column of A * inv(M)
+ * has unit norm. Columns with no entries are left unscaled (s = 1).
+ * 
+ * <p> Unlike normalizing the matrix in place, the scaling is applied inside
+ * the bidiagonalization, so the matrix is left untouched and the solution
+ * and its standard error estimate are returned for the original (unscaled)
+ * unknowns.
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class LSQRDiagonalPreconditioner implements LSQRPreconditioner
+{
+  /**
+   * The inverse of the diagonal scale of each column.
+   */
+  private double[] aInvScl = null;
+
+  /**
+   * Builds the column norm preconditioner from any sparse matrix form that
+   * stores the column index of each entry (row-ordered or triplet).
+   * 
+   * @param sprsMtrx The sparse matrix entries.
+   * @param sprsColIndx The column index of each entry.
+   * @param cols The number of columns.
+   */
+  public LSQRDiagonalPreconditioner(ArrayListDouble sprsMtrx,
+                                    ArrayListInt sprsColIndx, int cols)
+  {
+    double[] a    = sprsMtrx.getArray();
+    int[]    indx = sprsColIndx.getArray();
+    double[] s    = new double [cols];
+    for (int i = 0; i < sprsMtrx.size(); ++i) s[indx[i]] += a[i] * a[i];
+    for (int j = 0; j < cols; ++j) s[j] = sqrt(s[j]);
+    setScale(s);
+  }
+
+  /**
+   * Builds the preconditioner from an explicit column scale.
+   * 
+   * @param scl The scale of each column (entries <= 0 are replaced by 1).
+   */
+  public LSQRDiagonalPreconditioner(double[] scl)
+  {
+    setScale(scl.clone());
+  }
+
+  /**
+   * Sets aInvScl from the input scale.
+   * 
+   * @param s The scale of each column (overwritten).
+   */
+  private void setScale(double[] s)
+  {
+    for (int j = 0; j < s.length; ++j) s[j] = (s[j] > 0.0) ? 1.0 / s[j] : 1.0;
+    aInvScl = s;
+  }
+
+  /**
+   * Returns the diagonal scale of column j.
+   * 
+   * @param j The column index.
+   * @return The diagonal scale of column j.
+   */
+  public double getScale(int j)
+  {
+    return 1.0 / aInvScl[j];
+  }
+
+  @Override
+  public int getColumnCount()
+  {
+    return aInvScl.length;
+  }
+
+  @Override
+  public void solve(double[] x)
+  {
+    for (int j = 0; j < aInvScl.length; ++j) x[j] *= aInvScl[j];
+  }
+
+  @Override
+  public void solveTranspose(double[] x)
+  {
+    solve(x);
+  }
+}
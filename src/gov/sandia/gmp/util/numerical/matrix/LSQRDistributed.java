@@ -0,0 +1,624 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.matrix;
+
+import gov.sandia.gmp.util.containers.arraylist.ArrayListDouble;
+import gov.sandia.gmp.util.containers.arraylist.ArrayListInt;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import static java.lang.Math.abs;
+import static java.lang.Math.sqrt;
+
+/**
+ * Distributed LSQR solver for a matrix partitioned by rows across several
+ * processes. Each process (rank) holds a contiguous block of matrix rows in
+ * row-ordered compressed form (with global column indices) along with the
+ * matching block of the rhs, and calls solve() with a shared LSQRTransport.
+ * 
+ * <p> The u vector is partitioned like the rows. The v, w, x, and standard
+ * error vectors are replicated on every rank. Each iteration a rank forms
+ * its rows of u = A * v - alfa * u and, row by row, scatters them into its
+ * partial A' * u (the row analogue of the LSQR SolveAProd partial results).
+ * The partial A' * u and the partial squared norm of u are then combined by
+ * a single all-reduce of columns + 1 values, after which every rank updates
+ * its replicated vectors identically. Since the transport returns
+ * bit-identical sums to all ranks, the replicated vectors never diverge and
+ * every rank returns the same solution.
+ * 
+ * <p> Within a rank the row block is divided among threads (by nonzero
+ * count) with a private partial A' * u per thread, reduced in thread order.
+ * 
+ * <p> The iteration and stopping conditions are those of LSQR.solve() (with
+ * nconv = 1).
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class LSQRDistributed
+{
+  /**
+   * The damping parameter.
+   */
+  private double   lsqrDamp    = 0.0;
+
+  /**
+   * The estimated relative error in the matrix A.
+   */
+  private double   lsqrATol    = 1.0e-6;
+
+  /**
+   * The estimated relative error in the rhs.
+   */
+  private double   lsqrBTol    = 1.0e-6;
+
+  /**
+   * The upper limit on cond(Abar).
+   */
+  private double   lsqrConLim  = 1.0 / sqrt(LSQR.RELPR) / 10.0;
+
+  /**
+   * The iteration limit. If less than or equal to zero 4 * columns is used.
+   */
+  private int      lsqrItnLim  = 0;
+
+  /**
+   * The number of threads used by this rank.
+   */
+  private int      aNThreads   = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * The stopping condition of the last solve.
+   */
+  private int      lsqrIStop   = 0;
+
+  /**
+   * The iteration count of the last solve.
+   */
+  private int      lsqrIter    = 0;
+
+  /**
+   * The estimated residual norm of the last solve.
+   */
+  private double   lsqrRNorm   = 0.0;
+
+  /**
+   * The estimated Frobenius norm of Abar of the last solve.
+   */
+  private double   lsqrANorm   = 0.0;
+
+  /**
+   * The estimated condition of Abar of the last solve.
+   */
+  private double   lsqrACond   = 0.0;
+
+  /**
+   * The estimated solution norm of the last solve.
+   */
+  private double   lsqrXNorm   = 0.0;
+
+  /**
+   * The time (nanoseconds) the last solve spent in all-reduce calls.
+   */
+  private long     aCommTime   = 0;
+
+  /**
+   * The execution time (nanoseconds) of the last solve.
+   */
+  private long     aExTime     = 0;
+
+  /**
+   * The task runner of this rank.
+   */
+  private ConcurrentTaskRunner aTaskRunner = null;
+
+  /**
+   * The local row-ordered sparse matrix entries of the current solve.
+   */
+  private double[] aSprsRow    = null;
+
+  /**
+   * The global column index of each local entry.
+   */
+  private int[]    aColIndx    = null;
+
+  /**
+   * The first local entry of each local row.
+   */
+  private int[]    aRowPtr     = null;
+
+  /**
+   * The local row range of each thread task.
+   */
+  private int[]    aCut        = null;
+
+  /**
+   * The partial A' * u (columns entries) and squared norm of u (last entry)
+   * of each thread task.
+   */
+  private double[][] aPartial  = null;
+
+  /**
+   * Default constructor.
+   */
+  public LSQRDistributed()
+  {
+  }
+
+  /**
+   * Sets the relative error of the matrix A.
+   * 
+   * @param atol The relative error of the matrix A.
+   */
+  public void aTol(double atol)
+  {
+    lsqrATol = atol;
+  }
+
+  /**
+   * Sets the relative error of the rhs.
+   * 
+   * @param btol The relative error of the rhs.
+   */
+  public void bTol(double btol)
+  {
+    lsqrBTol = btol;
+  }
+
+  /**
+   * Sets the upper limit on cond(Abar).
+   * 
+   * @param cl The condition limit.
+   */
+  public void conditionLimit(double cl)
+  {
+    lsqrConLim = cl;
+  }
+
+  /**
+   * Sets the maximum allowed iteration limit.
+   * 
+   * @param il The maximum allowed iteration limit.
+   */
+  public void iterationLimit(int il)
+  {
+    lsqrItnLim = il;
+  }
+
+  /**
+   * Sets the damping factor.
+   * 
+   * @param damp The least-squares solution damping factor.
+   */
+  public void damp(double damp)
+  {
+    lsqrDamp = damp;
+  }
+
+  /**
+   * Sets the number of threads used by this rank.
+   * 
+   * @param nThreads The new thread count (at least 1).
+   */
+  public void setThreadCount(int nThreads)
+  {
+    aNThreads = Math.max(1, nThreads);
+  }
+
+  /**
+   * Returns the iteration count of the last solve.
+   * 
+   * @return The iteration count of the last solve.
+   */
+  public int iterationCount()
+  {
+    return lsqrIter;
+  }
+
+  /**
+   * Returns the stopping condition of the last solve (see LSQR.solve()).
+   * 
+   * @return The stopping condition of the last solve.
+   */
+  public int stopCondition()
+  {
+    return lsqrIStop;
+  }
+
+  /**
+   * Returns the estimated residual norm of the last solve.
+   * 
+   * @return The estimated residual norm of the last solve.
+   */
+  public double rNorm()
+  {
+    return lsqrRNorm;
+  }
+
+  /**
+   * Returns the estimated Frobenius norm of Abar of the last solve.
+   * 
+   * @return The estimated Frobenius norm of Abar of the last solve.
+   */
+  public double aNorm()
+  {
+    return lsqrANorm;
+  }
+
+  /**
+   * Returns the estimated condition of Abar of the last solve.
+   * 
+   * @return The estimated condition of Abar of the last solve.
+   */
+  public double aCondition()
+  {
+    return lsqrACond;
+  }
+
+  /**
+   * Returns the estimated solution norm of the last solve.
+   * 
+   * @return The estimated solution norm of the last solve.
+   */
+  public double xNorm()
+  {
+    return lsqrXNorm;
+  }
+
+  /**
+   * Returns the time (nanoseconds) the last solve spent in all-reduce calls
+   * (communication plus waiting on the other ranks).
+   * 
+   * @return The all-reduce time of the last solve.
+   */
+  public long getCommunicationTime()
+  {
+    return aCommTime;
+  }
+
+  /**
+   * Returns the execution time (nanoseconds) of the last solve.
+   * 
+   * @return The execution time of the last solve.
+   */
+  public long getExecutionTime()
+  {
+    return aExTime;
+  }
+
+  /**
+   * Solves the row partitioned least-squares problem A * x = b. Every rank
+   * of the transport must call this method concurrently with its own row
+   * block. All ranks receive the full solution.
+   * 
+   * @param trnsprt The transport connecting the ranks.
+   * @param sprsRowMtrx The local row-ordered sparse matrix entries.
+   * @param sprsColIndxMtrx The global column index of each local entry.
+   * @param sprsRowPtr The first local entry of each local row (local rows
+   *                   + 1 entries).
+   * @param bRHS The local rhs entries (local rows entries).
+   * @param x The solution vector (columns entries). Output.
+   * @param se The solution error vector (columns entries). Output.
+   * @return The stopping condition (see LSQR.solve()).
+   * @throws IOException
+   */
+  public int solve(LSQRTransport trnsprt, ArrayListDouble sprsRowMtrx,
+                   ArrayListInt sprsColIndxMtrx, ArrayListInt sprsRowPtr,
+                   ArrayListDouble bRHS, double[] x, double[] se)
+         throws IOException
+  {
+    int rows = sprsRowPtr.size() - 1;
+    if ((bRHS.size() != rows) || (se.length != x.length))
+      throw new IOException("Error: Local vector sizes (" + bRHS.size() +
+                            ", " + x.length + ", " + se.length + ") do " +
+                            "not match the local matrix size (" + rows +
+                            " rows) ...");
+
+    aSprsRow = sprsRowMtrx.getArray();
+    aColIndx = sprsColIndxMtrx.getArray();
+    aRowPtr  = sprsRowPtr.getArray();
+    aCut     = LSQR.balancedPartition(aRowPtr, rows, aNThreads, 1.0);
+    aPartial = new double [aCut.length - 1][x.length + 1];
+    if ((aTaskRunner == null) || (aTaskRunner.getThreadCount() != aNThreads))
+      aTaskRunner = new ConcurrentTaskRunner(aNThreads);
+    try
+    {
+      solve(trnsprt, rows, bRHS, x, se);
+    }
+    finally
+    {
+      aSprsRow = null;
+      aColIndx = aRowPtr = aCut = null;
+      aPartial = null;
+    }
+    return lsqrIStop;
+  }
+
+  /**
+   * Forms the local rows u = A * v - c * u and the local partial t = A' * u
+   * (t[0, columns)) and squared norm of u (t[columns]), reduced over the
+   * thread tasks in task order.
+   * 
+   * @param u The local u vector (updated in place).
+   * @param v The replicated v vector.
+   * @param c The scale of the previous u.
+   * @param t The local partial results (output, columns + 1 entries).
+   */
+  private void pass(final double[] u, final double[] v, final double c,
+                    double[] t)
+  {
+    Callable<?>[] tasks = new Callable<?> [aCut.length - 1];
+    for (int k = 0; k < tasks.length; ++k)
+    {
+      final double[] p = aPartial[k];
+      final int strt = aCut[k], stop = aCut[k + 1];
+      tasks[k] = new Callable<Object>()
+      {
+        @Override
+        public Object call()
+        {
+          int n = v.length;
+          for (int j = 0; j <= n; ++j) p[j] = 0.0;
+          for (int i = strt; i < stop; ++i)
+          {
+            int e0 = aRowPtr[i], e1 = aRowPtr[i + 1];
+            double acc = -c * u[i];
+            for (int e = e0; e < e1; ++e) acc += aSprsRow[e] * v[aColIndx[e]];
+            u[i] = acc;
+            p[n] += acc * acc;
+            if (acc != 0.0)
+              for (int e = e0; e < e1; ++e) p[aColIndx[e]] += aSprsRow[e] * acc;
+          }
+          return null;
+        }
+      };
+    }
+    aTaskRunner.invokeAll(tasks);
+
+    System.arraycopy(aPartial[0], 0, t, 0, t.length);
+    for (int k = 1; k < aPartial.length; ++k)
+    {
+      double[] p = aPartial[k];
+      for (int j = 0; j < t.length; ++j) t[j] += p[j];
+    }
+  }
+
+  /**
+   * Calls the transport all-reduce and accumulates the communication time.
+   * 
+   * @param trnsprt The transport.
+   * @param buf The buffer to be summed in place.
+   * @throws IOException
+   */
+  private void allReduce(LSQRTransport trnsprt, double[] buf)
+          throws IOException
+  {
+    long strt = System.nanoTime();
+    trnsprt.allReduceSum(buf, buf.length);
+    aCommTime += System.nanoTime() - strt;
+  }
+
+  /**
+   * The distributed LSQR iteration.
+   * 
+   * @param trnsprt The transport connecting the ranks.
+   * @param rows The number of local rows.
+   * @param bRHS The local rhs.
+   * @param x The solution vector (output).
+   * @param se The solution error vector (output).
+   * @throws IOException
+   */
+  private void solve(LSQRTransport trnsprt, int rows, ArrayListDouble bRHS,
+                     double[] x, double[] se) throws IOException
+  {
+    double alfa, beta, bbnorm, bnorm, cTol, dampSq, ddnorm, res2, rhoBar,
+           phiBar, sn2, cs2, t, xxnorm, z;
+
+    long start = System.nanoTime();
+    aCommTime = 0;
+    int cols = x.length;
+    int itnLim = (lsqrItnLim <= 0) ? 4 * cols : lsqrItnLim;
+    dampSq = lsqrDamp * lsqrDamp;
+    cTol = (lsqrConLim > 0.0) ? 1.0 / lsqrConLim : 0.0;
+
+    // get the global row count
+
+    double[] cnt = {rows};
+    allReduce(trnsprt, cnt);
+    double m = cnt[0];
+
+    double[] u  = bRHS.toArray();
+    double[] v  = new double [cols];
+    double[] w  = new double [cols];
+    double[] tp = new double [cols + 1];
+    for (int j = 0; j < cols; ++j) x[j] = se[j] = 0.0;
+
+    lsqrIter = lsqrIStop = 0;
+    lsqrANorm = lsqrACond = lsqrXNorm = 0.0;
+    bbnorm = ddnorm = xxnorm = res2 = sn2 = z = 0.0;
+    cs2 = -1.0;
+
+    // set up the first vectors u and v for the bidiagonalization.
+    // these satisfy  beta * u = b,  alfa * v = A' * U. A' * b and norm(b)
+    // are formed together and then scaled by 1 / beta.
+
+    alfa = 0.0;
+    pass(u, v, -1.0, tp);
+    allReduce(trnsprt, tp);
+    beta = sqrt(tp[cols]);
+    if (beta > 0.0)
+    {
+      LSQR.dscl(1.0 / beta, u);
+      t = 1.0 / beta;
+      for (int j = 0; j < cols; ++j) v[j] = t * tp[j];
+      alfa = LSQR.dnrm2(v);
+    }
+    if (alfa > 0.0)
+    {
+      LSQR.dscl(1.0 / alfa, v);
+      System.arraycopy(v, 0, w, 0, cols);
+    }
+
+    rhoBar = alfa;
+    phiBar = beta;
+    bnorm  = beta;
+    lsqrRNorm = beta;
+
+    // test for x = 0 as an exact solution ... exit if true
+
+    if (alfa * beta == 0.0)
+    {
+      aExTime = System.nanoTime() - start;
+      return;
+    }
+
+    // ------------------------------------------------------------------
+    // Main iteration loop.
+    // ------------------------------------------------------------------
+
+    do
+    {
+      ++lsqrIter;
+
+      // Perform the next step of the bidiagonalization to obtain the
+      // next  beta, u, alfa, v.  These satisfy the relations
+      //       beta * u  =  A * v  -  alfa * u,
+      //       alfa * v  =  A' * u - beta * v.
+      // A' * u is formed with the unnormalized u and scaled by 1 / beta.
+
+      pass(u, v, alfa, tp);
+      allReduce(trnsprt, tp);
+      beta = sqrt(tp[cols]);
+      bbnorm += alfa * alfa + beta * beta + dampSq;
+
+      if (beta > 0.0)
+      {
+        LSQR.dscl(1.0 / beta, u);
+        t = 1.0 / beta;
+        for (int j = 0; j < cols; ++j) v[j] = t * tp[j] - beta * v[j];
+        alfa = LSQR.dnrm2(v);
+        if (alfa > 0.0) LSQR.dscl(1.0 / alfa, v);
+      }
+
+      // Use a plane rotation to eliminate the damping parameter.
+      // This alters the diagonal (rhoBar) of the lower-bidiagonal matrix.
+
+      double rhBar2 = rhoBar * rhoBar + dampSq;
+      double rhBar1 = sqrt(rhBar2);
+      double cs1    = rhoBar   / rhBar1;
+      double sn1    = lsqrDamp / rhBar1;
+      double psi    = sn1 * phiBar;
+      phiBar       *= cs1;
+
+      // Use a plane rotation to eliminate the subdiagonal element (beta)
+      // of the lower-bidiagonal matrix, giving an upper-bidiagonal matrix.
+
+      double rho    =  sqrt(rhBar2 + beta * beta);
+      double cs     =  rhBar1 / rho;
+      double sn     =  beta   / rho;
+      double theta  =  sn * alfa;
+      rhoBar        = -cs * alfa;
+      double phi    =  cs * phiBar;
+      phiBar       *=  sn;
+      double tau    =  sn * phi;
+
+      // Update  x, w  and the standard error estimates.
+
+      double t1   =  phi   / rho;
+      double t2   = -theta / rho;
+      double t3sq =  1.0   / (rho * rho);
+      for (int j = 0; j < cols; ++j)
+      {
+        t      = w[j];
+        x[j]  += t1 * t;
+        w[j]   = t2 * t + v[j];
+        t     *= t3sq * t;
+        se[j] += t;
+        ddnorm += t;
+      }
+
+      // Use a plane rotation on the right to eliminate the
+      // super-diagonal element (theta) of the upper-bidiagonal matrix.
+      // Then use the result to estimate norm(x).
+
+      double delta  =  sn2 * rho;
+      double gamBar = -cs2 * rho;
+      double rhs    =  phi - delta * z;
+      double zBar   =  rhs / gamBar;
+      lsqrXNorm     =  sqrt(xxnorm + zBar * zBar);
+      double gamma  =  sqrt(gamBar * gamBar + theta * theta);
+      cs2           =  gamBar / gamma;
+      sn2           =  theta  / gamma;
+      z             =  rhs    / gamma;
+      xxnorm       +=  z * z;
+
+      // Test for convergence.
+
+      lsqrANorm = sqrt(bbnorm);
+      lsqrACond = lsqrANorm * sqrt(ddnorm);
+      res2     += psi * psi;
+      lsqrRNorm = sqrt(phiBar * phiBar + res2);
+      double arnorm = alfa * abs(tau);
+
+      double cmptbl = lsqrRNorm / bnorm;
+      double lsacc  = 0.0;
+      if (lsqrRNorm > 0.0) lsacc = arnorm / (lsqrANorm * lsqrRNorm);
+      double test3  = 1.0 / lsqrACond;
+      t1 = cmptbl / (1.0 + lsqrANorm * lsqrXNorm / bnorm);
+      double rTol = lsqrBTol + lsqrATol * lsqrANorm * lsqrXNorm / bnorm;
+
+      if (lsqrIter >= itnLim) lsqrIStop = 7;
+      if (1.0 + test3 <= 1.0) lsqrIStop = 6;
+      if (1.0 + lsacc <= 1.0) lsqrIStop = 5;
+      if (1.0 + t1    <= 1.0) lsqrIStop = 4;
+      if (test3  <= cTol)     lsqrIStop = 3;
+      if (lsacc  <= lsqrATol) lsqrIStop = 2;
+      if (cmptbl <= rTol)     lsqrIStop = 1;
+    } while (lsqrIStop == 0);
+
+    // ------------------------------------------------------------------
+    // End of main iteration loop
+    // ------------------------------------------------------------------
+
+    // Finish off the standard error estimates.
+
+    t = 1.0;
+    if (m > cols) t = m - cols;
+    if (dampSq > 0.0) t = m;
+    t = lsqrRNorm / sqrt(t);
+    for (int j = 0; j < cols; ++j) se[j] = t * sqrt(se[j]);
+
+    aExTime = System.nanoTime() - start;
+  }
+}
@@ -0,0 +1,581 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.matrix;
+
+import gov.sandia.gmp.util.containers.arraylist.ArrayListDouble;
+import gov.sandia.gmp.util.numerical.sparse.SparseMatrixHugePanelReader;
+import gov.sandia.gmp.util.numerical.sparse.SparseMatrixHugePanelReader.Panel;
+import java.io.IOException;
+import static java.lang.Math.abs;
+import static java.lang.Math.sqrt;
+
+/**
+ * Out-of-core LSQR solver for matrices too large to hold in memory. The
+ * matrix is a SparseMatrixHuge file (see SparseMatrixHuge.write()) in either
+ * CSR or CSC form, which is streamed panel by panel from disk by a
+ * SparseMatrixHugePanelReader. The reader fetches the next panel on a
+ * background thread while the current panel is multiplied, so disk reads
+ * overlap the products. Only the u, v, w, x, and standard error vectors and
+ * the matrix pointer list are held in memory.
+ * 
+ * <p> Each LSQR iteration requires both A * v and A' * u. Rather than
+ * streaming the matrix twice, each iteration makes a single fused pass. For
+ * a CSR file, as each row i is read, u[i] = A[i] * v - alfa * u[i] is formed
+ * and immediately scattered into A' * u (the product with the unnormalized
+ * u, which is rescaled by 1 / beta once beta is known). For a CSC file the
+ * roles are exchanged: as each column j is read v[j] = A'[j] * u - beta *
+ * v[j] is formed and scattered into A * v, which is rescaled by 1 / alfa and
+ * carried to the next iteration. Either way the matrix is read once per
+ * iteration. The results agree with LSQR to within rounding.
+ * 
+ * <p> The iteration and stopping conditions are those of LSQR.solve() (with
+ * nconv = 1).
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class LSQROutOfCore
+{
+  /**
+   * The damping parameter.
+   */
+  private double lsqrDamp    = 0.0;
+
+  /**
+   * The estimated relative error in the matrix A.
+   */
+  private double lsqrATol    = 1.0e-6;
+
+  /**
+   * The estimated relative error in the rhs.
+   */
+  private double lsqrBTol    = 1.0e-6;
+
+  /**
+   * The upper limit on cond(Abar).
+   */
+  private double lsqrConLim  = 1.0 / sqrt(LSQR.RELPR) / 10.0;
+
+  /**
+   * The iteration limit. If less than or equal to zero 4 * columns is used.
+   */
+  private int    lsqrItnLim  = 0;
+
+  /**
+   * The maximum number of matrix entries read per panel. Two panels (16
+   * bytes per entry including the read buffer) are in memory at once.
+   */
+  private int    aPanelSize  = 1 << 22;
+
+  /**
+   * The stopping condition of the last solve.
+   */
+  private int    lsqrIStop   = 0;
+
+  /**
+   * The iteration count of the last solve.
+   */
+  private int    lsqrIter    = 0;
+
+  /**
+   * The estimated residual norm of the last solve.
+   */
+  private double lsqrRNorm   = 0.0;
+
+  /**
+   * The estimated Frobenius norm of Abar of the last solve.
+   */
+  private double lsqrANorm   = 0.0;
+
+  /**
+   * The estimated condition of Abar of the last solve.
+   */
+  private double lsqrACond   = 0.0;
+
+  /**
+   * The estimated solution norm of the last solve.
+   */
+  private double lsqrXNorm   = 0.0;
+
+  /**
+   * The execution time (nanoseconds) of the last solve.
+   */
+  private long   aExTime     = 0;
+
+  /**
+   * The time (nanoseconds) the last solve spent waiting on panel reads.
+   */
+  private long   aWaitTime   = 0;
+
+  /**
+   * The number of bytes read from the matrix file by the last solve.
+   */
+  private long   aBytesRead  = 0;
+
+  /**
+   * The panel reader of the current solve.
+   */
+  private SparseMatrixHugePanelReader aReader = null;
+
+  /**
+   * Default constructor.
+   */
+  public LSQROutOfCore()
+  {
+  }
+
+  /**
+   * Sets the relative error of the matrix A.
+   * 
+   * @param atol The relative error of the matrix A.
+   */
+  public void aTol(double atol)
+  {
+    lsqrATol = atol;
+  }
+
+  /**
+   * Sets the relative error of the rhs.
+   * 
+   * @param btol The relative error of the rhs.
+   */
+  public void bTol(double btol)
+  {
+    lsqrBTol = btol;
+  }
+
+  /**
+   * Sets the upper limit on cond(Abar).
+   * 
+   * @param cl The condition limit.
+   */
+  public void conditionLimit(double cl)
+  {
+    lsqrConLim = cl;
+  }
+
+  /**
+   * Sets the maximum allowed iteration limit.
+   * 
+   * @param il The maximum allowed iteration limit.
+   */
+  public void iterationLimit(int il)
+  {
+    lsqrItnLim = il;
+  }
+
+  /**
+   * Sets the damping factor.
+   * 
+   * @param damp The least-squares solution damping factor.
+   */
+  public void damp(double damp)
+  {
+    lsqrDamp = damp;
+  }
+
+  /**
+   * Sets the maximum number of matrix entries read per panel.
+   * 
+   * @param n The maximum number of entries per panel.
+   */
+  public void setPanelSize(int n)
+  {
+    aPanelSize = n;
+  }
+
+  /**
+   * Returns the iteration count of the last solve.
+   * 
+   * @return The iteration count of the last solve.
+   */
+  public int iterationCount()
+  {
+    return lsqrIter;
+  }
+
+  /**
+   * Returns the stopping condition of the last solve (see LSQR.solve()).
+   * 
+   * @return The stopping condition of the last solve.
+   */
+  public int stopCondition()
+  {
+    return lsqrIStop;
+  }
+
+  /**
+   * Returns the estimated residual norm of the last solve.
+   * 
+   * @return The estimated residual norm of the last solve.
+   */
+  public double rNorm()
+  {
+    return lsqrRNorm;
+  }
+
+  /**
+   * Returns the estimated Frobenius norm of Abar of the last solve.
+   * 
+   * @return The estimated Frobenius norm of Abar of the last solve.
+   */
+  public double aNorm()
+  {
+    return lsqrANorm;
+  }
+
+  /**
+   * Returns the estimated condition of Abar of the last solve.
+   * 
+   * @return The estimated condition of Abar of the last solve.
+   */
+  public double aCondition()
+  {
+    return lsqrACond;
+  }
+
+  /**
+   * Returns the estimated solution norm of the last solve.
+   * 
+   * @return The estimated solution norm of the last solve.
+   */
+  public double xNorm()
+  {
+    return lsqrXNorm;
+  }
+
+  /**
+   * Returns the execution time (nanoseconds) of the last solve.
+   * 
+   * @return The execution time of the last solve.
+   */
+  public long getExecutionTime()
+  {
+    return aExTime;
+  }
+
+  /**
+   * Returns the time (nanoseconds) the last solve spent waiting on matrix
+   * panel reads, i.e. the read time that was not overlapped with the
+   * products.
+   * 
+   * @return The panel read wait time of the last solve.
+   */
+  public long getReadWaitTime()
+  {
+    return aWaitTime;
+  }
+
+  /**
+   * Returns the number of bytes read from the matrix file by the last solve.
+   * 
+   * @return The number of bytes read by the last solve.
+   */
+  public long getBytesRead()
+  {
+    return aBytesRead;
+  }
+
+  /**
+   * Solves the least-squares problem A * x = b where A is streamed from the
+   * SparseMatrixHuge file matrixFile.
+   * 
+   * @param matrixFile The SparseMatrixHuge file (CSR or CSC form).
+   * @param bRHS The rhs vector (matrix rows entries).
+   * @param x The solution vector (matrix columns entries). Output.
+   * @param se The solution error vector (matrix columns entries). Output.
+   * @return The stopping condition (see LSQR.solve()).
+   * @throws IOException
+   */
+  public int solve(String matrixFile, ArrayListDouble bRHS, double[] x,
+                   double[] se) throws IOException
+  {
+    aReader = new SparseMatrixHugePanelReader(matrixFile, aPanelSize);
+    try
+    {
+      int rows = aReader.getRowCount(), cols = aReader.getColumnCount();
+      if ((bRHS.size() != rows) || (x.length != cols) || (se.length != cols))
+        throw new IOException("Error: Vector sizes (" + bRHS.size() + ", " +
+                              x.length + ", " + se.length + ") do not " +
+                              "match the matrix size (" + rows + " x " +
+                              cols + ") ...");
+      solve(rows, cols, bRHS, x, se);
+      aWaitTime = aReader.getWaitTime();
+      aBytesRead = aReader.getBytesRead();
+    }
+    finally
+    {
+      aReader.close();
+      aReader = null;
+    }
+    return lsqrIStop;
+  }
+
+  /**
+   * Performs one sweep of the matrix file forming p = A * s - c * p, where
+   * A is taken in the order stored (rows for CSR, columns for CSC) and p is
+   * indexed by the stored direction, and scattering the new p into
+   * t = A' * p.
+   * 
+   * @param p The vector updated in place.
+   * @param s The multiplied vector.
+   * @param c The scale of the previous p.
+   * @param t The transpose product (output).
+   * @throws IOException
+   */
+  private void pass(double[] p, double[] s, double c, double[] t)
+          throws IOException
+  {
+    for (int j = 0; j < t.length; ++j) t[j] = 0.0;
+
+    Panel pnl;
+    while ((pnl = aReader.nextPanel()) != null)
+    {
+      int[] indx = pnl.getIndex();
+      double[] val = pnl.getValue();
+      for (int i = pnl.getFirst(); i < pnl.getLast(); ++i)
+      {
+        int strt = pnl.getStart(i), stop = pnl.getStart(i + 1);
+        double acc = -c * p[i];
+        for (int e = strt; e < stop; ++e) acc += val[e] * s[indx[e]];
+        p[i] = acc;
+        if (acc != 0.0)
+          for (int e = strt; e < stop; ++e) t[indx[e]] += val[e] * acc;
+      }
+    }
+  }
+
+  /**
+   * The LSQR iteration.
+   * 
+   * @param rows The number of matrix rows.
+   * @param cols The number of matrix columns.
+   * @param bRHS The rhs vector.
+   * @param x The solution vector (output).
+   * @param se The solution error vector (output).
+   * @throws IOException
+   */
+  private void solve(int rows, int cols, ArrayListDouble bRHS, double[] x,
+                     double[] se) throws IOException
+  {
+    double alfa, beta, bbnorm, bnorm, cTol, dampSq, ddnorm, res2, rhoBar,
+           phiBar, sn2, cs2, t, xxnorm, z;
+
+    long start = System.nanoTime();
+    boolean csr = aReader.isCSR();
+    int itnLim = (lsqrItnLim <= 0) ? 4 * cols : lsqrItnLim;
+    dampSq = lsqrDamp * lsqrDamp;
+    cTol = (lsqrConLim > 0.0) ? 1.0 / lsqrConLim : 0.0;
+
+    // the transpose product carried by the fused pass is A' * u for CSR
+    // and A * v for CSC
+
+    double[] u  = bRHS.toArray();
+    double[] v  = new double [cols];
+    double[] w  = new double [cols];
+    double[] tp = new double [csr ? cols : rows];
+    for (int j = 0; j < cols; ++j) x[j] = se[j] = 0.0;
+
+    lsqrIter = lsqrIStop = 0;
+    lsqrANorm = lsqrACond = lsqrXNorm = 0.0;
+    bbnorm = ddnorm = xxnorm = res2 = sn2 = z = 0.0;
+    cs2 = -1.0;
+
+    // set up the first vectors u and v for the bidiagonalization.
+    // these satisfy  beta * u = b,  alfa * v = A' * U.
+
+    alfa = 0.0;
+    beta = LSQR.dnrm2(u);
+    if (beta > 0.0)
+    {
+      LSQR.dscl(1.0 / beta, u);
+      if (csr)
+      {
+        pass(u, v, -1.0, tp);
+        System.arraycopy(tp, 0, v, 0, cols);
+      }
+      else
+        pass(v, u, 0.0, tp);
+      alfa = LSQR.dnrm2(v);
+    }
+    if (alfa > 0.0)
+    {
+      LSQR.dscl(1.0 / alfa, v);
+      if (!csr) LSQR.dscl(1.0 / alfa, tp);
+      System.arraycopy(v, 0, w, 0, cols);
+    }
+
+    rhoBar = alfa;
+    phiBar = beta;
+    bnorm  = beta;
+    lsqrRNorm = beta;
+
+    // test for x = 0 as an exact solution ... exit if true
+
+    if (alfa * beta == 0.0)
+    {
+      aExTime = System.nanoTime() - start;
+      return;
+    }
+
+    // ------------------------------------------------------------------
+    // Main iteration loop.
+    // ------------------------------------------------------------------
+
+    do
+    {
+      ++lsqrIter;
+
+      // Perform the next step of the bidiagonalization to obtain the
+      // next  beta, u, alfa, v.  These satisfy the relations
+      //       beta * u  =  A * v  -  alfa * u,
+      //       alfa * v  =  A' * u - beta * v.
+
+      if (csr)
+        pass(u, v, alfa, tp);
+      else
+        for (int i = 0; i < rows; ++i) u[i] = tp[i] - alfa * u[i];
+      beta = LSQR.dnrm2(u);
+      bbnorm += alfa * alfa + beta * beta + dampSq;
+
+      if (beta > 0.0)
+      {
+        LSQR.dscl(1.0 / beta, u);
+        if (csr)
+        {
+          t = 1.0 / beta;
+          for (int j = 0; j < cols; ++j) v[j] = t * tp[j] - beta * v[j];
+        }
+        else
+          pass(v, u, beta, tp);
+        alfa = LSQR.dnrm2(v);
+        if (alfa > 0.0)
+        {
+          LSQR.dscl(1.0 / alfa, v);
+          if (!csr) LSQR.dscl(1.0 / alfa, tp);
+        }
+      }
+
+      // Use a plane rotation to eliminate the damping parameter.
+      // This alters the diagonal (rhoBar) of the lower-bidiagonal matrix.
+
+      double rhBar2 = rhoBar * rhoBar + dampSq;
+      double rhBar1 = sqrt(rhBar2);
+      double cs1    = rhoBar   / rhBar1;
+      double sn1    = lsqrDamp / rhBar1;
+      double psi    = sn1 * phiBar;
+      phiBar       *= cs1;
+
+      // Use a plane rotation to eliminate the subdiagonal element (beta)
+      // of the lower-bidiagonal matrix, giving an upper-bidiagonal matrix.
+
+      double rho    =  sqrt(rhBar2 + beta * beta);
+      double cs     =  rhBar1 / rho;
+      double sn     =  beta   / rho;
+      double theta  =  sn * alfa;
+      rhoBar        = -cs * alfa;
+      double phi    =  cs * phiBar;
+      phiBar       *=  sn;
+      double tau    =  sn * phi;
+
+      // Update  x, w  and the standard error estimates.
+
+      double t1   =  phi   / rho;
+      double t2   = -theta / rho;
+      double t3sq =  1.0   / (rho * rho);
+      for (int j = 0; j < cols; ++j)
+      {
+        t      = w[j];
+        x[j]  += t1 * t;
+        w[j]   = t2 * t + v[j];
+        t     *= t3sq * t;
+        se[j] += t;
+        ddnorm += t;
+      }
+
+      // Use a plane rotation on the right to eliminate the
+      // super-diagonal element (theta) of the upper-bidiagonal matrix.
+      // Then use the result to estimate norm(x).
+
+      double delta  =  sn2 * rho;
+      double gamBar = -cs2 * rho;
+      double rhs    =  phi - delta * z;
+      double zBar   =  rhs / gamBar;
+      lsqrXNorm     =  sqrt(xxnorm + zBar * zBar);
+      double gamma  =  sqrt(gamBar * gamBar + theta * theta);
+      cs2           =  gamBar / gamma;
+      sn2           =  theta  / gamma;
+      z             =  rhs    / gamma;
+      xxnorm       +=  z * z;
+
+      // Test for convergence.
+
+      lsqrANorm = sqrt(bbnorm);
+      lsqrACond = lsqrANorm * sqrt(ddnorm);
+      res2     += psi * psi;
+      lsqrRNorm = sqrt(phiBar * phiBar + res2);
+      double arnorm = alfa * abs(tau);
+
+      double cmptbl = lsqrRNorm / bnorm;
+      double lsacc  = 0.0;
+      if (lsqrRNorm > 0.0) lsacc = arnorm / (lsqrANorm * lsqrRNorm);
+      double test3  = 1.0 / lsqrACond;
+      t1 = cmptbl / (1.0 + lsqrANorm * lsqrXNorm / bnorm);
+      double rTol = lsqrBTol + lsqrATol * lsqrANorm * lsqrXNorm / bnorm;
+
+      if (lsqrIter >= itnLim) lsqrIStop = 7;
+      if (1.0 + test3 <= 1.0) lsqrIStop = 6;
+      if (1.0 + lsacc <= 1.0) lsqrIStop = 5;
+      if (1.0 + t1    <= 1.0) lsqrIStop = 4;
+      if (test3  <= cTol)     lsqrIStop = 3;
+      if (lsacc  <= lsqrATol) lsqrIStop = 2;
+      if (cmptbl <= rTol)     lsqrIStop = 1;
+    } while (lsqrIStop == 0);
+
+    // ------------------------------------------------------------------
+    // End of main iteration loop
+    // ------------------------------------------------------------------
+
+    // Finish off the standard error estimates.
+
+    t = 1.0;
+    if (rows > cols) t = rows - cols;
+    if (dampSq > 0.0) t = rows;
+    t = lsqrRNorm / sqrt(t);
+    for (int j = 0; j < cols; ++j) se[j] = t * sqrt(se[j]);
+
+    aExTime = System.nanoTime() - start;
+  }
+}
@@ -0,0 +1,68 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.matrix;
+
+/**
+ * A right preconditioner M for LSQR (see LSQR.setPreconditioner(...)). LSQR
+ * solves min || A * inv(M) * y - b || for y and returns x = inv(M) * y. A
+ * good M makes the columns of A * inv(M) close to orthonormal so that far
+ * fewer iterations are required. Implementations must be usable repeatedly
+ * and must not retain the vectors passed to them.
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public interface LSQRPreconditioner
+{
+  /**
+   * Returns the number of columns (the size of the vectors operated on).
+   * 
+   * @return The number of columns.
+   */
+  int getColumnCount();
+
+  /**
+   * Replaces x with inv(M) * x.
+   * 
+   * @param x The vector to be transformed in place.
+   */
+  void solve(double[] x);
+
+  /**
+   * Replaces x with inv(M)' * x.
+   * 
+   * @param x The vector to be transformed in place.
+   */
+  void solveTranspose(double[] x);
+}
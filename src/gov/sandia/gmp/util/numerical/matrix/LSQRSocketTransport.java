@@ -0,0 +1,342 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.matrix;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+/**
+ * Reference TCP implementation of LSQRTransport. Rank 0 is a hub that
+ * accepts a connection from each of the other ranks. An all-reduce sends
+ * every worker's buffer to the hub, which sums them in rank order and
+ * returns the result to every worker, so all ranks receive bit-identical
+ * sums. The hub is a natural fit for the modest process counts of a single
+ * inversion; a ring or tree implementation can be substituted for large
+ * process counts without changing LSQRDistributed.
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class LSQRSocketTransport implements LSQRTransport
+{
+  /**
+   * The time (milliseconds) a worker keeps retrying its connection to the
+   * hub, which may not be listening yet.
+   */
+  private static final long CONNECT_TIMEOUT = 60000;
+
+  /**
+   * The rank of this process.
+   */
+  private int                aRank;
+
+  /**
+   * The number of processes.
+   */
+  private int                aSize;
+
+  /**
+   * The sockets of this process (the worker sockets in rank order on the
+   * hub, the hub socket on a worker).
+   */
+  private Socket[]           aSocket;
+
+  /**
+   * The input streams of aSocket.
+   */
+  private DataInputStream[]  aIn;
+
+  /**
+   * The output streams of aSocket.
+   */
+  private DataOutputStream[] aOut;
+
+  /**
+   * The byte buffer used to convert doubles for transfer.
+   */
+  private byte[]             aBytes = new byte [0];
+
+  /**
+   * The receive buffer used by the hub.
+   */
+  private double[]           aRecv  = new double [0];
+
+  /**
+   * Creates the hub (rank 0) and waits for the size - 1 workers to connect
+   * to server. The server socket is left open and remains owned by the
+   * caller.
+   * 
+   * @param server The listening socket of the hub.
+   * @param size The number of processes.
+   * @throws IOException
+   */
+  public LSQRSocketTransport(ServerSocket server, int size) throws IOException
+  {
+    acceptWorkers(server, size);
+  }
+
+  /**
+   * Creates the hub (rank 0) listening on port and waits for the size - 1
+   * workers to connect. The listening socket is closed once all workers have
+   * connected (or the connection fails) so that the port is released.
+   * 
+   * @param port The port on which the hub listens.
+   * @param size The number of processes.
+   * @throws IOException
+   */
+  public LSQRSocketTransport(int port, int size) throws IOException
+  {
+    ServerSocket server = new ServerSocket(port);
+    try
+    {
+      acceptWorkers(server, size);
+    }
+    finally
+    {
+      server.close();
+    }
+  }
+
+  /**
+   * Initializes this process as the hub (rank 0) and waits for the size - 1
+   * workers to connect to server.
+   * 
+   * @param server The listening socket of the hub.
+   * @param size The number of processes.
+   * @throws IOException
+   */
+  private void acceptWorkers(ServerSocket server, int size) throws IOException
+  {
+    aRank   = 0;
+    aSize   = size;
+    aSocket = new Socket [size];
+    aIn     = new DataInputStream [size];
+    aOut    = new DataOutputStream [size];
+    try
+    {
+      for (int i = 1; i < size; ++i)
+      {
+        // each worker identifies itself by sending its rank
+
+        Socket s = server.accept();
+        s.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(
+                             new BufferedInputStream(s.getInputStream()));
+        int r = in.readInt();
+        if ((r < 1) || (r >= size) || (aSocket[r] != null))
+        {
+          s.close();
+          throw new IOException("Error: Invalid or duplicate worker rank " +
+                                r + " ...");
+        }
+        aSocket[r] = s;
+        aIn[r]     = in;
+        aOut[r]    = new DataOutputStream(
+                     new BufferedOutputStream(s.getOutputStream()));
+      }
+    }
+    catch (IOException ex)
+    {
+      close();
+      throw ex;
+    }
+  }
+
+  /**
+   * Creates worker rank (1 &lt;= rank &lt; size) and connects it to the hub
+   * at host:port, retrying while the hub is not yet listening.
+   * 
+   * @param host The hub host.
+   * @param port The hub port.
+   * @param rank The rank of this worker.
+   * @param size The number of processes.
+   * @throws IOException
+   */
+  public LSQRSocketTransport(String host, int port, int rank, int size)
+         throws IOException
+  {
+    if ((rank < 1) || (rank >= size))
+      throw new IOException("Error: Worker rank " + rank + " is not in [1, " +
+                            size + ") ...");
+    aRank   = rank;
+    aSize   = size;
+    aSocket = new Socket [1];
+    aIn     = new DataInputStream [1];
+    aOut    = new DataOutputStream [1];
+
+    long end = System.currentTimeMillis() + CONNECT_TIMEOUT;
+    while (aSocket[0] == null)
+    {
+      try
+      {
+        aSocket[0] = new Socket(host, port);
+      }
+      catch (IOException ex)
+      {
+        if (System.currentTimeMillis() > end) throw ex;
+        try
+        {
+          Thread.sleep(50);
+        }
+        catch (InterruptedException iex)
+        {
+          Thread.currentThread().interrupt();
+          throw ex;
+        }
+      }
+    }
+    aSocket[0].setTcpNoDelay(true);
+    aIn[0]  = new DataInputStream(
+              new BufferedInputStream(aSocket[0].getInputStream()));
+    aOut[0] = new DataOutputStream(
+              new BufferedOutputStream(aSocket[0].getOutputStream()));
+    aOut[0].writeInt(rank);
+    aOut[0].flush();
+  }
+
+  /**
+   * Returns the rank of this process.
+   * 
+   * @return The rank of this process.
+   */
+  @Override
+  public int getRank()
+  {
+    return aRank;
+  }
+
+  /**
+   * Returns the number of processes.
+   * 
+   * @return The number of processes.
+   */
+  @Override
+  public int getSize()
+  {
+    return aSize;
+  }
+
+  /**
+   * Sums buf[0, len) over all ranks in rank order (on the hub) and returns
+   * the sum to every rank.
+   * 
+   * @param buf The buffer to be summed in place.
+   * @param len The number of leading entries of buf to sum.
+   * @throws IOException
+   */
+  @Override
+  public void allReduceSum(double[] buf, int len) throws IOException
+  {
+    if (aRank == 0)
+    {
+      // sum the worker buffers in rank order and return the result
+
+      if (aRecv.length < len) aRecv = new double [len];
+      for (int r = 1; r < aSize; ++r)
+      {
+        receive(aIn[r], aRecv, len);
+        for (int i = 0; i < len; ++i) buf[i] += aRecv[i];
+      }
+      for (int r = 1; r < aSize; ++r) send(aOut[r], buf, len);
+    }
+    else
+    {
+      send(aOut[0], buf, len);
+      receive(aIn[0], buf, len);
+    }
+  }
+
+  /**
+   * Writes buf[0, len) to out, preceded by len.
+   * 
+   * @param out The output stream.
+   * @param buf The buffer.
+   * @param len The number of entries to write.
+   * @throws IOException
+   */
+  private void send(DataOutputStream out, double[] buf, int len)
+          throws IOException
+  {
+    if (aBytes.length < 8 * len) aBytes = new byte [8 * len];
+    ByteBuffer.wrap(aBytes).asDoubleBuffer().put(buf, 0, len);
+    out.writeInt(len);
+    out.write(aBytes, 0, 8 * len);
+    out.flush();
+  }
+
+  /**
+   * Reads len entries from in into buf, verifying the length prefix.
+   * 
+   * @param in The input stream.
+   * @param buf The buffer.
+   * @param len The expected number of entries.
+   * @throws IOException
+   */
+  private void receive(DataInputStream in, double[] buf, int len)
+          throws IOException
+  {
+    int n = in.readInt();
+    if (n != len)
+      throw new IOException("Error: All-reduce length mismatch (expected " +
+                            len + ", received " + n + ") ...");
+    if (aBytes.length < 8 * len) aBytes = new byte [8 * len];
+    in.readFully(aBytes, 0, 8 * len);
+    ByteBuffer.wrap(aBytes).asDoubleBuffer().get(buf, 0, len);
+  }
+
+  /**
+   * Closes the sockets of this process.
+   * 
+   * @throws IOException
+   */
+  @Override
+  public void close() throws IOException
+  {
+    for (int i = 0; i < aSocket.length; ++i)
+    {
+      if (aSocket[i] != null)
+      {
+        aSocket[i].close();
+        aSocket[i] = null;
+      }
+    }
+  }
+}
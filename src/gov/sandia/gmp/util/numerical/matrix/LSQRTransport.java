@@ -0,0 +1,82 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.matrix;
+
+import java.io.IOException;
+
+/**
+ * The communication required by LSQRDistributed between the processes that
+ * share a row partitioned LSQR solution. Each process is identified by a
+ * rank in [0, size). Implementations must combine the buffers in an order
+ * that does not depend on message timing so that every rank receives
+ * bit-identical results (LSQRDistributed relies on this to keep its
+ * replicated vectors identical on all ranks without further communication).
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public interface LSQRTransport
+{
+  /**
+   * Returns the rank of this process.
+   * 
+   * @return The rank of this process.
+   */
+  int getRank();
+
+  /**
+   * Returns the number of processes.
+   * 
+   * @return The number of processes.
+   */
+  int getSize();
+
+  /**
+   * Replaces buf[0, len) on every rank with the element-wise sum of buf[0,
+   * len) over all ranks. Every rank must call this method with the same len.
+   * 
+   * @param buf The buffer to be summed in place.
+   * @param len The number of leading entries of buf to sum.
+   * @throws IOException
+   */
+  void allReduceSum(double[] buf, int len) throws IOException;
+
+  /**
+   * Releases the transport's connections.
+   * 
+   * @throws IOException
+   */
+  void close() throws IOException;
+}
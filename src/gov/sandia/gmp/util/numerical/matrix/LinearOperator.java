@@ -0,0 +1,104 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.matrix;
+
+import java.io.IOException;
+
+/**
+ * A linear operator A (rows x columns) that can form the products A * x and
+ * A' * u without exposing its storage. Iterative solvers (see
+ * LSQR.solve(LinearOperator, ...)) only require these products, so any
+ * implementation (e.g. SparseMatrix) can be solved directly without first
+ * being copied into solver specific arrays.
+ * 
+ * <p> All products overwrite the output vector(s). Output vectors may be
+ * longer than the operator dimension in which case the extra entries are set
+ * to zero. The multi-vector forms multiply each input vector x[k] into the
+ * output vector y[k], passing over the operator once for all vectors.
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public interface LinearOperator
+{
+  /**
+   * Returns the number of rows in the operator (the length of A * x).
+   * 
+   * @return The number of rows in the operator.
+   */
+  int getRowCount();
+
+  /**
+   * Returns the number of columns in the operator (the length of A' * u).
+   * 
+   * @return The number of columns in the operator.
+   */
+  int getColumnCount();
+
+  /**
+   * Forms y = A * x.
+   * 
+   * @param x The input vector (at least getColumnCount() entries).
+   * @param y The output vector (at least getRowCount() entries).
+   * @throws IOException
+   */
+  void multiply(double[] x, double[] y) throws IOException;
+
+  /**
+   * Forms v = A' * u.
+   * 
+   * @param u The input vector (at least getRowCount() entries).
+   * @param v The output vector (at least getColumnCount() entries).
+   * @throws IOException
+   */
+  void multiplyTranspose(double[] u, double[] v) throws IOException;
+
+  /**
+   * Forms y[k] = A * x[k] for each input vector x[k].
+   * 
+   * @param x The input vectors.
+   * @param y The output vectors (one per input vector).
+   * @throws IOException
+   */
+  void multiply(double[][] x, double[][] y) throws IOException;
+
+  /**
+   * Forms v[k] = A' * u[k] for each input vector u[k].
+   * 
+   * @param u The input vectors.
+   * @param v The output vectors (one per input vector).
+   * @throws IOException
+   */
+  void multiplyTranspose(double[][] u, double[][] v) throws IOException;
+}
@@ -39,7 +39,7 @@ import gov.sandia.gmp.util.containers.arraylist.ArrayListDouble;
 import gov.sandia.gmp.util.containers.arraylist.ArrayListInt;
 import gov.sandia.gmp.util.filebuffer.FileInputBuffer;
 import gov.sandia.gmp.util.filebuffer.FileOutputBuffer;
-import gov.sandia.gmp.util.numerical.doubledouble.DoubleDouble;
+import gov.sandia.gmp.util.numerical.doubledouble.DoubleDoubleKernels;
 import gov.sandia.gmp.util.numerical.intrinsicsort.IntrinsicSort;
 
 import javax.swing.*;
@@ -277,11 +277,25 @@ public class SparseMatrixVector implements Serializable
   {
     int[]    ia = aIndex.getArray();
     double[] va = aValue.getArray();
-    for (int i = 0; i < aValue.size(); ++i)
-    {
-      int j = ia[i];
-      DoubleDouble.addMultFast(val, va[i], vhi[j], vlo[j]);
-    }
+    DoubleDoubleKernels.addMult(val, va, ia, 0, aValue.size(), vhi, vlo);
+  }
+
+  /**
+   * Performs a double precision update of this sparse vector with the input
+   * vector vec using compensated accumulation (see
+   * DoubleDoubleKernels.addMultCompensated()). The result is as accurate as
+   * if accumulated in twice the working precision and then rounded.
+   * 
+   * @param val The initial value of the returned result.
+   * @param vec The vector that will multiply this sparse vector. This vector
+   *            is addressed only at locations defined in aIndex.
+   * @return val + sum(aValue[i] * vec[aIndex[i]]; i = 0; i < aValue.size()).
+   */
+  public double updateCompensated(double val, double[] vec)
+  {
+    return DoubleDoubleKernels.addMultCompensated(val, aValue.getArray(),
+                                                  aIndex.getArray(), 0,
+                                                  aValue.size(), vec);
   }
 
   /**
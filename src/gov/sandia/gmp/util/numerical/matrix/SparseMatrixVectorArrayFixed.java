@@ -37,6 +37,7 @@ package gov.sandia.gmp.util.numerical.matrix;
 
 import gov.sandia.gmp.util.filebuffer.FileInputBuffer;
 import gov.sandia.gmp.util.filebuffer.FileOutputBuffer;
+import gov.sandia.gmp.util.numerical.doubledouble.DoubleDoubleKernels;
 
 import java.io.IOException;
 import java.io.Serializable;
@@ -77,6 +78,11 @@ public class SparseMatrixVectorArrayFixed implements Serializable
     return aRowStart[i];
   }
 
+  public int[] getRowStartArray()
+  {
+    return aRowStart;
+  }
+
   public long getMemory()
   {
     return aRowStart.length * SINT + aIndexArray.length * (SINT + SDBL) + 32;
@@ -122,6 +128,55 @@ public class SparseMatrixVectorArrayFixed implements Serializable
     aIndexArray = null;
     aValueArray = null;
   }
+
+  /**
+   * Double precision update of row i with the input vector vec (the flat
+   * equivalent of SparseMatrixVector.update(val, vec)).
+   * 
+   * @param i The row to be multiplied.
+   * @param val The initial value of the returned result.
+   * @return val + sum(value(i, j) * vec[index(i, j)]) over all j in row i.
+   */
+  public double update(int i, double val, double[] vec)
+  {
+    int stop = aRowStart[i+1];
+    for (int k = aRowStart[i]; k < stop; ++k)
+      val += aValueArray[k] * vec[aIndexArray[k]];
+    return val;
+  }
+
+  /**
+   * DoubleDouble precision update of row i with the input vector v(hi,lo)
+   * (the flat equivalent of SparseMatrixVector.update(val, vhi, vlo)).
+   * 
+   * @param i The row to be multiplied.
+   * @param val The initial value on input and the result on output
+   *            val(hi,lo) += sum(value(i, j) * v[index(i, j)](hi,lo)).
+   * @param vhi The DoubleDouble high component of the multiplying vector.
+   * @param vlo The DoubleDouble low component of the multiplying vector.
+   */
+  public void update(int i, double[] val, double[] vhi, double[] vlo)
+  {
+    DoubleDoubleKernels.addMult(val, aValueArray, aIndexArray, aRowStart[i],
+                                aRowStart[i+1], vhi, vlo);
+  }
+
+  /**
+   * Double precision update of row i with the input vector vec using
+   * compensated accumulation (the flat equivalent of
+   * SparseMatrixVector.updateCompensated(val, vec)).
+   * 
+   * @param i The row to be multiplied.
+   * @param val The initial value of the returned result.
+   * @param vec The multiplying vector.
+   * @return val + sum(value(i, j) * vec[index(i, j)]) over all j in row i.
+   */
+  public double updateCompensated(int i, double val, double[] vec)
+  {
+    return DoubleDoubleKernels.addMultCompensated(val, aValueArray,
+                                                  aIndexArray, aRowStart[i],
+                                                  aRowStart[i+1], vec);
+  }
 //
 //  public class SMVEntry
 //  {
@@ -227,6 +282,75 @@ public class SparseMatrixVectorArrayFixed implements Serializable
 //    aEntryCount = 0;
 //  }
 
+  /**
+   * Copies the input list of sparse matrix vectors into a single contiguous
+   * row start / index / value representation with the same orientation. The
+   * input list is not changed. The peak memory is two copies of the matrix
+   * (the input list and the contiguous copy).
+   * 
+   * @param smvArray The input sparse matrix.
+   * @return The contiguous form of the input matrix.
+   */
+  public static SparseMatrixVectorArrayFixed
+         createFixedSMVArray(ArrayList<SparseMatrixVector> smvArray)
+  {
+    return createFixedSMVArray(smvArray, false);
+  }
+
+  /**
+   * Same as createFixedSMVArray(smvArray) except that the input list is
+   * EMPTIED. Each list entry is set to null once it is copied, and the list
+   * is cleared on exit, so that the per row arrays can be collected while
+   * the copy proceeds. The contiguous arrays are allocated before the copy
+   * starts so the peak memory is still two copies of the matrix, but only
+   * the contiguous copy is retained on exit. The caller must not hold any
+   * other references to the list entries if the memory is to be reclaimed.
+   * 
+   * @param smvArray The input sparse matrix (empty on exit).
+   * @return The contiguous form of the input matrix.
+   */
+  public static SparseMatrixVectorArrayFixed
+         createFixedSMVArrayAndClear(ArrayList<SparseMatrixVector> smvArray)
+  {
+    return createFixedSMVArray(smvArray, true);
+  }
+
+  /**
+   * Copies the input list of sparse matrix vectors into a single contiguous
+   * row start / index / value representation. If clear is true each list
+   * entry is set to null once copied and the list is cleared on exit.
+   * 
+   * @param smvArray The input sparse matrix.
+   * @param clear    If true the input list is emptied.
+   * @return The contiguous form of the input matrix.
+   */
+  private static SparseMatrixVectorArrayFixed
+          createFixedSMVArray(ArrayList<SparseMatrixVector> smvArray,
+                              boolean clear)
+  {
+    int nentries = 0;
+    for (int i = 0; i < smvArray.size(); ++i)
+      nentries += smvArray.get(i).size();
+
+    SparseMatrixVectorArrayFixed smvf;
+    smvf = new SparseMatrixVectorArrayFixed(smvArray.size(), nentries);
+    int rowStart = 0;
+    for (int i = 0; i < smvArray.size(); ++i)
+    {
+      SparseMatrixVector smv = smvArray.get(i);
+      int n = smv.size();
+      smvf.setRowStart(i, rowStart);
+      System.arraycopy(smv.getIndexArray(), 0, smvf.aIndexArray, rowStart, n);
+      System.arraycopy(smv.getValueArray(), 0, smvf.aValueArray, rowStart, n);
+      rowStart += n;
+      if (clear) smvArray.set(i, null);
+    }
+    smvf.setRowStart(smvArray.size(), rowStart);
+    if (clear) smvArray.clear();
+
+    return smvf;
+  }
+
   public static SparseMatrixVectorArrayFixed
          createTransposedFixedSMVArray(ArrayList<SparseMatrixVector> smvArray,
                                        int colStart, int nTrnspRows)
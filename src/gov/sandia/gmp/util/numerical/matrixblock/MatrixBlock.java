@@ -44,6 +44,9 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.net.InetAddress;
 import java.util.Date;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import static gov.sandia.gmp.util.globals.Globals.NL;
 
@@ -326,7 +329,8 @@ public class MatrixBlock implements Serializable
   private int                        aDeleteFailures     = 0;
 
   /**
-   * The accumulated time waiting for a return from function requestIO().
+   * The accumulated time waiting for IO admission from the IO scheduler or
+   * from function requestIO().
    */
   private long                       aIOWaitTime         = 0;
   
@@ -360,6 +364,13 @@ public class MatrixBlock implements Serializable
    */
   private static long                aIOCatchSleep       = 1;
 
+  /**
+   * The optional IO scheduler used to limit the number of concurrent IO
+   * operations (read, write, rename, or delete) per server. If null no
+   * scheduling is performed.
+   */
+  private static volatile MatrixBlockIOScheduler aIOScheduler = null;
+
   /**
    * Standard constructor.
    * 
@@ -610,6 +621,71 @@ public class MatrixBlock implements Serializable
     aIOCatchSleep = ioFailSleepTime;
   }
 
+  /**
+   * Static function to set the IO scheduler used by all MatrixBlocks to limit
+   * the number of concurrent IO operations per server. Setting null (the
+   * default) turns scheduling off.
+   * 
+   * @param ioScheduler The new IO scheduler (or null).
+   */
+  public static void setIOScheduler(MatrixBlockIOScheduler ioScheduler)
+  {
+    aIOScheduler = ioScheduler;
+  }
+
+  /**
+   * Returns the IO scheduler used by all MatrixBlocks, or null if none is
+   * defined.
+   * 
+   * @return The IO scheduler used by all MatrixBlocks, or null.
+   */
+  public static MatrixBlockIOScheduler getIOScheduler()
+  {
+    return aIOScheduler;
+  }
+
+  /**
+   * Requests admission for IO operation op on the server srvrTag from the
+   * IO scheduler (if one is defined). Any time spent waiting is added to
+   * aIOWaitTime and reported through notifyIOBlocking(tim). The returned
+   * scheduler must be passed to releaseIO(...) when the operation attempt
+   * is complete.
+   * 
+   * @param op      File operation ... "READ", "WRITE", "RENAME", or "DELETE".
+   * @param srvrTag The server tag of the file being operated on.
+   * @return The scheduler that admitted the operation, or null if no
+   *         scheduler is defined.
+   * @throws IOException
+   */
+  private MatrixBlockIOScheduler acquireIO(String op, String srvrTag)
+          throws IOException
+  {
+    MatrixBlockIOScheduler ios = aIOScheduler;
+    if (ios == null) return null;
+
+    long tim = ios.acquire(srvrTag, op);
+    if (tim > 0)
+    {
+      aIOWaitTime += tim;
+      notifyIOBlocking(tim);
+    }
+    return ios;
+  }
+
+  /**
+   * Releases an IO operation admitted by acquireIO(op, srvrTag). Does nothing
+   * if the input scheduler is null.
+   * 
+   * @param ios     The scheduler returned by acquireIO(op, srvrTag).
+   * @param op      File operation ... "READ", "WRITE", "RENAME", or "DELETE".
+   * @param srvrTag The server tag of the file being operated on.
+   */
+  private void releaseIO(MatrixBlockIOScheduler ios, String op,
+                         String srvrTag)
+  {
+    if (ios != null) ios.release(srvrTag, op);
+  }
+
   /**
    * Returns the amount of time this MatrixBlock waited for an IO request to
    * complete. This will be zero unless the MatrixBlock is the derived class
@@ -1392,41 +1468,112 @@ public class MatrixBlock implements Serializable
     if (inTime > 1) notifyIOBlocking(inTime);
 
     // if no data has been loaded and source exists then load ... otherwise
-    // return null
+    // throw an error
     
+    if (!loadBlock())
+    {
+      throw new IOException("Bad Source Path Name (" +
+                            this.getSourcePathFileName() + ") for Block " +
+                            aBlkRow + "," + aBlkCol + " ...");
+    }
+
+    // get sub-block array and return
+
+    return obtainFillReleaseSubBlocks("OBTAIN", transpose, (new Date()).getTime());
+  }
+  
+  /**
+   * Loads this block from its source path if it is not already loaded. The
+   * load is bracketed by the IO hooks (requestIO(), notifyIOAllocate(...),
+   * and completedIO(...)) so that an owning MatrixBlockManager can track it.
+   * Returns true if the block is loaded on exit and false if it was not
+   * loaded and no source file exists.
+   * 
+   * @return True if the block is loaded on exit.
+   * @throws IOException
+   */
+  public synchronized boolean loadBlock() throws IOException
+  {
+    // exit if already loaded or if no source exists
+
+    if (aSubBlks != null) return true;
+    if (!isSourcePathFileNameDefined()) return false;
+
+    // read the block
+
+    requestIO();
+    notifyIOAllocate(-aAllocatedMem, false);
+    readBlockCatch();
+    defineMemoryAllocation();
+    notifyIOAllocate(aAllocatedMem, true);
+    completedIO("READ", MatrixBlockFileServer.getPathTag(aSrcPath));
     if (aSubBlks == null)
     {
-      if (isSourcePathFileNameDefined())
+      throw new IOException("Read Failed for Block " + aBlkRow +
+                            "," + aBlkCol + " ...");
+    }
+
+    return true;
+  }
+
+  /**
+   * Submits an asynchronous load of this block (see loadBlock()) to the input
+   * executor and returns the future of the load. The future returns this
+   * block when the load completes. Any thread that attempts to lock the
+   * sub-blocks while the load is in progress blocks until it completes.
+   * 
+   * @param es The executor on which the load is performed.
+   * @return The future of the load.
+   */
+  public Future<MatrixBlock> readBlockAsync(ExecutorService es)
+  {
+    final MatrixBlock mb = this;
+    return es.submit(new Callable<MatrixBlock>()
+    {
+      @Override
+      public MatrixBlock call() throws IOException
       {
-        requestIO();
-        notifyIOAllocate(-aAllocatedMem, false);
-        readBlockCatch();
-        defineMemoryAllocation();
-        notifyIOAllocate(aAllocatedMem, true);
-        completedIO("READ", MatrixBlockFileServer.getPathTag(aSrcPath));
-        if (aSubBlks == null)
+        if (!loadBlock())
         {
-        	throw new IOException("Read Failed for Block " + aBlkRow +
-        			                  "," + aBlkCol + " ...");
+          throw new IOException("Bad Source Path Name (" +
+                                getSourcePathFileName() + ") for Block " +
+                                aBlkRow + "," + aBlkCol + " ...");
         }
+        return mb;
       }
-      else
+    });
+  }
+
+  /**
+   * Submits an asynchronous write of this block to its destination path
+   * (see writeBlockCatch()) to the input executor and returns the future of
+   * the write. If unLoad is true the block is unloaded after it is written
+   * (if it is not locked). The caller must not modify the sub-blocks after
+   * this call until the returned future completes.
+   * 
+   * @param es     The executor on which the write is performed.
+   * @param unLoad If true the block is unloaded after it is written.
+   * @return The future of the write. The future returns this block.
+   */
+  public Future<MatrixBlock> writeBlockAsync(ExecutorService es,
+                                             final boolean unLoad)
+  {
+    final MatrixBlock mb = this;
+    return es.submit(new Callable<MatrixBlock>()
+    {
+      @Override
+      public MatrixBlock call() throws IOException
       {
-        if (aSubBlks == null)
+        synchronized (mb)
         {
-        	throw new IOException("Bad Source Path Name (" +
-                                this.getSourcePathFileName() + ") for Block " +
-                                aBlkRow + "," + aBlkCol + " ...");
+          writeBlockCatch();
+          if (unLoad && !isLocked()) unLoad();
         }
-        return null;
+        return mb;
       }
-    }
-
-    // get sub-block array and return
-
-    return obtainFillReleaseSubBlocks("OBTAIN", transpose, (new Date()).getTime());
+    });
   }
-  
+
   /**
    * Retrieves, releases, or fills the sub-blocks of this MatrixBlock given
    * the input mode. If retrieval is requested (mode = "OBTAIN") a lock is set
@@ -1688,27 +1835,7 @@ public class MatrixBlock implements Serializable
    */
   public static void transpose(double[][] A)
   {
-    double[] arowi, arowj;
-
-    // get number of rows and loop over each row
-
-    int n = A.length;
-    for (int i = 1; i < n; ++i)
-    {
-      // get ith row and loop over all columns less than the row index
-      // (lower triangular)
-
-      arowi = A[i];
-      for (int j = 0; j < i; ++j)
-      {
-        // swap lower triangular entry with upper triangular entry
-
-        arowj      = A[j];
-        double swp = arowi[j];
-        arowi[j]   = arowj[i];
-        arowj[i]   = swp;
-      }
-    }
+    MatrixBlockKernels.transpose(A, A.length);
   }
 
   /**
@@ -2143,8 +2270,10 @@ public class MatrixBlock implements Serializable
     long strtTime = (new Date()).getTime();
     int ecnt = 0;
     Exception ex = null;
+    String srvrTag = MatrixBlockFileServer.getPathTag(pthFilHdr);
     while (true)
     {
+      MatrixBlockIOScheduler ios = acquireIO("READ", srvrTag);
       try
       {
         // read block ... if successful break out of while loop for return
@@ -2154,6 +2283,11 @@ public class MatrixBlock implements Serializable
       }
       catch (Exception exc)
       {
+        // release the IO admission before sleeping
+
+        releaseIO(ios, "READ", srvrTag);
+        ios = null;
+
         // unsuccessful ... increment count and try again ... after 
         // exceeding aReadWriteFailLimit throw error
 
@@ -2172,6 +2306,10 @@ public class MatrixBlock implements Serializable
         catch (InterruptedException e)
         { }
       }
+      finally
+      {
+        releaseIO(ios, "READ", srvrTag);
+      }
     }
 
     if (ecnt > 0)
@@ -2494,8 +2632,10 @@ public class MatrixBlock implements Serializable
     long strtTime = (new Date()).getTime();
     int ecnt = 0;
     Exception ex = null;
+    String srvrTag = MatrixBlockFileServer.getPathTag(pthFilHdr);
     while (true)
     {
+      MatrixBlockIOScheduler ios = acquireIO("WRITE", srvrTag);
       try
       {
         // write diagonal ... if successful break out of while loop for return
@@ -2507,6 +2647,11 @@ public class MatrixBlock implements Serializable
       }
       catch (Exception exc)
       {
+        // release the IO admission before sleeping
+
+        releaseIO(ios, "WRITE", srvrTag);
+        ios = null;
+
         // unsuccessful ... increment count and try again ... after 
         // exceeding aReadWriteFailLimit throw error
 
@@ -2525,6 +2670,10 @@ public class MatrixBlock implements Serializable
         catch (InterruptedException e)
         { }
       }
+      finally
+      {
+        releaseIO(ios, "WRITE", srvrTag);
+      }
     }
 
     if (ecnt > 0)
@@ -2605,8 +2754,10 @@ public class MatrixBlock implements Serializable
     long strtTime = (new Date()).getTime();
     int ecnt = 0;
     Exception ex = null;
+    String srvrTag = MatrixBlockFileServer.getPathTag(pthFilHdr);
     while (true)
     {
+      MatrixBlockIOScheduler ios = acquireIO("WRITE", srvrTag);
       try
       {
         // write block ... if successful break out of while loop for return
@@ -2616,6 +2767,11 @@ public class MatrixBlock implements Serializable
       }
       catch (Exception exc)
       {
+        // release the IO admission before sleeping
+
+        releaseIO(ios, "WRITE", srvrTag);
+        ios = null;
+
         // unsuccessful ... increment count and try again ... after 
         // exceeding aReadWriteFailLimit throw error
 
@@ -2634,6 +2790,10 @@ public class MatrixBlock implements Serializable
         catch (InterruptedException e)
         { }
       }
+      finally
+      {
+        releaseIO(ios, "WRITE", srvrTag);
+      }
     }
 
     if (ecnt > 0)
@@ -2870,8 +3030,10 @@ public class MatrixBlock implements Serializable
 
     int ecnt = 0;
     Exception ex = null;
+    String srvrTag = MatrixBlockFileServer.getPathTag(oldPthFilName);
     while (true)
     {
+      MatrixBlockIOScheduler ios = acquireIO("RENAME", srvrTag);
       try
       {
         // rename block ... if successful break out of while loop for return
@@ -2881,6 +3043,11 @@ public class MatrixBlock implements Serializable
       }
       catch (Exception exc)
       {
+        // release the IO admission before sleeping
+
+        releaseIO(ios, "RENAME", srvrTag);
+        ios = null;
+
         // unsuccessful ... increment count and try again ... after 
         // exceeding aReadWriteFailLimit throw error
 
@@ -2899,6 +3066,10 @@ public class MatrixBlock implements Serializable
         catch (InterruptedException e)
         { }
       }
+      finally
+      {
+        releaseIO(ios, "RENAME", srvrTag);
+      }
     }
 
     if (ecnt > 0)
@@ -2946,8 +3117,10 @@ public class MatrixBlock implements Serializable
 
     int ecnt = 0;
     Exception ex = null;
+    String srvrTag = MatrixBlockFileServer.getPathTag(pthFilName);
     while (true)
     {
+      MatrixBlockIOScheduler ios = acquireIO("DELETE", srvrTag);
       try
       {
         // delete block ... if successful break out of while loop for return
@@ -2956,6 +3129,11 @@ public class MatrixBlock implements Serializable
       }
       catch (Exception exc)
       {
+        // release the IO admission before sleeping
+
+        releaseIO(ios, "DELETE", srvrTag);
+        ios = null;
+
         // unsuccessful ... increment count and try again ... after 
         // exceeding aReadWriteFailLimit throw error
 
@@ -2974,6 +3152,10 @@ public class MatrixBlock implements Serializable
         catch (InterruptedException e)
         { }
       }
+      finally
+      {
+        releaseIO(ios, "DELETE", srvrTag);
+      }
     }
 
     if (ecnt > 0)
@@ -3016,12 +3198,10 @@ public class MatrixBlock implements Serializable
     
     for (int i = 0; i < nr; ++i)
     {
-      // get the ith row of elements and loop over each upper triangular
-      // element and read the value from fib and set the result into the jth
-      // column
-      
-      double[] sblki = sblk[i];
-      for (int j = i; j < nr; ++j) sblki[j] = fib.readDouble();
+      // read the upper triangular elements of the ith row in bulk into
+      // columns i to nr - 1
+
+      fib.readDoubleValues(sblk[i], i, nr - i);
     }
   }
 
@@ -3044,12 +3224,9 @@ public class MatrixBlock implements Serializable
     
     for (int i = 0; i < nr; ++i)
     {
-      // get the ith row of sub-block elements and loop over each reading the
-      // value from the input file buffer and setting the result into the jth
-      // column
-      
-      double[] sblki = sblk[i];
-      for (int j = 0; j < nc; ++j) sblki[j] = fib.readDouble();
+      // read the first nc elements of the ith row in bulk
+
+      fib.readDoubleValues(sblk[i], 0, nc);
     }
   }
 
@@ -3072,12 +3249,10 @@ public class MatrixBlock implements Serializable
     
     for (int i = 0; i < nr; ++i)
     {
-      // get the ith row of elements and loop over each upper triangular
-      // element and write the value of the jth column to the output file
-      // buffer
-      
-      double[] sblki = sblk[i];
-      for (int j = i; j < nr; ++j) fob.writeDouble(sblki[j]);
+      // write the upper triangular elements of the ith row (columns i to
+      // nr - 1) in bulk
+
+      fob.writeDoubleValues(sblk[i], i, nr - i);
     }
   }
 
@@ -3100,11 +3275,9 @@ public class MatrixBlock implements Serializable
     
     for (int i = 0; i < nr; ++i)
     {
-      // get the ith row of sub-block elements and loop over each writing the
-      // value of the jth column to the output file buffer
-      
-      double[] sblki = sblk[i];
-      for (int j = 0; j < nc; ++j) fob.writeDouble(sblki[j]);
+      // write the first nc elements of the ith row in bulk
+
+      fob.writeDoubleValues(sblk[i], 0, nc);
     }
   }
 
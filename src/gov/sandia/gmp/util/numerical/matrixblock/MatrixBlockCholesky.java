@@ -0,0 +1,1384 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.matrixblock;
+
+import gov.sandia.gmp.util.filebuffer.FileInputBuffer;
+import gov.sandia.gmp.util.filebuffer.FileOutputBuffer;
+import gov.sandia.gmp.util.numerical.matrixblock.MatrixBlockManager.MatrixBlockReference;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Out-of-core (OOC) blocked Cholesky decomposition and triangular solve
+ * engine for a symmetric positive definite matrix stored as a set of
+ * lower triangular MatrixBlocks. All blocks are obtained from, and written
+ * through, a MatrixBlockManager so that the in-core memory is bounded by the
+ * managers memory budget no matter how large the matrix.
+ *
+ * The engine supports three operations:
+ *
+ *   decompose():
+ *     Replaces A with its Cholesky factor L (A = L L^T) using the right
+ *     looking block algorithm
+ *
+ *       for k = 0, nBlk-1
+ *         F(k,k):   L(k,k) = chol(A(k,k))
+ *         F(i,k):   L(i,k) = A(i,k) L(k,k)^-T                   i > k
+ *         U(i,j,k): A(i,j) = A(i,j) - L(i,k) L(j,k)^T            i >= j > k
+ *
+ *   forwardSubstitution(G):
+ *     Replaces G (initially I) with L^-1.
+ *
+ *   backwardSubstitution(G):
+ *     Replaces G (initially L^-1) with L^-T L^-1 = A^-1 (lower triangle).
+ *
+ * Each block operation above is a task. Tasks are scheduled as a dependency
+ * graph (DAG) over a fixed pool of threads ... a task is submitted as soon as
+ * all of the tasks that produce its inputs have completed. For example, the
+ * update U(i,j,k) is released as soon as F(i,k) and F(j,k) are finished, and
+ * F(i,j) is released when all updates U(i,j,k), k < j, are finished (and
+ * F(j,j) is finished). Updates of the same block from different k are
+ * commutative and are serialized with a per-block lock.
+ *
+ * The blocks of the matrix used by a task can be prefetched when the task is
+ * submitted (setPrefetch(nIOThreads, depth)). The prefetches are issued
+ * through a MatrixBlockIOPipeline shared by all task threads, which pins each
+ * prefetched block until the task (or another task) obtains it. Blocks of a
+ * substitution matrix G are not prefetched.
+ *
+ * The decomposition can be checkpointed (setCheckpoint(file, interval)).
+ * Every interval block columns the engine stops releasing new tasks, drains
+ * all outstanding tasks, flushes all modified blocks through the manager, and
+ * atomically records the number of completed block columns in the checkpoint
+ * file. A subsequent decompose() restarts from the recorded column. On
+ * restart the managers source must reference the destination written by the
+ * interrupted run (automatic for in-place decompositions where the source and
+ * destination are the same).
+ *
+ * While checkpointing the managers write-backs are staged (see
+ * MatrixBlockManager.setStaging(boolean)) so that blocks evicted within a
+ * segment never overwrite the destination ... otherwise a restart would
+ * re-apply updates that an evicted block already contains. Each checkpoint
+ * is a two phase commit: the checkpoint is first written with its commit
+ * pending, the staged blocks are then renamed over their destination, and
+ * the checkpoint is finally rewritten as committed. On restart a pending
+ * commit is completed and any other staged blocks (from an unfinished
+ * segment) are discarded. A segment that fails within the process discards
+ * its staged and modified blocks before the error is thrown.
+ *
+ * The block operations were promoted from the single threaded proof of
+ * concept in TestOOCCholesky and are evaluated with the tiled
+ * MatrixBlockKernels (run inline on each task thread when there is more than
+ * one task thread, so that the kernel fork-join pool does not oversubscribe
+ * the process). All blocks are stored in the standard MatrixBlock
+ * transposed form (block[j][i] is element i,j of the block) and each block
+ * must be a single double[][] ... the managers matrix block definition (and
+ * that of any substitution matrix G) must have a sub-block size equal to the
+ * block size (see MatrixBlockDefinition.setSubBlockSizeToBlockSize()). The
+ * engine does not change the callers definition.
+ *
+ * Created: October 17th, 2026
+ */
+public class MatrixBlockCholesky
+{
+  /**
+   * The manager that owns the blocks of the matrix to be decomposed (A and
+   * then L).
+   */
+  private MatrixBlockManager    aMngr          = null;
+
+  /**
+   * The matrix block definition of the matrix.
+   */
+  private MatrixBlockDefinition aMtrxBlkDefn   = null;
+
+  /**
+   * The task thread pool.
+   */
+  private ExecutorService       aPool          = null;
+
+  /**
+   * The pipeline used to prefetch the blocks of submitted tasks (null if
+   * blocks are not prefetched).
+   */
+  private MatrixBlockIOPipeline aPipeline      = null;
+
+  /**
+   * The checkpoint file name (null if no checkpoints are written).
+   */
+  private String                aChkPntFile    = null;
+
+  /**
+   * The number of block columns processed between checkpoints (0 = only at
+   * the end of the decomposition).
+   */
+  private int                   aChkPntIntrvl  = 0;
+
+  /**
+   * Per block locks used to serialize updates of the same block. Indexed by
+   * the block index.
+   */
+  private Object[]              aBlkLocks      = null;
+
+  /**
+   * Tasks whose dependencies are satisfied but whose column is beyond the
+   * end of the current checkpoint segment.
+   */
+  private ArrayList<Task>       aHeld          = new ArrayList<Task>();
+
+  /**
+   * The last block column of the current checkpoint segment.
+   */
+  private int                   aSegmentEnd    = 0;
+
+  /**
+   * The number of tasks submitted and not yet completed.
+   */
+  private int                   aRunning       = 0;
+
+  /**
+   * The first error thrown by a task, or null.
+   */
+  private IOException           aError         = null;
+
+  /**
+   * The number of tasks completed.
+   */
+  private long                  aTaskCount     = 0;
+
+  /**
+   * The total time (msec) spent in all tasks.
+   */
+  private long                  aTaskTime      = 0;
+
+  /**
+   * Standard constructor.
+   *
+   * @param mngr     The manager that owns the blocks of the matrix.
+   * @param nThreads The number of task threads.
+   * @throws IllegalArgumentException If the managers sub-block size is not
+   *                                  equal to its block size.
+   */
+  public MatrixBlockCholesky(MatrixBlockManager mngr, int nThreads)
+  {
+    checkDefinition(mngr);
+    aMngr         = mngr;
+    aMtrxBlkDefn  = mngr.getMatrixBlockDefinition();
+    aBlkLocks     = new Object [aMtrxBlkDefn.symmMatrixBlockCount()];
+    for (int i = 0; i < aBlkLocks.length; ++i) aBlkLocks[i] = new Object();
+
+    // with more than one task thread the block kernels run inline on each
+    // task thread (the DAG provides the parallelism)
+
+    final boolean inline = (nThreads > 1);
+    aPool = Executors.newFixedThreadPool(Math.max(nThreads, 1),
+                                         new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(final Runnable r)
+      {
+        Thread t = new Thread(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            MatrixBlockKernels.setInlineForCurrentThread(inline);
+            r.run();
+          }
+        }, "MatrixBlockCholesky");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Turns block prefetching on. When a task is submitted asynchronous loads
+   * are issued for the blocks of the matrix it uses, with at most depth
+   * prefetched blocks outstanding. Each prefetched block is pinned in the
+   * manager until it is obtained by a task, so depth should be small compared
+   * to the number of blocks the managers memory budget can hold. Any previous
+   * prefetch pipeline is shut down.
+   *
+   * @param nIOThreads The number of prefetch IO threads.
+   * @param depth      The maximum number of outstanding prefetches (0 turns
+   *                   prefetching off).
+   * @throws IOException
+   */
+  public void setPrefetch(int nIOThreads, int depth) throws IOException
+  {
+    if (aPipeline != null) aPipeline.shutdown();
+    aPipeline = null;
+    if (depth > 0)
+      aPipeline = new MatrixBlockIOPipeline(aMngr, nIOThreads, depth, 0);
+  }
+
+  /**
+   * Turns checkpointing on. Every interval block columns the decomposition is
+   * drained, all modified blocks are flushed, and the number of completed
+   * block columns is written to the input file.
+   *
+   * @param chkPntFile The checkpoint file name.
+   * @param interval   The number of block columns between checkpoints (0 =
+   *                   only at the end of the decomposition).
+   */
+  public void setCheckpoint(String chkPntFile, int interval)
+  {
+    aChkPntFile   = chkPntFile;
+    aChkPntIntrvl = Math.max(interval, 0);
+  }
+
+  /**
+   * Returns the number of completed block columns recorded in the
+   * checkpoint file. Zero is returned if checkpointing is off or the file
+   * does not exist.
+   *
+   * @return The number of completed block columns.
+   * @throws IOException
+   */
+  public int getCompletedColumns() throws IOException
+  {
+    if ((aChkPntFile == null) || !(new File(aChkPntFile)).exists()) return 0;
+
+    FileInputBuffer fib = new FileInputBuffer(aChkPntFile);
+    int nBlk = fib.readInt();
+    int cols = fib.readInt();
+    fib.close();
+    if (nBlk != aMtrxBlkDefn.blocks())
+    {
+      throw new IOException("Error: Checkpoint block count (" + nBlk +
+                            ") is not equal to the matrix block count (" +
+                            aMtrxBlkDefn.blocks() + ") ...");
+    }
+    return cols;
+  }
+
+  /**
+   * Decomposes the matrix into its Cholesky factor L. If a checkpoint file
+   * exists the decomposition resumes from the recorded block column.
+   *
+   * @throws IOException
+   */
+  public void decompose() throws IOException
+  {
+    decompose(aMtrxBlkDefn.blocks());
+  }
+
+  /**
+   * Decomposes the matrix through block column endCol-1 and returns. If a
+   * checkpoint file exists the decomposition resumes from the recorded block
+   * column. This is useful for splitting a long decomposition across several
+   * time limited jobs. The final state is always checkpointed (if a
+   * checkpoint file is defined) and flushed.
+   *
+   * @param endCol The number of block columns to be completed on exit.
+   * @throws IOException
+   */
+  public void decompose(int endCol) throws IOException
+  {
+    int nBlk   = aMtrxBlkDefn.blocks();
+    int strtCol = getCompletedColumns();
+    recoverCheckpoint();
+    endCol     = Math.min(endCol, nBlk);
+    if (strtCol >= endCol) return;
+
+    // build finalize tasks for all blocks in columns strtCol and greater
+    // ... the dependency count is the number of updates from columns
+    // strtCol to c-1 plus one (the diagonal) for off-diagonal blocks
+
+    Task[][] f = new Task [nBlk][];
+    for (int r = strtCol; r < nBlk; ++r)
+    {
+      f[r] = new Task [r + 1];
+      for (int c = strtCol; c <= r; ++c)
+        f[r][c] = new FinalizeCholesky(r, c, c - strtCol + ((r > c) ? 1 : 0));
+    }
+
+    // build update tasks and link the dependencies
+
+    for (int k = strtCol; k < nBlk; ++k)
+    {
+      for (int i = k + 1; i < nBlk; ++i) f[k][k].addSuccessor(f[i][k]);
+      for (int r = k + 1; r < nBlk; ++r)
+      {
+        for (int c = k + 1; c <= r; ++c)
+        {
+          Task u = new UpdateCholesky(r, c, k, (r == c) ? 1 : 2);
+          f[r][k].addSuccessor(u);
+          if (c < r) f[c][k].addSuccessor(u);
+          u.addSuccessor(f[r][c]);
+        }
+      }
+    }
+
+    // run the graph in checkpoint segments
+
+    aHeld.clear();
+    aHeld.add(f[strtCol][strtCol]);
+    int intrvl = (aChkPntIntrvl > 0) ? aChkPntIntrvl : nBlk;
+    if (aChkPntFile != null)
+    {
+      // blocks modified before the decomposition are its committed input
+
+      aMngr.flush();
+      aMngr.setStaging(true);
+    }
+
+    try
+    {
+      for (int c0 = strtCol; c0 < endCol; c0 += intrvl)
+      {
+        try
+        {
+          runSegment(Math.min(c0 + intrvl, endCol) - 1);
+          aMngr.flush();
+        }
+        catch (IOException ex)
+        {
+          if (aChkPntFile != null) aMngr.rollbackStaged();
+          throw ex;
+        }
+        commitCheckpoint(Math.min(c0 + intrvl, endCol));
+      }
+    }
+    finally
+    {
+      aMngr.setStaging(false);
+      aHeld.clear();
+    }
+  }
+
+  /**
+   * Replaces the input matrix G (which must contain the identity matrix on
+   * entry) with L^-1 where L is the Cholesky factor owned by this engine.
+   *
+   * @param g The manager of the matrix G.
+   * @throws IOException
+   * @throws IllegalArgumentException If the sub-block size of G is not equal
+   *                                  to its block size.
+   */
+  public void forwardSubstitution(MatrixBlockManager g) throws IOException
+  {
+    checkDefinition(g);
+    int nBlk = aMtrxBlkDefn.blocks();
+
+    // build the finalize tasks (each depends on all updates from the
+    // rows above it in the same column) and the update tasks
+
+    Task[][] f = new Task [nBlk][];
+    for (int i = 0; i < nBlk; ++i)
+    {
+      f[i] = new Task [i + 1];
+      for (int k = 0; k <= i; ++k)
+        f[i][k] = new FinalizeForward(g, i, k, i - k);
+    }
+    aHeld.clear();
+    for (int k = 0; k < nBlk; ++k)
+    {
+      aHeld.add(f[k][k]);
+      for (int i = k; i < nBlk; ++i)
+      {
+        for (int j = i + 1; j < nBlk; ++j)
+        {
+          Task u = new UpdateForward(g, j, k, i);
+          f[i][k].addSuccessor(u);
+          u.addSuccessor(f[j][k]);
+        }
+      }
+    }
+
+    runSegment(nBlk - 1);
+    aHeld.clear();
+    g.flush();
+  }
+
+  /**
+   * Replaces the input matrix G (which must contain L^-1 on entry) with
+   * L^-T L^-1 = A^-1 where L is the Cholesky factor owned by this engine.
+   * Only the lower triangle of A^-1 is stored.
+   *
+   * @param g The manager of the matrix G.
+   * @throws IOException
+   * @throws IllegalArgumentException If the sub-block size of G is not equal
+   *                                  to its block size.
+   */
+  public void backwardSubstitution(MatrixBlockManager g) throws IOException
+  {
+    checkDefinition(g);
+    int nBlk = aMtrxBlkDefn.blocks();
+
+    // build the finalize tasks (each depends on all updates from the
+    // rows below it in the same column) and the update tasks
+
+    Task[][] f = new Task [nBlk][];
+    for (int i = 0; i < nBlk; ++i)
+    {
+      f[i] = new Task [i + 1];
+      for (int k = 0; k <= i; ++k)
+        f[i][k] = new FinalizeBackward(g, i, k, nBlk - 1 - i);
+    }
+    aHeld.clear();
+    for (int k = 0; k < nBlk; ++k)
+    {
+      aHeld.add(f[nBlk - 1][k]);
+      for (int i = k; i < nBlk; ++i)
+      {
+        for (int j = i + 1; j < nBlk; ++j)
+        {
+          Task u = new UpdateBackward(g, i, k, j);
+          f[j][k].addSuccessor(u);
+          u.addSuccessor(f[i][k]);
+        }
+      }
+    }
+
+    runSegment(nBlk - 1);
+    aHeld.clear();
+    g.flush();
+  }
+
+  /**
+   * Creates the identity matrix in G and replaces it with A^-1 (lower
+   * triangle) by calling forwardSubstitution(g) followed by
+   * backwardSubstitution(g). The matrix must have been decomposed first.
+   *
+   * @param g The manager of the matrix G.
+   * @throws IOException
+   */
+  public void invert(MatrixBlockManager g) throws IOException
+  {
+    for (int r = 0; r < aMtrxBlkDefn.blocks(); ++r)
+    {
+      for (int c = 0; c <= r; ++c) g.createBlock(r, c, 1.0);
+    }
+    forwardSubstitution(g);
+    backwardSubstitution(g);
+  }
+
+  /**
+   * Shuts down the task thread pool and the prefetch pipeline (if any). The
+   * engine cannot be used after this call.
+   *
+   * @throws IOException If an abandoned prefetch failed.
+   */
+  public void shutdown() throws IOException
+  {
+    aPool.shutdown();
+    if (aPipeline != null) aPipeline.shutdown();
+  }
+
+  /**
+   * Returns the number of blocks obtained by tasks that were prefetched.
+   *
+   * @return The number of blocks obtained by tasks that were prefetched.
+   */
+  public long getPrefetchHitCount()
+  {
+    return (aPipeline == null) ? 0 : aPipeline.getPrefetchHitCount();
+  }
+
+  /**
+   * Returns the number of tasks completed.
+   *
+   * @return The number of tasks completed.
+   */
+  public synchronized long getTaskCount()
+  {
+    return aTaskCount;
+  }
+
+  /**
+   * Returns the total time (msec) spent in all tasks.
+   *
+   * @return The total time (msec) spent in all tasks.
+   */
+  public synchronized long getTaskTime()
+  {
+    return aTaskTime;
+  }
+
+  /**
+   * Throws an IllegalArgumentException if the sub-block size of the input
+   * managers matrix block definition is not equal to its block size (each
+   * block must be a single double[][]).
+   *
+   * @param mngr The manager to be checked.
+   */
+  private static void checkDefinition(MatrixBlockManager mngr)
+  {
+    MatrixBlockDefinition mbd = mngr.getMatrixBlockDefinition();
+    if (mbd.subBlockSize() != mbd.blockSize())
+      throw new IllegalArgumentException("Error: Sub-block size (" +
+                                         mbd.subBlockSize() +
+                                         ") is not equal to the block size (" +
+                                         mbd.blockSize() + ") ...");
+  }
+
+  /**
+   * Submits all held tasks whose column is less than or equal to segEnd and
+   * waits until no tasks are running. Tasks released during the segment with
+   * columns beyond segEnd are held for the next segment.
+   *
+   * @param segEnd The last block column of the segment.
+   * @throws IOException If any task failed or the wait was interrupted.
+   */
+  private synchronized void runSegment(int segEnd) throws IOException
+  {
+    aSegmentEnd = segEnd;
+    aError      = null;
+    ArrayList<Task> held = new ArrayList<Task>(aHeld);
+    aHeld.clear();
+    for (Task t: held) release(t);
+
+    try
+    {
+      while (aRunning > 0) wait();
+    }
+    catch (InterruptedException ex)
+    {
+      throw new IOException("Error: Interrupted while waiting for tasks ...");
+    }
+
+    if (aError != null) throw aError;
+  }
+
+  /**
+   * Submits the input ready task if it is within the current segment, or
+   * holds it otherwise. Called with the engine lock held.
+   *
+   * @param t The ready task.
+   */
+  private void release(Task t)
+  {
+    if (aError != null) return;
+    if (t.aColumn <= aSegmentEnd)
+    {
+      if (aPipeline != null)
+      {
+        try
+        {
+          t.prefetch();
+        }
+        catch (IOException ex)
+        {
+          aError = ex;
+          return;
+        }
+      }
+      ++aRunning;
+      aPool.execute(t);
+    }
+    else
+      aHeld.add(t);
+  }
+
+  /**
+   * Called by a task when its block operation succeeds. Releases all
+   * successors whose dependencies are now satisfied.
+   *
+   * @param t   The completed task.
+   * @param tim The task time (msec).
+   */
+  private synchronized void completed(Task t, long tim)
+  {
+    ++aTaskCount;
+    aTaskTime += tim;
+    for (Task s: t.aSuccessors)
+    {
+      if (--s.aDeps == 0) release(s);
+    }
+  }
+
+  /**
+   * Called by every task when it exits, whether it succeeded or not. If the
+   * task failed the first error is retained (wrapped in an IOException if
+   * necessary) and no further tasks are released.
+   *
+   * @param ex The task error, or null if the task succeeded.
+   */
+  private synchronized void finished(Throwable ex)
+  {
+    if ((ex != null) && (aError == null))
+      aError = (ex instanceof IOException) ? (IOException) ex :
+                                             new IOException(ex);
+    --aRunning;
+    notifyAll();
+  }
+
+  /**
+   * Commits the staged blocks of a completed segment and records the number
+   * of completed block columns in the checkpoint file (if defined). The
+   * checkpoint is written with its commit pending before the staged blocks
+   * are renamed over their destination, and rewritten as committed after.
+   *
+   * @param cols The number of completed block columns.
+   * @throws IOException
+   */
+  private void commitCheckpoint(int cols) throws IOException
+  {
+    if (aChkPntFile == null) return;
+
+    writeCheckpoint(cols, true);
+    aMngr.commitStaged();
+    writeCheckpoint(cols, false);
+  }
+
+  /**
+   * Completes or discards the staged blocks left by an interrupted run. If
+   * the checkpoint file records a pending commit the staged blocks are
+   * committed, otherwise they belong to an unfinished segment and are
+   * deleted. Does nothing if checkpointing is off.
+   *
+   * @throws IOException
+   */
+  private void recoverCheckpoint() throws IOException
+  {
+    if (aChkPntFile == null) return;
+
+    boolean pending = false;
+    int     cols    = 0;
+    if ((new File(aChkPntFile)).exists())
+    {
+      FileInputBuffer fib = new FileInputBuffer(aChkPntFile);
+      fib.readInt();
+      cols    = fib.readInt();
+      pending = fib.readBoolean();
+      fib.close();
+    }
+
+    aMngr.recoverStaged(pending);
+    if (pending) writeCheckpoint(cols, false);
+  }
+
+  /**
+   * Atomically writes the number of completed block columns and the commit
+   * state of the staged blocks to the checkpoint file.
+   *
+   * @param cols    The number of completed block columns.
+   * @param pending True if the staged blocks are not yet committed.
+   * @throws IOException
+   */
+  private void writeCheckpoint(int cols, boolean pending) throws IOException
+  {
+    File tmp = new File(aChkPntFile + ".tmp");
+    FileOutputBuffer fob = new FileOutputBuffer(tmp.getPath());
+    fob.writeInt(aMtrxBlkDefn.blocks());
+    fob.writeInt(cols);
+    fob.writeBoolean(pending);
+    fob.force();
+    fob.close();
+
+    try
+    {
+      Files.move(tmp.toPath(), new File(aChkPntFile).toPath(),
+                 StandardCopyOption.ATOMIC_MOVE,
+                 StandardCopyOption.REPLACE_EXISTING);
+    }
+    catch (IOException ex)
+    {
+      throw new IOException("Error: Could not write checkpoint file \"" +
+                            aChkPntFile + "\" ...", ex);
+    }
+  }
+
+  /**
+   * Locks and returns the block arrays of the input references. If a lock
+   * fails all previously obtained locks are released.
+   *
+   * @param refs The block references.
+   * @return The locked block arrays.
+   * @throws IOException
+   */
+  private static double[][][] lock(MatrixBlockReference[] refs)
+          throws IOException
+  {
+    double[][][] blks = new double [refs.length][][];
+    try
+    {
+      for (int i = 0; i < refs.length; ++i)
+        blks[i] = refs[i].getLockedBlock(false);
+    }
+    catch (IOException ex)
+    {
+      release(refs, blks);
+      throw ex;
+    }
+    return blks;
+  }
+
+  /**
+   * Releases the locks on all locked block arrays.
+   *
+   * @param refs The block references.
+   * @param blks The locked block arrays (null entries were not locked).
+   * @throws IOException
+   */
+  private static void release(MatrixBlockReference[] refs, double[][][] blks)
+          throws IOException
+  {
+    for (int i = 0; i < refs.length; ++i)
+    {
+      if (blks[i] != null) refs[i].releaseLock(false);
+    }
+  }
+
+  /**
+   * Returns block row,col of the matrix from the prefetch pipeline (if
+   * defined) or from the manager.
+   *
+   * @param row The block row index.
+   * @param col The block column index.
+   * @return Block row,col of the matrix.
+   * @throws IOException
+   */
+  private MatrixBlockReference getBlock(int row, int col) throws IOException
+  {
+    if (aPipeline != null) return aPipeline.getBlock(row, col);
+    return aMngr.getBlock(row, col);
+  }
+
+  /**
+   * Prefetches block row,col of the matrix (does nothing if the prefetch
+   * limit is reached).
+   *
+   * @param row The block row index.
+   * @param col The block column index.
+   * @throws IOException
+   */
+  private void prefetch(int row, int col) throws IOException
+  {
+    aPipeline.prefetch(row, col);
+  }
+
+  /**
+   * Returns the number of element rows in block row blk.
+   *
+   * @param blk The block row.
+   * @return The number of element rows in block row blk.
+   */
+  private int rows(int blk)
+  {
+    return aMtrxBlkDefn.getBlockElementRows(blk);
+  }
+
+  /**
+   * Base class of all DAG tasks. Each task has a dependency count (the
+   * number of unfinished predecessor tasks), a list of successor tasks, and
+   * the block column used to assign it to a checkpoint segment.
+   */
+  private abstract class Task implements Runnable
+  {
+    /**
+     * The number of unfinished predecessor tasks (guarded by the engine).
+     */
+    private int             aDeps       = 0;
+
+    /**
+     * The block column of the task.
+     */
+    private int             aColumn     = 0;
+
+    /**
+     * The successor tasks.
+     */
+    private ArrayList<Task> aSuccessors = new ArrayList<Task>(2);
+
+    /**
+     * Standard constructor.
+     *
+     * @param col  The block column of the task.
+     * @param deps The number of predecessor tasks.
+     */
+    Task(int col, int deps)
+    {
+      aColumn = col;
+      aDeps   = deps;
+    }
+
+    /**
+     * Adds a successor task.
+     *
+     * @param t The successor task.
+     */
+    void addSuccessor(Task t)
+    {
+      aSuccessors.add(t);
+    }
+
+    /**
+     * Performs the block operation of the task.
+     *
+     * @throws IOException
+     */
+    abstract void compute() throws IOException;
+
+    /**
+     * Prefetches the blocks of the matrix used by the task.
+     *
+     * @throws IOException
+     */
+    abstract void prefetch() throws IOException;
+
+    @Override
+    public void run()
+    {
+      // the running count must be decremented however the task exits
+      // (including Errors) or runSegment() would wait forever
+
+      long strtTime = (new Date()).getTime();
+      Throwable err = null;
+      try
+      {
+        compute();
+        completed(this, (new Date()).getTime() - strtTime);
+      }
+      catch (Throwable ex)
+      {
+        err = ex;
+      }
+      finally
+      {
+        finished(err);
+      }
+    }
+  }
+
+  /**
+   * Cholesky finalize task F(r,c). Decomposes the diagonal block (r == c) or
+   * solves the off-diagonal block against the finalized diagonal block c,c.
+   */
+  private class FinalizeCholesky extends Task
+  {
+    private int aRow, aCol;
+
+    FinalizeCholesky(int r, int c, int deps)
+    {
+      super(c, deps);
+      aRow = r;
+      aCol = c;
+    }
+
+    @Override
+    void prefetch() throws IOException
+    {
+      MatrixBlockCholesky.this.prefetch(aRow, aCol);
+      if (aRow != aCol) MatrixBlockCholesky.this.prefetch(aCol, aCol);
+    }
+
+    @Override
+    void compute() throws IOException
+    {
+      if (aRow == aCol)
+      {
+        MatrixBlockReference[] refs = {getBlock(aRow, aRow)};
+        double[][][] b = lock(refs);
+        try
+        {
+          finalizeDiagonal(b[0], rows(aRow));
+          refs[0].setModified();
+        }
+        finally
+        {
+          release(refs, b);
+        }
+      }
+      else
+      {
+        MatrixBlockReference[] refs = {getBlock(aRow, aCol),
+                                       getBlock(aCol, aCol)};
+        double[][][] b = lock(refs);
+        try
+        {
+          finalizeOffDiagonal(b[0], b[1], rows(aRow), rows(aCol));
+          refs[0].setModified();
+        }
+        finally
+        {
+          release(refs, b);
+        }
+      }
+    }
+  }
+
+  /**
+   * Cholesky update task U(r,c,k). Subtracts L(r,k) L(c,k)^T from block r,c.
+   */
+  private class UpdateCholesky extends Task
+  {
+    private int aRow, aCol, aK;
+
+    UpdateCholesky(int r, int c, int k, int deps)
+    {
+      super(k, deps);
+      aRow = r;
+      aCol = c;
+      aK   = k;
+    }
+
+    @Override
+    void prefetch() throws IOException
+    {
+      MatrixBlockCholesky.this.prefetch(aRow, aCol);
+      MatrixBlockCholesky.this.prefetch(aRow, aK);
+      if (aRow != aCol) MatrixBlockCholesky.this.prefetch(aCol, aK);
+    }
+
+    @Override
+    void compute() throws IOException
+    {
+      synchronized (aBlkLocks[MatrixBlock.getBlockIndex(aRow, aCol)])
+      {
+        if (aRow == aCol)
+        {
+          MatrixBlockReference[] refs = {getBlock(aRow, aRow),
+                                         getBlock(aRow, aK)};
+          double[][][] b = lock(refs);
+          try
+          {
+            updateDiagonal(b[0], b[1], rows(aRow), rows(aK));
+            refs[0].setModified();
+          }
+          finally
+          {
+            release(refs, b);
+          }
+        }
+        else
+        {
+          MatrixBlockReference[] refs = {getBlock(aRow, aCol),
+                                         getBlock(aRow, aK),
+                                         getBlock(aCol, aK)};
+          double[][][] b = lock(refs);
+          try
+          {
+            updateOffDiagonal(b[0], b[1], b[2], rows(aRow), rows(aCol),
+                              rows(aK));
+            refs[0].setModified();
+          }
+          finally
+          {
+            release(refs, b);
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Forward substitution finalize task. Solves G(i,k) against L(i,i).
+   */
+  private class FinalizeForward extends Task
+  {
+    private MatrixBlockManager aG;
+    private int aI, aK;
+
+    FinalizeForward(MatrixBlockManager g, int i, int k, int deps)
+    {
+      super(k, deps);
+      aG = g;
+      aI = i;
+      aK = k;
+    }
+
+    @Override
+    void prefetch() throws IOException
+    {
+      MatrixBlockCholesky.this.prefetch(aI, aI);
+    }
+
+    @Override
+    void compute() throws IOException
+    {
+      MatrixBlockReference[] refs = {aG.getBlock(aI, aK),
+                                     getBlock(aI, aI)};
+      double[][][] b = lock(refs);
+      try
+      {
+        finalizeForwardSubstitution(b[0], b[1], rows(aI),
+                                    (aI == aK) ? rows(aI) : rows(aK),
+                                    aI == aK);
+        refs[0].setModified();
+      }
+      finally
+      {
+        release(refs, b);
+      }
+    }
+  }
+
+  /**
+   * Forward substitution update task. Subtracts L(i,j) G(j,k) from G(i,k).
+   */
+  private class UpdateForward extends Task
+  {
+    private MatrixBlockManager aG;
+    private int aI, aK, aJ;
+
+    UpdateForward(MatrixBlockManager g, int i, int k, int j)
+    {
+      super(k, 1);
+      aG = g;
+      aI = i;
+      aK = k;
+      aJ = j;
+    }
+
+    @Override
+    void prefetch() throws IOException
+    {
+      MatrixBlockCholesky.this.prefetch(aI, aJ);
+    }
+
+    @Override
+    void compute() throws IOException
+    {
+      synchronized (aBlkLocks[MatrixBlock.getBlockIndex(aI, aK)])
+      {
+        MatrixBlockReference[] refs = {aG.getBlock(aI, aK),
+                                       getBlock(aI, aJ),
+                                       aG.getBlock(aJ, aK)};
+        double[][][] b = lock(refs);
+        try
+        {
+          updateForwardSubstitution(b[0], b[1], b[2], rows(aI), rows(aK),
+                                    rows(aJ), aJ == aK);
+          refs[0].setModified();
+        }
+        finally
+        {
+          release(refs, b);
+        }
+      }
+    }
+  }
+
+  /**
+   * Backward substitution finalize task. Solves G(i,k) against L(i,i)^T.
+   */
+  private class FinalizeBackward extends Task
+  {
+    private MatrixBlockManager aG;
+    private int aI, aK;
+
+    FinalizeBackward(MatrixBlockManager g, int i, int k, int deps)
+    {
+      super(k, deps);
+      aG = g;
+      aI = i;
+      aK = k;
+    }
+
+    @Override
+    void prefetch() throws IOException
+    {
+      MatrixBlockCholesky.this.prefetch(aI, aI);
+    }
+
+    @Override
+    void compute() throws IOException
+    {
+      MatrixBlockReference[] refs = {aG.getBlock(aI, aK),
+                                     getBlock(aI, aI)};
+      double[][][] b = lock(refs);
+      try
+      {
+        finalizeBackwardSubstitution(b[0], b[1], rows(aI),
+                                     (aI == aK) ? rows(aI) : rows(aK),
+                                     aI == aK);
+        refs[0].setModified();
+      }
+      finally
+      {
+        release(refs, b);
+      }
+    }
+  }
+
+  /**
+   * Backward substitution update task. Subtracts L(j,i)^T G(j,k) from
+   * G(i,k).
+   */
+  private class UpdateBackward extends Task
+  {
+    private MatrixBlockManager aG;
+    private int aI, aK, aJ;
+
+    UpdateBackward(MatrixBlockManager g, int i, int k, int j)
+    {
+      super(k, 1);
+      aG = g;
+      aI = i;
+      aK = k;
+      aJ = j;
+    }
+
+    @Override
+    void prefetch() throws IOException
+    {
+      MatrixBlockCholesky.this.prefetch(aJ, aI);
+    }
+
+    @Override
+    void compute() throws IOException
+    {
+      synchronized (aBlkLocks[MatrixBlock.getBlockIndex(aI, aK)])
+      {
+        MatrixBlockReference[] refs = {aG.getBlock(aI, aK),
+                                       getBlock(aJ, aI),
+                                       aG.getBlock(aJ, aK)};
+        double[][][] b = lock(refs);
+        try
+        {
+          updateBackwardSubstitution(b[0], b[1], b[2], rows(aI), rows(aK),
+                                     rows(aJ), aI == aK);
+          refs[0].setModified();
+        }
+        finally
+        {
+          release(refs, b);
+        }
+      }
+    }
+  }
+
+  //****************************************************************************
+  //**** block kernels (all blocks are stored transposed: a[j][i] = A(i,j))
+  //****************************************************************************
+
+  /**
+   * Cholesky decomposition of the n x n diagonal block a (upper triangle of
+   * the transposed storage).
+   *
+   * @param a The diagonal block.
+   * @param n The number of element rows in the block.
+   * @throws IOException If the block is not positive definite.
+   */
+  static void finalizeDiagonal(double[][] a, int n) throws IOException
+  {
+    if (!MatrixBlockKernels.potrf(a, n, true))
+      throw new IOException("Error: Diagonal block is not positive " +
+                            "definite ...");
+  }
+
+  /**
+   * Solves the off-diagonal block a against the finalized diagonal block aJ
+   * (a = a aJ^-T).
+   *
+   * @param a  The off-diagonal block.
+   * @param aJ The finalized diagonal block of column a.
+   * @param nr The number of element rows in a.
+   * @param nc The number of element columns in a.
+   */
+  static void finalizeOffDiagonal(double[][] a, double[][] aJ, int nr, int nc)
+  {
+    MatrixBlockKernels.trsmUpperTransposeLeft(a, aJ, nc, nr);
+  }
+
+  /**
+   * Updates the diagonal block a with the finalized block aJ of the same row
+   * (a = a - aJ aJ^T, lower triangle only).
+   *
+   * @param a  The diagonal block.
+   * @param aJ The finalized helper block.
+   * @param n  The number of element rows in a.
+   * @param nk The number of element columns in aJ.
+   */
+  static void updateDiagonal(double[][] a, double[][] aJ, int n, int nk)
+  {
+    MatrixBlockKernels.syrk(a, aJ, true, n, nk, true);
+  }
+
+  /**
+   * Updates the off-diagonal block a with the finalized row block aI and
+   * column block aJ (a = a - aI aJ^T).
+   *
+   * @param a  The off-diagonal block.
+   * @param aI The finalized helper block of the row of a.
+   * @param aJ The finalized helper block of the column of a.
+   * @param nr The number of element rows in a.
+   * @param nc The number of element columns in a.
+   * @param nk The number of element columns in aI and aJ.
+   */
+  static void updateOffDiagonal(double[][] a, double[][] aI, double[][] aJ,
+                                int nr, int nc, int nk)
+  {
+    MatrixBlockKernels.gemm(a, aJ, true, aI, false, nc, nr, nk);
+  }
+
+  /**
+   * Forward substitution of the block g against the diagonal block LI.
+   *
+   * @param g    The block to be solved.
+   * @param LI   The finalized diagonal Cholesky block of the row of g.
+   * @param nr   The number of element rows in g.
+   * @param nc   The number of element columns in g.
+   * @param diag True if g is a diagonal block.
+   */
+  static void finalizeForwardSubstitution(double[][] g, double[][] LI,
+                                          int nr, int nc, boolean diag)
+  {
+    // loop over each column in g and update
+
+    for (int k = 0; k < nc; ++k)
+    {
+      double[] growk = g[k];
+      int i0 = diag ? k : 0;
+      for (int i = i0; i < nr; ++i)
+      {
+        for (int j = i0; j < i; ++j) growk[i] -= LI[j][i] * growk[j];
+        growk[i] /= LI[i][i];
+      }
+    }
+  }
+
+  /**
+   * Forward substitution update of block g with the Cholesky block LI and
+   * the finalized block gI (g = g - LI gI).
+   *
+   * @param g    The block to be updated.
+   * @param LI   The Cholesky block (row of g, column of gI).
+   * @param gI   The finalized helper block.
+   * @param nr   The number of element rows in g.
+   * @param nc   The number of element columns in g.
+   * @param nj   The number of element rows in gI.
+   * @param diag True if gI is a diagonal block.
+   */
+  static void updateForwardSubstitution(double[][] g, double[][] LI,
+                                        double[][] gI, int nr, int nc,
+                                        int nj, boolean diag)
+  {
+    // off-diagonal helper blocks are full (g = g - gI LI in transposed
+    // storage)
+
+    if (!diag)
+    {
+      MatrixBlockKernels.gemm(g, gI, false, LI, false, nc, nr, nj);
+      return;
+    }
+
+    // diagonal helper block ... loop over each column in g and update
+
+    for (int k = 0; k < nc; ++k)
+    {
+      double[] growk = g[k];
+      double[] gIrowk = gI[k];
+      int js = diag ? k : 0;
+      for (int j = js; j < nj; ++j)
+      {
+        double[] LIrowj = LI[j];
+        double gIkj = gIrowk[j];
+        for (int i = 0; i < nr; ++i) growk[i] -= LIrowj[i] * gIkj;
+      }
+    }
+  }
+
+  /**
+   * Backward substitution of the block g against the transpose of the
+   * diagonal block LI.
+   *
+   * @param g    The block to be solved.
+   * @param LI   The finalized diagonal Cholesky block of the row of g.
+   * @param nr   The number of element rows in g.
+   * @param nc   The number of element columns in g.
+   * @param diag True if g is a diagonal block.
+   */
+  static void finalizeBackwardSubstitution(double[][] g, double[][] LI,
+                                           int nr, int nc, boolean diag)
+  {
+    // loop over each column in g and update
+
+    for (int k = 0; k < nc; ++k)
+    {
+      double[] growk = g[k];
+      int i0 = diag ? k : 0;
+      for (int i = nr-1; i >= i0; --i)
+      {
+        double[] LIrowi = LI[i];
+        for (int j = nr-1; j > i; --j) growk[i] -= LIrowi[j] * growk[j];
+        growk[i] /= LIrowi[i];
+      }
+    }
+  }
+
+  /**
+   * Backward substitution update of block g with the Cholesky block LJ and
+   * the finalized block gJ (g = g - LJ^T gJ).
+   *
+   * @param g    The block to be updated.
+   * @param LJ   The Cholesky block (row of gJ, column of g).
+   * @param gJ   The finalized helper block.
+   * @param nr   The number of element rows in g.
+   * @param nc   The number of element columns in g.
+   * @param nj   The number of element rows in gJ.
+   * @param diag True if g is a diagonal block.
+   */
+  static void updateBackwardSubstitution(double[][] g, double[][] LJ,
+                                         double[][] gJ, int nr, int nc,
+                                         int nj, boolean diag)
+  {
+    // off-diagonal blocks are full (g = g - gJ LJ^T in transposed storage)
+
+    if (!diag)
+    {
+      MatrixBlockKernels.gemm(g, gJ, false, LJ, true, nc, nr, nj);
+      return;
+    }
+
+    // diagonal block ... loop over each column in g and update
+
+    for (int k = 0; k < nc; ++k)
+    {
+      double[] growk = g[k];
+      double[] gJrowk = gJ[k];
+      int js = diag ? k : 0;
+      for (int i = nr-1; i >= js; --i)
+      {
+        double[] LJrowi = LJ[i];
+        double s = 0.0;
+        for (int j = nj-1; j >= 0; --j) s += LJrowi[j] * gJrowk[j];
+        growk[i] -= s;
+      }
+    }
+  }
+}
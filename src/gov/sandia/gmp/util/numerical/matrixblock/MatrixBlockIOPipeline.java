@@ -0,0 +1,535 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.matrixblock;
+
+import gov.sandia.gmp.util.numerical.matrixblock.MatrixBlockManager.MatrixBlockReference;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Overlaps MatrixBlock IO with computation for blocks owned by a
+ * MatrixBlockManager. The pipeline provides two services:
+ *
+ *   1) Prefetch: Given the block access order of a panel step
+ *      (setAccessOrder(order)) the pipeline issues asynchronous loads for the
+ *      next aPrefetchDepth blocks in the order each time the caller advances
+ *      with next(). Blocks can also be prefetched individually with
+ *      prefetch(row, col). Blocks that are requested with getBlock(row, col)
+ *      wait for an outstanding prefetch (if any) or are loaded lazily as
+ *      usual. At most aPrefetchDepth prefetches are outstanding at any time.
+ *
+ *   2) Write-behind: Blocks that the caller has finished modifying are queued
+ *      for an asynchronous write with writeBehind(block, unLoad). The memory
+ *      of all blocks with outstanding writes is bounded by aMaxWriteMemory.
+ *      If a new write would exceed the bound the caller blocks until the
+ *      oldest outstanding writes complete.
+ *
+ * All asynchronous IO is performed on a small pool of daemon threads owned by
+ * the pipeline. The IO itself is performed by the MatrixBlock catch functions
+ * so any installed MatrixBlockIOScheduler still limits per server concurrency.
+ * A prefetched block is pinned in the manager (it cannot be evicted) from the
+ * time the prefetch is issued until the block is consumed by getBlock(row,
+ * col) or next(), or the prefetch is abandoned (setAccessOrder(order) with an
+ * order that does not contain the block, or shutdown()). Prefetched blocks
+ * count against the memory budget of the manager so the prefetch depth should
+ * be small compared to the number of blocks the budget can hold. A prefetch
+ * load is counted by the manager as a load but not as a hit or miss ... only
+ * the consuming request is counted (normally as a hit).
+ *
+ * prefetch(row, col), getBlock(row, col), and the getters are thread safe so
+ * that a multi-threaded consumer (e.g. MatrixBlockCholesky) can share one
+ * pipeline. The access order (setAccessOrder(order) and next()) and the
+ * write-behind services are intended to be driven by the single thread that
+ * orders the panel step computation.
+ *
+ * Created: October 17th, 2026
+ */
+public class MatrixBlockIOPipeline
+{
+  /**
+   * The manager that owns all blocks processed by this pipeline.
+   */
+  private MatrixBlockManager                  aMngr           = null;
+
+  /**
+   * The IO thread pool.
+   */
+  private ExecutorService                     aIOPool         = null;
+
+  /**
+   * The number of blocks loaded ahead of the current position in the access
+   * order.
+   */
+  private int                                 aPrefetchDepth  = 2;
+
+  /**
+   * The maximum memory (bytes) of all blocks with outstanding writes.
+   */
+  private long                                aMaxWriteMemory = 0;
+
+  /**
+   * The memory (bytes) of all blocks with outstanding writes.
+   */
+  private long                                aWriteMemory    = 0;
+
+  /**
+   * The planned block access order (each entry is {row, col}).
+   */
+  private ArrayList<int[]>                    aOrder          =
+          new ArrayList<int[]>();
+
+  /**
+   * The position of the next block returned by next().
+   */
+  private int                                 aNext           = 0;
+
+  /**
+   * The position of the next block to be prefetched.
+   */
+  private int                                 aNextPrefetch   = 0;
+
+  /**
+   * Outstanding prefetches keyed by block index.
+   */
+  private HashMap<Integer, Future<MatrixBlock>> aPrefetches    =
+          new HashMap<Integer, Future<MatrixBlock>>();
+
+  /**
+   * The pinned block of each outstanding prefetch keyed by block index.
+   */
+  private HashMap<Integer, MatrixBlockReference> aPrefetchRefs =
+          new HashMap<Integer, MatrixBlockReference>();
+
+  /**
+   * Outstanding writes in submission order.
+   */
+  private LinkedList<Future<MatrixBlock>>     aWrites         =
+          new LinkedList<Future<MatrixBlock>>();
+
+  /**
+   * The memory of each outstanding write (same order as aWrites).
+   */
+  private LinkedList<Long>                    aWritesMemory   =
+          new LinkedList<Long>();
+
+  /**
+   * The number of blocks returned by next() or getBlock() that were already
+   * prefetched.
+   */
+  private long                                aPrefetchHits   = 0;
+
+  /**
+   * The total time (msec) the caller spent waiting for prefetches or for
+   * write-behind memory.
+   */
+  private long                                aWaitTime       = 0;
+
+  /**
+   * Standard constructor.
+   *
+   * @param mngr          The manager that owns all blocks processed by this
+   *                      pipeline.
+   * @param nThreads      The number of IO threads.
+   * @param prefetchDepth The number of blocks loaded ahead of the current
+   *                      position in the access order.
+   * @param maxWriteMem   The maximum memory (bytes) of all blocks with
+   *                      outstanding writes.
+   */
+  public MatrixBlockIOPipeline(MatrixBlockManager mngr, int nThreads,
+                               int prefetchDepth, long maxWriteMem)
+  {
+    aMngr           = mngr;
+    aPrefetchDepth  = Math.max(prefetchDepth, 0);
+    aMaxWriteMemory = maxWriteMem;
+    aIOPool = Executors.newFixedThreadPool(Math.max(nThreads, 1),
+                                           new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "MatrixBlockIOPipeline");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+  }
+
+  /**
+   * Sets the block access order of the next panel step and issues the
+   * initial prefetches. Outstanding prefetches of blocks in the new order are
+   * retained and used when requested. All others are abandoned (their blocks
+   * are unpinned).
+   *
+   * @param order The block access order (each entry is {row, col}).
+   * @throws IOException
+   */
+  public void setAccessOrder(List<int[]> order) throws IOException
+  {
+    HashSet<Integer> keep = new HashSet<Integer>(order.size());
+    for (int[] rc: order) keep.add(MatrixBlock.getBlockIndex(rc[0], rc[1]));
+    for (Integer blkIndx: getPrefetchIndices())
+    {
+      if (!keep.contains(blkIndx)) abandon(blkIndx);
+    }
+
+    aOrder        = new ArrayList<int[]>(order);
+    aNext         = 0;
+    aNextPrefetch = 0;
+    prefetchAhead();
+  }
+
+  /**
+   * Returns the next block in the access order, or null if all blocks in the
+   * order have been returned. Prefetches are issued for the next
+   * aPrefetchDepth blocks. The returned block is loaded unless it was
+   * evicted before it was locked by the caller (in which case it reloads
+   * itself when locked).
+   *
+   * @return The next block in the access order, or null.
+   * @throws IOException
+   */
+  public MatrixBlockReference next() throws IOException
+  {
+    if (aNext >= aOrder.size()) return null;
+
+    int[] rc = aOrder.get(aNext++);
+    prefetchAhead();
+    return getBlock(rc[0], rc[1]);
+  }
+
+  /**
+   * Returns block row,col. If a prefetch of the block is outstanding the
+   * call waits for it to complete and the block is unpinned after it is
+   * obtained from the manager. Otherwise the block is returned from the
+   * manager as usual.
+   *
+   * @param row The block row index.
+   * @param col The block column index.
+   * @return Block row,col.
+   * @throws IOException
+   */
+  public MatrixBlockReference getBlock(int row, int col) throws IOException
+  {
+    MatrixBlockReference pinned;
+    pinned = consume(MatrixBlock.getBlockIndex(row, col));
+    if (pinned == null) return aMngr.getBlock(row, col);
+
+    // the block is still pinned so this is a hit ... unpin it and exit
+
+    MatrixBlockReference mbr = aMngr.getBlock(row, col);
+    aMngr.unPinBlock(pinned);
+    synchronized (this) {++aPrefetchHits;}
+    return mbr;
+  }
+
+  /**
+   * Issues an asynchronous load of block row,col if it is not already loaded
+   * or being loaded. The block is pinned in the manager until it is consumed
+   * by getBlock(row, col) or next(), or the prefetch is abandoned. Returns
+   * false if aPrefetchDepth prefetches are already outstanding (no prefetch
+   * is issued) and true otherwise.
+   *
+   * @param row The block row index.
+   * @param col The block column index.
+   * @return False if the prefetch was not issued because aPrefetchDepth
+   *         prefetches are already outstanding.
+   * @throws IOException
+   */
+  public synchronized boolean prefetch(int row, int col) throws IOException
+  {
+    int blkIndx = MatrixBlock.getBlockIndex(row, col);
+    if (aPrefetches.containsKey(blkIndx) || aMngr.isBlockLoaded(row, col))
+      return true;
+    if (aPrefetches.size() >= aPrefetchDepth) return false;
+
+    // pin the block so that it cannot be evicted before it is consumed and
+    // load it on an IO thread
+
+    final MatrixBlockReference mbr = aMngr.pinBlock(row, col);
+    aPrefetchRefs.put(blkIndx, mbr);
+    aPrefetches.put(blkIndx, aIOPool.submit(new Callable<MatrixBlock>()
+    {
+      @Override
+      public MatrixBlock call() throws IOException
+      {
+        aMngr.loadPinnedBlock(mbr);
+        return mbr;
+      }
+    }));
+    return true;
+  }
+
+  /**
+   * Queues an asynchronous write of the input modified block. If unLoad is
+   * true the block is unloaded after it is written (if it is not locked). If
+   * the memory of all blocks with outstanding writes would exceed the write
+   * memory bound the call blocks until enough of the oldest writes complete.
+   * The caller must not modify the block until the write completes.
+   *
+   * @param mbr    The block to be written.
+   * @param unLoad If true the block is unloaded after it is written.
+   * @return The future of the write.
+   * @throws IOException
+   */
+  public Future<MatrixBlock> writeBehind(final MatrixBlockReference mbr,
+                                         final boolean unLoad)
+         throws IOException
+  {
+    // wait for old writes until the new write fits within the memory bound
+
+    long mem = mbr.getMemoryAllocation();
+    while (!aWrites.isEmpty() && (aWriteMemory + mem > aMaxWriteMemory))
+      retireOldestWrite();
+
+    // submit the write and exit
+
+    Future<MatrixBlock> f = aIOPool.submit(new Callable<MatrixBlock>()
+    {
+      @Override
+      public MatrixBlock call() throws IOException
+      {
+        aMngr.writeBack(mbr);
+        if (unLoad)
+        {
+          try
+          {
+            mbr.unLoad();
+          }
+          catch (IllegalStateException ex)
+          {
+            // locked by another caller ... leave it loaded
+          }
+        }
+        return mbr;
+      }
+    });
+    aWrites.add(f);
+    aWritesMemory.add(mem);
+    aWriteMemory += mem;
+    return f;
+  }
+
+  /**
+   * Waits for all outstanding writes to complete.
+   *
+   * @throws IOException
+   */
+  public void flush() throws IOException
+  {
+    while (!aWrites.isEmpty()) retireOldestWrite();
+  }
+
+  /**
+   * Waits for all outstanding writes and prefetches to complete and shuts
+   * down the IO thread pool. The pipeline cannot be used after this call.
+   *
+   * @throws IOException
+   */
+  public void shutdown() throws IOException
+  {
+    try
+    {
+      flush();
+      for (Integer blkIndx: getPrefetchIndices()) abandon(blkIndx);
+    }
+    finally
+    {
+      aIOPool.shutdown();
+    }
+  }
+
+  /**
+   * Returns the number of blocks returned by next() or getBlock() that were
+   * prefetched.
+   *
+   * @return The number of blocks returned that were prefetched.
+   */
+  public synchronized long getPrefetchHitCount()
+  {
+    return aPrefetchHits;
+  }
+
+  /**
+   * Returns the memory (bytes) of all blocks with outstanding writes.
+   *
+   * @return The memory (bytes) of all blocks with outstanding writes.
+   */
+  public long getWriteBehindMemory()
+  {
+    return aWriteMemory;
+  }
+
+  /**
+   * Returns the total time (msec) the caller spent waiting for prefetches
+   * or for write-behind memory.
+   *
+   * @return The total time (msec) the caller spent waiting.
+   */
+  public synchronized long getWaitTime()
+  {
+    return aWaitTime;
+  }
+
+  /**
+   * Issues prefetches for the blocks in the access order up to aPrefetchDepth
+   * positions beyond the current position.
+   *
+   * @throws IOException
+   */
+  private void prefetchAhead() throws IOException
+  {
+    if (aNextPrefetch < aNext) aNextPrefetch = aNext;
+    int end = Math.min(aNext + aPrefetchDepth, aOrder.size());
+    for (; aNextPrefetch < end; ++aNextPrefetch)
+    {
+      int[] rc = aOrder.get(aNextPrefetch);
+      if (!prefetch(rc[0], rc[1])) break;
+    }
+  }
+
+  /**
+   * Returns a copy of the block indices of all outstanding prefetches.
+   *
+   * @return A copy of the block indices of all outstanding prefetches.
+   */
+  private synchronized ArrayList<Integer> getPrefetchIndices()
+  {
+    return new ArrayList<Integer>(aPrefetches.keySet());
+  }
+
+  /**
+   * Removes the outstanding prefetch of the input block (if any), waits for
+   * it to complete, and unpins the block.
+   *
+   * @param blkIndx The block index.
+   * @throws IOException
+   */
+  private void abandon(int blkIndx) throws IOException
+  {
+    MatrixBlockReference mbr = consume(blkIndx);
+    if (mbr != null) aMngr.unPinBlock(mbr);
+  }
+
+  /**
+   * Removes the outstanding prefetch of the input block (if any) and waits
+   * for it to complete. Returns the pinned block, or null if no prefetch was
+   * outstanding. The caller must unpin the returned block. If the prefetch
+   * failed the block is unpinned and the error is rethrown.
+   *
+   * @param blkIndx The block index.
+   * @return The pinned block, or null if no prefetch was outstanding.
+   * @throws IOException
+   */
+  private MatrixBlockReference consume(int blkIndx) throws IOException
+  {
+    Future<MatrixBlock> f;
+    MatrixBlockReference mbr;
+    synchronized (this)
+    {
+      f   = aPrefetches.remove(blkIndx);
+      mbr = aPrefetchRefs.remove(blkIndx);
+    }
+    if (f == null) return null;
+
+    try
+    {
+      waitFor(f);
+    }
+    catch (IOException ex)
+    {
+      aMngr.unPinBlock(mbr);
+      throw ex;
+    }
+    return mbr;
+  }
+
+  /**
+   * Waits for the oldest outstanding write to complete and releases its
+   * write-behind memory.
+   *
+   * @throws IOException
+   */
+  private void retireOldestWrite() throws IOException
+  {
+    Future<MatrixBlock> f = aWrites.removeFirst();
+    aWriteMemory -= aWritesMemory.removeFirst();
+    waitFor(f);
+  }
+
+  /**
+   * Waits for the input future to complete. Any exception thrown by the
+   * asynchronous task is rethrown as an IOException.
+   *
+   * @param f The future to wait for.
+   * @throws IOException
+   */
+  private void waitFor(Future<MatrixBlock> f) throws IOException
+  {
+    long strtTime = (new Date()).getTime();
+    try
+    {
+      f.get();
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while waiting for block IO ...");
+    }
+    catch (ExecutionException ex)
+    {
+      if (ex.getCause() instanceof IOException)
+        throw (IOException) ex.getCause();
+      throw new IOException(ex.getCause());
+    }
+    finally
+    {
+      long tim = (new Date()).getTime() - strtTime;
+      synchronized (this) {aWaitTime += tim;}
+    }
+  }
+}
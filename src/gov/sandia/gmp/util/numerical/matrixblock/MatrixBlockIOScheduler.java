@@ -0,0 +1,482 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.matrixblock;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import static gov.sandia.gmp.util.globals.Globals.NL;
+
+/**
+ * Schedules MatrixBlock file IO (reads, writes, renames, and deletes) on a
+ * per server basis. Each server is identified by its server tag (see
+ * MatrixBlockFileServer.getPathTag(path)) and is allowed a fixed number of
+ * concurrent IO operations. Operations requested beyond that limit are queued
+ * until an active operation completes.
+ *
+ * Queued operations are admitted first-in first-out within two classes: reads
+ * and all other operations (writes, renames, and deletes). Reads are given
+ * priority since a read generally blocks a compute thread while a write does
+ * not. To avoid starving the other class, no more than aReadPriority reads
+ * are admitted in a row while other operations are waiting.
+ *
+ * A scheduler is installed for all MatrixBlock objects with the static
+ * function MatrixBlock.setIOScheduler(scheduler). MatrixBlock then requests
+ * admission before each attempt of its catch based IO functions
+ * (readBlockCatch, writeBlockCatch, writeDiagonalCatch, renameBlockCatch,
+ * renameDiagonalCatch, and deleteBlockCatch) and releases it after each
+ * attempt. The admission is released before the catch mechanism sleeps after
+ * a failure so that a failing server does not hold IO slots while it waits.
+ * Any time spent waiting for admission is added to the blocks IO wait time
+ * and reported through MatrixBlock.notifyIOBlocking(tim).
+ *
+ * The scheduler accumulates per server statistics including the number of
+ * admitted operations, the total and maximum wait time, and the maximum queue
+ * length.
+ *
+ * Created: October 17th, 2026
+ */
+public class MatrixBlockIOScheduler
+{
+  /**
+   * The concurrent IO limit assigned to servers that have no specific limit.
+   */
+  private int                          aDefaultLimit = 4;
+
+  /**
+   * The maximum number of reads admitted in a row while other operations are
+   * waiting.
+   */
+  private int                          aReadPriority = 4;
+
+  /**
+   * Map of server tag to server queue.
+   */
+  private HashMap<String, ServerQueue> aServers      =
+          new HashMap<String, ServerQueue>();
+
+  /**
+   * Standard constructor. Each server is limited to defaultLimit concurrent
+   * IO operations.
+   *
+   * @param defaultLimit The default concurrent IO limit per server.
+   */
+  public MatrixBlockIOScheduler(int defaultLimit)
+  {
+    aDefaultLimit = Math.max(defaultLimit, 1);
+  }
+
+  /**
+   * Creates a scheduler for the servers defined in the input file server.
+   * Each server is limited to defaultLimit concurrent IO operations.
+   *
+   * @param mbfs         The file server whose server tags are registered.
+   * @param defaultLimit The default concurrent IO limit per server.
+   */
+  public MatrixBlockIOScheduler(MatrixBlockFileServer mbfs, int defaultLimit)
+  {
+    this(defaultLimit);
+    for (int i = 0; i < mbfs.getServerCount(); ++i)
+      getServerQueue(MatrixBlockFileServer.getPathTag(mbfs.getServerPath(i)));
+  }
+
+  /**
+   * Sets the concurrent IO limit for the server identified by srvrTag.
+   *
+   * @param srvrTag The server tag.
+   * @param limit   The new concurrent IO limit (at least 1).
+   */
+  public void setServerLimit(String srvrTag, int limit)
+  {
+    ServerQueue sq = getServerQueue(srvrTag);
+    synchronized (sq)
+    {
+      sq.aLimit = Math.max(limit, 1);
+      sq.dispatch();
+    }
+  }
+
+  /**
+   * Returns the concurrent IO limit for the server identified by srvrTag.
+   *
+   * @param srvrTag The server tag.
+   * @return The concurrent IO limit for the server identified by srvrTag.
+   */
+  public int getServerLimit(String srvrTag)
+  {
+    ServerQueue sq = getServerQueue(srvrTag);
+    synchronized (sq) {return sq.aLimit;}
+  }
+
+  /**
+   * Sets the maximum number of reads admitted in a row while other operations
+   * are waiting.
+   *
+   * @param n The maximum number of reads admitted in a row (at least 1).
+   */
+  public synchronized void setReadPriority(int n)
+  {
+    aReadPriority = Math.max(n, 1);
+  }
+
+  /**
+   * Returns the maximum number of reads admitted in a row while other
+   * operations are waiting.
+   *
+   * @return The maximum number of reads admitted in a row.
+   */
+  public synchronized int getReadPriority()
+  {
+    return aReadPriority;
+  }
+
+  /**
+   * Blocks until operation op is admitted on server srvrTag and returns the
+   * time spent waiting (msec). Each successful call must be followed by a
+   * call to release(srvrTag, op).
+   *
+   * @param srvrTag The server tag.
+   * @param op      The operation ("READ", "WRITE", "RENAME", or "DELETE").
+   * @return The time spent waiting for admission (msec).
+   * @throws IOException If the calling thread is interrupted while waiting.
+   */
+  public long acquire(String srvrTag, String op) throws IOException
+  {
+    long strtTime = (new Date()).getTime();
+    ServerQueue sq = getServerQueue(srvrTag);
+    boolean read = op.equals("READ");
+    synchronized (sq)
+    {
+      // add a ticket to the appropriate queue and dispatch
+
+      Ticket t = new Ticket();
+      if (read)
+        sq.aReadQ.add(t);
+      else
+        sq.aOtherQ.add(t);
+      int n = sq.aReadQ.size() + sq.aOtherQ.size();
+      if (n > sq.aMaxQueue) sq.aMaxQueue = n;
+      sq.dispatch();
+
+      // wait for admission
+
+      try
+      {
+        while (!t.aAdmitted) sq.wait();
+      }
+      catch (InterruptedException ex)
+      {
+        if (t.aAdmitted)
+        {
+          --sq.aActive;
+          sq.dispatch();
+        }
+        else if (read)
+          sq.aReadQ.remove(t);
+        else
+          sq.aOtherQ.remove(t);
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for " + op +
+                              " admission on server \"" + srvrTag + "\" ...");
+      }
+
+      // record wait time and return
+
+      long tim = (new Date()).getTime() - strtTime;
+      ++sq.aOpCount;
+      sq.aWaitTime += tim;
+      if (tim > sq.aMaxWaitTime) sq.aMaxWaitTime = tim;
+      return tim;
+    }
+  }
+
+  /**
+   * Releases an operation previously admitted by acquire(srvrTag, op).
+   *
+   * @param srvrTag The server tag.
+   * @param op      The operation ("READ", "WRITE", "RENAME", or "DELETE").
+   */
+  public void release(String srvrTag, String op)
+  {
+    ServerQueue sq = getServerQueue(srvrTag);
+    synchronized (sq)
+    {
+      if (sq.aActive > 0) --sq.aActive;
+      sq.dispatch();
+    }
+  }
+
+  /**
+   * Returns a list of all server tags known to this scheduler.
+   *
+   * @return A list of all server tags known to this scheduler.
+   */
+  public synchronized ArrayList<String> getServerTags()
+  {
+    return new ArrayList<String>(aServers.keySet());
+  }
+
+  /**
+   * Returns the number of operations currently active on server srvrTag.
+   *
+   * @param srvrTag The server tag.
+   * @return The number of operations currently active on server srvrTag.
+   */
+  public int getActiveCount(String srvrTag)
+  {
+    ServerQueue sq = getServerQueue(srvrTag);
+    synchronized (sq) {return sq.aActive;}
+  }
+
+  /**
+   * Returns the number of operations currently queued on server srvrTag.
+   *
+   * @param srvrTag The server tag.
+   * @return The number of operations currently queued on server srvrTag.
+   */
+  public int getQueuedCount(String srvrTag)
+  {
+    ServerQueue sq = getServerQueue(srvrTag);
+    synchronized (sq) {return sq.aReadQ.size() + sq.aOtherQ.size();}
+  }
+
+  /**
+   * Returns the number of operations admitted on server srvrTag.
+   *
+   * @param srvrTag The server tag.
+   * @return The number of operations admitted on server srvrTag.
+   */
+  public long getOperationCount(String srvrTag)
+  {
+    ServerQueue sq = getServerQueue(srvrTag);
+    synchronized (sq) {return sq.aOpCount;}
+  }
+
+  /**
+   * Returns the total time (msec) operations waited for admission on server
+   * srvrTag.
+   *
+   * @param srvrTag The server tag.
+   * @return The total time (msec) operations waited for admission.
+   */
+  public long getWaitTime(String srvrTag)
+  {
+    ServerQueue sq = getServerQueue(srvrTag);
+    synchronized (sq) {return sq.aWaitTime;}
+  }
+
+  /**
+   * Returns the maximum time (msec) an operation waited for admission on
+   * server srvrTag.
+   *
+   * @param srvrTag The server tag.
+   * @return The maximum time (msec) an operation waited for admission.
+   */
+  public long getMaxWaitTime(String srvrTag)
+  {
+    ServerQueue sq = getServerQueue(srvrTag);
+    synchronized (sq) {return sq.aMaxWaitTime;}
+  }
+
+  /**
+   * Returns the maximum number of operations queued on server srvrTag.
+   *
+   * @param srvrTag The server tag.
+   * @return The maximum number of operations queued on server srvrTag.
+   */
+  public int getMaxQueueLength(String srvrTag)
+  {
+    ServerQueue sq = getServerQueue(srvrTag);
+    synchronized (sq) {return sq.aMaxQueue;}
+  }
+
+  /**
+   * Returns a table of the per server statistics.
+   *
+   * @param hdr A header prepended to each line.
+   * @return A table of the per server statistics.
+   */
+  public String toString(String hdr)
+  {
+    String s = hdr + "MatrixBlockIOScheduler (default limit = " +
+               aDefaultLimit + ", read priority = " + getReadPriority() +
+               ")" + NL;
+    for (String tag: getServerTags())
+    {
+      s += hdr + "  Server \"" + tag + "\": limit = " + getServerLimit(tag) +
+           ", operations = " + getOperationCount(tag) +
+           ", wait (s) = " + (getWaitTime(tag) / 1000.0) +
+           ", max wait (s) = " + (getMaxWaitTime(tag) / 1000.0) +
+           ", max queue = " + getMaxQueueLength(tag) + NL;
+    }
+    return s;
+  }
+
+  @Override
+  public String toString()
+  {
+    return toString("");
+  }
+
+  /**
+   * Returns the server queue for the input server tag. If the queue does not
+   * exist it is created with the default limit.
+   *
+   * @param srvrTag The server tag.
+   * @return The server queue for the input server tag.
+   */
+  private synchronized ServerQueue getServerQueue(String srvrTag)
+  {
+    ServerQueue sq = aServers.get(srvrTag);
+    if (sq == null)
+    {
+      sq = new ServerQueue(aDefaultLimit);
+      aServers.put(srvrTag, sq);
+    }
+    return sq;
+  }
+
+  /**
+   * A single queued operation. Set admitted by the server queue dispatcher.
+   */
+  private static class Ticket
+  {
+    /**
+     * True when the operation may proceed.
+     */
+    private boolean aAdmitted = false;
+  }
+
+  /**
+   * The queue and statistics of a single server. All fields are guarded by
+   * the ServerQueue object.
+   */
+  private class ServerQueue
+  {
+    /**
+     * The concurrent IO limit of this server.
+     */
+    private int                aLimit       = 0;
+
+    /**
+     * The number of active operations on this server.
+     */
+    private int                aActive      = 0;
+
+    /**
+     * The number of reads admitted in a row while other operations waited.
+     */
+    private int                aReadStreak  = 0;
+
+    /**
+     * Queued read operations.
+     */
+    private LinkedList<Ticket> aReadQ       = new LinkedList<Ticket>();
+
+    /**
+     * Queued write, rename, and delete operations.
+     */
+    private LinkedList<Ticket> aOtherQ      = new LinkedList<Ticket>();
+
+    /**
+     * The number of operations admitted on this server.
+     */
+    private long               aOpCount     = 0;
+
+    /**
+     * The total time (msec) operations waited for admission.
+     */
+    private long               aWaitTime    = 0;
+
+    /**
+     * The maximum time (msec) an operation waited for admission.
+     */
+    private long               aMaxWaitTime = 0;
+
+    /**
+     * The maximum number of queued operations.
+     */
+    private int                aMaxQueue    = 0;
+
+    /**
+     * Standard constructor.
+     *
+     * @param limit The concurrent IO limit of this server.
+     */
+    private ServerQueue(int limit)
+    {
+      aLimit = limit;
+    }
+
+    /**
+     * Admits queued operations while the active count is less than the limit
+     * and notifies all waiting threads. Must be called while synchronized on
+     * this server queue.
+     */
+    private void dispatch()
+    {
+      int readPriority = getReadPriority();
+      boolean admitted = false;
+      while ((aActive < aLimit) && (!aReadQ.isEmpty() || !aOtherQ.isEmpty()))
+      {
+        // admit a read unless other operations are waiting and the read
+        // streak has reached the read priority limit
+
+        Ticket t;
+        if (!aReadQ.isEmpty() &&
+            (aOtherQ.isEmpty() || (aReadStreak < readPriority)))
+        {
+          t = aReadQ.removeFirst();
+          aReadStreak = aOtherQ.isEmpty() ? 0 : aReadStreak + 1;
+        }
+        else
+        {
+          t = aOtherQ.removeFirst();
+          aReadStreak = 0;
+        }
+
+        t.aAdmitted = true;
+        ++aActive;
+        admitted = true;
+      }
+
+      if (admitted) notifyAll();
+    }
+  }
+}
@@ -0,0 +1,713 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.matrixblock;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Dense in-core kernels for MatrixBlock sub-block updates. All matrices are
+ * row-major double[][] arrays whose extents are passed explicitly (so that
+ * partial last blocks can be processed without copying). The kernels are
+ *
+ *   gemm:   C = C - op(A) * op(B)                  (op(X) = X or X^T)
+ *   syrk:   C = C - op(A) * op(A)^T                (lower or upper only)
+ *   trsm:   B = B * L^-T  or  B = U^-T * B         (Cholesky panel solves)
+ *   potrf:  A = L * L^T   or  A = U^T * U          (in-place Cholesky)
+ *
+ * plus a cache blocked in-place transpose.
+ *
+ * The update kernel behind gemm and syrk packs its operands into contiguous
+ * micro-panels (MR rows of op(A) and NR rows of op(B)^T interleaved by the
+ * inner index) and evaluates each MR x NR tile of C in registers. The inner
+ * index is blocked by KC and the rows of C by MC so that a packed A block
+ * stays in cache while it is swept across the packed B panel. Row blocks of
+ * C (MC rows each) are independent and are processed in parallel with a
+ * fork-join pool once the operation is large enough to amortize the task
+ * overhead. Threads that already run kernels concurrently (e.g. the task
+ * threads of a multi-threaded MatrixBlockCholesky) are marked with
+ * setInlineForCurrentThread(true) and always run the update inline so that
+ * the process is not oversubscribed with workers times pool threads. The
+ * trsm and potrf kernels are blocked so that most of their work
+ * is performed by the same update kernel.
+ *
+ * Note that MatrixBlock sub-blocks are stored transposed (s[j][i] is element
+ * i,j). In that form the lower Cholesky update A(i,j) -= L(i,k) L(j,k)^T is
+ * gemm(s_ij, s_jk, true, s_ik, false, ...), the diagonal update is
+ * syrk(s_jj, s_jk, true, ..., upper = true), the panel solve is
+ * trsmUpperTransposeLeft(s_ij, s_jj, ...), and the diagonal decomposition is
+ * potrf(s_jj, n, true).
+ *
+ * Created: October 17th, 2026
+ */
+public class MatrixBlockKernels
+{
+  /**
+   * Register tile rows.
+   */
+  private static final int MR           = 4;
+
+  /**
+   * Register tile columns.
+   */
+  private static final int NR           = 4;
+
+  /**
+   * Row block size of C (rows of op(A) packed per task).
+   */
+  private static final int MC           = 128;
+
+  /**
+   * Inner index block size.
+   */
+  private static final int KC           = 256;
+
+  /**
+   * Block size used by the blocked trsm and potrf kernels.
+   */
+  private static final int NB           = 64;
+
+  /**
+   * Transpose tile size.
+   */
+  private static final int TB           = 32;
+
+  /**
+   * The minimum number of multiply-adds (m * n * k) of an update before it is
+   * performed in parallel.
+   */
+  private static final long PAR_MIN_OPS = 1L << 21;
+
+  /**
+   * Triangle flags used by the update kernel.
+   */
+  private static final int FULL = 0, LOWER = 1, UPPER = 2;
+
+  /**
+   * The fork-join pool used for parallel updates.
+   */
+  private static volatile ForkJoinPool aPool =
+          new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+
+  /**
+   * True for threads that run all updates inline (see
+   * setInlineForCurrentThread()).
+   */
+  private static final ThreadLocal<Boolean> aInline =
+          new ThreadLocal<Boolean>()
+  {
+    @Override
+    protected Boolean initialValue()
+    {
+      return Boolean.FALSE;
+    }
+  };
+
+  /**
+   * Per thread packed A block buffer.
+   */
+  private static final ThreadLocal<double[]> aPackA =
+          new ThreadLocal<double[]>()
+  {
+    @Override
+    protected double[] initialValue()
+    {
+      return new double [MC * KC];
+    }
+  };
+
+  /**
+   * Static class ... no instances.
+   */
+  private MatrixBlockKernels()
+  {
+  }
+
+  /**
+   * Sets the number of threads used by parallel updates (1 turns parallel
+   * updates off). The previous pool is shut down (updates in progress in it
+   * complete normally). Does nothing if the parallelism is unchanged.
+   *
+   * @param nThreads The number of threads used by parallel updates.
+   */
+  public static synchronized void setParallelism(int nThreads)
+  {
+    nThreads = Math.max(nThreads, 1);
+    if (nThreads == aPool.getParallelism()) return;
+
+    ForkJoinPool old = aPool;
+    aPool = new ForkJoinPool(nThreads);
+    old.shutdown();
+  }
+
+  /**
+   * If inline is true all updates requested by the calling thread are
+   * performed on the calling thread without using the fork-join pool. This
+   * should be set by threads that are themselves one of several threads
+   * running kernels concurrently.
+   *
+   * @param inline If true the calling thread runs all updates inline.
+   */
+  public static void setInlineForCurrentThread(boolean inline)
+  {
+    aInline.set(inline);
+  }
+
+  /**
+   * Returns the number of threads used by parallel updates.
+   *
+   * @return The number of threads used by parallel updates.
+   */
+  public static int getParallelism()
+  {
+    return aPool.getParallelism();
+  }
+
+  /**
+   * General matrix update C = C - op(A) * op(B) where C is m x n, op(A) is
+   * m x k, and op(B) is k x n.
+   *
+   * @param c      The m x n matrix C.
+   * @param a      The matrix A.
+   * @param transA If true op(A) = A^T (A is k x m), else op(A) = A.
+   * @param b      The matrix B.
+   * @param transB If true op(B) = B^T (B is n x k), else op(B) = B.
+   * @param m      The number of rows of C.
+   * @param n      The number of columns of C.
+   * @param k      The inner dimension.
+   */
+  public static void gemm(double[][] c, double[][] a, boolean transA,
+                          double[][] b, boolean transB, int m, int n, int k)
+  {
+    update(c, 0, 0, a, 0, 0, transA, b, 0, 0, transB, m, n, k, FULL);
+  }
+
+  /**
+   * The common case C = C - A * B^T where C is m x n, A is m x k, and B is
+   * n x k.
+   *
+   * @param c The m x n matrix C.
+   * @param a The m x k matrix A.
+   * @param b The n x k matrix B.
+   * @param m The number of rows of C.
+   * @param n The number of columns of C.
+   * @param k The inner dimension.
+   */
+  public static void gemmNT(double[][] c, double[][] a, double[][] b,
+                            int m, int n, int k)
+  {
+    update(c, 0, 0, a, 0, 0, false, b, 0, 0, true, m, n, k, FULL);
+  }
+
+  /**
+   * Symmetric rank-k update C = C - op(A) * op(A)^T where C is n x n and
+   * op(A) is n x k. Only the lower (j <= i) or upper (j >= i) triangle of C
+   * is referenced and updated.
+   *
+   * @param c     The n x n matrix C.
+   * @param a     The matrix A.
+   * @param trans If true op(A) = A^T (A is k x n), else op(A) = A.
+   * @param n     The order of C.
+   * @param k     The inner dimension.
+   * @param upper If true the upper triangle of C is updated, else the lower.
+   */
+  public static void syrk(double[][] c, double[][] a, boolean trans,
+                          int n, int k, boolean upper)
+  {
+    update(c, 0, 0, a, 0, 0, trans, a, 0, 0, !trans, n, n, k,
+           upper ? UPPER : LOWER);
+  }
+
+  /**
+   * Triangular solve B = B * L^-T where B is m x n and L is an n x n lower
+   * triangular matrix (only the lower triangle of l is referenced). This is
+   * the Cholesky panel solve in row-major form.
+   *
+   * @param b The m x n matrix B.
+   * @param l The n x n lower triangular matrix L.
+   * @param m The number of rows of B.
+   * @param n The number of columns of B (order of L).
+   */
+  public static void trsmLowerTransposeRight(double[][] b, double[][] l,
+                                             int m, int n)
+  {
+    for (int j0 = 0; j0 < n; j0 += NB)
+    {
+      // solve the columns of the current block for all rows
+
+      int jb = Math.min(NB, n - j0);
+      for (int i = 0; i < m; ++i)
+      {
+        double[] browi = b[i];
+        for (int j = j0; j < j0 + jb; ++j)
+        {
+          double[] lrowj = l[j];
+          double s = browi[j];
+          for (int p = j0; p < j; ++p) s -= browi[p] * lrowj[p];
+          browi[j] = s / lrowj[j];
+        }
+      }
+
+      // update the remaining columns: B(:, j2:) -= X(:, j0:j2) L(j2:, j0:j2)^T
+
+      int j2 = j0 + jb;
+      update(b, 0, j2, b, 0, j0, false, l, j2, j0, true, m, n - j2, jb, FULL);
+    }
+  }
+
+  /**
+   * Triangular solve B = U^-T * B where B is n x m and U is an n x n upper
+   * triangular matrix (only the upper triangle of u is referenced). This is
+   * the Cholesky panel solve for transposed (MatrixBlock) storage.
+   *
+   * @param b The n x m matrix B.
+   * @param u The n x n upper triangular matrix U.
+   * @param n The number of rows of B (order of U).
+   * @param m The number of columns of B.
+   */
+  public static void trsmUpperTransposeLeft(double[][] b, double[][] u,
+                                            int n, int m)
+  {
+    for (int i0 = 0; i0 < n; i0 += NB)
+    {
+      // solve the rows of the current block
+
+      int ib = Math.min(NB, n - i0);
+      for (int i = i0; i < i0 + ib; ++i)
+      {
+        double[] browi = b[i];
+        for (int p = i0; p < i; ++p)
+        {
+          double upi = u[p][i];
+          double[] browp = b[p];
+          for (int j = 0; j < m; ++j) browi[j] -= upi * browp[j];
+        }
+        double d = 1.0 / u[i][i];
+        for (int j = 0; j < m; ++j) browi[j] *= d;
+      }
+
+      // update the remaining rows: B(i2:, :) -= U(i0:i2, i2:)^T X(i0:i2, :)
+
+      int i2 = i0 + ib;
+      update(b, i2, 0, u, i0, i2, true, b, i0, 0, false, n - i2, m, ib, FULL);
+    }
+  }
+
+  /**
+   * In-place Cholesky decomposition of the n x n symmetric positive definite
+   * matrix A. If upper is false A = L * L^T and L is returned in the lower
+   * triangle of a. If upper is true A = U^T * U and U is returned in the
+   * upper triangle of a. Only the requested triangle is referenced.
+   *
+   * @param a     The n x n matrix A.
+   * @param n     The order of A.
+   * @param upper If true the upper triangle is decomposed, else the lower.
+   * @return True if A is positive definite. If false a is only partially
+   *         decomposed.
+   */
+  public static boolean potrf(double[][] a, int n, boolean upper)
+  {
+    for (int j0 = 0; j0 < n; j0 += NB)
+    {
+      // decompose the diagonal block
+
+      int jb = Math.min(NB, n - j0);
+      int j2 = j0 + jb;
+      if (!potrfUnblocked(a, j0, jb, upper)) return false;
+      if (j2 == n) break;
+
+      // solve the panel and update the trailing matrix
+
+      if (upper)
+      {
+        // U(j0:j2, j2:) = U(j0:j2, j0:j2)^-T A(j0:j2, j2:) and
+        // A(j2:, j2:) -= U(j0:j2, j2:)^T U(j0:j2, j2:)
+
+        for (int i = j0; i < j2; ++i)
+        {
+          double[] arowi = a[i];
+          for (int p = j0; p < i; ++p)
+          {
+            double api = a[p][i];
+            double[] arowp = a[p];
+            for (int j = j2; j < n; ++j) arowi[j] -= api * arowp[j];
+          }
+          double d = 1.0 / arowi[i];
+          for (int j = j2; j < n; ++j) arowi[j] *= d;
+        }
+        update(a, j2, j2, a, j0, j2, true, a, j0, j2, false, n - j2, n - j2,
+               jb, UPPER);
+      }
+      else
+      {
+        // L(j2:, j0:j2) = A(j2:, j0:j2) L(j0:j2, j0:j2)^-T and
+        // A(j2:, j2:) -= L(j2:, j0:j2) L(j2:, j0:j2)^T
+
+        for (int i = j2; i < n; ++i)
+        {
+          double[] arowi = a[i];
+          for (int j = j0; j < j2; ++j)
+          {
+            double[] arowj = a[j];
+            double s = arowi[j];
+            for (int p = j0; p < j; ++p) s -= arowi[p] * arowj[p];
+            arowi[j] = s / arowj[j];
+          }
+        }
+        update(a, j2, j2, a, j2, j0, false, a, j2, j0, true, n - j2, n - j2,
+               jb, LOWER);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * In-place cache blocked transpose of the n x n matrix a.
+   *
+   * @param a The matrix to be transposed.
+   * @param n The order of a.
+   */
+  public static void transpose(double[][] a, int n)
+  {
+    for (int i0 = 0; i0 < n; i0 += TB)
+    {
+      int i1 = Math.min(i0 + TB, n);
+      for (int j0 = 0; j0 <= i0; j0 += TB)
+      {
+        int j1 = Math.min(j0 + TB, n);
+        for (int i = i0; i < i1; ++i)
+        {
+          double[] arowi = a[i];
+          int je = (j0 == i0) ? i : j1;
+          for (int j = j0; j < je; ++j)
+          {
+            double swp = arowi[j];
+            arowi[j]   = a[j][i];
+            a[j][i]    = swp;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Unblocked Cholesky decomposition of the jb x jb diagonal block of a
+   * beginning at j0,j0.
+   *
+   * @param a     The matrix.
+   * @param j0    The first row/column of the diagonal block.
+   * @param jb    The order of the diagonal block.
+   * @param upper If true the upper triangle is decomposed, else the lower.
+   * @return True if the block is positive definite.
+   */
+  private static boolean potrfUnblocked(double[][] a, int j0, int jb,
+                                        boolean upper)
+  {
+    int j2 = j0 + jb;
+    for (int j = j0; j < j2; ++j)
+    {
+      double[] arowj = a[j];
+      if (upper)
+      {
+        // row j of U: U(j,i) = (A(j,i) - sum U(p,j) U(p,i)) / U(j,j)
+
+        for (int p = j0; p < j; ++p)
+        {
+          double[] arowp = a[p];
+          double apj = arowp[j];
+          for (int i = j; i < j2; ++i) arowj[i] -= apj * arowp[i];
+        }
+        if (!(arowj[j] > 0.0)) return false;
+        arowj[j] = Math.sqrt(arowj[j]);
+        double d = 1.0 / arowj[j];
+        for (int i = j + 1; i < j2; ++i) arowj[i] *= d;
+      }
+      else
+      {
+        // column j of L: L(i,j) = (A(i,j) - sum L(i,p) L(j,p)) / L(j,j)
+
+        double s = arowj[j];
+        for (int p = j0; p < j; ++p) s -= arowj[p] * arowj[p];
+        if (!(s > 0.0)) return false;
+        arowj[j] = Math.sqrt(s);
+        for (int i = j + 1; i < j2; ++i)
+        {
+          double[] arowi = a[i];
+          s = arowi[j];
+          for (int p = j0; p < j; ++p) s -= arowi[p] * arowj[p];
+          arowi[j] = s / arowj[j];
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * The packed update kernel C = C - op(A) * op(B) on the m x n region of c
+   * beginning at ci,cj. op(A) is the m x k region of a beginning at ai,aj
+   * (or its transpose) and op(B) is the k x n region of b beginning at bi,bj
+   * (or its transpose). If tri is LOWER (UPPER) only elements of C with
+   * j <= i (j >= i), in region relative coordinates, are updated.
+   */
+  private static void update(double[][] c, int ci, int cj,
+                             double[][] a, int ai, int aj, boolean transA,
+                             double[][] b, int bi, int bj, boolean transB,
+                             int m, int n, int k, int tri)
+  {
+    if ((m <= 0) || (n <= 0) || (k <= 0)) return;
+
+    int npn = (n + NR - 1) / NR;
+    double[] bp = new double [npn * NR * Math.min(k, KC)];
+    int nBlks = (m + MC - 1) / MC;
+    ForkJoinPool pool = aPool;
+    boolean par = (nBlks > 1) && (pool.getParallelism() > 1) &&
+                  ((long) m * n * k >= PAR_MIN_OPS) && !aInline.get();
+    for (int p0 = 0; p0 < k; p0 += KC)
+    {
+      // pack the op(B)^T panel for this inner block and update all row
+      // blocks of C
+
+      int kc = Math.min(KC, k - p0);
+      packB(bp, b, bi, bj, transB, p0, kc, n);
+      Panel pnl = new Panel(c, ci, cj, a, ai, aj, transA, bp, p0, kc, m, n,
+                            tri);
+      if (par)
+        pool.invoke(new PanelTask(pnl, 0, nBlks));
+      else
+        for (int blk = 0; blk < nBlks; ++blk) pnl.updateRowBlock(blk);
+    }
+  }
+
+  /**
+   * Packs rows 0 to n-1 of op(B)^T, inner indices p0 to p0+kc-1, into NR row
+   * micro-panels interleaved by the inner index. Rows beyond n are zero.
+   */
+  private static void packB(double[] bp, double[][] b, int bi, int bj,
+                            boolean transB, int p0, int kc, int n)
+  {
+    int npn = (n + NR - 1) / NR;
+    for (int jb = 0; jb < npn; ++jb)
+    {
+      for (int jj = 0; jj < NR; ++jj)
+      {
+        int j = jb * NR + jj;
+        int q = jb * kc * NR + jj;
+        if (j >= n)
+          for (int p = 0; p < kc; ++p, q += NR) bp[q] = 0.0;
+        else if (transB)
+        {
+          double[] brow = b[bi + j];
+          for (int p = 0; p < kc; ++p, q += NR) bp[q] = brow[bj + p0 + p];
+        }
+        else
+          for (int p = 0; p < kc; ++p, q += NR)
+            bp[q] = b[bi + p0 + p][bj + j];
+      }
+    }
+  }
+
+  /**
+   * The state of a single inner block (p0 to p0+kc-1) of an update. Each
+   * row block of C is updated independently by updateRowBlock(blk).
+   */
+  private static class Panel
+  {
+    private double[][] c, a;
+    private double[]   bp;
+    private int        ci, cj, ai, aj, p0, kc, m, n, tri;
+    private boolean    transA;
+
+    Panel(double[][] c, int ci, int cj, double[][] a, int ai, int aj,
+          boolean transA, double[] bp, int p0, int kc, int m, int n, int tri)
+    {
+      this.c  = c;  this.ci = ci; this.cj = cj;
+      this.a  = a;  this.ai = ai; this.aj = aj; this.transA = transA;
+      this.bp = bp; this.p0 = p0; this.kc = kc;
+      this.m  = m;  this.n  = n;  this.tri = tri;
+    }
+
+    /**
+     * Packs rows blk*MC to blk*MC+MC-1 of op(A) and updates the corresponding
+     * rows of C with all NR column micro-panels of the packed B.
+     */
+    void updateRowBlock(int blk)
+    {
+      int i0 = blk * MC;
+      int mc = Math.min(MC, m - i0);
+      int npm = (mc + MR - 1) / MR;
+      int npn = (n + NR - 1) / NR;
+      double[] ap = aPackA.get();
+
+      // pack op(A) rows into MR row micro-panels
+
+      for (int ib = 0; ib < npm; ++ib)
+      {
+        for (int ii = 0; ii < MR; ++ii)
+        {
+          int i = ib * MR + ii;
+          int q = ib * kc * MR + ii;
+          if (i >= mc)
+            for (int p = 0; p < kc; ++p, q += MR) ap[q] = 0.0;
+          else if (transA)
+            for (int p = 0; p < kc; ++p, q += MR)
+              ap[q] = a[ai + p0 + p][aj + i0 + i];
+          else
+          {
+            double[] arow = a[ai + i0 + i];
+            for (int p = 0; p < kc; ++p, q += MR) ap[q] = arow[aj + p0 + p];
+          }
+        }
+      }
+
+      // evaluate each MR x NR tile
+
+      for (int ib = 0; ib < npm; ++ib)
+      {
+        int r0 = i0 + ib * MR;
+        for (int jb = 0; jb < npn; ++jb)
+        {
+          int s0 = jb * NR;
+          if ((tri == LOWER) && (s0 > r0 + MR - 1)) break;
+          if ((tri == UPPER) && (s0 + NR - 1 < r0)) continue;
+          tile(ap, ib * kc * MR, jb * kc * NR, r0, s0);
+        }
+      }
+    }
+
+    /**
+     * Computes the MR x NR tile of op(A) * op(B) beginning at C row r0 and
+     * column s0 (region relative) from the packed micro-panels and subtracts
+     * it from C.
+     */
+    private void tile(double[] ap, int pa, int pb, int r0, int s0)
+    {
+      double c00 = 0, c01 = 0, c02 = 0, c03 = 0;
+      double c10 = 0, c11 = 0, c12 = 0, c13 = 0;
+      double c20 = 0, c21 = 0, c22 = 0, c23 = 0;
+      double c30 = 0, c31 = 0, c32 = 0, c33 = 0;
+      for (int p = 0; p < kc; ++p, pa += MR, pb += NR)
+      {
+        double a0 = ap[pa], a1 = ap[pa+1], a2 = ap[pa+2], a3 = ap[pa+3];
+        double b0 = bp[pb], b1 = bp[pb+1], b2 = bp[pb+2], b3 = bp[pb+3];
+        c00 += a0 * b0; c01 += a0 * b1; c02 += a0 * b2; c03 += a0 * b3;
+        c10 += a1 * b0; c11 += a1 * b1; c12 += a1 * b2; c13 += a1 * b3;
+        c20 += a2 * b0; c21 += a2 * b1; c22 += a2 * b2; c23 += a2 * b3;
+        c30 += a3 * b0; c31 += a3 * b1; c32 += a3 * b2; c33 += a3 * b3;
+      }
+
+      // subtract the tile from C (clipped to the region and triangle)
+
+      if ((r0 + MR <= m) && (s0 + NR <= n) && (tri == FULL))
+      {
+        store(c[ci + r0],     cj + s0, c00, c01, c02, c03);
+        store(c[ci + r0 + 1], cj + s0, c10, c11, c12, c13);
+        store(c[ci + r0 + 2], cj + s0, c20, c21, c22, c23);
+        store(c[ci + r0 + 3], cj + s0, c30, c31, c32, c33);
+      }
+      else
+      {
+        storeClipped(r0,     s0, c00, c01, c02, c03);
+        storeClipped(r0 + 1, s0, c10, c11, c12, c13);
+        storeClipped(r0 + 2, s0, c20, c21, c22, c23);
+        storeClipped(r0 + 3, s0, c30, c31, c32, c33);
+      }
+    }
+
+    /**
+     * Subtracts a tile row (C row i, columns s0 to s0+NR-1, region relative)
+     * from C, clipped to the region and triangle.
+     */
+    private void storeClipped(int i, int s0, double v0, double v1, double v2,
+                              double v3)
+    {
+      if (i >= m) return;
+      double[] crow = c[ci + i];
+      storeClipped(crow, i, s0,     v0);
+      storeClipped(crow, i, s0 + 1, v1);
+      storeClipped(crow, i, s0 + 2, v2);
+      storeClipped(crow, i, s0 + 3, v3);
+    }
+
+    /**
+     * Subtracts v from C element i,j (region relative) if it is within the
+     * region and triangle.
+     */
+    private void storeClipped(double[] crow, int i, int j, double v)
+    {
+      if ((j >= n) || ((tri == LOWER) && (j > i)) ||
+          ((tri == UPPER) && (j < i))) return;
+      crow[cj + j] -= v;
+    }
+
+    /**
+     * Subtracts a full tile row from C.
+     */
+    private static void store(double[] crow, int j, double v0, double v1,
+                              double v2, double v3)
+    {
+      crow[j] -= v0; crow[j+1] -= v1; crow[j+2] -= v2; crow[j+3] -= v3;
+    }
+  }
+
+  /**
+   * Fork-join task that updates the row blocks blk0 to blk1-1 of a panel.
+   */
+  @SuppressWarnings("serial")
+  private static class PanelTask extends RecursiveAction
+  {
+    private Panel pnl;
+    private int   blk0, blk1;
+
+    PanelTask(Panel pnl, int blk0, int blk1)
+    {
+      this.pnl  = pnl;
+      this.blk0 = blk0;
+      this.blk1 = blk1;
+    }
+
+    @Override
+    protected void compute()
+    {
+      if (blk1 - blk0 == 1)
+        pnl.updateRowBlock(blk0);
+      else
+      {
+        int mid = (blk0 + blk1) / 2;
+        invokeAll(new PanelTask(pnl, blk0, mid), new PanelTask(pnl, mid, blk1));
+      }
+    }
+  }
+}
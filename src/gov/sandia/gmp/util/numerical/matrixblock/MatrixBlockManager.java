@@ -0,0 +1,1158 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.matrixblock;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import static gov.sandia.gmp.util.globals.Globals.NL;
+
+/**
+ * The MatrixBlockManager maintains a memory bounded cache of MatrixBlock
+ * objects for a single out-of-core matrix. All blocks handed out by the
+ * manager are MatrixBlockReference objects (a MatrixBlock derived class
+ * defined below) that report their IO and memory activity back to the
+ * manager through the MatrixBlock IO hooks (requestIO(), completedIO(...),
+ * notifyIOAllocate(...), and notifyIOBlocking(...)).
+ *
+ * Blocks are requested with getBlock(row, col). If the block was previously
+ * requested and is still loaded it is returned immediately (a hit) with no
+ * disk access. Otherwise (a miss) the returned reference will load itself
+ * from its source path the first time its sub-blocks are locked. Before a
+ * block is returned the manager ensures that enough memory exists within the
+ * memory budget to hold the block by evicting other loaded and unlocked
+ * blocks. Eviction uses a GreedyDual-Size prescription that combines
+ * recency with reload cost:
+ *
+ *   On access:   H(b) = L + cost(b) / size(b)
+ *   On eviction: evict b with minimum H(b) (+ write cost if modified)
+ *                and set L = H(b)
+ *
+ * where cost(b) is the measured (or estimated) read time of the block in
+ * milliseconds and size(b) is its in-core memory allocation in MB. Blocks that
+ * have not been referenced recently drift to the bottom of the ordering as L
+ * increases, while blocks that are expensive to reload survive longer than
+ * cheap ones of the same age.
+ *
+ * Blocks that were modified by the caller (setModified() on the reference)
+ * are written to their destination path before they are unloaded (write-back).
+ * After a write-back the source path of the block is reassigned to the
+ * destination so that a subsequent reload retrieves the modified data.
+ *
+ * Write-backs can be staged (setStaging(true)). A staged write-back is
+ * written to a staging file beside the destination (the destination file
+ * header with STAGE_SUFFIX appended) and the source of the block is
+ * reassigned to the staging file, so the destination is left unchanged until
+ * the staged blocks are committed (commitStaged()), which renames each
+ * staging file over its destination. A caller that records its progress
+ * between commits (e.g. the MatrixBlockCholesky checkpoint) can then restart
+ * from a destination that never contains partially completed work. A caller
+ * that fails within the same process discards its uncommitted work with
+ * rollbackStaged(). A new process restarting after an interruption calls
+ * recoverStaged(commit) to either complete an interrupted commit or discard
+ * all uncommitted staging files.
+ *
+ * Eviction is always performed in getBlock(...) before the requested block is
+ * loaded and never from within a MatrixBlock IO hook. This avoids holding a
+ * lock on one MatrixBlock while attempting to unload another (which can
+ * deadlock two threads loading different blocks). As a consequence the memory
+ * budget is soft ... it can be exceeded temporarily by the blocks that are
+ * locked by callers.
+ *
+ * Blocks can be pinned by a MatrixBlockIOPipeline prefetch (pinBlock(row,
+ * col)). A pinned block is never evicted until it is unpinned.
+ *
+ * The manager tracks hits, misses, loads, evictions, write-backs, the number
+ * of bytes read and written, and the total time spent blocking. These are
+ * available from the getters or as a single string from getStatistics(hdr).
+ *
+ * Created: October 17th, 2026
+ */
+public class MatrixBlockManager
+{
+  /**
+   * The suffix appended to the destination file header of a block to form
+   * its staging file header.
+   */
+  public static final String STAGE_SUFFIX = "_stage";
+
+  /**
+   * The matrix block definition of the matrix managed by this manager.
+   */
+  private MatrixBlockDefinition              aMtrxBlkDefn     = null;
+
+  /**
+   * The optional file server used to define the source and destination
+   * paths of each block. If null aSrcPthFilHdr and aDstPthFilHdr are used.
+   */
+  private MatrixBlockFileServer              aFileServer      = null;
+
+  /**
+   * The source secondary path tag (e.g. "chol") used with aFileServer to
+   * define each blocks source path. Also used as the block file header.
+   */
+  private String                             aSrcTag          = "";
+
+  /**
+   * The destination secondary path tag used with aFileServer to define each
+   * blocks destination path. Also used as the block file header.
+   */
+  private String                             aDstTag          = "";
+
+  /**
+   * The source path/file header (of the form "path/header") used if no file
+   * server is defined.
+   */
+  private String                             aSrcPthFilHdr    = "";
+
+  /**
+   * The destination path/file header (of the form "path/header") used if no
+   * file server is defined.
+   */
+  private String                             aDstPthFilHdr    = "";
+
+  /**
+   * The maximum memory (bytes) of all blocks managed by this manager.
+   */
+  private long                               aMaxMemory       = 0;
+
+  /**
+   * The current memory (bytes) of all blocks managed by this manager.
+   */
+  private long                               aAllocatedMemory = 0;
+
+  /**
+   * The estimated IO rate (bytes / msec) used to estimate the reload cost
+   * of blocks that have never been read.
+   */
+  private double                             aIORate          = 1.0E5;
+
+  /**
+   * The GreedyDual-Size inflation value (L). Set to the priority of the last
+   * evicted block.
+   */
+  private double                             aInflation       = 0.0;
+
+  /**
+   * Map of all block references created by this manager keyed by their
+   * block index.
+   */
+  private HashMap<Integer, MatrixBlockReference> aBlockMap    =
+          new HashMap<Integer, MatrixBlockReference>();
+
+  /**
+   * The number of block requests that found the block loaded.
+   */
+  private long                               aHits            = 0;
+
+  /**
+   * The number of block requests that found the block unloaded.
+   */
+  private long                               aMisses          = 0;
+
+  /**
+   * The number of block reads performed by managed blocks.
+   */
+  private long                               aLoads           = 0;
+
+  /**
+   * The number of blocks unloaded by the manager to satisfy the memory budget.
+   */
+  private long                               aEvictions       = 0;
+
+  /**
+   * The number of modified blocks written by the manager before they were
+   * evicted or flushed.
+   */
+  private long                               aWriteBacks      = 0;
+
+  /**
+   * The number of bytes read by managed blocks.
+   */
+  private long                               aBytesRead       = 0;
+
+  /**
+   * The number of bytes written by the manager.
+   */
+  private long                               aBytesWritten    = 0;
+
+  /**
+   * The total time (msec) managed blocks spent blocking.
+   */
+  private long                               aBlockingTime    = 0;
+
+  /**
+   * If true modified blocks are written to their staging file rather than
+   * their destination (see setStaging(boolean)).
+   */
+  private volatile boolean                   aStaging         = false;
+
+  /**
+   * The blocks written to their staging file since the last commit, keyed
+   * by block index.
+   */
+  private HashMap<Integer, MatrixBlockReference> aStaged      =
+          new HashMap<Integer, MatrixBlockReference>();
+
+  /**
+   * Standard constructor. All blocks are read from the input source
+   * path/file header and written to the input destination path/file header.
+   *
+   * @param mbd           The matrix block definition of the managed matrix.
+   * @param srcPthFilHdr  The source path/file header ("path/header").
+   * @param dstPthFilHdr  The destination path/file header ("path/header").
+   * @param maxMem        The memory budget (bytes) of all managed blocks.
+   */
+  public MatrixBlockManager(MatrixBlockDefinition mbd, String srcPthFilHdr,
+                            String dstPthFilHdr, long maxMem)
+  {
+    aMtrxBlkDefn  = mbd;
+    aSrcPthFilHdr = srcPthFilHdr;
+    aDstPthFilHdr = dstPthFilHdr;
+    aMaxMemory    = maxMem;
+  }
+
+  /**
+   * File server constructor. All blocks are read from the file server path
+   * defined by the source tag and written to the file server path defined by
+   * the destination tag. The tags are also used as the block file headers.
+   *
+   * @param mbd    The matrix block definition of the managed matrix.
+   * @param mbfs   The file server that defines the block paths.
+   * @param srcTag The source secondary path tag (e.g. "chol").
+   * @param dstTag The destination secondary path tag (e.g. "chol").
+   * @param maxMem The memory budget (bytes) of all managed blocks.
+   */
+  public MatrixBlockManager(MatrixBlockDefinition mbd,
+                            MatrixBlockFileServer mbfs,
+                            String srcTag, String dstTag, long maxMem)
+  {
+    aMtrxBlkDefn = mbd;
+    aFileServer  = mbfs;
+    aSrcTag      = srcTag;
+    aDstTag      = dstTag;
+    aMaxMemory   = maxMem;
+  }
+
+  /**
+   * Block count constructor. Same as the standard constructor except the
+   * memory budget is defined as the input number of blocks times the core
+   * memory storage of a single block.
+   *
+   * @param mbd           The matrix block definition of the managed matrix.
+   * @param srcPthFilHdr  The source path/file header ("path/header").
+   * @param dstPthFilHdr  The destination path/file header ("path/header").
+   * @param maxBlks       The number of in-core blocks in the memory budget.
+   */
+  public MatrixBlockManager(MatrixBlockDefinition mbd, String srcPthFilHdr,
+                            String dstPthFilHdr, int maxBlks)
+  {
+    this(mbd, srcPthFilHdr, dstPthFilHdr, maxBlks * mbd.coreMemoryStorage());
+  }
+
+  /**
+   * Returns the matrix block definition of the managed matrix.
+   *
+   * @return The matrix block definition of the managed matrix.
+   */
+  public MatrixBlockDefinition getMatrixBlockDefinition()
+  {
+    return aMtrxBlkDefn;
+  }
+
+  /**
+   * Returns the block row,col. If the block is already loaded it is returned
+   * immediately (hit). Otherwise, memory is made available for the block by
+   * evicting other blocks and the returned block will load itself when its
+   * sub-blocks are first locked (miss). The caller should not hold a lock
+   * on any managed block that it is willing to have evicted when calling this
+   * function.
+   *
+   * @param row The block row index.
+   * @param col The block column index.
+   * @return The block row,col.
+   * @throws IOException
+   */
+  public MatrixBlockReference getBlock(int row, int col) throws IOException
+  {
+    MatrixBlockReference mbr;
+    synchronized (this)
+    {
+      mbr = getReference(row, col);
+      if (mbr.isBlockLoaded())
+        ++aHits;
+      else
+        ++aMisses;
+      touch(mbr);
+    }
+
+    // make room for the block if it is not loaded and exit
+
+    if (!mbr.isBlockLoaded()) evict(aMtrxBlkDefn.coreMemoryStorage(), mbr);
+    return mbr;
+  }
+
+  /**
+   * Returns a new block row,col created in memory (createBlock(diagValue))
+   * and marked as modified so that it will be written to its destination when
+   * evicted or flushed. If the block is already loaded it is returned as is.
+   * This call does not count as a hit or miss.
+   *
+   * @param row       The block row index.
+   * @param col       The block column index.
+   * @param diagValue The diagonal value set on the diagonal if this is a
+   *                  diagonal block.
+   * @return The new block row,col.
+   * @throws IOException
+   */
+  public MatrixBlockReference createBlock(int row, int col, double diagValue)
+         throws IOException
+  {
+    MatrixBlockReference mbr;
+    synchronized (this)
+    {
+      mbr = getReference(row, col);
+      touch(mbr);
+    }
+
+    if (!mbr.isBlockLoaded())
+    {
+      evict(aMtrxBlkDefn.coreMemoryStorage(), mbr);
+      mbr.createBlock(diagValue);
+    }
+    return mbr;
+  }
+
+  /**
+   * Returns true if block row,col is currently loaded in this manager.
+   *
+   * @param row The block row index.
+   * @param col The block column index.
+   * @return True if block row,col is currently loaded in this manager.
+   */
+  public synchronized boolean isBlockLoaded(int row, int col)
+  {
+    MatrixBlockReference mbr;
+    mbr = aBlockMap.get(MatrixBlock.getBlockIndex(row, col));
+    return ((mbr != null) && mbr.isBlockLoaded());
+  }
+
+  /**
+   * Writes all loaded and modified blocks to their destination.
+   *
+   * @throws IOException
+   */
+  public void flush() throws IOException
+  {
+    for (MatrixBlockReference mbr: getReferences())
+    {
+      if (mbr.isBlockLoaded() && mbr.isModified()) writeBack(mbr);
+    }
+  }
+
+  /**
+   * Writes all loaded and modified blocks to their destination and unloads
+   * all unlocked blocks. Locked blocks remain loaded.
+   *
+   * @throws IOException
+   */
+  public void unLoadAll() throws IOException
+  {
+    flush();
+    for (MatrixBlockReference mbr: getReferences())
+    {
+      try
+      {
+        mbr.unLoad();
+      }
+      catch (IllegalStateException ex)
+      {
+        // locked ... leave it loaded
+      }
+    }
+  }
+
+  /**
+   * Turns staged write-backs on or off. While on, modified blocks are
+   * written to their staging file and the destination is only changed by
+   * commitStaged().
+   *
+   * @param stage True to stage write-backs.
+   */
+  public void setStaging(boolean stage)
+  {
+    aStaging = stage;
+  }
+
+  /**
+   * Returns true if write-backs are staged.
+   *
+   * @return True if write-backs are staged.
+   */
+  public boolean isStaging()
+  {
+    return aStaging;
+  }
+
+  /**
+   * Renames the staging file of every block staged since the last commit
+   * over its destination and reassigns the source of each to its
+   * destination. Blocks that are still modified are not written ... callers
+   * should flush() first.
+   *
+   * @throws IOException
+   */
+  public void commitStaged() throws IOException
+  {
+    ArrayList<MatrixBlockReference> staged;
+    synchronized (this)
+    {
+      staged = new ArrayList<MatrixBlockReference>(aStaged.values());
+      aStaged.clear();
+    }
+
+    for (MatrixBlockReference mbr: staged)
+    {
+      synchronized (mbr)
+      {
+        mbr.renameBlockCatch(getStagePathFileHeader(mbr),
+                             mbr.getDestinationPathFileHeader());
+        if (isStaged(mbr))
+          mbr.setSourcePathFileHeader(mbr.getDestinationPath(),
+                                      mbr.getDestinationFileHeader());
+      }
+    }
+  }
+
+  /**
+   * Discards all work since the last commit. Every loaded block that was
+   * modified or loaded from its staging file is unloaded (so that it is
+   * reloaded from its destination), the staging files of all blocks staged
+   * since the last commit are deleted, and their sources are reassigned to
+   * their destination. The caller must ensure that no blocks are locked.
+   *
+   * @throws IOException
+   */
+  public void rollbackStaged() throws IOException
+  {
+    for (MatrixBlockReference mbr: getReferences())
+    {
+      synchronized (mbr)
+      {
+        if (mbr.isBlockLoaded() && (mbr.isModified() || isStaged(mbr)))
+          mbr.unLoad();
+      }
+    }
+
+    ArrayList<MatrixBlockReference> staged;
+    synchronized (this)
+    {
+      staged = new ArrayList<MatrixBlockReference>(aStaged.values());
+      aStaged.clear();
+    }
+
+    for (MatrixBlockReference mbr: staged)
+    {
+      synchronized (mbr)
+      {
+        mbr.deleteBlockCatch(getStagePathFileHeader(mbr));
+        if (isStaged(mbr))
+          mbr.setSourcePathFileHeader(mbr.getDestinationPath(),
+                                      mbr.getDestinationFileHeader());
+      }
+    }
+  }
+
+  /**
+   * Resolves the staging files of all lower triangular blocks left by an
+   * interrupted process. If commit is true the staging files that exist are
+   * renamed over their destination (completing an interrupted
+   * commitStaged()). Otherwise they are deleted. In both cases the source of
+   * every staged block is reassigned to its destination. Loaded blocks are
+   * not changed (see rollbackStaged()).
+   *
+   * @param commit True to commit, false to discard, the staging files.
+   * @throws IOException
+   */
+  public void recoverStaged(boolean commit) throws IOException
+  {
+    synchronized (this) {aStaged.clear();}
+    for (int r = 0; r < aMtrxBlkDefn.blocks(); ++r)
+    {
+      for (int c = 0; c <= r; ++c)
+      {
+        MatrixBlockReference mbr;
+        synchronized (this) {mbr = getReference(r, c);}
+        synchronized (mbr)
+        {
+          String stgPthFilHdr = getStagePathFileHeader(mbr);
+          if (commit)
+          {
+            if (new File(MatrixBlock.getPathFileName(stgPthFilHdr, r,
+                                                     c)).exists())
+              mbr.renameBlockCatch(stgPthFilHdr,
+                                   mbr.getDestinationPathFileHeader());
+          }
+          else
+            mbr.deleteBlockCatch(stgPthFilHdr);
+
+          if (isStaged(mbr))
+            mbr.setSourcePathFileHeader(mbr.getDestinationPath(),
+                                        mbr.getDestinationFileHeader());
+        }
+      }
+    }
+  }
+
+  /**
+   * Sets the memory budget (bytes) of all managed blocks. If the new budget
+   * is smaller than the current allocation unlocked blocks are evicted until
+   * the budget is satisfied or no unlocked blocks remain.
+   *
+   * @param maxMem The new memory budget (bytes).
+   * @throws IOException
+   */
+  public void setMaxMemory(long maxMem) throws IOException
+  {
+    synchronized (this) {aMaxMemory = maxMem;}
+    evict(0, null);
+  }
+
+  /**
+   * Returns the memory budget (bytes) of all managed blocks.
+   *
+   * @return The memory budget (bytes) of all managed blocks.
+   */
+  public synchronized long getMaxMemory()
+  {
+    return aMaxMemory;
+  }
+
+  /**
+   * Returns the current memory allocation (bytes) of all managed blocks.
+   *
+   * @return The current memory allocation (bytes) of all managed blocks.
+   */
+  public synchronized long getAllocatedMemory()
+  {
+    return aAllocatedMemory;
+  }
+
+  /**
+   * Sets the IO rate (bytes / msec) used to estimate the reload cost of
+   * blocks that have never been read (default = 1.0E5, 100 MB/sec).
+   *
+   * @param rate The new IO rate estimate (bytes / msec).
+   */
+  public synchronized void setIORateEstimate(double rate)
+  {
+    aIORate = rate;
+  }
+
+  /**
+   * Returns the number of block requests that found the block loaded.
+   *
+   * @return The number of block requests that found the block loaded.
+   */
+  public synchronized long getHitCount()
+  {
+    return aHits;
+  }
+
+  /**
+   * Returns the number of block requests that found the block unloaded.
+   *
+   * @return The number of block requests that found the block unloaded.
+   */
+  public synchronized long getMissCount()
+  {
+    return aMisses;
+  }
+
+  /**
+   * Returns the fraction of block requests that found the block loaded.
+   *
+   * @return The fraction of block requests that found the block loaded.
+   */
+  public synchronized double getHitRatio()
+  {
+    long n = aHits + aMisses;
+    return (n == 0) ? 0.0 : (double) aHits / n;
+  }
+
+  /**
+   * Returns the number of block reads performed by managed blocks.
+   *
+   * @return The number of block reads performed by managed blocks.
+   */
+  public synchronized long getLoadCount()
+  {
+    return aLoads;
+  }
+
+  /**
+   * Returns the number of blocks evicted to satisfy the memory budget.
+   *
+   * @return The number of blocks evicted to satisfy the memory budget.
+   */
+  public synchronized long getEvictionCount()
+  {
+    return aEvictions;
+  }
+
+  /**
+   * Returns the number of modified blocks written by the manager.
+   *
+   * @return The number of modified blocks written by the manager.
+   */
+  public synchronized long getWriteBackCount()
+  {
+    return aWriteBacks;
+  }
+
+  /**
+   * Returns the number of bytes read by managed blocks.
+   *
+   * @return The number of bytes read by managed blocks.
+   */
+  public synchronized long getBytesRead()
+  {
+    return aBytesRead;
+  }
+
+  /**
+   * Returns the number of bytes written by the manager.
+   *
+   * @return The number of bytes written by the manager.
+   */
+  public synchronized long getBytesWritten()
+  {
+    return aBytesWritten;
+  }
+
+  /**
+   * Returns the total time (msec) managed blocks spent blocking.
+   *
+   * @return The total time (msec) managed blocks spent blocking.
+   */
+  public synchronized long getBlockingTime()
+  {
+    return aBlockingTime;
+  }
+
+  /**
+   * Resets all statistics counters to zero.
+   */
+  public synchronized void resetStatistics()
+  {
+    aHits = aMisses = aLoads = aEvictions = aWriteBacks = 0;
+    aBytesRead = aBytesWritten = aBlockingTime = 0;
+  }
+
+  /**
+   * Returns a string containing the current statistics of this manager.
+   *
+   * @param hdr A header prepended to each line.
+   * @return A string containing the current statistics of this manager.
+   */
+  public synchronized String getStatistics(String hdr)
+  {
+    String s = hdr + "MatrixBlockManager Statistics:" + NL +
+               hdr + "  Memory Budget (MB)     = " +
+               (aMaxMemory / 1024.0 / 1024.0) + NL +
+               hdr + "  Memory Allocated (MB)  = " +
+               (aAllocatedMemory / 1024.0 / 1024.0) + NL +
+               hdr + "  Hits                   = " + aHits + NL +
+               hdr + "  Misses                 = " + aMisses + NL +
+               hdr + "  Hit Ratio              = " + getHitRatio() + NL +
+               hdr + "  Loads                  = " + aLoads + NL +
+               hdr + "  Evictions              = " + aEvictions + NL +
+               hdr + "  Write Backs            = " + aWriteBacks + NL +
+               hdr + "  Read (MB)              = " +
+               (aBytesRead / 1024.0 / 1024.0) + NL +
+               hdr + "  Written (MB)           = " +
+               (aBytesWritten / 1024.0 / 1024.0) + NL +
+               hdr + "  Blocking Time (s)      = " +
+               (aBlockingTime / 1000.0) + NL;
+    return s;
+  }
+
+  /**
+   * Returns the block reference for block row,col. If the reference does not
+   * exist it is created, assigned its source and destination paths, and added
+   * to the block map. Must be called from a synchronized block.
+   *
+   * @param row The block row index.
+   * @param col The block column index.
+   * @return The block reference for block row,col.
+   * @throws IOException
+   */
+  private MatrixBlockReference getReference(int row, int col)
+          throws IOException
+  {
+    int blkIndx = MatrixBlock.getBlockIndex(row, col);
+    MatrixBlockReference mbr = aBlockMap.get(blkIndx);
+    if (mbr == null)
+    {
+      // create a new reference and set its source and destination paths
+
+      mbr = new MatrixBlockReference(row, col, aMtrxBlkDefn, this);
+      if (aFileServer != null)
+      {
+        mbr.setSourcePathFileHeader(aFileServer.getPath(aSrcTag, row, col),
+                                    aSrcTag);
+        mbr.setDestinationPathFileHeader(aFileServer.getPath(aDstTag, row,
+                                                             col), aDstTag);
+      }
+      else
+      {
+        mbr.setSourcePathFileHeader(aSrcPthFilHdr);
+        mbr.setDestinationPathFileHeader(aDstPthFilHdr);
+      }
+
+      // add the new reference base memory and add it to the block map
+
+      aAllocatedMemory += mbr.getMemoryAllocation();
+      aBlockMap.put(blkIndx, mbr);
+    }
+
+    return mbr;
+  }
+
+  /**
+   * Returns a copy of all references in the block map.
+   *
+   * @return A copy of all references in the block map.
+   */
+  private synchronized ArrayList<MatrixBlockReference> getReferences()
+  {
+    return new ArrayList<MatrixBlockReference>(aBlockMap.values());
+  }
+
+  /**
+   * Updates the GreedyDual-Size priority of the input block on access. Must
+   * be called from a synchronized block.
+   *
+   * @param mbr The accessed block.
+   */
+  private void touch(MatrixBlockReference mbr)
+  {
+    mbr.aPriority = aInflation + getReadCost(mbr) / getSizeMB(mbr);
+  }
+
+  /**
+   * Returns the cost (msec) to reload the input block. If the block has been
+   * read before the last read time is returned. Otherwise, the cost is
+   * estimated from the block IO memory and the IO rate estimate.
+   *
+   * @param mbr The block whose reload cost is returned.
+   * @return The cost (msec) to reload the input block.
+   */
+  private double getReadCost(MatrixBlockReference mbr)
+  {
+    if (mbr.getReadTime() > 0)
+      return mbr.getReadTime();
+    else
+      return mbr.getReadMemory() / aIORate;
+  }
+
+  /**
+   * Returns the cost (msec) to write the input block.
+   *
+   * @param mbr The block whose write cost is returned.
+   * @return The cost (msec) to write the input block.
+   */
+  private double getWriteCost(MatrixBlockReference mbr)
+  {
+    if (mbr.getWriteTime() > 0)
+      return mbr.getWriteTime();
+    else
+      return mbr.getWriteMemory() / aIORate;
+  }
+
+  /**
+   * Returns the size (MB) used by the GreedyDual-Size priority. The size is
+   * never less than 1 MB.
+   *
+   * @param mbr The block whose size is returned.
+   * @return The size (MB) used by the GreedyDual-Size priority.
+   */
+  private double getSizeMB(MatrixBlockReference mbr)
+  {
+    double sz = aMtrxBlkDefn.coreMemoryStorage() / 1024.0 / 1024.0;
+    if (mbr.isBlockLoaded()) sz = mbr.getMemoryAllocation() / 1024.0 / 1024.0;
+    return Math.max(sz, 1.0);
+  }
+
+  /**
+   * Evicts unlocked loaded blocks (other than the input block keep) until
+   * the allocated memory plus reqMem fits within the memory budget, or no
+   * unlocked blocks remain. Modified blocks are written before they are
+   * unloaded.
+   *
+   * @param reqMem The additional memory (bytes) required.
+   * @param keep   A block that will not be evicted (may be null).
+   * @throws IOException
+   */
+  private void evict(long reqMem, MatrixBlockReference keep) throws IOException
+  {
+    while (true)
+    {
+      // find the eviction victim with the smallest priority
+
+      MatrixBlockReference victim = null;
+      synchronized (this)
+      {
+        if (aAllocatedMemory + reqMem <= aMaxMemory) return;
+
+        double minPriority = Double.MAX_VALUE;
+        for (MatrixBlockReference mbr: aBlockMap.values())
+        {
+          if ((mbr != keep) && mbr.isBlockLoaded() && !mbr.isLocked() &&
+              (mbr.aPins == 0))
+          {
+            double p = mbr.aPriority;
+            if (mbr.isModified()) p += getWriteCost(mbr) / getSizeMB(mbr);
+            if (p < minPriority)
+            {
+              minPriority = p;
+              victim = mbr;
+            }
+          }
+        }
+
+        // exit if nothing can be evicted ... otherwise inflate L
+
+        if (victim == null) return;
+        aInflation = minPriority;
+      }
+
+      // write the victim if it was modified and unload it ... if a thread
+      // locked or modified the victim in the meantime it is simply skipped
+
+      if (victim.isModified()) writeBack(victim);
+      if (victim.unLoadIfClean())
+      {
+        synchronized (this) {++aEvictions;}
+      }
+    }
+  }
+
+  /**
+   * Writes the input modified block to its destination path (or its staging
+   * file if write-backs are staged) and reassigns its source path to the
+   * written file so that the modified block is reloaded if it is evicted.
+   *
+   * @param mbr The modified block to be written.
+   * @throws IOException
+   */
+  void writeBack(MatrixBlockReference mbr) throws IOException
+  {
+    boolean stage = aStaging;
+    synchronized (mbr)
+    {
+      if (!mbr.isModified() || !mbr.isBlockLoaded()) return;
+
+      mbr.requestIO();
+      if (stage)
+        mbr.writeBlockCatch(getStagePathFileHeader(mbr));
+      else
+        mbr.writeBlockCatch();
+      mbr.completedIO("WRITE", MatrixBlockFileServer.getPathTag(
+                                   mbr.getDestinationPath()));
+      mbr.setSourcePathFileHeader(mbr.getDestinationPath(),
+                                  mbr.getDestinationFileHeader() +
+                                  (stage ? STAGE_SUFFIX : ""));
+      mbr.aModified = false;
+    }
+
+    synchronized (this)
+    {
+      if (stage) aStaged.put(mbr.getBlockIndex(), mbr);
+      ++aWriteBacks;
+      aBytesWritten += mbr.getWriteMemory();
+    }
+  }
+
+  /**
+   * Returns the staging path/file header of the input block.
+   *
+   * @param mbr The block.
+   * @return The staging path/file header of the input block.
+   */
+  private static String getStagePathFileHeader(MatrixBlockReference mbr)
+  {
+    return mbr.getDestinationPathFileHeader() + STAGE_SUFFIX;
+  }
+
+  /**
+   * Returns true if the source of the input block is its staging file.
+   *
+   * @param mbr The block.
+   * @return True if the source of the input block is its staging file.
+   */
+  private static boolean isStaged(MatrixBlockReference mbr)
+  {
+    return mbr.getSourcePathFileHeader().equals(getStagePathFileHeader(mbr));
+  }
+
+  /**
+   * Pins and returns block row,col. A pinned block is not evicted until it
+   * is unpinned (unPinBlock(mbr)). Pins are counted so a block pinned n
+   * times must be unpinned n times. This call does not count as a hit or
+   * miss and does not load the block (see loadPinnedBlock(mbr)).
+   *
+   * @param row The block row index.
+   * @param col The block column index.
+   * @return The pinned block row,col.
+   * @throws IOException
+   */
+  synchronized MatrixBlockReference pinBlock(int row, int col)
+          throws IOException
+  {
+    MatrixBlockReference mbr = getReference(row, col);
+    ++mbr.aPins;
+    touch(mbr);
+    return mbr;
+  }
+
+  /**
+   * Makes room for the input pinned block (if it is not loaded) and loads
+   * it. The load is counted as a load but not as a hit or miss.
+   *
+   * @param mbr The pinned block to be loaded.
+   * @throws IOException
+   */
+  void loadPinnedBlock(MatrixBlockReference mbr) throws IOException
+  {
+    // the load is attempted even if the block appears to be loaded in case
+    // it was evicted just before it was pinned (loadBlock() does nothing if
+    // the block is loaded)
+
+    if (!mbr.isBlockLoaded()) evict(aMtrxBlkDefn.coreMemoryStorage(), mbr);
+    mbr.loadBlock();
+  }
+
+  /**
+   * Removes one pin from the input block (see pinBlock(row, col)).
+   *
+   * @param mbr The pinned block.
+   */
+  synchronized void unPinBlock(MatrixBlockReference mbr)
+  {
+    if (mbr.aPins > 0) --mbr.aPins;
+  }
+
+  /**
+   * Called by managed blocks when their memory allocation changes.
+   *
+   * @param mem The change in memory (bytes).
+   */
+  private synchronized void allocate(long mem)
+  {
+    aAllocatedMemory += mem;
+  }
+
+  /**
+   * Called by managed blocks when an IO operation completes.
+   *
+   * @param mbr The block that completed the IO operation.
+   * @param op  The IO operation ("READ", "WRITE", "RENAME", or "DELETE").
+   */
+  private synchronized void completed(MatrixBlockReference mbr, String op)
+  {
+    if (op.equals("READ"))
+    {
+      ++aLoads;
+      aBytesRead += mbr.getReadMemory();
+      touch(mbr);
+    }
+  }
+
+  /**
+   * Called by managed blocks when they spend time blocking.
+   *
+   * @param tim The time (msec) spent blocking.
+   */
+  private synchronized void blocking(long tim)
+  {
+    aBlockingTime += tim;
+  }
+
+  /**
+   * A MatrixBlock that is owned by a MatrixBlockManager. The IO hooks defined
+   * by MatrixBlock are overridden to report memory and IO activity to the
+   * owning manager. Callers that change the contents of the block must call
+   * setModified() (before releasing their lock) so that the block is written
+   * before it is evicted.
+   */
+  @SuppressWarnings("serial")
+  public static class MatrixBlockReference extends MatrixBlock
+  {
+    /**
+     * The owning manager.
+     */
+    private transient MatrixBlockManager aMngr     = null;
+
+    /**
+     * True if the block contents were changed since it was last read or
+     * written.
+     */
+    private volatile boolean             aModified = false;
+
+    /**
+     * The GreedyDual-Size eviction priority (guarded by aMngr).
+     */
+    private double                       aPriority = 0.0;
+
+    /**
+     * The number of pins on this block (changed only with aMngr locked). A
+     * pinned block is not evicted.
+     */
+    private volatile int                 aPins     = 0;
+
+    /**
+     * Standard constructor.
+     *
+     * @param blkRow The block row index.
+     * @param blkCol The block column index.
+     * @param mbd    The matrix block definition.
+     * @param mngr   The owning manager.
+     */
+    private MatrixBlockReference(int blkRow, int blkCol,
+                                 MatrixBlockDefinition mbd,
+                                 MatrixBlockManager mngr)
+    {
+      super(blkRow, blkCol, mbd);
+      aMngr = mngr;
+    }
+
+    /**
+     * Returns the owning manager.
+     *
+     * @return The owning manager.
+     */
+    public MatrixBlockManager getManager()
+    {
+      return aMngr;
+    }
+
+    /**
+     * Marks this block as modified so that it is written before it is
+     * evicted.
+     */
+    public void setModified()
+    {
+      aModified = true;
+    }
+
+    /**
+     * Returns true if this block was modified since it was last read or
+     * written.
+     *
+     * @return True if this block was modified since it was last read or
+     *         written.
+     */
+    public boolean isModified()
+    {
+      return aModified;
+    }
+
+    @Override
+    public void completedIO(String op, String srvrTag) throws IOException
+    {
+      aMngr.completed(this, op);
+    }
+
+    @Override
+    public void notifyIOAllocate(long mem, boolean load) throws IOException
+    {
+      aMngr.allocate(mem);
+    }
+
+    @Override
+    public void notifyIOBlocking(long tim) throws IOException
+    {
+      aMngr.blocking(tim);
+    }
+
+    /**
+     * Creates the block in memory and reports the new allocation to the
+     * owning manager. The block is marked as modified.
+     *
+     * @param diagValue The diagonal value set on the diagonal if this is a
+     *                  diagonal block.
+     */
+    @Override
+    public synchronized void createBlock(double diagValue)
+    {
+      long mem = getMemoryAllocation();
+      super.createBlock(diagValue);
+      aMngr.allocate(getMemoryAllocation() - mem);
+      aModified = true;
+    }
+
+    /**
+     * Unloads the block if it is neither locked, modified, nor pinned.
+     * Returns true if the block was unloaded. Since callers set the modified
+     * flag before releasing their lock, a block that was modified after it
+     * was written back is never discarded.
+     *
+     * @return True if the block was unloaded.
+     */
+    synchronized boolean unLoadIfClean()
+    {
+      if (isLocked() || aModified || (aPins > 0)) return false;
+      unLoad();
+      return true;
+    }
+
+    /**
+     * Unloads the block and reports the released allocation to the owning
+     * manager. Any modifications not yet written are discarded.
+     */
+    @Override
+    public synchronized void unLoad() throws IllegalStateException
+    {
+      long mem = getMemoryAllocation();
+      super.unLoad();
+      aMngr.allocate(getMemoryAllocation() - mem);
+      aModified = false;
+    }
+  }
+}
@@ -0,0 +1,422 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.matrixblock;
+
+import gov.sandia.gmp.util.containers.arraylist.ArrayListInt;
+import gov.sandia.gmp.util.numerical.matrix.ConcurrentTaskRunner;
+import gov.sandia.gmp.util.numerical.sparse.SparseMatrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+
+/**
+ * Forms the normal matrix A^T A, or A^T S A for a diagonal weight S, of a
+ * sparse matrix A and writes its lower triangular blocks, as defined by a
+ * MatrixBlockDefinition, directly as MatrixBlock files. These are the LSINV
+ * input matrix types ata (and gtg) and atsa (see MatrixBlockFileServer).
+ * 
+ * <p> The normal matrix has one row and column per column of A, so the
+ * MatrixBlockDefinition size must be at least the column count of A. A is
+ * read in CSR form directly from its compressed arrays (see
+ * SparseMatrix.getCSEntries()) so no per row objects are created. A single
+ * pass over its rows records, for each block
+ * column b, the rows of A with entries in the columns of b and the range of
+ * those entries within the row (CSR rows are sorted by column). Block (r, c)
+ * is then the sum, over the rows common to blocks r and c, of the outer
+ * product of the row entries in block r with those in block c:
+ * <pre>
+ *   N[r][c](i, j) = sum_k s_k * A(k, r * nb + i) * A(k, c * nb + j)
+ * </pre>
+ * The blocks are computed in parallel, one block per task, and each block
+ * is written and released by the task that formed it, so that only one
+ * block per thread is held in memory. Diagonal blocks only form their lower
+ * triangle (the stored part).
+ * 
+ * <p> Usage:
+ * <pre>
+ *   MatrixBlockNormalBuilder bldr = new MatrixBlockNormalBuilder(a, mbd);
+ *   bldr.setWeights(s);                // optional (A^T S A)
+ *   bldr.build(fileServer, "atsa");    // or bldr.build(pthFilHdr)
+ * </pre>
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class MatrixBlockNormalBuilder
+{
+  /**
+   * The sparse matrix A (CSR form).
+   */
+  private SparseMatrix          aA;
+
+  /**
+   * The number of rows of A.
+   */
+  private int                   aNRows;
+
+  /**
+   * The block definition of the normal matrix.
+   */
+  private MatrixBlockDefinition aMtrxBlkDefn;
+
+  /**
+   * The diagonal weight of each row of A, or null for A^T A.
+   */
+  private double[]              aWeights  = null;
+
+  /**
+   * The number of threads used to form the blocks.
+   */
+  private int                   aNThreads =
+                                Runtime.getRuntime().availableProcessors();
+
+  /**
+   * For each block column, the rows of A with entries in the block column
+   * (ascending).
+   */
+  private ArrayListInt[]        aBlkRows;
+
+  /**
+   * For each block column, the first entry in each row of aBlkRows that lies
+   * in the block column.
+   */
+  private ArrayListInt[]        aBlkStrt;
+
+  /**
+   * For each block column, one past the last entry in each row of aBlkRows
+   * that lies in the block column.
+   */
+  private ArrayListInt[]        aBlkEnd;
+
+  /**
+   * The time (msec) spent by the last call to build().
+   */
+  private long                  aBuildTime = 0;
+
+  /**
+   * Standard constructor. Builds the CSR form of a if it does not exist.
+   * 
+   * @param a   The sparse matrix A.
+   * @param mbd The block definition of the normal matrix.
+   * @throws IOException
+   */
+  public MatrixBlockNormalBuilder(SparseMatrix a, MatrixBlockDefinition mbd)
+         throws IOException
+  {
+    // build first so that the column count includes any pending input
+
+    a.createCSR();
+    if (a.getMaxCol() > mbd.size())
+      throw new IOException("Error: Matrix column count (" + a.getMaxCol() +
+                            ") exceeds the block definition size (" +
+                            mbd.size() + ") ...");
+    aA           = a;
+    aNRows       = a.getRowCount();
+    aMtrxBlkDefn = mbd;
+  }
+
+  /**
+   * Sets the diagonal weight S (one entry per row of A) so that A^T S A is
+   * formed. If null (the default) A^T A is formed.
+   * 
+   * @param s The diagonal weights.
+   */
+  public void setWeights(double[] s)
+  {
+    if ((s != null) && (s.length < aNRows))
+      throw new IllegalArgumentException("Error: Weight count (" + s.length +
+                                         ") is less than the row count (" +
+                                         aNRows + ") ...");
+    aWeights = s;
+  }
+
+  /**
+   * Sets the number of threads used to form the blocks.
+   * 
+   * @param nThreads The number of threads.
+   */
+  public void setThreadCount(int nThreads)
+  {
+    aNThreads = Math.max(1, nThreads);
+  }
+
+  /**
+   * Returns the time (msec) spent by the last call to build().
+   * 
+   * @return The time spent by the last call to build().
+   */
+  public long getBuildTime()
+  {
+    return aBuildTime;
+  }
+
+  /**
+   * Forms the normal matrix and writes each block to the file server path
+   * of the input secondary tag (see MatrixBlockFileServer.getPath()), with
+   * the tag as the file header. The MatrixBlockDefinition is written to the
+   * secondary path of each server.
+   * 
+   * @param mbfs The file server.
+   * @param tag  The secondary tag (e.g. "ata" or "atsa").
+   * @throws IOException
+   */
+  public void build(final MatrixBlockFileServer mbfs, final String tag)
+         throws IOException
+  {
+    mbfs.writeMatrixBlockDefinition(aMtrxBlkDefn, tag);
+    build(new PathMap()
+    {
+      @Override
+      public String getPathFileHeader(int row, int col) throws IOException
+      {
+        return mbfs.getPath(tag, row, col) + File.separator + tag;
+      }
+    });
+  }
+
+  /**
+   * Forms the normal matrix and writes each block to the input path and
+   * file header ("path/header").
+   * 
+   * @param pthFilHdr The path and file header of the blocks.
+   * @throws IOException
+   */
+  public void build(final String pthFilHdr) throws IOException
+  {
+    build(new PathMap()
+    {
+      @Override
+      public String getPathFileHeader(int row, int col)
+      {
+        return pthFilHdr;
+      }
+    });
+  }
+
+  /**
+   * Returns the path and file header into which a block is written.
+   */
+  private interface PathMap
+  {
+    /**
+     * Returns the path and file header into which block row, col is
+     * written.
+     * 
+     * @param row The block row.
+     * @param col The block column.
+     * @return The path and file header of the block.
+     * @throws IOException
+     */
+    String getPathFileHeader(int row, int col) throws IOException;
+  }
+
+  /**
+   * Forms the normal matrix and writes each block to the path given by the
+   * input map.
+   * 
+   * @param pm The block path map.
+   * @throws IOException
+   */
+  private void build(final PathMap pm) throws IOException
+  {
+    long strtTime = System.currentTimeMillis();
+    buildBlockColumnRows();
+
+    // form and write each lower triangular block in its own task
+
+    int nBlks = aMtrxBlkDefn.blocks();
+    Callable<?>[] tasks = new Callable<?> [nBlks * (nBlks + 1) / 2];
+    for (int r = 0, k = 0; r < nBlks; ++r)
+    {
+      for (int c = 0; c <= r; ++c, ++k)
+      {
+        final int rr = r, cc = c;
+        tasks[k] = new Callable<Object>()
+        {
+          @Override
+          public Object call() throws IOException
+          {
+            MatrixBlock mb = new MatrixBlock(rr, cc, aMtrxBlkDefn);
+            mb.createBlock();
+            formBlock(rr, cc, mb.getLockedSubBlocks(false),
+                      aMtrxBlkDefn.subBlockSize());
+            mb.releaseLock(false);
+            mb.writeBlock(pm.getPathFileHeader(rr, cc));
+            mb.unLoad();
+            return null;
+          }
+        };
+      }
+    }
+    try
+    {
+      new ConcurrentTaskRunner(aNThreads).invokeAll(tasks);
+    }
+    catch (IllegalStateException ex)
+    {
+      if (ex.getCause() instanceof IOException)
+        throw (IOException) ex.getCause();
+      throw ex;
+    }
+    finally
+    {
+      aBlkRows = aBlkStrt = aBlkEnd = null;
+    }
+    aBuildTime = System.currentTimeMillis() - strtTime;
+  }
+
+  /**
+   * Records, for each block column, the rows of A with entries in the block
+   * column and the range of those entries within each row.
+   */
+  private void buildBlockColumnRows()
+  {
+    int nBlks = aMtrxBlkDefn.blocks();
+    int nb    = aMtrxBlkDefn.blockSize();
+    aBlkRows  = new ArrayListInt [nBlks];
+    aBlkStrt  = new ArrayListInt [nBlks];
+    aBlkEnd   = new ArrayListInt [nBlks];
+    for (int b = 0; b < nBlks; ++b)
+    {
+      aBlkRows[b] = new ArrayListInt();
+      aBlkStrt[b] = new ArrayListInt();
+      aBlkEnd[b]  = new ArrayListInt();
+    }
+
+    // the entries of each row are sorted by column so the entries of each
+    // block column are contiguous ... only the column indices are copied
+
+    int[] col = new int [16];
+    for (int k = 0; k < aNRows; ++k)
+    {
+      if ((aWeights != null) && (aWeights[k] == 0.0)) continue;
+      long p0 = aA.getCSPointer(true, k);
+      int n = (int) (aA.getCSPointer(true, k + 1) - p0);
+      if (n > col.length) col = new int [Math.max(n, 2 * col.length)];
+      aA.getCSEntries(true, p0, n, col, null);
+      int e = 0;
+      while (e < n)
+      {
+        int b = col[e] / nb, e0 = e;
+        while ((e < n) && (col[e] / nb == b)) ++e;
+        aBlkRows[b].add(k);
+        aBlkStrt[b].add(e0);
+        aBlkEnd[b].add(e);
+      }
+    }
+  }
+
+  /**
+   * Forms block r, c (r &gt;= c) of the normal matrix into the input
+   * sub-blocks, which store the block transposed (see MatrixBlock).
+   * 
+   * @param r The block row.
+   * @param c The block column.
+   * @param sb The zeroed sub-blocks of the block.
+   * @param s The sub-block size.
+   */
+  private void formBlock(int r, int c, double[][][][] sb, int s)
+  {
+    int nb = aMtrxBlkDefn.blockSize();
+    int r0 = r * nb, c0 = c * nb;
+    ArrayListInt rowsR = aBlkRows[r], rowsC = aBlkRows[c];
+    int[] kR = rowsR.getArray(), kC = rowsC.getArray();
+    int[] sR = aBlkStrt[r].getArray(), eR = aBlkEnd[r].getArray();
+    int[] sC = aBlkStrt[c].getArray(), eC = aBlkEnd[c].getArray();
+
+    // buffers for the entries of a row in block columns c and r
+
+    int[]    colC = new int [16], colR = (r == c) ? colC : new int [16];
+    double[] valC = new double [16], valR = (r == c) ? valC : new double [16];
+
+    // merge the (ascending) row lists of block columns r and c
+
+    int p = 0, q = 0;
+    while ((p < rowsR.size()) && (q < rowsC.size()))
+    {
+      if (kR[p] < kC[q])
+        ++p;
+      else if (kR[p] > kC[q])
+        ++q;
+      else
+      {
+        // accumulate the outer product of the row entries in block column c
+        // (j) and block column r (i) into the transposed block (j, i),
+        // forming only i >= j for a diagonal block
+
+        long pk = aA.getCSPointer(true, kR[p]);
+        int nC = eC[q] - sC[q];
+        if (nC > colC.length)
+        {
+          colC = new int [nC];
+          valC = new double [nC];
+        }
+        aA.getCSEntries(true, pk + sC[q], nC, colC, valC);
+        int nR = nC;
+        if (r == c)
+        {
+          colR = colC;
+          valR = valC;
+        }
+        else
+        {
+          nR = eR[p] - sR[p];
+          if (nR > colR.length)
+          {
+            colR = new int [nR];
+            valR = new double [nR];
+          }
+          aA.getCSEntries(true, pk + sR[p], nR, colR, valR);
+        }
+
+        double w = (aWeights == null) ? 1.0 : aWeights[kR[p]];
+        for (int ej = 0; ej < nC; ++ej)
+        {
+          int j = colC[ej] - c0;
+          double vj = w * valC[ej];
+          double[][][] sbRow = sb[j / s];
+          int jj = j % s;
+          for (int ei = (r == c) ? ej : 0; ei < nR; ++ei)
+          {
+            int i = colR[ei] - r0;
+            sbRow[i / s][jj][i % s] += vj * valR[ei];
+          }
+        }
+        ++p;
+        ++q;
+      }
+    }
+  }
+}
@@ -35,7 +35,11 @@
 
 package gov.sandia.gmp.util.numerical.sparse;
 
+import gov.sandia.gmp.util.numerical.matrix.ConcurrentTaskRunner;
+import gov.sandia.gmp.util.numerical.matrix.LinearOperator;
+
 import java.io.IOException;
+import java.util.concurrent.Callable;
 
 /**
  * SparseMatrix and SparseMatrixHuge both inherit this interface. Either
@@ -59,8 +63,13 @@ import java.io.IOException;
  * container (no copying) and references the contents based on SV size and
  * start locations within the SparseMatrix. Methods are provided to create
  * arrays of SV objects for either CSR or CSC representations.
+ * 
+ * SparseMatrix is also a LinearOperator. The products A * x and A' * u (and
+ * their multi-vector forms) are evaluated in parallel directly from the CSR
+ * or CSC arrays, so iterative solvers can use a SparseMatrix without copying
+ * it into solver specific arrays.
  */
-public abstract class SparseMatrix
+public abstract class SparseMatrix implements LinearOperator
 {
   /**
    * The maximum row index for this sparse matrix.
@@ -82,6 +91,35 @@ public abstract class SparseMatrix
 	 */
 	protected boolean         addedInput  = false;
 
+	/**
+	 * The number of threads used by createCSR() and createCSC() to build the
+	 * compressed form with a parallel counting sort (see
+	 * SparseMatrixCSBuilder). If less than 1 the compressed form is built by
+	 * sorting the triplet form in place, which is slower but requires no
+	 * additional entry storage.
+	 */
+	protected int             buildThreadCount =
+	                          Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The per-thread buffers of entries added with addConcurrent() that have
+	 * not yet been built into a compressed form, or null if there are none.
+	 */
+	protected volatile SparseMatrixTripletBuffer concurrentInput = null;
+
+	/**
+	 * The number of threads used by the LinearOperator products (multiply()
+	 * and multiplyTranspose()).
+	 */
+	protected int             productThreadCount =
+	                          Runtime.getRuntime().availableProcessors();
+
+	/**
+	 * The minimum number of matrix entries assigned to each product task.
+	 * Smaller products are performed with fewer tasks (or one).
+	 */
+	private static final long MIN_PRODUCT_TASK_ENTRIES = 1 << 15;
+
   /**
    * Create the CSC representation if it does not exist.
    * 
@@ -120,6 +158,128 @@ public abstract class SparseMatrix
   public SparseMatrix()
   {
   	
+  }
+
+  /**
+   * Adds a new entry to the sparse matrix. Unlike add() this function may be
+   * called from many threads concurrently. Each thread appends to its own
+   * buffer (see SparseMatrixTripletBuffer) without locking, and the buffers
+   * are built directly into the compressed form, together with any entries
+   * added with add(), by the next call to createCSR() or createCSC(). All
+   * producer threads must have finished adding before that call. As with
+   * add() the CSR and CSC forms are destroyed by the first concurrent
+   * addition.
+   * 
+   * @param row   The row index of the new entry.
+   * @param col   The column index of the new entry.
+   * @param value The new entries value.
+   */
+  public void addConcurrent(int row, int col, double value)
+  {
+    SparseMatrixTripletBuffer buf = concurrentInput;
+    if (buf == null) buf = getConcurrentInput();
+    buf.add(row, col, value);
+  }
+
+  /**
+   * Adds the first n entries of the input arrays to the sparse matrix as a
+   * single block, without copying them. Like addConcurrent(row, col, value)
+   * this function may be called from many threads concurrently and the
+   * entries are built into the compressed form by the next call to
+   * createCSR() or createCSC(). The arrays must not be modified until then.
+   * 
+   * @param rows The row index of each new entry.
+   * @param cols The column index of each new entry.
+   * @param vals The value of each new entry.
+   * @param n    The number of entries to add.
+   */
+  public void addConcurrent(int[] rows, int[] cols, double[] vals, int n)
+  {
+    SparseMatrixTripletBuffer buf = concurrentInput;
+    if (buf == null) buf = getConcurrentInput();
+    buf.addEntries(rows, cols, vals, n);
+  }
+
+  /**
+   * Resets the sparse matrix to an empty triplet form, discarding all
+   * representations and any pending concurrent input.
+   */
+  protected synchronized void resetEmpty()
+  {
+    clear();
+    concurrentInput = null;
+    resetTRPEmpty();
+  }
+
+  /**
+   * Returns the concurrent input buffer, creating it (and the triplet form)
+   * if necessary.
+   * 
+   * @return The concurrent input buffer.
+   */
+  private synchronized SparseMatrixTripletBuffer getConcurrentInput()
+  {
+    if (concurrentInput == null)
+    {
+      createTriplet();
+      addedInput = true;
+      concurrentInput = new SparseMatrixTripletBuffer();
+    }
+    return concurrentInput;
+  }
+
+  /**
+   * Returns true if entries added with addConcurrent() have not yet been
+   * built into a compressed form.
+   * 
+   * @return True if there are pending concurrently added entries.
+   */
+  public boolean hasConcurrentInput()
+  {
+    return concurrentInput != null;
+  }
+
+  /**
+   * Sets the number of threads used to build the CSR and CSC forms. If less
+   * than 1 the in place triplet sort is used instead of the parallel
+   * counting sort.
+   * 
+   * @param nThreads The number of build threads.
+   */
+  public void setBuildThreadCount(int nThreads)
+  {
+    buildThreadCount = nThreads;
+  }
+
+  /**
+   * Returns the number of threads used to build the CSR and CSC forms.
+   * 
+   * @return The number of build threads.
+   */
+  public int getBuildThreadCount()
+  {
+    return buildThreadCount;
+  }
+
+  /**
+   * Sets the number of threads used by the LinearOperator products
+   * (multiply() and multiplyTranspose()).
+   * 
+   * @param nThreads The number of product threads.
+   */
+  public void setProductThreadCount(int nThreads)
+  {
+    productThreadCount = Math.max(1, nThreads);
+  }
+
+  /**
+   * Returns the number of threads used by the LinearOperator products.
+   * 
+   * @return The number of product threads.
+   */
+  public int getProductThreadCount()
+  {
+    return productThreadCount;
   }
 
 	/**
@@ -430,6 +590,333 @@ public abstract class SparseMatrix
   	return transposed;
   }
 
+  /**
+   * Returns the number of rows in the matrix.
+   * 
+   * @return The number of rows in the matrix.
+   */
+  @Override
+  public int getRowCount()
+  {
+    return Math.max(maxRowIndex, 0);
+  }
+
+  /**
+   * Returns the number of columns in the matrix.
+   * 
+   * @return The number of columns in the matrix.
+   */
+  @Override
+  public int getColumnCount()
+  {
+    return Math.max(maxColIndex, 0);
+  }
+
+  /**
+   * Forms y = A * x.
+   * 
+   * @param x The input vector (at least getColumnCount() entries).
+   * @param y The output vector (at least getRowCount() entries).
+   * @throws IOException
+   */
+  @Override
+  public void multiply(double[] x, double[] y) throws IOException
+  {
+    product(true, new double[][] {x}, new double[][] {y});
+  }
+
+  /**
+   * Forms v = A' * u.
+   * 
+   * @param u The input vector (at least getRowCount() entries).
+   * @param v The output vector (at least getColumnCount() entries).
+   * @throws IOException
+   */
+  @Override
+  public void multiplyTranspose(double[] u, double[] v) throws IOException
+  {
+    product(false, new double[][] {u}, new double[][] {v});
+  }
+
+  /**
+   * Forms y[k] = A * x[k] for each input vector x[k].
+   * 
+   * @param x The input vectors.
+   * @param y The output vectors (one per input vector).
+   * @throws IOException
+   */
+  @Override
+  public void multiply(double[][] x, double[][] y) throws IOException
+  {
+    product(true, x, y);
+  }
+
+  /**
+   * Forms v[k] = A' * u[k] for each input vector u[k].
+   * 
+   * @param u The input vectors.
+   * @param v The output vectors (one per input vector).
+   * @throws IOException
+   */
+  @Override
+  public void multiplyTranspose(double[][] u, double[][] v) throws IOException
+  {
+    product(false, u, v);
+  }
+
+  /**
+   * Forms y[k] = A * x[k] (csr = true) or y[k] = A' * x[k] (csr = false).
+   * If the compressed form whose vectors are the output entries exists (CSR
+   * for A * x, CSC for A' * x) each task gathers a range of its vectors
+   * into y, balanced by entry count. Otherwise each task scatters a range of
+   * the opposite form into its own partial output, and the partial outputs
+   * are then summed into y in parallel by output range. This way a product
+   * never builds a second compressed form. If neither form exists (or input
+   * was added since) the CSR form is built.
+   * 
+   * @param csr True for A * x, false for A' * x.
+   * @param x   The input vectors.
+   * @param y   The output vectors.
+   * @throws IOException
+   */
+  private void product(boolean csr, final double[][] x, final double[][] y)
+          throws IOException
+  {
+    // build the CSR form first if input was added since the last build, so
+    // that the row and column counts include it
+
+    if (addedInput || hasConcurrentInput()) createCSR();
+
+    // validate the vectors
+
+    int nIn  = csr ? getColumnCount() : getRowCount();
+    final int nOut = csr ? getRowCount() : getColumnCount();
+    if (x.length != y.length)
+      throw new IllegalArgumentException("Error: Input vector count (" +
+                                         x.length + ") does not match " +
+                                         "the output vector count (" +
+                                         y.length + ") ...");
+    for (int k = 0; k < x.length; ++k)
+    {
+      if ((x[k].length < nIn) || (y[k].length < nOut))
+        throw new IllegalArgumentException("Error: Vector " + k +
+                                           " input/output length (" +
+                                           x[k].length + "/" + y[k].length +
+                                           ") is less than the operator " +
+                                           "size (" + nIn + "/" + nOut +
+                                           ") ...");
+      if (x[k] == y[k])
+        throw new IllegalArgumentException("Error: Vector " + k +
+                                           " input and output are the " +
+                                           "same array ...");
+      for (int i = nOut; i < y[k].length; ++i) y[k][i] = 0.0;
+    }
+    if ((nIn == 0) || (nOut == 0))
+    {
+      for (int k = 0; k < y.length; ++k)
+        for (int i = 0; i < nOut; ++i) y[k][i] = 0.0;
+      return;
+    }
+
+    // build the CSR form if no compressed form exists and choose the form
+    // (gather or scatter) that is used
+
+    if (!CSRExists() && !CSCExists()) createCSR();
+    boolean gather = csr ? CSRExists() : CSCExists();
+    final boolean form = (gather == csr);
+    int n = gather ? nOut : nIn;
+    int nTasks = getProductTaskCount(form, n);
+    final int[] rng = getProductTaskRanges(form, n, nTasks);
+    ConcurrentTaskRunner runner = new ConcurrentTaskRunner(productThreadCount);
+
+    if (gather)
+    {
+      // each task gathers its range of the output
+
+      Callable<?>[] tasks = new Callable<?> [nTasks];
+      for (int t = 0; t < nTasks; ++t)
+      {
+        final int strt = rng[t], stop = rng[t + 1];
+        tasks[t] = new Callable<Object>()
+        {
+          @Override
+          public Object call()
+          {
+            productCS(form, x, y, strt, stop);
+            return null;
+          }
+        };
+      }
+      runner.invokeAll(tasks);
+    }
+    else if (nTasks == 1)
+    {
+      // scatter directly into the output
+
+      for (int k = 0; k < y.length; ++k)
+        for (int i = 0; i < nOut; ++i) y[k][i] = 0.0;
+      scatterCS(form, x, y, 0, n);
+    }
+    else
+    {
+      // each task scatters its range of the input into its own partial
+      // output
+
+      final double[][][] part = new double [nTasks][x.length][nOut];
+      Callable<?>[] tasks = new Callable<?> [nTasks];
+      for (int t = 0; t < nTasks; ++t)
+      {
+        final int strt = rng[t], stop = rng[t + 1];
+        final double[][] p = part[t];
+        tasks[t] = new Callable<Object>()
+        {
+          @Override
+          public Object call()
+          {
+            scatterCS(form, x, p, strt, stop);
+            return null;
+          }
+        };
+      }
+      runner.invokeAll(tasks);
+
+      // sum the partial outputs into y by output range
+
+      for (int t = 0; t < nTasks; ++t)
+      {
+        final int strt = (int) ((long) nOut * t / nTasks);
+        final int stop = (int) ((long) nOut * (t + 1) / nTasks);
+        tasks[t] = new Callable<Object>()
+        {
+          @Override
+          public Object call()
+          {
+            for (int k = 0; k < y.length; ++k)
+            {
+              double[] yk = y[k];
+              for (int i = strt; i < stop; ++i) yk[i] = part[0][k][i];
+              for (int q = 1; q < part.length; ++q)
+              {
+                double[] pk = part[q][k];
+                for (int i = strt; i < stop; ++i) yk[i] += pk[i];
+              }
+            }
+            return null;
+          }
+        };
+      }
+      runner.invokeAll(tasks);
+    }
+  }
+
+  /**
+   * Returns the number of tasks used by a product over the first n vectors
+   * of the CSR (csr = true) or CSC form. Each task is assigned at least
+   * MIN_PRODUCT_TASK_ENTRIES entries.
+   * 
+   * @param csr True for the CSR form, false for the CSC form.
+   * @param n   The number of vectors in the product.
+   * @return The number of product tasks.
+   */
+  private int getProductTaskCount(boolean csr, int n)
+  {
+    long nt = getCSPointer(csr, n) / MIN_PRODUCT_TASK_ENTRIES;
+    nt = Math.min(nt, Math.min(productThreadCount, n));
+    return (int) Math.max(nt, 1);
+  }
+
+  /**
+   * Returns the nTasks + 1 vector boundaries that split the first n vectors
+   * of the CSR (csr = true) or CSC form into nTasks ranges of nearly equal
+   * entry count. Task t processes the vectors rng[t] to rng[t+1]-1.
+   * 
+   * @param csr    True for the CSR form, false for the CSC form.
+   * @param n      The number of vectors in the product.
+   * @param nTasks The number of tasks.
+   * @return The task vector boundaries.
+   */
+  private int[] getProductTaskRanges(boolean csr, int n, int nTasks)
+  {
+    long nnz = getCSPointer(csr, n);
+    int[] rng = new int [nTasks + 1];
+    rng[nTasks] = n;
+    for (int t = 1; t < nTasks; ++t)
+    {
+      // find the first vector that starts at or beyond this tasks share
+
+      long target = nnz * t / nTasks;
+      int lo = rng[t - 1], hi = n;
+      while (lo < hi)
+      {
+        int mid = (lo + hi) >>> 1;
+        if (getCSPointer(csr, mid) < target)
+          lo = mid + 1;
+        else
+          hi = mid;
+      }
+      rng[t] = lo;
+    }
+    return rng;
+  }
+
+  /**
+   * Returns the start position of vector i in the CSR (csr = true) or CSC
+   * compressed arrays. Vector i = the vector count returns the entry count.
+   * The requested form must exist (see createCSR() and createCSC()).
+   * 
+   * @param csr True for the CSR form, false for the CSC form.
+   * @param i   The row (CSR) or column (CSC) index.
+   * @return The start position of vector i.
+   */
+  public abstract long getCSPointer(boolean csr, int i);
+
+  /**
+   * Copies the n entries of the CSR (csr = true) or CSC compressed arrays
+   * that begin at position strt (see getCSPointer()) into indx and vals.
+   * This reads the compressed arrays directly so that callers can stream
+   * any range of rows (or columns) without building SparseVector objects.
+   * The requested form must exist and it must not be changed during the
+   * call. Concurrent calls are safe.
+   * 
+   * @param csr  True for the CSR form, false for the CSC form.
+   * @param strt The first compressed array position copied.
+   * @param n    The number of entries copied.
+   * @param indx The output column (CSR) or row (CSC) indices (at least n
+   *             entries).
+   * @param vals The output values (at least n entries), or null if only the
+   *             indices are required.
+   */
+  public abstract void getCSEntries(boolean csr, long strt, int n,
+                                    int[] indx, double[] vals);
+
+  /**
+   * Gathers the dot product of each vector strt to stop-1 of the CSR
+   * (csr = true) or CSC form with each x[k] into y[k][i] (overwriting
+   * y[k][i]). The requested form must exist.
+   * 
+   * @param csr  True for the CSR form, false for the CSC form.
+   * @param x    The input vectors.
+   * @param y    The output vectors.
+   * @param strt The first row (CSR) or column (CSC).
+   * @param stop One past the last row (CSR) or column (CSC).
+   */
+  protected abstract void productCS(boolean csr, double[][] x, double[][] y,
+                                    int strt, int stop);
+
+  /**
+   * Scatters each vector i = strt to stop-1 of the CSR (csr = true) or CSC
+   * form times x[k][i] into y[k] (summing into y[k]). The requested form
+   * must exist.
+   * 
+   * @param csr  True for the CSR form, false for the CSC form.
+   * @param x    The input vectors.
+   * @param y    The output vectors.
+   * @param strt The first row (CSR) or column (CSC).
+   * @param stop One past the last row (CSR) or column (CSC).
+   */
+  protected abstract void scatterCS(boolean csr, double[][] x, double[][] y,
+                                    int strt, int stop);
+
   /**
    * Returns the total memory allocation size in bytes.
    * 
@@ -0,0 +1,612 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.sparse;
+
+import gov.sandia.gmp.util.numerical.intrinsicsort.IntrinsicSort;
+import gov.sandia.gmp.util.numerical.matrix.ConcurrentTaskRunner;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+/**
+ * Builds the compressed sparse row (CSR) or column (CSC) form of a sparse
+ * matrix from its entries with a parallel counting sort in O(nnz) time. The
+ * entries are given as three parallel lists: the compressed index a (the row
+ * for CSR, the column for CSC), the entry index b (the column for CSR, the
+ * row for CSC) and the value v. Each list is stored as one or more segment
+ * arrays, either of equal size (see ArrayListHugeAbstract), so that both the
+ * huge and standard sparse matrices can use this builder, or of arbitrary
+ * size, so that the chunks of a SparseMatrixTripletBuffer can be built
+ * without first being copied into one list.
+ * 
+ * <p> The build proceeds in four parallel passes:
+ * <pre>
+ *   1) find the largest compressed index,
+ *   2) count the entries of each compressed index in each entry group,
+ *   3) prefix sum the counts into the pointer array and into the start
+ *      position of each entry group within each compressed row,
+ *   4) scatter b and v into place.
+ * </pre>
+ * The entries are divided into contiguous groups, each with its own int
+ * count table. While the tables are small every task owns one group.
+ * Otherwise fewer groups are used, bounding the tables to the larger of
+ * MAX_COUNT_TABLE_BYTES and the pointer array size, and the tasks of each
+ * group divide the compressed index range between them (each scans the
+ * whole group but counts and scatters only the entries of its range).
+ * The scatter is stable, so that if the input entries are already sorted
+ * by b (e.g. the decompressed index list of the opposite compressed form)
+ * the output rows are sorted. Otherwise the rows are sorted in a final
+ * parallel pass over ranges of rows balanced by entry count. Each
+ * compressed row must hold fewer than 2^31 entries.
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class SparseMatrixCSBuilder
+{
+  /**
+   * The total size of the per group count tables below which every task
+   * is given its own table (see getCountGroups()).
+   */
+  private static final long    MAX_COUNT_TABLE_BYTES = 1L << 28;
+
+  /**
+   * The compressed index (row for CSR, column for CSC) segments.
+   */
+  private int[][]              aA;
+
+  /**
+   * The entry index (column for CSR, row for CSC) segments.
+   */
+  private int[][]              aB;
+
+  /**
+   * The value segments.
+   */
+  private double[][]           aV;
+
+  /**
+   * The number of entries.
+   */
+  private long                 aN;
+
+  /**
+   * The entry offset of each input segment followed by the number of
+   * entries. Input segments are never empty.
+   */
+  private long[]               aSegOff;
+
+  /**
+   * The number of entries in each output segment (all but the last are
+   * full).
+   */
+  private int                  aSegSize;
+
+  /**
+   * The number of tasks into which each pass is divided.
+   */
+  private int                  aNTasks;
+
+  /**
+   * The count table size limit (see getCountGroups()).
+   */
+  private long                 aMaxCountTableBytes = MAX_COUNT_TABLE_BYTES;
+
+  /**
+   * Executes the tasks of each pass.
+   */
+  private ConcurrentTaskRunner aRunner;
+
+  /**
+   * Standard constructor.
+   * 
+   * @param a The compressed index segments.
+   * @param b The entry index segments.
+   * @param v The value segments.
+   * @param n The number of entries.
+   * @param segSize The number of entries in each segment.
+   * @param nThreads The number of threads used to build.
+   */
+  public SparseMatrixCSBuilder(int[][] a, int[][] b, double[][] v, long n,
+                               int segSize, int nThreads)
+  {
+    this(a, b, v, getSegmentLengths(n, segSize), segSize, nThreads);
+  }
+
+  /**
+   * Standard constructor for input segments of arbitrary size. The output
+   * segments are of size outSegSize.
+   * 
+   * @param a The compressed index segments.
+   * @param b The entry index segments.
+   * @param v The value segments.
+   * @param len The number of entries in each input segment.
+   * @param outSegSize The number of entries in each output segment.
+   * @param nThreads The number of threads used to build.
+   */
+  public SparseMatrixCSBuilder(int[][] a, int[][] b, double[][] v, int[] len,
+                               int outSegSize, int nThreads)
+  {
+    // drop empty segments
+
+    int m = 0;
+    for (int i = 0; i < len.length; ++i) if (len[i] > 0) ++m;
+    aA      = new int [m][];
+    aB      = new int [m][];
+    aV      = new double [m][];
+    aSegOff = new long [m + 1];
+    m = 0;
+    for (int i = 0; i < len.length; ++i)
+    {
+      if (len[i] > 0)
+      {
+        aA[m] = a[i];
+        aB[m] = b[i];
+        aV[m] = v[i];
+        aSegOff[m + 1] = aSegOff[m] + len[i];
+        ++m;
+      }
+    }
+
+    aN       = aSegOff[m];
+    aSegSize = outSegSize;
+    aRunner  = new ConcurrentTaskRunner(nThreads);
+    aNTasks  = (int) Math.max(1, Math.min(aRunner.getThreadCount(), aN));
+  }
+
+  /**
+   * Returns the lengths of the segments of a list of n entries stored in
+   * segments of size segSize.
+   * 
+   * @param n The number of entries.
+   * @param segSize The segment size.
+   * @return The length of each segment.
+   */
+  static int[] getSegmentLengths(long n, int segSize)
+  {
+    int[] len = new int [(int) ((n + segSize - 1) / segSize)];
+    for (int i = 0; i < len.length; ++i)
+      len[i] = (int) Math.min(segSize, n - (long) segSize * i);
+    return len;
+  }
+
+  /**
+   * Builds the compressed form. The entry indices and values are scattered
+   * into bOut and vOut, which must have the output segment size and hold at
+   * least n entries. The returned pointer array has one entry
+   * more than the largest compressed index + 1, and the entries of
+   * compressed index i are stored at [ptr[i], ptr[i+1]).
+   * 
+   * @param bOut The output entry index segments.
+   * @param vOut The output value segments.
+   * @param sortEntries If true each compressed row is sorted by entry index.
+   *                    Set to false only if the input entries are sorted by
+   *                    entry index.
+   * @param checkDuplicates If true (and sortEntries is true) an IOException
+   *                        is thrown if any entry is given more than once.
+   * @return The pointer array.
+   * @throws IOException
+   */
+  public long[] build(final int[][] bOut, final double[][] vOut,
+                      boolean sortEntries, boolean checkDuplicates)
+         throws IOException
+  {
+    if (aN == 0) return new long [1];
+
+    // find the largest compressed index
+
+    final int[] max = new int [aNTasks];
+    Callable<?>[] tasks = new Callable<?> [aNTasks];
+    for (int t = 0; t < aNTasks; ++t)
+    {
+      final int tt = t;
+      tasks[t] = new Callable<Object>()
+      {
+        @Override
+        public Object call()
+        {
+          int m = -1, si = inputSegment(first(tt));
+          int ei = (int) (first(tt) - aSegOff[si]), len = inputLength(si);
+          int[] a = aA[si];
+          for (long k = first(tt); k < first(tt + 1); ++k, ++ei)
+          {
+            if (ei == len)
+            {
+              a = aA[++si];
+              len = inputLength(si);
+              ei = 0;
+            }
+            if (a[ei] < 0)
+              throw new IllegalArgumentException("Error: Negative index (" +
+                                                 a[ei] + ") at entry " + k +
+                                                 " ...");
+            if (a[ei] > m) m = a[ei];
+          }
+          max[tt] = m;
+          return null;
+        }
+      };
+    }
+    aRunner.invokeAll(tasks);
+    int maxA = -1;
+    for (int t = 0; t < aNTasks; ++t) maxA = Math.max(maxA, max[t]);
+    final int nA = maxA + 1;
+
+    // split the entries into nG contiguous groups, each with its own count
+    // table, and the compressed indices into nR ranges. Task (g, r) counts
+    // and scatters the entries of group g whose compressed index lies in
+    // range r, so that the tasks of a pass never write the same count and
+    // the count tables are bounded (see getCountGroups())
+
+    final int nG = getCountGroups(nA);
+    final int nR = (aNTasks + nG - 1) / nG;
+    final int[][] cnt = new int [nG][];
+    tasks = new Callable<?> [nG];
+    for (int g = 0; g < nG; ++g)
+    {
+      final int gg = g;
+      tasks[g] = new Callable<Object>()
+      {
+        @Override
+        public Object call()
+        {
+          cnt[gg] = new int [nA];
+          return null;
+        }
+      };
+    }
+    aRunner.invokeAll(tasks);
+
+    // count the entries of each compressed index in each group
+
+    tasks = new Callable<?> [nG * nR];
+    for (int g = 0; g < nG; ++g)
+    {
+      for (int r = 0; r < nR; ++r)
+      {
+        final int gg = g;
+        final int i0 = (int) ((long) nA * r / nR);
+        final int i1 = (int) ((long) nA * (r + 1) / nR);
+        tasks[g * nR + r] = new Callable<Object>()
+        {
+          @Override
+          public Object call()
+          {
+            int[] c = cnt[gg];
+            long k0 = aN * gg / nG, k1 = aN * (gg + 1) / nG;
+            int si = inputSegment(k0);
+            int ei = (int) (k0 - aSegOff[si]), len = inputLength(si);
+            int[] a = aA[si];
+            for (long k = k0; k < k1; ++k, ++ei)
+            {
+              if (ei == len)
+              {
+                a = aA[++si];
+                len = inputLength(si);
+                ei = 0;
+              }
+              int ai = a[ei];
+              if ((ai >= i0) && (ai < i1)) ++c[ai];
+            }
+            return null;
+          }
+        };
+      }
+    }
+    aRunner.invokeAll(tasks);
+
+    // sum the counts of each compressed index into the pointer array, while
+    // replacing each count with the start of its group within the
+    // compressed index (relative to the index start), then prefix sum the
+    // pointers
+
+    final long[] ptr = new long [nA + 1];
+    tasks = new Callable<?> [aNTasks];
+    for (int t = 0; t < aNTasks; ++t)
+    {
+      final int i0 = (int) ((long) nA * t / aNTasks);
+      final int i1 = (int) ((long) nA * (t + 1) / aNTasks);
+      tasks[t] = new Callable<Object>()
+      {
+        @Override
+        public Object call()
+        {
+          for (int i = i0; i < i1; ++i)
+          {
+            int s = 0;
+            for (int g = 0; g < nG; ++g)
+            {
+              int c = cnt[g][i];
+              cnt[g][i] = s;
+              s += c;
+            }
+            ptr[i + 1] = s;
+          }
+          return null;
+        }
+      };
+    }
+    aRunner.invokeAll(tasks);
+    for (int i = 0; i < nA; ++i) ptr[i + 1] += ptr[i];
+
+    // scatter the entries into place (stable within each group and, since
+    // the groups are ordered, stable overall)
+
+    tasks = new Callable<?> [nG * nR];
+    for (int g = 0; g < nG; ++g)
+    {
+      for (int r = 0; r < nR; ++r)
+      {
+        final int gg = g;
+        final int i0 = (int) ((long) nA * r / nR);
+        final int i1 = (int) ((long) nA * (r + 1) / nR);
+        tasks[g * nR + r] = new Callable<Object>()
+        {
+          @Override
+          public Object call()
+          {
+            int[] c = cnt[gg];
+            long k0 = aN * gg / nG, k1 = aN * (gg + 1) / nG;
+            int si = inputSegment(k0);
+            int ei = (int) (k0 - aSegOff[si]), len = inputLength(si);
+            int[] a = aA[si], b = aB[si];
+            double[] v = aV[si];
+            for (long k = k0; k < k1; ++k, ++ei)
+            {
+              if (ei == len)
+              {
+                a = aA[++si];
+                b = aB[si];
+                v = aV[si];
+                len = inputLength(si);
+                ei = 0;
+              }
+              int ai = a[ei];
+              if ((ai < i0) || (ai >= i1)) continue;
+              long p = ptr[ai] + c[ai]++;
+              bOut[segment(p)][element(p)] = b[ei];
+              vOut[segment(p)][element(p)] = v[ei];
+            }
+            return null;
+          }
+        };
+      }
+    }
+    aRunner.invokeAll(tasks);
+    for (int g = 0; g < nG; ++g) cnt[g] = null;
+
+    if (sortEntries) sortRows(ptr, bOut, vOut, checkDuplicates);
+    return ptr;
+  }
+
+  /**
+   * Sorts each compressed row by entry index in parallel over ranges of rows
+   * with approximately equal entry counts.
+   * 
+   * @param ptr The pointer array.
+   * @param b The entry index segments.
+   * @param v The value segments.
+   * @param checkDuplicates If true an IOException is thrown if any row
+   *                        contains the same entry index more than once.
+   * @throws IOException
+   */
+  private void sortRows(final long[] ptr, final int[][] b,
+                        final double[][] v, final boolean checkDuplicates)
+          throws IOException
+  {
+    final String[] err = new String [aNTasks];
+    Callable<?>[] tasks = new Callable<?> [aNTasks];
+    int i0 = 0;
+    for (int t = 0; t < aNTasks; ++t)
+    {
+      int i1 = (t == aNTasks - 1) ? ptr.length - 1 :
+               findRow(ptr, first(t + 1));
+      final int r0 = i0, r1 = Math.max(i0, i1), tt = t;
+      tasks[t] = new Callable<Object>()
+      {
+        @Override
+        public Object call()
+        {
+          int[] tb = new int [0];
+          double[] tv = new double [0];
+          for (int i = r0; i < r1; ++i)
+          {
+            long p = ptr[i];
+            int len = (int) (ptr[i + 1] - p);
+            if (len < 2) continue;
+
+            // sort in place if the row lies in one segment, otherwise sort a
+            // copy
+
+            int si = segment(p), ei = element(p);
+            int[] rb;
+            double[] rv;
+            if ((long) ei + len <= aSegSize)
+            {
+              rb = b[si];
+              rv = v[si];
+            }
+            else
+            {
+              if (tb.length < len)
+              {
+                tb = new int [len];
+                tv = new double [len];
+              }
+              for (int k = 0; k < len; ++k)
+              {
+                tb[k] = b[segment(p + k)][element(p + k)];
+                tv[k] = v[segment(p + k)][element(p + k)];
+              }
+              rb = tb;
+              rv = tv;
+              ei = 0;
+            }
+            IntrinsicSort.sort(rb, rv, ei, len);
+            if (rb == tb)
+            {
+              for (int k = 0; k < len; ++k)
+              {
+                b[segment(p + k)][element(p + k)] = tb[k];
+                v[segment(p + k)][element(p + k)] = tv[k];
+              }
+            }
+
+            // record the first double entry
+
+            if (checkDuplicates && (err[tt] == null))
+            {
+              for (int k = ei; k < ei + len - 1; ++k)
+              {
+                if (rb[k] == rb[k + 1])
+                {
+                  err[tt] = "Error: Double Entry for row,column: " + i +
+                            ", " + rb[k] + "...";
+                  break;
+                }
+              }
+            }
+          }
+          return null;
+        }
+      };
+      i0 = r1;
+    }
+    aRunner.invokeAll(tasks);
+    for (int t = 0; t < aNTasks; ++t)
+      if (err[t] != null) throw new IOException(err[t]);
+  }
+
+  /**
+   * Sets the count table size limit (default MAX_COUNT_TABLE_BYTES). Used
+   * by the tests to force fewer entry groups than tasks.
+   * 
+   * @param bytes The count table size limit.
+   */
+  void setMaxCountTableBytes(long bytes)
+  {
+    aMaxCountTableBytes = bytes;
+  }
+
+  /**
+   * Returns the number of entry groups (each with its own int count table of
+   * nA entries) used by the counting and scatter passes. The tables are
+   * limited to the larger of aMaxCountTableBytes and the size of the
+   * pointer array, so one group per task is used for small nA and as few
+   * as one for very large nA, in which case the tasks of each group divide
+   * the compressed indices instead.
+   * 
+   * @param nA The number of compressed indices.
+   * @return The number of entry groups.
+   */
+  private int getCountGroups(int nA)
+  {
+    long budget = Math.max(aMaxCountTableBytes, 8L * (nA + 1));
+    long nG = budget / (4L * Math.max(nA, 1));
+    return (int) Math.max(1, Math.min(aNTasks, nG));
+  }
+
+  /**
+   * Returns the first row whose first entry is at or after entry k.
+   * 
+   * @param ptr The pointer array.
+   * @param k The entry.
+   * @return The first row whose first entry is at or after entry k.
+   */
+  private static int findRow(long[] ptr, long k)
+  {
+    int i = Arrays.binarySearch(ptr, k);
+    if (i < 0) return -i - 1;
+    while ((i > 0) && (ptr[i - 1] == k)) --i;
+    return i;
+  }
+
+  /**
+   * Returns the first entry of the range of task t (or the number of entries
+   * if t is the task count).
+   * 
+   * @param t The task.
+   * @return The first entry of task t.
+   */
+  private long first(int t)
+  {
+    return aN * t / aNTasks;
+  }
+
+  /**
+   * Returns the input segment containing entry k (0 &lt;= k &lt; n).
+   * 
+   * @param k The entry.
+   * @return The input segment containing entry k.
+   */
+  private int inputSegment(long k)
+  {
+    int i = Arrays.binarySearch(aSegOff, k);
+    return (i < 0) ? -i - 2 : i;
+  }
+
+  /**
+   * Returns the number of entries in input segment i.
+   * 
+   * @param i The input segment.
+   * @return The number of entries in input segment i.
+   */
+  private int inputLength(int i)
+  {
+    return (int) (aSegOff[i + 1] - aSegOff[i]);
+  }
+
+  /**
+   * Returns the output segment containing entry k.
+   * 
+   * @param k The entry.
+   * @return The output segment containing entry k.
+   */
+  private int segment(long k)
+  {
+    return (int) (k / aSegSize);
+  }
+
+  /**
+   * Returns the element of entry k within its output segment.
+   * 
+   * @param k The entry.
+   * @return The element of entry k within its segment.
+   */
+  private int element(long k)
+  {
+    return (int) (k % aSegSize);
+  }
+}
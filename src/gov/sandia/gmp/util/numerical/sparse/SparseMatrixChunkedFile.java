@@ -0,0 +1,890 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.sparse;
+
+import gov.sandia.gmp.util.numerical.matrix.ConcurrentTaskRunner;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Writes and reads a SparseMatrix (Standard or Huge) in a versioned,
+ * chunked and compressed binary format. The CSR rows are split into chunks
+ * of whole rows holding roughly getChunkEntries() entries each. Each chunk
+ * is encoded, compressed and written, or read, inflated and decoded, by its
+ * own task, so that all cores are used in both directions, and any row range
+ * can be loaded by reading only the chunks that overlap it.
+ * 
+ * <p> File layout (all values big-endian):
+ * <pre>
+ *   header (HEADER_SIZE bytes)
+ *     int  magic (MAGIC)          int  version (VERSION)
+ *     int  row count              int  column count
+ *     byte transposed flag        long entry count
+ *     int  chunk count            long chunk index position
+ *   chunks (in any order)
+ *   chunk index (INDEX_ENTRY_SIZE bytes per chunk, in row order)
+ *     int  first row              int  one past the last row
+ *     int  entry count            long file position
+ *     int  stored size            int  encoded (uncompressed) size
+ *     byte compression (COMPRESSION_NONE or COMPRESSION_DEFLATE)
+ * </pre>
+ * An encoded chunk holds the entry count of each row (var-int), then the
+ * column indices of each row delta coded from the previous column of the row
+ * (var-int), then the values as 8 byte planes (the most significant byte of
+ * every value, then the next, ...). Grouping similar bytes this way lets the
+ * per-chunk deflate compression reduce the sign / exponent bytes of the
+ * values as well as the indices. A chunk that does not compress is stored
+ * as encoded.
+ * 
+ * <p> Reading adds the decoded chunks concurrently (see
+ * SparseMatrix.addConcurrent()) and then builds the CSR form with the
+ * matrix's parallel counting sort. A row range load keeps the original row
+ * indices (rows before the range are empty).
+ * 
+ * <p> Usage:
+ * <pre>
+ *   SparseMatrixChunkedFile smcf = new SparseMatrixChunkedFile();
+ *   smcf.write(a, fileName);
+ *   ...
+ *   smcf.read(fileName, a);                     // all rows
+ *   smcf.read(fileName, a, rowStart, rowStop);  // a row range
+ * </pre>
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class SparseMatrixChunkedFile
+{
+  /**
+   * The file magic number ("SMCF").
+   */
+  public static final int  MAGIC               = 0x534D4346;
+
+  /**
+   * The current file format version.
+   */
+  public static final int  VERSION             = 1;
+
+  /**
+   * The chunk is stored as encoded.
+   */
+  public static final byte COMPRESSION_NONE    = 0;
+
+  /**
+   * The chunk is stored deflate compressed.
+   */
+  public static final byte COMPRESSION_DEFLATE = 1;
+
+  /**
+   * The reserved size of the file header.
+   */
+  public static final int  HEADER_SIZE         = 64;
+
+  /**
+   * The size of each chunk index entry.
+   */
+  public static final int  INDEX_ENTRY_SIZE    = 29;
+
+  /**
+   * The default target number of entries in each chunk.
+   */
+  public static final int  DEFAULT_CHUNK_ENTRIES = 1 << 20;
+
+  /**
+   * The maximum encoded size of a var-int.
+   */
+  private static final int MAX_VARINT_SIZE     = 5;
+
+  /**
+   * The target number of entries in each chunk. A chunk always holds whole
+   * rows so a single long row may exceed it.
+   */
+  private int    aChunkEntries = DEFAULT_CHUNK_ENTRIES;
+
+  /**
+   * The deflate compression level (Deflater.NO_COMPRESSION stores the chunks
+   * as encoded).
+   */
+  private int    aLevel        = Deflater.BEST_SPEED;
+
+  /**
+   * The number of threads used to write or read the chunks.
+   */
+  private int    aNThreads     = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * The row count of the last file written or read.
+   */
+  private int    aRows         = 0;
+
+  /**
+   * The column count of the last file written or read.
+   */
+  private int    aCols         = 0;
+
+  /**
+   * The transposed flag of the last file written or read.
+   */
+  private boolean aTransposed  = false;
+
+  /**
+   * The entry count of the last file written or read.
+   */
+  private long   aEntries      = 0;
+
+  /**
+   * The first row of each chunk.
+   */
+  private int[]  aChunkStrt    = new int [0];
+
+  /**
+   * One past the last row of each chunk.
+   */
+  private int[]  aChunkStop    = new int [0];
+
+  /**
+   * The entry count of each chunk.
+   */
+  private int[]  aChunkCount   = new int [0];
+
+  /**
+   * The file position of each chunk.
+   */
+  private long[] aChunkPos     = new long [0];
+
+  /**
+   * The stored size of each chunk.
+   */
+  private int[]  aChunkStored  = new int [0];
+
+  /**
+   * The encoded (uncompressed) size of each chunk.
+   */
+  private int[]  aChunkRaw     = new int [0];
+
+  /**
+   * The compression of each chunk.
+   */
+  private byte[] aChunkComp    = new byte [0];
+
+  /**
+   * Default constructor.
+   */
+  public SparseMatrixChunkedFile()
+  {
+  }
+
+  /**
+   * Sets the target number of entries in each chunk written.
+   * 
+   * @param n The target number of entries in each chunk.
+   */
+  public void setChunkEntries(int n)
+  {
+    if (n < 1)
+      throw new IllegalArgumentException("Error: Chunk entry count (" + n +
+                                         ") must be positive ...");
+    aChunkEntries = n;
+  }
+
+  /**
+   * Returns the target number of entries in each chunk written.
+   * 
+   * @return The target number of entries in each chunk.
+   */
+  public int getChunkEntries()
+  {
+    return aChunkEntries;
+  }
+
+  /**
+   * Sets the deflate compression level (Deflater.NO_COMPRESSION (0) to
+   * Deflater.BEST_COMPRESSION (9)) of the chunks written. Level 0 stores the
+   * (delta coded) chunks without compression. The default is
+   * Deflater.BEST_SPEED.
+   * 
+   * @param level The deflate compression level.
+   */
+  public void setCompressionLevel(int level)
+  {
+    if ((level < Deflater.NO_COMPRESSION) ||
+        (level > Deflater.BEST_COMPRESSION))
+      throw new IllegalArgumentException("Error: Compression level (" +
+                                         level + ") must be in [0, 9] ...");
+    aLevel = level;
+  }
+
+  /**
+   * Returns the deflate compression level of the chunks written.
+   * 
+   * @return The deflate compression level.
+   */
+  public int getCompressionLevel()
+  {
+    return aLevel;
+  }
+
+  /**
+   * Sets the number of threads used to write or read the chunks.
+   * 
+   * @param nThreads The number of threads.
+   */
+  public void setThreadCount(int nThreads)
+  {
+    aNThreads = Math.max(1, nThreads);
+  }
+
+  /**
+   * Returns the row count of the last file written or read.
+   * 
+   * @return The row count.
+   */
+  public int getRowCount()
+  {
+    return aRows;
+  }
+
+  /**
+   * Returns the column count of the last file written or read.
+   * 
+   * @return The column count.
+   */
+  public int getColumnCount()
+  {
+    return aCols;
+  }
+
+  /**
+   * Returns the entry count of the last file written or read.
+   * 
+   * @return The entry count.
+   */
+  public long getEntryCount()
+  {
+    return aEntries;
+  }
+
+  /**
+   * Returns the chunk count of the last file written or read.
+   * 
+   * @return The chunk count.
+   */
+  public int getChunkCount()
+  {
+    return aChunkStrt.length;
+  }
+
+  /**
+   * Returns the total stored size of the chunks of the last file written or
+   * read.
+   * 
+   * @return The total stored chunk size.
+   */
+  public long getStoredSize()
+  {
+    long n = 0;
+    for (int i = 0; i < aChunkStored.length; ++i) n += aChunkStored[i];
+    return n;
+  }
+
+  /**
+   * Returns the total encoded (uncompressed) size of the chunks of the last
+   * file written or read.
+   * 
+   * @return The total encoded chunk size.
+   */
+  public long getEncodedSize()
+  {
+    long n = 0;
+    for (int i = 0; i < aChunkRaw.length; ++i) n += aChunkRaw[i];
+    return n;
+  }
+
+  /**
+   * Writes the input sparse matrix (its CSR form, which is built if it does
+   * not exist) to the input file. Each chunk task copies its entries
+   * directly from the compressed arrays (see SparseMatrix.getCSEntries()) so
+   * the only additional memory is one encoded chunk per thread.
+   * 
+   * @param a        The sparse matrix.
+   * @param fileName The output file name.
+   * @throws IOException
+   */
+  public void write(final SparseMatrix a, String fileName)
+         throws IOException
+  {
+    // build the CSR form and split its rows into chunks of whole rows
+
+    a.createCSR();
+    aRows       = a.getRowCount();
+    aCols       = a.getColumnCount();
+    aTransposed = a.isTransposed();
+    aEntries    = 0;
+    int nChunks = 0;
+    int[] strt  = new int [16];
+    long  cnt   = 0;
+    for (int i = 0; i < aRows; ++i)
+    {
+      // start a new chunk at the first row or if this row would overfill the
+      // current (non-empty) chunk
+
+      long len = a.getCSPointer(true, i + 1) - a.getCSPointer(true, i);
+      if ((i == 0) || ((cnt > 0) && (cnt + len > aChunkEntries)))
+      {
+        if (nChunks == strt.length) strt = Arrays.copyOf(strt, 2 * nChunks);
+        strt[nChunks++] = i;
+        cnt = 0;
+      }
+      cnt += len;
+      aEntries += len;
+    }
+    setChunkCount(nChunks);
+    for (int c = 0; c < nChunks; ++c)
+    {
+      aChunkStrt[c] = strt[c];
+      aChunkStop[c] = (c + 1 < nChunks) ? strt[c + 1] : aRows;
+    }
+
+    // encode, compress and write each chunk in its own task ... each task
+    // allocates its file position when its stored size is known
+
+    File f = new File(fileName);
+    if (f.exists() && !f.delete())
+      throw new IOException("Error: Could not replace file \"" + fileName +
+                            "\" ...");
+    RandomAccessFile raf = new RandomAccessFile(f, "rw");
+    final FileChannel fc = raf.getChannel();
+    try
+    {
+      final AtomicLong pos = new AtomicLong(HEADER_SIZE);
+      Callable<?>[] tasks = new Callable<?> [nChunks];
+      for (int c = 0; c < nChunks; ++c)
+      {
+        final int cc = c;
+        tasks[c] = new Callable<Object>()
+        {
+          @Override
+          public Object call() throws IOException
+          {
+            writeChunk(a, cc, fc, pos);
+            return null;
+          }
+        };
+      }
+      runTasks(tasks);
+
+      // write the chunk index and then the header
+
+      long indxPos = pos.get();
+      ByteBuffer bb = ByteBuffer.allocate(INDEX_ENTRY_SIZE * nChunks);
+      for (int c = 0; c < nChunks; ++c)
+      {
+        bb.putInt(aChunkStrt[c]);
+        bb.putInt(aChunkStop[c]);
+        bb.putInt(aChunkCount[c]);
+        bb.putLong(aChunkPos[c]);
+        bb.putInt(aChunkStored[c]);
+        bb.putInt(aChunkRaw[c]);
+        bb.put(aChunkComp[c]);
+      }
+      bb.flip();
+      writeFully(fc, bb, indxPos);
+
+      bb = ByteBuffer.allocate(HEADER_SIZE);
+      bb.putInt(MAGIC);
+      bb.putInt(VERSION);
+      bb.putInt(aRows);
+      bb.putInt(aCols);
+      bb.put((byte) (aTransposed ? 1 : 0));
+      bb.putLong(aEntries);
+      bb.putInt(nChunks);
+      bb.putLong(indxPos);
+      bb.position(HEADER_SIZE);
+      bb.flip();
+      writeFully(fc, bb, 0);
+    }
+    finally
+    {
+      fc.close();
+      raf.close();
+    }
+  }
+
+  /**
+   * Reads all rows of the input file into the input sparse matrix, which is
+   * reset first. On return the matrix holds the CSR form.
+   * 
+   * @param fileName The input file name.
+   * @param a        The sparse matrix.
+   * @throws IOException
+   */
+  public void read(String fileName, SparseMatrix a) throws IOException
+  {
+    read(fileName, a, 0, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Reads the rows rowStart to rowStop-1 of the input file into the input
+   * sparse matrix, which is reset first. Only the chunks that overlap the row
+   * range are read. The rows keep their original indices and the matrix
+   * column count is that of the file. On return the matrix holds the CSR
+   * form, unless the range has no entries in which case it is empty.
+   * 
+   * @param fileName The input file name.
+   * @param a        The sparse matrix.
+   * @param rowStart The first row read.
+   * @param rowStop  One past the last row read.
+   * @throws IOException
+   */
+  public void read(String fileName, final SparseMatrix a, int rowStart,
+                   int rowStop) throws IOException
+  {
+    RandomAccessFile raf = new RandomAccessFile(fileName, "r");
+    final FileChannel fc = raf.getChannel();
+    try
+    {
+      readIndex(fc, fileName);
+      final int r0 = Math.max(rowStart, 0);
+      final int r1 = Math.min(rowStop, aRows);
+
+      // read, inflate and decode each overlapping chunk in its own task
+
+      a.resetEmpty();
+      int nChunks = 0;
+      Callable<?>[] tasks = new Callable<?> [getChunkCount()];
+      for (int c = 0; c < getChunkCount(); ++c)
+      {
+        if ((aChunkStop[c] <= r0) || (aChunkStrt[c] >= r1) ||
+            (aChunkCount[c] == 0))
+          continue;
+        final int cc = c;
+        tasks[nChunks++] = new Callable<Object>()
+        {
+          @Override
+          public Object call() throws IOException
+          {
+            readChunk(fc, cc, a, r0, r1);
+            return null;
+          }
+        };
+      }
+      runTasks(Arrays.copyOf(tasks, nChunks));
+
+      // build the CSR form from the concurrent input
+
+      if (a.hasConcurrentInput())
+      {
+        a.maxRowIndex = Math.max(r1, 0);
+        a.maxColIndex = aCols;
+        a.createCSR();
+        a.transposed = aTransposed;
+      }
+    }
+    finally
+    {
+      fc.close();
+      raf.close();
+    }
+  }
+
+  /**
+   * Reads the header and chunk index of the input file without reading the
+   * matrix. The sizes and chunk information are then available from
+   * getRowCount(), getColumnCount(), getEntryCount(), ...
+   * 
+   * @param fileName The input file name.
+   * @throws IOException
+   */
+  public void readHeader(String fileName) throws IOException
+  {
+    RandomAccessFile raf = new RandomAccessFile(fileName, "r");
+    FileChannel fc = raf.getChannel();
+    try
+    {
+      readIndex(fc, fileName);
+    }
+    finally
+    {
+      fc.close();
+      raf.close();
+    }
+  }
+
+  /**
+   * Reads and validates the header and chunk index of the input file.
+   * 
+   * @param fc       The open file channel.
+   * @param fileName The file name (for error messages).
+   * @throws IOException
+   */
+  private void readIndex(FileChannel fc, String fileName) throws IOException
+  {
+    ByteBuffer bb = ByteBuffer.allocate(HEADER_SIZE);
+    readFully(fc, bb, 0);
+    bb.flip();
+    if (bb.getInt() != MAGIC)
+      throw new IOException("Error: File \"" + fileName + "\" is not a " +
+                            "chunked sparse matrix file ...");
+    int version = bb.getInt();
+    if (version != VERSION)
+      throw new IOException("Error: File \"" + fileName + "\" version (" +
+                            version + ") is not supported (" + VERSION +
+                            ") ...");
+    aRows        = bb.getInt();
+    aCols        = bb.getInt();
+    aTransposed  = (bb.get() != 0);
+    aEntries     = bb.getLong();
+    int nChunks  = bb.getInt();
+    long indxPos = bb.getLong();
+
+    setChunkCount(nChunks);
+    bb = ByteBuffer.allocate(INDEX_ENTRY_SIZE * nChunks);
+    readFully(fc, bb, indxPos);
+    bb.flip();
+    for (int c = 0; c < nChunks; ++c)
+    {
+      aChunkStrt[c]   = bb.getInt();
+      aChunkStop[c]   = bb.getInt();
+      aChunkCount[c]  = bb.getInt();
+      aChunkPos[c]    = bb.getLong();
+      aChunkStored[c] = bb.getInt();
+      aChunkRaw[c]    = bb.getInt();
+      aChunkComp[c]   = bb.get();
+    }
+  }
+
+  /**
+   * Allocates the chunk index arrays.
+   * 
+   * @param nChunks The number of chunks.
+   */
+  private void setChunkCount(int nChunks)
+  {
+    aChunkStrt   = new int [nChunks];
+    aChunkStop   = new int [nChunks];
+    aChunkCount  = new int [nChunks];
+    aChunkPos    = new long [nChunks];
+    aChunkStored = new int [nChunks];
+    aChunkRaw    = new int [nChunks];
+    aChunkComp   = new byte [nChunks];
+  }
+
+  /**
+   * Encodes, compresses and writes chunk c. Its file position is allocated
+   * from pos once its stored size is known.
+   * 
+   * @param a   The sparse matrix (CSR form).
+   * @param c   The chunk index.
+   * @param fc  The output file channel.
+   * @param pos The next free file position.
+   * @throws IOException
+   */
+  private void writeChunk(SparseMatrix a, int c, FileChannel fc,
+                          AtomicLong pos) throws IOException
+  {
+    // size the chunk and copy its entries from the compressed arrays
+
+    int strt = aChunkStrt[c], stop = aChunkStop[c];
+    long p0 = a.getCSPointer(true, strt);
+    long n  = a.getCSPointer(true, stop) - p0;
+    long size = (long) (stop - strt) * MAX_VARINT_SIZE +
+                n * (MAX_VARINT_SIZE + 8);
+    if (size > Integer.MAX_VALUE)
+      throw new IOException("Error: Chunk " + c + " (rows " + strt + " to " +
+                            (stop - 1) + ") is too large to encode ...");
+
+    int[]    indx = new int [(int) n];
+    double[] vals = new double [(int) n];
+    a.getCSEntries(true, p0, (int) n, indx, vals);
+
+    // encode the row counts, the delta coded columns, and the value planes
+
+    ByteBuffer bb = ByteBuffer.allocate((int) size);
+    for (int i = strt; i < stop; ++i)
+      putVarInt(bb, (int) (a.getCSPointer(true, i + 1) -
+                           a.getCSPointer(true, i)));
+    for (int i = strt; i < stop; ++i)
+    {
+      int prev = 0;
+      int e1 = (int) (a.getCSPointer(true, i + 1) - p0);
+      for (int e = (int) (a.getCSPointer(true, i) - p0); e < e1; ++e)
+      {
+        putVarInt(bb, indx[e] - prev);
+        prev = indx[e];
+      }
+    }
+    byte[] raw = bb.array();
+    int p = bb.position();
+    for (int e = 0; e < n; ++e)
+    {
+      long bits = Double.doubleToRawLongBits(vals[e]);
+      for (int b = 0; b < 8; ++b)
+        raw[p + b * (int) n + e] = (byte) (bits >>> (56 - 8 * b));
+    }
+    int rawSize = p + 8 * (int) n;
+
+    // compress ... store as encoded if the chunk does not compress
+
+    byte[] out = raw;
+    int outSize = rawSize;
+    byte comp = COMPRESSION_NONE;
+    if (aLevel != Deflater.NO_COMPRESSION)
+    {
+      Deflater d = new Deflater(aLevel);
+      try
+      {
+        d.setInput(raw, 0, rawSize);
+        d.finish();
+        byte[] buf = new byte [rawSize];
+        int m = 0;
+        while (!d.finished() && (m < buf.length))
+          m += d.deflate(buf, m, buf.length - m);
+        if (d.finished() && (m < rawSize))
+        {
+          out = buf;
+          outSize = m;
+          comp = COMPRESSION_DEFLATE;
+        }
+      }
+      finally
+      {
+        d.end();
+      }
+    }
+
+    // allocate the file position and write
+
+    long fpos = pos.getAndAdd(outSize);
+    writeFully(fc, ByteBuffer.wrap(out, 0, outSize), fpos);
+    aChunkCount[c]  = (int) n;
+    aChunkPos[c]    = fpos;
+    aChunkStored[c] = outSize;
+    aChunkRaw[c]    = rawSize;
+    aChunkComp[c]   = comp;
+  }
+
+  /**
+   * Reads, inflates and decodes chunk c and adds the entries of the rows
+   * r0 to r1-1 to the input sparse matrix.
+   * 
+   * @param fc The input file channel.
+   * @param c  The chunk index.
+   * @param a  The sparse matrix.
+   * @param r0 The first row added.
+   * @param r1 One past the last row added.
+   * @throws IOException
+   */
+  private void readChunk(FileChannel fc, int c, SparseMatrix a, int r0,
+                         int r1) throws IOException
+  {
+    // read and inflate the chunk
+
+    ByteBuffer bb = ByteBuffer.allocate(aChunkStored[c]);
+    readFully(fc, bb, aChunkPos[c]);
+    byte[] raw = bb.array();
+    if (aChunkComp[c] == COMPRESSION_DEFLATE)
+    {
+      byte[] buf = new byte [aChunkRaw[c]];
+      Inflater inf = new Inflater();
+      try
+      {
+        inf.setInput(raw);
+        int m = 0;
+        while (!inf.finished() && (m < buf.length))
+        {
+          int k = inf.inflate(buf, m, buf.length - m);
+          if ((k == 0) && (inf.needsInput() || inf.needsDictionary()))
+            break;
+          m += k;
+        }
+        if (!inf.finished() || (m != buf.length))
+          throw new IOException("Error: Chunk " + c + " is corrupt ...");
+      }
+      catch (DataFormatException ex)
+      {
+        throw new IOException("Error: Chunk " + c + " is corrupt ...", ex);
+      }
+      finally
+      {
+        inf.end();
+      }
+      raw = buf;
+    }
+    else if (aChunkComp[c] != COMPRESSION_NONE)
+      throw new IOException("Error: Chunk " + c + " compression (" +
+                            aChunkComp[c] + ") is not supported ...");
+
+    // decode the row counts and skip the entries of rows before r0
+
+    int strt = aChunkStrt[c], stop = aChunkStop[c], n = aChunkCount[c];
+    bb = ByteBuffer.wrap(raw, 0, aChunkRaw[c]);
+    int[] len = new int [stop - strt];
+    int skip = 0, keep = 0;
+    for (int i = strt; i < stop; ++i)
+    {
+      len[i - strt] = getVarInt(bb);
+      if (i < r0)
+        skip += len[i - strt];
+      else if (i < r1)
+        keep += len[i - strt];
+    }
+    for (int e = 0; e < skip; ++e) getVarInt(bb);
+
+    // decode the kept entries
+
+    int[] rows = new int [keep], cols = new int [keep];
+    double[] vals = new double [keep];
+    int p = aChunkRaw[c] - 8 * n + skip, k = 0;
+    for (int i = Math.max(strt, r0); i < Math.min(stop, r1); ++i)
+    {
+      int col = 0;
+      for (int e = 0; e < len[i - strt]; ++e, ++k)
+      {
+        col += getVarInt(bb);
+        rows[k] = i;
+        cols[k] = col;
+        long bits = 0;
+        for (int b = 0; b < 8; ++b)
+          bits = (bits << 8) | (raw[p + b * n + k] & 0xFFL);
+        vals[k] = Double.longBitsToDouble(bits);
+      }
+    }
+    a.addConcurrent(rows, cols, vals, keep);
+  }
+
+  /**
+   * Runs the input tasks with a ConcurrentTaskRunner, rethrowing any
+   * IOException thrown by a task.
+   * 
+   * @param tasks The tasks.
+   * @throws IOException
+   */
+  private void runTasks(Callable<?>[] tasks) throws IOException
+  {
+    try
+    {
+      new ConcurrentTaskRunner(aNThreads).invokeAll(tasks);
+    }
+    catch (IllegalStateException ex)
+    {
+      if (ex.getCause() instanceof IOException)
+        throw (IOException) ex.getCause();
+      throw ex;
+    }
+  }
+
+  /**
+   * Writes the remaining bytes of the input buffer at the input file
+   * position.
+   * 
+   * @param fc  The file channel.
+   * @param bb  The buffer.
+   * @param pos The file position.
+   * @throws IOException
+   */
+  private static void writeFully(FileChannel fc, ByteBuffer bb, long pos)
+          throws IOException
+  {
+    while (bb.hasRemaining()) pos += fc.write(bb, pos);
+  }
+
+  /**
+   * Fills the remaining bytes of the input buffer from the input file
+   * position.
+   * 
+   * @param fc  The file channel.
+   * @param bb  The buffer.
+   * @param pos The file position.
+   * @throws IOException
+   */
+  private static void readFully(FileChannel fc, ByteBuffer bb, long pos)
+          throws IOException
+  {
+    while (bb.hasRemaining())
+    {
+      int n = fc.read(bb, pos);
+      if (n < 0)
+        throw new IOException("Error: Unexpected end of file at position " +
+                              pos + " ...");
+      pos += n;
+    }
+  }
+
+  /**
+   * Writes the input non-negative int as a var-int (7 bits per byte, low
+   * bits first, high bit set on all but the last byte).
+   * 
+   * @param bb The output buffer.
+   * @param v  The value.
+   */
+  private static void putVarInt(ByteBuffer bb, int v)
+  {
+    while ((v & ~0x7F) != 0)
+    {
+      bb.put((byte) ((v & 0x7F) | 0x80));
+      v >>>= 7;
+    }
+    bb.put((byte) v);
+  }
+
+  /**
+   * Reads a var-int written by putVarInt().
+   * 
+   * @param bb The input buffer.
+   * @return The value.
+   */
+  private static int getVarInt(ByteBuffer bb)
+  {
+    int v = 0, shift = 0;
+    byte b;
+    do
+    {
+      b = bb.get();
+      v |= (b & 0x7F) << shift;
+      shift += 7;
+    }
+    while ((b & 0x80) != 0);
+    return v;
+  }
+}
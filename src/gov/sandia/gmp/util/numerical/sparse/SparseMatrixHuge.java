@@ -71,6 +71,9 @@ import java.io.IOException;
 *      // Adds a new entry to the sparse matrix
 *      add(row, col, val)
 *
+*      // Adds a new entry to the sparse matrix from any thread
+*      addConcurrent(row, col, val)
+*
 *      // Returns the length of row 'row'.
 *      getCSRVectorLength(row)
 * 
@@ -613,6 +616,28 @@ public class SparseMatrixHuge extends SparseMatrix
   	
 	  if (CSCExists())  return;
 
+	  // build with the parallel counting sort if requested or if there is
+	  // concurrent input
+
+	  if ((buildThreadCount > 0) || hasConcurrentInput())
+	  {
+	    ArrayListHugeInt    rows = new ArrayListHugeInt();
+	    ArrayListHugeDouble vals = new ArrayListHugeDouble();
+	    if (CSRExists())
+	    {
+	      // CSR rows are sorted so the stable sort leaves columns sorted
+
+	      ArrayListHugeInt r = decompressCSToTriplet(rowsPtrsCSR, valsCSR.size());
+	      colsPtrsCSC = countingSortCS(colsCSR, r, valsCSR, rows, vals);
+	    }
+	    else
+	      colsPtrsCSC = countingSortTRP(false, rows, vals);
+	    rowsCSC = rows;
+	    valsCSC = vals;
+	    addedInput = false;
+	    return;
+	  }
+
 	  // otherwise make sure the triplet form exists and is sorted as CSC
 
 		if (CSRExists())
@@ -653,6 +678,28 @@ public class SparseMatrixHuge extends SparseMatrix
 
 		if (CSRExists())  return;
 
+	  // build with the parallel counting sort if requested or if there is
+	  // concurrent input
+
+	  if ((buildThreadCount > 0) || hasConcurrentInput())
+	  {
+	    ArrayListHugeInt    cols = new ArrayListHugeInt();
+	    ArrayListHugeDouble vals = new ArrayListHugeDouble();
+	    if (CSCExists())
+	    {
+	      // CSC columns are sorted so the stable sort leaves rows sorted
+
+	      ArrayListHugeInt c = decompressCSToTriplet(colsPtrsCSC, valsCSC.size());
+	      rowsPtrsCSR = countingSortCS(rowsCSC, c, valsCSC, cols, vals);
+	    }
+	    else
+	      rowsPtrsCSR = countingSortTRP(true, cols, vals);
+	    colsCSR = cols;
+	    valsCSR = vals;
+	    addedInput = false;
+	    return;
+	  }
+
 	  // otherwise make sure the triplet form exists and is sorted as CSR
 
 		if (CSCExists())
@@ -681,6 +728,122 @@ public class SparseMatrixHuge extends SparseMatrix
     valsTRP = null;
 	}
 
+  /**
+   * Builds a compressed form from the entries (a, b, v) of the opposite
+   * compressed form with a parallel counting sort (see
+   * SparseMatrixCSBuilder). The input lists are not modified. Since b is
+   * sorted within each a the stable sort leaves each output row (column)
+   * sorted. The entry indices b and values v are stored in compressed order
+   * in bOut and vOut and the compressed pointer list is returned.
+   * 
+   * @param a The compressed index (row for CSR, column for CSC) list.
+   * @param b The entry index (column for CSR, row for CSC) list.
+   * @param v The value list.
+   * @param bOut The output entry index list.
+   * @param vOut The output value list.
+   * @return The compressed pointer list.
+   * @throws IOException
+   */
+  private ArrayListLong countingSortCS(ArrayListHugeInt a, ArrayListHugeInt b,
+                                       ArrayListHugeDouble v,
+                                       ArrayListHugeInt bOut,
+                                       ArrayListHugeDouble vOut)
+          throws IOException
+  {
+    long n = v.size();
+    bOut.setSize(n);
+    vOut.setSize(n);
+    SparseMatrixCSBuilder bldr;
+    bldr = new SparseMatrixCSBuilder(getSegments(a), getSegments(b),
+                                     getSegments(v), n,
+                                     v.getSegmentArraySize(),
+                                     buildThreadCount);
+    return new ArrayListLong(bldr.build(getSegments(bOut), getSegments(vOut),
+                                        false, false));
+  }
+
+  /**
+   * Builds the CSR (or CSC) form from the triplet form and any concurrently
+   * added entries with a parallel counting sort (see SparseMatrixCSBuilder).
+   * The triplet segments and concurrent input chunks are used in place. On
+   * successful exit the triplet form and concurrent input are discarded.
+   * 
+   * @param csr True to build CSR, false to build CSC.
+   * @param bOut The output column (CSR) or row (CSC) list.
+   * @param vOut The output value list.
+   * @return The compressed pointer list.
+   * @throws IOException
+   */
+  private ArrayListLong countingSortTRP(boolean csr, ArrayListHugeInt bOut,
+                                        ArrayListHugeDouble vOut)
+          throws IOException
+  {
+    // gather the triplet segments and the concurrent input chunks
+
+    SparseMatrixTripletBuffer buf = new SparseMatrixTripletBuffer();
+    if (concurrentInput != null) buf.addAll(concurrentInput);
+    if (tripletExists())
+    {
+      int[] len = SparseMatrixCSBuilder.getSegmentLengths(valsTRP.size(),
+                                        valsTRP.getSegmentArraySize());
+      for (int i = 0; i < len.length; ++i)
+        buf.addChunk(rowsTRP.getArraySegment(i), colsTRP.getArraySegment(i),
+                     valsTRP.getArraySegment(i), len[i]);
+    }
+    long n = buf.getEntryCount();
+    if (n == 0)
+      throw new IOException("Error: Can't create " + (csr ? "CSR" : "CSC") +
+                            " from empty SparseMatrix ...");
+    if (maxRowIndex < buf.getMaxRow()) maxRowIndex = buf.getMaxRow();
+    if (maxColIndex < buf.getMaxCol()) maxColIndex = buf.getMaxCol();
+
+    // build and discard the input
+
+    bOut.setSize(n);
+    vOut.setSize(n);
+    SparseMatrixCSBuilder bldr;
+    bldr = new SparseMatrixCSBuilder(csr ? buf.getRowChunks() :
+                                           buf.getColumnChunks(),
+                                     csr ? buf.getColumnChunks() :
+                                           buf.getRowChunks(),
+                                     buf.getValueChunks(),
+                                     buf.getChunkLengths(),
+                                     vOut.getSegmentArraySize(),
+                                     buildThreadCount);
+    long[] ptr = bldr.build(getSegments(bOut), getSegments(vOut), true,
+                            addedInput);
+    rowsTRP = colsTRP = null;
+    valsTRP = null;
+    concurrentInput = null;
+    return new ArrayListLong(ptr);
+  }
+
+  /**
+   * Returns the segment arrays of the input list.
+   * 
+   * @param x The list.
+   * @return The segment arrays of x.
+   */
+  private static int[][] getSegments(ArrayListHugeInt x)
+  {
+    int[][] s = new int [x.getSegmentCount()][];
+    for (int i = 0; i < s.length; ++i) s[i] = x.getArraySegment(i);
+    return s;
+  }
+
+  /**
+   * Returns the segment arrays of the input list.
+   * 
+   * @param x The list.
+   * @return The segment arrays of x.
+   */
+  private static double[][] getSegments(ArrayListHugeDouble x)
+  {
+    double[][] s = new double [x.getSegmentCount()][];
+    for (int i = 0; i < s.length; ++i) s[i] = x.getArraySegment(i);
+    return s;
+  }
+
   /**
    * Create the Triplet representation if it does not exist.
    * 
@@ -1166,6 +1329,141 @@ public class SparseMatrixHuge extends SparseMatrix
     	throw new IOException("Error: Max Column Index does not match Size[1] array ...");
   }
 
+  /**
+   * Returns the start position of vector i in the CSR (csr = true) or CSC
+   * compressed arrays.
+   * 
+   * @param csr True for the CSR form, false for the CSC form.
+   * @param i   The row (CSR) or column (CSC) index.
+   * @return The start position of vector i.
+   */
+  @Override
+  public long getCSPointer(boolean csr, int i)
+  {
+    return (csr ? rowsPtrsCSR : colsPtrsCSC).get(i);
+  }
+
+  /**
+   * Copies n compressed entries beginning at strt into indx and vals (if
+   * not null) as one array copy per segment spanned.
+   * 
+   * @param csr  True for the CSR form, false for the CSC form.
+   * @param strt The first compressed array position copied.
+   * @param n    The number of entries copied.
+   * @param indx The output indices.
+   * @param vals The output values, or null.
+   */
+  @Override
+  public void getCSEntries(boolean csr, long strt, int n, int[] indx,
+                           double[] vals)
+  {
+    ArrayListHugeInt ix = csr ? colsCSR : rowsCSC;
+    int[][]    idx  = getSegments(ix);
+    double[][] val  = (vals == null) ? null :
+                      getSegments(csr ? valsCSR : valsCSC);
+    int        nseg = ix.getSegmentArraySize();
+    long p = strt;
+    for (int q = 0; q < n;)
+    {
+      // copy the run of entries in the current segment
+
+      int si = (int) (p / nseg), e0 = (int) (p % nseg);
+      int m = Math.min(nseg - e0, n - q);
+      System.arraycopy(idx[si], e0, indx, q, m);
+      if (vals != null) System.arraycopy(val[si], e0, vals, q, m);
+      p += m;
+      q += m;
+    }
+  }
+
+  /**
+   * Gathers the dot product of each vector strt to stop-1 of the CSR
+   * (csr = true) or CSC form with each x[k] into y[k][i]. Each vector is
+   * processed as runs of entries that lie within a single segment so the
+   * inner loops index the segment arrays directly.
+   * 
+   * @param csr  True for the CSR form, false for the CSC form.
+   * @param x    The input vectors.
+   * @param y    The output vectors.
+   * @param strt The first row (CSR) or column (CSC).
+   * @param stop One past the last row (CSR) or column (CSC).
+   */
+  @Override
+  protected void productCS(boolean csr, double[][] x, double[][] y,
+                           int strt, int stop)
+  {
+    ArrayListHugeInt ix = csr ? colsCSR : rowsCSC;
+    long[]     ptr  = (csr ? rowsPtrsCSR : colsPtrsCSC).getArray();
+    int[][]    idx  = getSegments(ix);
+    double[][] val  = getSegments(csr ? valsCSR : valsCSC);
+    int        nseg = ix.getSegmentArraySize();
+    for (int i = strt; i < stop; ++i)
+    {
+      for (int k = 0; k < y.length; ++k) y[k][i] = 0.0;
+      long p = ptr[i], pEnd = ptr[i + 1];
+      while (p < pEnd)
+      {
+        // process the run of entries in the current segment
+
+        int si = (int) (p / nseg), e0 = (int) (p % nseg);
+        int e1 = (int) Math.min(nseg, e0 + pEnd - p);
+        int[] is = idx[si];
+        double[] vs = val[si];
+        for (int k = 0; k < x.length; ++k)
+        {
+          double[] xk = x[k];
+          double sum = 0.0;
+          for (int e = e0; e < e1; ++e) sum += vs[e] * xk[is[e]];
+          y[k][i] += sum;
+        }
+        p += e1 - e0;
+      }
+    }
+  }
+
+  /**
+   * Scatters each vector i = strt to stop-1 of the CSR (csr = true) or CSC
+   * form times x[k][i] into y[k]. Each vector is processed as runs of
+   * entries that lie within a single segment.
+   * 
+   * @param csr  True for the CSR form, false for the CSC form.
+   * @param x    The input vectors.
+   * @param y    The output vectors.
+   * @param strt The first row (CSR) or column (CSC).
+   * @param stop One past the last row (CSR) or column (CSC).
+   */
+  @Override
+  protected void scatterCS(boolean csr, double[][] x, double[][] y,
+                           int strt, int stop)
+  {
+    ArrayListHugeInt ix = csr ? colsCSR : rowsCSC;
+    long[]     ptr  = (csr ? rowsPtrsCSR : colsPtrsCSC).getArray();
+    int[][]    idx  = getSegments(ix);
+    double[][] val  = getSegments(csr ? valsCSR : valsCSC);
+    int        nseg = ix.getSegmentArraySize();
+    for (int i = strt; i < stop; ++i)
+    {
+      long p = ptr[i], pEnd = ptr[i + 1];
+      while (p < pEnd)
+      {
+        // process the run of entries in the current segment
+
+        int si = (int) (p / nseg), e0 = (int) (p % nseg);
+        int e1 = (int) Math.min(nseg, e0 + pEnd - p);
+        int[] is = idx[si];
+        double[] vs = val[si];
+        for (int k = 0; k < x.length; ++k)
+        {
+          double[] yk = y[k];
+          double xi = x[k][i];
+          if (xi != 0.0)
+            for (int e = e0; e < e1; ++e) yk[is[e]] += vs[e] * xi;
+        }
+        p += e1 - e0;
+      }
+    }
+  }
+
   /**
    * Returns the total memory allocation size in bytes. Includes all currently
    * existing representations.
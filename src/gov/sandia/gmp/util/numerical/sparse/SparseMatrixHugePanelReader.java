@@ -0,0 +1,655 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.sparse;
+
+import gov.sandia.gmp.util.containers.arraylist.ArrayListInt;
+import gov.sandia.gmp.util.filebuffer.FileBuffer;
+import gov.sandia.gmp.util.filebuffer.FileBufferBlockTable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Streams the compressed rows (CSR) or columns (CSC) of a SparseMatrixHuge
+ * file, as written by SparseMatrixHuge.write(), in panels of whole rows (or
+ * columns) without loading the matrix into memory. Only the pointer list is
+ * held in memory (8 bytes per row or column).
+ * 
+ * <p> The file is located through its FileOutputBuffer block structure (see
+ * FileBufferBlockTable), so any file written by SparseMatrixHuge.write() in CSR
+ * or CSC form can be streamed.
+ * 
+ * <p> Panels are read with positional file channel reads by a background
+ * thread into one of two panel buffers. While the caller processes the
+ * current panel the next panel is read into the other buffer, so that disk
+ * reads overlap computation. Reading continues cyclically: the panel
+ * following the last panel of a sweep is the first panel of the next sweep,
+ * which is prefetched while the caller finishes the current sweep.
+ * 
+ * <p> Usage:
+ * <pre>
+ *   SparseMatrixHugePanelReader rdr = new SparseMatrixHugePanelReader(f, n);
+ *   Panel p;
+ *   while ((p = rdr.nextPanel()) != null)
+ *   {
+ *     for (int i = p.getFirst(); i &lt; p.getLast(); ++i)
+ *       for (int e = p.getStart(i); e &lt; p.getStart(i + 1); ++e)
+ *         ... p.getIndex()[e], p.getValue()[e] ...
+ *   }
+ *   rdr.close();
+ * </pre>
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class SparseMatrixHugePanelReader
+{
+  /**
+   * The size of an int (string and pointer list size prefixes, block
+   * size prefixes, and entry indices).
+   */
+  private static final int  INT_SIZE    = FileBuffer.INT_SIZE;
+
+  /**
+   * The size of a long (huge list size prefixes and pointer entries).
+   */
+  private static final int  LONG_SIZE   = FileBuffer.LONG_SIZE;
+
+  /**
+   * The size of a double (matrix entry value).
+   */
+  private static final int  DOUBLE_SIZE = FileBuffer.DOUBLE_SIZE;
+
+  /**
+   * The number of pointer entries read at a time when the file is opened.
+   */
+  private static final int  PTR_CHUNK   = 1 << 20;
+
+  /**
+   * A single panel of whole rows (or columns). The entries of row i
+   * (getFirst() &lt;= i &lt; getLast()) are stored in getIndex() and getValue()
+   * at [getStart(i), getStart(i+1)).
+   */
+  public static class Panel
+  {
+    /**
+     * The first row of the panel.
+     */
+    private int      aFirst = 0;
+
+    /**
+     * One past the last row of the panel.
+     */
+    private int      aLast  = 0;
+
+    /**
+     * The panel relative start of each row (aLast - aFirst + 1 entries).
+     */
+    private int[]    aStart = new int [1];
+
+    /**
+     * The column (or row) index of each panel entry.
+     */
+    private int[]    aIndex = new int [0];
+
+    /**
+     * The value of each panel entry.
+     */
+    private double[] aValue = new double [0];
+
+    /**
+     * The file read buffer (reused between panels).
+     */
+    private ByteBuffer aBuffer = ByteBuffer.allocate(0);
+
+    /**
+     * Returns the read buffer cleared with its limit set to len bytes.
+     * 
+     * @param len The number of bytes to be read.
+     * @return The read buffer.
+     */
+    private ByteBuffer getBuffer(int len)
+    {
+      if (aBuffer.capacity() < len) aBuffer = ByteBuffer.allocate(len);
+      aBuffer.clear();
+      aBuffer.limit(len);
+      return aBuffer;
+    }
+
+    /**
+     * Returns the first row (or column) of the panel.
+     * 
+     * @return The first row of the panel.
+     */
+    public int getFirst()
+    {
+      return aFirst;
+    }
+
+    /**
+     * Returns one past the last row (or column) of the panel.
+     * 
+     * @return One past the last row of the panel.
+     */
+    public int getLast()
+    {
+      return aLast;
+    }
+
+    /**
+     * Returns the panel relative index of the first entry of row i.
+     * 
+     * @param i The row (getFirst() &lt;= i &lt;= getLast()).
+     * @return The panel relative index of the first entry of row i.
+     */
+    public int getStart(int i)
+    {
+      return aStart[i - aFirst];
+    }
+
+    /**
+     * Returns the panel entry indices. The array may be longer than the
+     * entry count of the panel.
+     * 
+     * @return The panel entry indices.
+     */
+    public int[] getIndex()
+    {
+      return aIndex;
+    }
+
+    /**
+     * Returns the panel entry values. The array may be longer than the
+     * entry count of the panel.
+     * 
+     * @return The panel entry values.
+     */
+    public double[] getValue()
+    {
+      return aValue;
+    }
+  }
+
+  /**
+   * True if the file is stored as CSR (panels of rows), false if CSC
+   * (panels of columns).
+   */
+  private boolean         aIsCSR;
+
+  /**
+   * The number of matrix rows.
+   */
+  private int             aNRows;
+
+  /**
+   * The number of matrix columns.
+   */
+  private int             aNCols;
+
+  /**
+   * The first entry of each compressed row (or column). Rows beyond the
+   * last stored pointer are empty.
+   */
+  private long[]          aPtr;
+
+  /**
+   * The number of rows (or columns) in the compressed direction.
+   */
+  private int             aN;
+
+  /**
+   * The stream offset of the first entry index.
+   */
+  private long            aIndexOffset;
+
+  /**
+   * The stream offset of the first entry value.
+   */
+  private long            aValueOffset;
+
+  /**
+   * The FileOutputBuffer block table of the file. File offsets
+   * (aIndexOffset, aValueOffset) are stream offsets, i.e. they exclude the
+   * block size prefixes.
+   */
+  private FileBufferBlockTable aTable;
+
+  /**
+   * The first row of each panel (panel count + 1 entries).
+   */
+  private int[]           aPanelCut;
+
+  /**
+   * The open file.
+   */
+  private RandomAccessFile aFile;
+
+  /**
+   * The channel of aFile used for positional reads.
+   */
+  private FileChannel     aChannel;
+
+  /**
+   * The background reader thread.
+   */
+  private ExecutorService aReader;
+
+  /**
+   * The two panel buffers.
+   */
+  private Panel[]         aPanel = {new Panel(), new Panel()};
+
+  /**
+   * The pending read of the next panel.
+   */
+  private Future<Panel>   aPending = null;
+
+  /**
+   * The index of the panel being read by aPending.
+   */
+  private int             aPendingIndex = 0;
+
+  /**
+   * The buffer into which aPending reads.
+   */
+  private int             aPendingBuffer = 0;
+
+  /**
+   * True if the next call to nextPanel() begins a sweep (no panel of the
+   * current sweep has been returned yet).
+   */
+  private boolean         aSweepEnded = true;
+
+  /**
+   * The accumulated time (nanoseconds) the caller spent waiting in
+   * nextPanel() for a panel read to complete.
+   */
+  private long            aWaitTime = 0;
+
+  /**
+   * The accumulated number of bytes read.
+   */
+  private volatile long   aBytesRead = 0;
+
+  /**
+   * Opens the SparseMatrixHuge file fileName, reads its header and pointer
+   * list, and begins reading the first panel. Each panel contains whole rows
+   * (or columns) and at most maxPanelEntries entries unless a single row
+   * exceeds that limit.
+   * 
+   * @param fileName The SparseMatrixHuge file.
+   * @param maxPanelEntries The maximum number of entries per panel.
+   * @throws IOException
+   */
+  public SparseMatrixHugePanelReader(String fileName, int maxPanelEntries)
+         throws IOException
+  {
+    aFile = new RandomAccessFile(fileName, "r");
+    aChannel = aFile.getChannel();
+    try
+    {
+      // build the block table and read the header
+
+      aTable = new FileBufferBlockTable(aChannel, fileName);
+      ByteBuffer bb = ByteBuffer.allocate(2 * INT_SIZE + 2 + INT_SIZE);
+      read(bb, 0);
+      aNRows = bb.getInt();
+      aNCols = bb.getInt();
+      bb.get();
+      bb.get();
+      long off = bb.capacity();
+      byte[] type = new byte [bb.getInt()];
+      read(ByteBuffer.wrap(type), off);
+      off += type.length;
+      String s = new String(type);
+      if (s.equals("CSR"))
+        aIsCSR = true;
+      else if (s.equals("CSC"))
+        aIsCSR = false;
+      else
+        throw new IOException("Error: File \"" + fileName + "\" stores a " +
+                              s + " matrix (CSR or CSC is required) ...");
+
+      // read the pointer list
+
+      bb = ByteBuffer.allocate(INT_SIZE);
+      read(bb, off);
+      off += INT_SIZE;
+      aPtr = new long [bb.getInt()];
+      aN = aIsCSR ? aNRows : aNCols;
+      if ((aPtr.length == 0) || (aPtr.length - 1 > aN))
+        throw new IOException("Error: File \"" + fileName + "\" pointer " +
+                              "list size (" + aPtr.length + ") is " +
+                              "inconsistent with the matrix size (" + aN +
+                              ") ...");
+      bb = ByteBuffer.allocate(LONG_SIZE * Math.min(aPtr.length, PTR_CHUNK));
+      for (int i = 0; i < aPtr.length; i += PTR_CHUNK)
+      {
+        int n = Math.min(aPtr.length - i, PTR_CHUNK);
+        bb.clear();
+        bb.limit(LONG_SIZE * n);
+        read(bb, off + (long) LONG_SIZE * i);
+        bb.asLongBuffer().get(aPtr, i, n);
+      }
+
+      long nEntries = getEntryCount();
+      aIndexOffset = off + LONG_SIZE * aPtr.length + LONG_SIZE;
+      aValueOffset = aIndexOffset + INT_SIZE * nEntries + LONG_SIZE;
+      if (aValueOffset + DOUBLE_SIZE * nEntries > aTable.getStreamSize())
+        throw new IOException("Error: File \"" + fileName + "\" is " +
+                              "truncated ...");
+    }
+    catch (IOException ex)
+    {
+      close();
+      throw ex;
+    }
+
+    // build the panels and start reading the first panel
+
+    aPanelCut = buildPanels(Math.max(1, maxPanelEntries));
+    aReader = Executors.newSingleThreadExecutor(new ThreadFactory()
+    {
+      @Override
+      public Thread newThread(Runnable r)
+      {
+        Thread t = new Thread(r, "SparseMatrixHugePanelReader");
+        t.setDaemon(true);
+        return t;
+      }
+    });
+    submit(0, 0);
+  }
+
+  /**
+   * Fills the remaining bytes of bb, beginning at stream offset off, and
+   * flips bb for reading. The read may span several blocks.
+   * 
+   * @param bb The destination buffer.
+   * @param off The stream offset.
+   * @throws IOException
+   */
+  private void read(ByteBuffer bb, long off) throws IOException
+  {
+    int n = bb.remaining();
+    aTable.read(aChannel, bb, off);
+    aBytesRead += n;
+  }
+
+  /**
+   * Splits the compressed rows into panels of at most maxEntries entries.
+   * 
+   * @param maxEntries The maximum number of entries per panel.
+   * @return The first row of each panel followed by aN.
+   */
+  private int[] buildPanels(int maxEntries)
+  {
+    ArrayListInt cut = new ArrayListInt();
+    cut.add(0);
+    int i = 0;
+    while (i < aN)
+    {
+      // add rows while the panel entry count stays within the limit (a
+      // panel always contains at least one row)
+
+      long strt = getPtr(i);
+      int j = i + 1;
+      while ((j < aN) && (getPtr(j + 1) - strt <= maxEntries)) ++j;
+      cut.add(j);
+      i = j;
+    }
+    if (aN == 0) cut.add(0);
+
+    int[] c = new int [cut.size()];
+    for (int k = 0; k < c.length; ++k) c[k] = cut.get(k);
+    return c;
+  }
+
+  /**
+   * Returns the first entry of compressed row i (0 &lt;= i &lt;= aN).
+   * 
+   * @param i The row.
+   * @return The first entry of row i.
+   */
+  private long getPtr(int i)
+  {
+    return (i < aPtr.length) ? aPtr[i] : aPtr[aPtr.length - 1];
+  }
+
+  /**
+   * Submits the background read of panel p into buffer b.
+   * 
+   * @param p The panel index.
+   * @param b The buffer index.
+   */
+  private void submit(final int p, final int b)
+  {
+    aPendingIndex = p;
+    aPendingBuffer = b;
+    aPending = aReader.submit(new Callable<Panel>()
+    {
+      @Override
+      public Panel call() throws IOException
+      {
+        return readPanel(p, aPanel[b]);
+      }
+    });
+  }
+
+  /**
+   * Reads panel p into pnl.
+   * 
+   * @param p The panel index.
+   * @param pnl The panel buffer.
+   * @return pnl.
+   * @throws IOException
+   */
+  private Panel readPanel(int p, Panel pnl) throws IOException
+  {
+    int first = aPanelCut[p], last = aPanelCut[p + 1];
+    long strt = getPtr(first);
+    int n = (int) (getPtr(last) - strt);
+
+    pnl.aFirst = first;
+    pnl.aLast  = last;
+    if (pnl.aStart.length < last - first + 1)
+      pnl.aStart = new int [last - first + 1];
+    for (int i = first; i <= last; ++i)
+      pnl.aStart[i - first] = (int) (getPtr(i) - strt);
+    if (pnl.aIndex.length < n)
+    {
+      pnl.aIndex = new int [n];
+      pnl.aValue = new double [n];
+    }
+
+    // read the indices and then the values
+
+    ByteBuffer bb = pnl.getBuffer(INT_SIZE * n);
+    read(bb, aIndexOffset + INT_SIZE * strt);
+    bb.asIntBuffer().get(pnl.aIndex, 0, n);
+    bb = pnl.getBuffer(DOUBLE_SIZE * n);
+    read(bb, aValueOffset + DOUBLE_SIZE * strt);
+    bb.asDoubleBuffer().get(pnl.aValue, 0, n);
+    return pnl;
+  }
+
+  /**
+   * Returns the next panel of the current sweep, or null if the sweep is
+   * complete (the following call returns the first panel of the next
+   * sweep). The returned panel remains valid until the next call. The read
+   * of the following panel is started before this method returns.
+   * 
+   * @return The next panel, or null at the end of a sweep.
+   * @throws IOException
+   */
+  public Panel nextPanel() throws IOException
+  {
+    if (aReader == null)
+      throw new IOException("Error: Panel reader is closed ...");
+
+    // the pending read is the first panel of the next sweep ... end the
+    // current sweep
+
+    if ((aPendingIndex == 0) && !aSweepEnded)
+    {
+      aSweepEnded = true;
+      return null;
+    }
+    aSweepEnded = false;
+
+    // wait for the pending read and start the next
+
+    Panel pnl;
+    long t = System.nanoTime();
+    try
+    {
+      pnl = aPending.get();
+    }
+    catch (InterruptedException ex)
+    {
+      Thread.currentThread().interrupt();
+      throw new IOException("Error: Interrupted waiting for panel read ...");
+    }
+    catch (ExecutionException ex)
+    {
+      Throwable c = ex.getCause();
+      if (c instanceof IOException) throw (IOException) c;
+      throw new IOException("Error: Panel read failed ...", c);
+    }
+    aWaitTime += System.nanoTime() - t;
+
+    submit((aPendingIndex + 1) % (aPanelCut.length - 1), 1 - aPendingBuffer);
+    return pnl;
+  }
+
+  /**
+   * Returns true if the file is stored as CSR (row panels), false if CSC
+   * (column panels).
+   * 
+   * @return True if the panels contain rows.
+   */
+  public boolean isCSR()
+  {
+    return aIsCSR;
+  }
+
+  /**
+   * Returns the number of matrix rows.
+   * 
+   * @return The number of matrix rows.
+   */
+  public int getRowCount()
+  {
+    return aNRows;
+  }
+
+  /**
+   * Returns the number of matrix columns.
+   * 
+   * @return The number of matrix columns.
+   */
+  public int getColumnCount()
+  {
+    return aNCols;
+  }
+
+  /**
+   * Returns the number of matrix entries.
+   * 
+   * @return The number of matrix entries.
+   */
+  public long getEntryCount()
+  {
+    return aPtr[aPtr.length - 1];
+  }
+
+  /**
+   * Returns the number of panels in a sweep.
+   * 
+   * @return The number of panels in a sweep.
+   */
+  public int getPanelCount()
+  {
+    return aPanelCut.length - 1;
+  }
+
+  /**
+   * Returns the accumulated time (nanoseconds) spent waiting in nextPanel()
+   * for panel reads to complete. Time not spent waiting was overlapped with
+   * the caller's computation.
+   * 
+   * @return The accumulated panel wait time.
+   */
+  public long getWaitTime()
+  {
+    return aWaitTime;
+  }
+
+  /**
+   * Returns the accumulated number of bytes read from the file.
+   * 
+   * @return The accumulated number of bytes read.
+   */
+  public long getBytesRead()
+  {
+    return aBytesRead;
+  }
+
+  /**
+   * Stops the background reader and closes the file.
+   * 
+   * @throws IOException
+   */
+  public void close() throws IOException
+  {
+    if (aReader != null)
+    {
+      aReader.shutdownNow();
+      aReader = null;
+    }
+    if (aFile != null)
+    {
+      aFile.close();
+      aFile = null;
+    }
+  }
+}
@@ -70,6 +70,9 @@ import java.io.IOException;
  *      // Adds a new entry to the sparse matrix
  *      add(row, col, val)
  *
+ *      // Adds a new entry to the sparse matrix from any thread
+ *      addConcurrent(row, col, val)
+ *
  *      // Returns the length of row 'row'.
  *      getCSRVectorLength(row)
  * 
@@ -614,6 +617,28 @@ public class SparseMatrixStandard extends SparseMatrix
   	
 	  if (CSCExists())  return;
 
+	  // build with the parallel counting sort if requested or if there is
+	  // concurrent input
+
+	  if ((buildThreadCount > 0) || hasConcurrentInput())
+	  {
+	    ArrayListInt    rows = new ArrayListInt();
+	    ArrayListDouble vals = new ArrayListDouble();
+	    if (CSRExists())
+	    {
+	      // CSR rows are sorted so the stable sort leaves columns sorted
+
+	      ArrayListInt r = decompressCSToTriplet(rowsPtrsCSR, valsCSR.size());
+	      colsPtrsCSC = countingSortCS(colsCSR, r, valsCSR, rows, vals);
+	    }
+	    else
+	      colsPtrsCSC = countingSortTRP(false, rows, vals);
+	    rowsCSC = rows;
+	    valsCSC = vals;
+	    addedInput = false;
+	    return;
+	  }
+
 	  // otherwise make sure the triplet form exists and is sorted as CSC
 
 		if (CSRExists())
@@ -654,6 +679,28 @@ public class SparseMatrixStandard extends SparseMatrix
 
 		if (CSRExists())  return;
 
+	  // build with the parallel counting sort if requested or if there is
+	  // concurrent input
+
+	  if ((buildThreadCount > 0) || hasConcurrentInput())
+	  {
+	    ArrayListInt    cols = new ArrayListInt();
+	    ArrayListDouble vals = new ArrayListDouble();
+	    if (CSCExists())
+	    {
+	      // CSC columns are sorted so the stable sort leaves rows sorted
+
+	      ArrayListInt c = decompressCSToTriplet(colsPtrsCSC, valsCSC.size());
+	      rowsPtrsCSR = countingSortCS(rowsCSC, c, valsCSC, cols, vals);
+	    }
+	    else
+	      rowsPtrsCSR = countingSortTRP(true, cols, vals);
+	    colsCSR = cols;
+	    valsCSR = vals;
+	    addedInput = false;
+	    return;
+	  }
+
 	  // otherwise make sure the triplet form exists and is sorted as CSR
 
 		if (CSCExists())
@@ -682,6 +729,114 @@ public class SparseMatrixStandard extends SparseMatrix
     valsTRP = null;
 	}
 
+  /**
+   * Builds a compressed form from the entries (a, b, v) of the opposite
+   * compressed form with a parallel counting sort (see
+   * SparseMatrixCSBuilder). The input lists are not modified. Since b is
+   * sorted within each a the stable sort leaves each output row (column)
+   * sorted. The entry indices b and values v are stored in compressed order
+   * in bOut and vOut and the compressed pointer list is returned.
+   * 
+   * @param a The compressed index (row for CSR, column for CSC) list.
+   * @param b The entry index (column for CSR, row for CSC) list.
+   * @param v The value list.
+   * @param bOut The output entry index list.
+   * @param vOut The output value list.
+   * @return The compressed pointer list.
+   * @throws IOException
+   */
+  private ArrayListInt countingSortCS(ArrayListInt a, ArrayListInt b,
+                                      ArrayListDouble v, ArrayListInt bOut,
+                                      ArrayListDouble vOut)
+          throws IOException
+  {
+    SparseMatrixCSBuilder bldr;
+    bldr = new SparseMatrixCSBuilder(new int[][] {a.getArray()},
+                                     new int[][] {b.getArray()},
+                                     new double[][] {v.getArray()},
+                                     new int[] {v.size()},
+                                     Integer.MAX_VALUE, buildThreadCount);
+    return build(bldr, v.size(), bOut, vOut, false);
+  }
+
+  /**
+   * Builds the CSR (or CSC) form from the triplet form and any concurrently
+   * added entries with a parallel counting sort (see SparseMatrixCSBuilder).
+   * The triplet arrays and concurrent input chunks are used in place. On
+   * successful exit the triplet form and concurrent input are discarded.
+   * 
+   * @param csr True to build CSR, false to build CSC.
+   * @param bOut The output column (CSR) or row (CSC) list.
+   * @param vOut The output value list.
+   * @return The compressed pointer list.
+   * @throws IOException
+   */
+  private ArrayListInt countingSortTRP(boolean csr, ArrayListInt bOut,
+                                       ArrayListDouble vOut)
+          throws IOException
+  {
+    // gather the triplet arrays and the concurrent input chunks
+
+    SparseMatrixTripletBuffer buf = new SparseMatrixTripletBuffer();
+    if (concurrentInput != null) buf.addAll(concurrentInput);
+    if (tripletExists())
+      buf.addChunk(rowsTRP.getArray(), colsTRP.getArray(), valsTRP.getArray(),
+                   valsTRP.size());
+    long n = buf.getEntryCount();
+    if (n == 0)
+      throw new IOException("Error: Can't create " + (csr ? "CSR" : "CSC") +
+                            " from empty SparseMatrix ...");
+    if (n > Integer.MAX_VALUE)
+      throw new IOException("Error: Entry count (" + n + ") exceeds the " +
+                            "capacity of a SparseMatrixStandard ...");
+    if (maxRowIndex < buf.getMaxRow()) maxRowIndex = buf.getMaxRow();
+    if (maxColIndex < buf.getMaxCol()) maxColIndex = buf.getMaxCol();
+
+    // build and discard the input
+
+    SparseMatrixCSBuilder bldr;
+    bldr = new SparseMatrixCSBuilder(csr ? buf.getRowChunks() :
+                                           buf.getColumnChunks(),
+                                     csr ? buf.getColumnChunks() :
+                                           buf.getRowChunks(),
+                                     buf.getValueChunks(),
+                                     buf.getChunkLengths(),
+                                     Integer.MAX_VALUE, buildThreadCount);
+    ArrayListInt ptr = build(bldr, (int) n, bOut, vOut, true);
+    rowsTRP = colsTRP = null;
+    valsTRP = null;
+    concurrentInput = null;
+    return ptr;
+  }
+
+  /**
+   * Runs the input builder into new arrays of n entries that are set into
+   * bOut and vOut, and returns the compressed pointer list.
+   * 
+   * @param bldr The builder.
+   * @param n The number of entries.
+   * @param bOut The output entry index list.
+   * @param vOut The output value list.
+   * @param sortEntries If true each compressed row (column) is sorted and,
+   *                    if input was added, checked for double entries.
+   * @return The compressed pointer list.
+   * @throws IOException
+   */
+  private ArrayListInt build(SparseMatrixCSBuilder bldr, int n,
+                             ArrayListInt bOut, ArrayListDouble vOut,
+                             boolean sortEntries) throws IOException
+  {
+    int[]    bo = new int [n];
+    double[] vo = new double [n];
+    long[] ptr = bldr.build(new int[][] {bo}, new double[][] {vo},
+                            sortEntries, sortEntries && addedInput);
+    bOut.setArray(bo);
+    vOut.setArray(vo);
+    int[] p = new int [ptr.length];
+    for (int i = 0; i < p.length; ++i) p[i] = (int) ptr[i];
+    return new ArrayListInt(p);
+  }
+
   /**
    * Create the Triplet representation if it does not exist.
    * 
@@ -1164,6 +1319,113 @@ public class SparseMatrixStandard extends SparseMatrix
     	throw new IOException("Error: Max Column Index does not match Size[1] array ...");
   }
 
+  /**
+   * Returns the start position of vector i in the CSR (csr = true) or CSC
+   * compressed arrays.
+   * 
+   * @param csr True for the CSR form, false for the CSC form.
+   * @param i   The row (CSR) or column (CSC) index.
+   * @return The start position of vector i.
+   */
+  @Override
+  public long getCSPointer(boolean csr, int i)
+  {
+    return (csr ? rowsPtrsCSR : colsPtrsCSC).get(i);
+  }
+
+  /**
+   * Copies n compressed entries beginning at strt into indx and vals (if
+   * not null) with one array copy each.
+   * 
+   * @param csr  True for the CSR form, false for the CSC form.
+   * @param strt The first compressed array position copied.
+   * @param n    The number of entries copied.
+   * @param indx The output indices.
+   * @param vals The output values, or null.
+   */
+  @Override
+  public void getCSEntries(boolean csr, long strt, int n, int[] indx,
+                           double[] vals)
+  {
+    System.arraycopy((csr ? colsCSR : rowsCSC).getArray(), (int) strt, indx,
+                     0, n);
+    if (vals != null)
+      System.arraycopy((csr ? valsCSR : valsCSC).getArray(), (int) strt,
+                       vals, 0, n);
+  }
+
+  /**
+   * Gathers the dot product of each vector strt to stop-1 of the CSR
+   * (csr = true) or CSC form with each x[k] into y[k][i]. The loops run
+   * directly over the compressed arrays with a separate single vector loop.
+   * 
+   * @param csr  True for the CSR form, false for the CSC form.
+   * @param x    The input vectors.
+   * @param y    The output vectors.
+   * @param strt The first row (CSR) or column (CSC).
+   * @param stop One past the last row (CSR) or column (CSC).
+   */
+  @Override
+  protected void productCS(boolean csr, double[][] x, double[][] y,
+                           int strt, int stop)
+  {
+    int[]    ptr = (csr ? rowsPtrsCSR : colsPtrsCSC).getArray();
+    int[]    idx = (csr ? colsCSR : rowsCSC).getArray();
+    double[] val = (csr ? valsCSR : valsCSC).getArray();
+    if (x.length == 1)
+    {
+      double[] xk = x[0], yk = y[0];
+      for (int i = strt; i < stop; ++i)
+      {
+        double sum = 0.0;
+        for (int p = ptr[i]; p < ptr[i + 1]; ++p) sum += val[p] * xk[idx[p]];
+        yk[i] = sum;
+      }
+    }
+    else
+    {
+      for (int i = strt; i < stop; ++i)
+      {
+        for (int k = 0; k < y.length; ++k) y[k][i] = 0.0;
+        for (int p = ptr[i]; p < ptr[i + 1]; ++p)
+        {
+          double v = val[p];
+          int    j = idx[p];
+          for (int k = 0; k < x.length; ++k) y[k][i] += v * x[k][j];
+        }
+      }
+    }
+  }
+
+  /**
+   * Scatters each vector i = strt to stop-1 of the CSR (csr = true) or CSC
+   * form times x[k][i] into y[k].
+   * 
+   * @param csr  True for the CSR form, false for the CSC form.
+   * @param x    The input vectors.
+   * @param y    The output vectors.
+   * @param strt The first row (CSR) or column (CSC).
+   * @param stop One past the last row (CSR) or column (CSC).
+   */
+  @Override
+  protected void scatterCS(boolean csr, double[][] x, double[][] y,
+                           int strt, int stop)
+  {
+    int[]    ptr = (csr ? rowsPtrsCSR : colsPtrsCSC).getArray();
+    int[]    idx = (csr ? colsCSR : rowsCSC).getArray();
+    double[] val = (csr ? valsCSR : valsCSC).getArray();
+    for (int k = 0; k < x.length; ++k)
+    {
+      double[] xk = x[k], yk = y[k];
+      for (int i = strt; i < stop; ++i)
+      {
+        double xi = xk[i];
+        if (xi == 0.0) continue;
+        for (int p = ptr[i]; p < ptr[i + 1]; ++p) yk[idx[p]] += val[p] * xi;
+      }
+    }
+  }
+
   /**
    * Returns the total memory allocation size in bytes. Includes all currently
    * existing representations.
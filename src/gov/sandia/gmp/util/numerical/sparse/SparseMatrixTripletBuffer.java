@@ -0,0 +1,415 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.sparse;
+
+import java.util.ArrayList;
+
+/**
+ * Thread safe triplet (row, column, value) entry buffer used by
+ * SparseMatrix.addConcurrent(). Each producer thread appends to its own
+ * buffer, a list of fixed size chunks, so that no lock is taken per entry.
+ * The chunks of all threads are handed to SparseMatrixCSBuilder as input
+ * segments when the compressed form is built, so they are never merged
+ * into a single list.
+ * 
+ * <p> Entries may be added from any number of threads concurrently. The
+ * accessors (getEntryCount(), getRowChunks(), ...) may only be called once
+ * all producer threads have finished adding (e.g. after joining them).
+ * 
+ * <p> Created: October 17th, 2026
+ */
+public class SparseMatrixTripletBuffer
+{
+  /**
+   * The default number of entries in each chunk.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 1 << 16;
+
+  /**
+   * The entries added by a single thread.
+   */
+  private static class ThreadBuffer
+  {
+    /**
+     * The number of entries in each chunk but the last. Kept per buffer so
+     * that the chunks of a buffer merged with addAll() keep their own size.
+     */
+    private int                 aChunkSize = 0;
+
+    /**
+     * The row index chunks.
+     */
+    private ArrayList<int[]>    aRows = new ArrayList<int[]>();
+
+    /**
+     * The column index chunks.
+     */
+    private ArrayList<int[]>    aCols = new ArrayList<int[]>();
+
+    /**
+     * The value chunks.
+     */
+    private ArrayList<double[]> aVals = new ArrayList<double[]>();
+
+    /**
+     * The current (last) row index chunk.
+     */
+    private int[]               aRow  = null;
+
+    /**
+     * The current (last) column index chunk.
+     */
+    private int[]               aCol  = null;
+
+    /**
+     * The current (last) value chunk.
+     */
+    private double[]            aVal  = null;
+
+    /**
+     * The number of entries in the current chunk.
+     */
+    private int                 aFill = 0;
+
+    /**
+     * The largest row index added + 1.
+     */
+    private int                 aMaxRow = 0;
+
+    /**
+     * The largest column index added + 1.
+     */
+    private int                 aMaxCol = 0;
+  }
+
+  /**
+   * The number of entries in each chunk.
+   */
+  private int                       aChunkSize;
+
+  /**
+   * The buffer of every thread that has added an entry.
+   */
+  private ArrayList<ThreadBuffer>   aBuffers = new ArrayList<ThreadBuffer>();
+
+  /**
+   * The buffer of the calling thread.
+   */
+  private ThreadLocal<ThreadBuffer> aBuffer;
+
+  /**
+   * Default constructor. Uses chunks of DEFAULT_CHUNK_SIZE entries.
+   */
+  public SparseMatrixTripletBuffer()
+  {
+    this(DEFAULT_CHUNK_SIZE);
+  }
+
+  /**
+   * Standard constructor.
+   * 
+   * @param chunkSize The number of entries in each chunk.
+   */
+  public SparseMatrixTripletBuffer(int chunkSize)
+  {
+    if (chunkSize < 1)
+      throw new IllegalArgumentException("Error: Chunk size (" + chunkSize +
+                                         ") must be positive ...");
+    aChunkSize = chunkSize;
+    aBuffer = new ThreadLocal<ThreadBuffer>()
+    {
+      @Override
+      protected ThreadBuffer initialValue()
+      {
+        ThreadBuffer tb = new ThreadBuffer();
+        tb.aChunkSize = aChunkSize;
+        synchronized (aBuffers)
+        {
+          aBuffers.add(tb);
+        }
+        return tb;
+      }
+    };
+  }
+
+  /**
+   * Adds an entry to the buffer of the calling thread.
+   * 
+   * @param row   The row index of the new entry.
+   * @param col   The column index of the new entry.
+   * @param value The new entries value.
+   */
+  public void add(int row, int col, double value)
+  {
+    if ((row < 0) || (col < 0))
+      throw new IllegalArgumentException("Error: Negative row or column " +
+                                         "index (" + row + ", " + col +
+                                         ") ...");
+    ThreadBuffer tb = aBuffer.get();
+    if ((tb.aRow == null) || (tb.aFill == aChunkSize))
+    {
+      // start a new chunk
+
+      tb.aRow = new int [aChunkSize];
+      tb.aCol = new int [aChunkSize];
+      tb.aVal = new double [aChunkSize];
+      tb.aRows.add(tb.aRow);
+      tb.aCols.add(tb.aCol);
+      tb.aVals.add(tb.aVal);
+      tb.aFill = 0;
+    }
+    tb.aRow[tb.aFill] = row;
+    tb.aCol[tb.aFill] = col;
+    tb.aVal[tb.aFill] = value;
+    ++tb.aFill;
+    if (tb.aMaxRow <= row) tb.aMaxRow = row + 1;
+    if (tb.aMaxCol <= col) tb.aMaxCol = col + 1;
+  }
+
+  /**
+   * Adds the first n entries of the input arrays as a single chunk without
+   * copying them. Used to include the entries of a triplet list when the
+   * compressed form is built. The arrays must not be modified until the
+   * buffer is discarded.
+   * 
+   * @param rows The row indices.
+   * @param cols The column indices.
+   * @param vals The values.
+   * @param n The number of entries.
+   */
+  public void addChunk(int[] rows, int[] cols, double[] vals, int n)
+  {
+    ThreadBuffer tb = new ThreadBuffer();
+    tb.aRows.add(rows);
+    tb.aCols.add(cols);
+    tb.aVals.add(vals);
+    tb.aRow = rows;
+    tb.aCol = cols;
+    tb.aVal = vals;
+    tb.aFill = n;
+    synchronized (aBuffers)
+    {
+      aBuffers.add(tb);
+    }
+  }
+
+  /**
+   * Adds the first n entries of the input arrays as a single chunk without
+   * copying them. Unlike addChunk() the indices are validated and the
+   * largest row and column indices are recorded. May be called from many
+   * threads concurrently. The arrays must not be modified until the buffer
+   * is discarded.
+   * 
+   * @param rows The row indices.
+   * @param cols The column indices.
+   * @param vals The values.
+   * @param n The number of entries.
+   */
+  public void addEntries(int[] rows, int[] cols, double[] vals, int n)
+  {
+    ThreadBuffer tb = new ThreadBuffer();
+    for (int i = 0; i < n; ++i)
+    {
+      if ((rows[i] < 0) || (cols[i] < 0))
+        throw new IllegalArgumentException("Error: Negative row or column " +
+                                           "index (" + rows[i] + ", " +
+                                           cols[i] + ") ...");
+      if (tb.aMaxRow <= rows[i]) tb.aMaxRow = rows[i] + 1;
+      if (tb.aMaxCol <= cols[i]) tb.aMaxCol = cols[i] + 1;
+    }
+    tb.aRows.add(rows);
+    tb.aCols.add(cols);
+    tb.aVals.add(vals);
+    tb.aRow = rows;
+    tb.aCol = cols;
+    tb.aVal = vals;
+    tb.aFill = n;
+    synchronized (aBuffers)
+    {
+      aBuffers.add(tb);
+    }
+  }
+
+  /**
+   * Adds the entries of the input buffer to this buffer without copying
+   * them. The input buffer may have a different chunk size. The input buffer
+   * must not be added to afterwards.
+   * 
+   * @param buf The buffer whose entries are added.
+   */
+  public void addAll(SparseMatrixTripletBuffer buf)
+  {
+    ArrayList<ThreadBuffer> b;
+    synchronized (buf.aBuffers)
+    {
+      b = new ArrayList<ThreadBuffer>(buf.aBuffers);
+    }
+    synchronized (aBuffers)
+    {
+      aBuffers.addAll(b);
+    }
+  }
+
+  /**
+   * Returns the total number of entries added by all threads.
+   * 
+   * @return The total number of entries.
+   */
+  public long getEntryCount()
+  {
+    long n = 0;
+    for (int len : getChunkLengths()) n += len;
+    return n;
+  }
+
+  /**
+   * Returns the largest row index added + 1 (excluding chunks added with
+   * addChunk()).
+   * 
+   * @return The largest row index added + 1.
+   */
+  public int getMaxRow()
+  {
+    int m = 0;
+    synchronized (aBuffers)
+    {
+      for (ThreadBuffer tb : aBuffers) m = Math.max(m, tb.aMaxRow);
+    }
+    return m;
+  }
+
+  /**
+   * Returns the largest column index added + 1 (excluding chunks added with
+   * addChunk()).
+   * 
+   * @return The largest column index added + 1.
+   */
+  public int getMaxCol()
+  {
+    int m = 0;
+    synchronized (aBuffers)
+    {
+      for (ThreadBuffer tb : aBuffers) m = Math.max(m, tb.aMaxCol);
+    }
+    return m;
+  }
+
+  /**
+   * Returns the row index chunks of all threads. The number of entries in
+   * each chunk is given by getChunkLengths().
+   * 
+   * @return The row index chunks.
+   */
+  public int[][] getRowChunks()
+  {
+    ArrayList<int[]> c = new ArrayList<int[]>();
+    synchronized (aBuffers)
+    {
+      for (ThreadBuffer tb : aBuffers) c.addAll(tb.aRows);
+    }
+    return c.toArray(new int [c.size()][]);
+  }
+
+  /**
+   * Returns the column index chunks of all threads.
+   * 
+   * @return The column index chunks.
+   */
+  public int[][] getColumnChunks()
+  {
+    ArrayList<int[]> c = new ArrayList<int[]>();
+    synchronized (aBuffers)
+    {
+      for (ThreadBuffer tb : aBuffers) c.addAll(tb.aCols);
+    }
+    return c.toArray(new int [c.size()][]);
+  }
+
+  /**
+   * Returns the value chunks of all threads.
+   * 
+   * @return The value chunks.
+   */
+  public double[][] getValueChunks()
+  {
+    ArrayList<double[]> c = new ArrayList<double[]>();
+    synchronized (aBuffers)
+    {
+      for (ThreadBuffer tb : aBuffers) c.addAll(tb.aVals);
+    }
+    return c.toArray(new double [c.size()][]);
+  }
+
+  /**
+   * Returns the number of entries in each chunk.
+   * 
+   * @return The number of entries in each chunk.
+   */
+  public int[] getChunkLengths()
+  {
+    ArrayList<Integer> c = new ArrayList<Integer>();
+    synchronized (aBuffers)
+    {
+      for (ThreadBuffer tb : aBuffers)
+      {
+        for (int i = 0; i < tb.aRows.size() - 1; ++i) c.add(tb.aChunkSize);
+        if (tb.aRows.size() > 0) c.add(tb.aFill);
+      }
+    }
+    int[] len = new int [c.size()];
+    for (int i = 0; i < len.length; ++i) len[i] = c.get(i);
+    return len;
+  }
+
+  /**
+   * Discards all entries. Threads that add entries afterwards continue to
+   * use their (now empty) buffers.
+   */
+  public void clear()
+  {
+    synchronized (aBuffers)
+    {
+      for (ThreadBuffer tb : aBuffers)
+      {
+        tb.aRows.clear();
+        tb.aCols.clear();
+        tb.aVals.clear();
+        tb.aRow = tb.aCol = null;
+        tb.aVal = null;
+        tb.aFill = tb.aMaxRow = tb.aMaxCol = 0;
+      }
+    }
+  }
+}
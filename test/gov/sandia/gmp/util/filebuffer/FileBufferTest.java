@@ -0,0 +1,264 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.filebuffer;
+
+import org.junit.Test;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FileBufferTest
+{
+  @Test
+  public void testRoundTrip() throws Exception
+  {
+    File f = File.createTempFile("filebuffer", ".bin");
+    Random r = new Random(3);
+    double[] d = new double [1000];
+    int[]    n = new int [777];
+    long[]   l = new long [333];
+    float[]  x = new float [555];
+    short[]  s = new short [99];
+    byte[]   b = new byte [1001];
+    boolean[] z = new boolean [45];
+    for (int i = 0; i < d.length; ++i) d[i] = r.nextGaussian();
+    for (int i = 0; i < n.length; ++i) n[i] = r.nextInt();
+    for (int i = 0; i < l.length; ++i) l[i] = r.nextLong();
+    for (int i = 0; i < x.length; ++i) x[i] = r.nextFloat();
+    for (int i = 0; i < s.length; ++i) s[i] = (short) r.nextInt();
+    for (int i = 0; i < z.length; ++i) z[i] = r.nextBoolean();
+    r.nextBytes(b);
+
+    // small blocks so that every array spans several blocks
+
+    FileOutputBuffer fob = new FileOutputBuffer(f.getPath());
+    fob.setByteBufferSize(100);
+    fob.writeInt(42);
+    fob.writeShort((short) -7);
+    fob.writeDoubles(d);
+    fob.writeInts(n);
+    fob.writeLongs(l);
+    fob.writeFloats(x);
+    fob.writeShorts(s);
+    fob.writeBytes(b);
+    fob.writeBooleans(z);
+    fob.writeString("LSQR");
+    fob.writeStrings(new String [] {"a", "bb", "ccc", "dddd"}, 1, 2);
+    fob.writeDoubles(d, 10, 20);
+    fob.writeDoubles(new double [0]);
+    fob.writeDouble(Math.PI);
+    fob.close();
+
+    // the format is the original big-endian block format: the first block
+    // holds at most 100 bytes and starts with the int 42
+
+    DataInputStream dis = new DataInputStream(new FileInputStream(f));
+    assertTrue(dis.readInt() <= 100);
+    assertEquals(42, dis.readInt());
+    assertEquals(-7, dis.readShort());
+    dis.close();
+
+    FileInputBuffer fib = new FileInputBuffer(f.getPath());
+    assertEquals(42, fib.readInt());
+    assertEquals(-7, fib.readShort());
+    assertArrayEquals(d, fib.readDoubles(), 0.0);
+    assertArrayEquals(n, fib.readInts());
+    assertArrayEquals(l, fib.readLongs());
+    assertArrayEquals(x, fib.readFloats(), 0.0f);
+    assertArrayEquals(s, fib.readShorts());
+    assertArrayEquals(b, fib.readBytes());
+    boolean[] zr = fib.readBooleans();
+    for (int i = 0; i < z.length; ++i) assertEquals(z[i], zr[i]);
+    assertEquals("LSQR", fib.readString());
+    assertArrayEquals(new String [] {"bb", "ccc"}, fib.readStrings());
+
+    // read directly into a caller supplied array
+
+    double[] dst = new double [25];
+    assertEquals(20, fib.readDoubles(dst, 5, 20));
+    for (int i = 0; i < 20; ++i) assertEquals(d[10 + i], dst[5 + i], 0.0);
+    assertEquals(0.0, dst[4], 0.0);
+    assertEquals(0, fib.readDoubles(dst, 0, dst.length));
+    assertEquals(Math.PI, fib.readDouble(), 0.0);
+    try
+    {
+      fib.readInt();
+      fail("read past the end of the file");
+    }
+    catch (EOFException ex)
+    {
+    }
+    fib.close();
+    f.delete();
+  }
+
+  @Test
+  public void testDoubleValues() throws Exception
+  {
+    File f = File.createTempFile("filebuffer", ".bin");
+    File g = File.createTempFile("filebuffer", ".bin");
+    Random r = new Random(7);
+    double[] d = new double [500];
+    for (int i = 0; i < d.length; ++i) d[i] = r.nextGaussian();
+
+    // bulk values and single values produce identical files across many
+    // 100 byte blocks (an int first so that blocks end early)
+
+    FileOutputBuffer fob = new FileOutputBuffer(f.getPath());
+    FileOutputBuffer fog = new FileOutputBuffer(g.getPath());
+    fob.setByteBufferSize(100);
+    fog.setByteBufferSize(100);
+    fob.writeInt(3);
+    fog.writeInt(3);
+    fob.writeDoubleValues(d, 7, 400);
+    for (int i = 7; i < 407; ++i) fog.writeDouble(d[i]);
+    fob.close();
+    fog.close();
+    assertArrayEquals(java.nio.file.Files.readAllBytes(g.toPath()),
+                      java.nio.file.Files.readAllBytes(f.toPath()));
+
+    // read them back in bulk in two pieces
+
+    FileInputBuffer fib = new FileInputBuffer(f.getPath());
+    double[] e = new double [410];
+    assertEquals(3, fib.readInt());
+    fib.readDoubleValues(e, 2, 150);
+    fib.readDoubleValues(e, 152, 250);
+    fib.close();
+    for (int i = 0; i < 400; ++i) assertEquals(d[i + 7], e[i + 2], 0.0);
+    f.delete();
+    g.delete();
+  }
+
+  @Test
+  public void testMappedReader() throws Exception
+  {
+    File f = File.createTempFile("filebuffer", ".bin");
+    File idx = new File(FileBuffer.getIndexFileName(f.getPath()));
+    Random r = new Random(5);
+    int[] ptr = new int [201];
+    for (int i = 1; i < ptr.length; ++i) ptr[i] = ptr[i-1] + r.nextInt(7);
+    double[] val = new double [ptr[ptr.length-1]];
+    for (int i = 0; i < val.length; ++i) val[i] = r.nextGaussian();
+
+    // a csr like layout split over many 256 byte blocks
+
+    FileOutputBuffer fob = new FileOutputBuffer(f.getPath());
+    fob.setByteBufferSize(256);
+    fob.setArrayIndex(true);
+    fob.writeString("CSR");
+    fob.writeInts(ptr);
+    fob.writeDouble(-1.0);
+    long valPos = fob.getStreamPosition();
+    fob.writeDoubles(val);
+    fob.close();
+    assertTrue(idx.exists());
+
+    FileBufferMappedReader rdr = new FileBufferMappedReader(f.getPath());
+    assertTrue(rdr.hasIndex());
+    assertEquals(3, rdr.getArrayCount());
+    assertEquals(FileBuffer.INT_SIZE, rdr.getArrayTypeSize(1));
+    assertEquals(valPos, rdr.getArrayPosition(2));
+    assertTrue(rdr.getBlockCount() > 10);
+
+    // scan the layout without the index
+
+    long p = rdr.skipArray(0, FileBuffer.BYTE_SIZE);
+    assertEquals(rdr.getArrayPosition(1), p);
+    p = rdr.skipArray(p, FileBuffer.INT_SIZE);
+    assertEquals(-1.0, rdr.getDouble(p), 0.0);
+    assertEquals(valPos, p + FileBuffer.DOUBLE_SIZE);
+
+    // load the values of each row range directly
+
+    long ptrPos = rdr.getArrayPosition(1);
+    assertEquals(ptr.length, rdr.getArrayLength(ptrPos));
+    for (int i = 0; i < 200; i += 17)
+    {
+      int last = Math.min(i + 23, 200);
+      IntBuffer ib = rdr.getIntBuffer(ptrPos, i, last - i + 1);
+      int first = ib.get(0), n = ib.get(last - i) - first;
+      assertEquals(ptr[i], first);
+      DoubleBuffer db = rdr.getDoubleBuffer(valPos, first, n);
+      assertEquals(n, db.remaining());
+      assertEquals(rdr.isContiguous(valPos, FileBuffer.DOUBLE_SIZE, first, n),
+                   db.isReadOnly());
+      for (int k = 0; k < n; ++k) assertEquals(val[first + k], db.get(k), 0.0);
+    }
+    try
+    {
+      rdr.getDoubleBuffer(valPos, val.length - 1, 2);
+      fail("read past the end of the array");
+    }
+    catch (java.io.IOException ex)
+    {
+    }
+    rdr.close();
+
+    // rewriting the file without an index removes the old index
+
+    File stale = new File(f.getPath() + ".stale");
+    assertTrue(idx.renameTo(stale));
+    fob = new FileOutputBuffer(f.getPath());
+    fob.writeDoubles(val, 0, 10);
+    fob.close();
+    rdr = new FileBufferMappedReader(f.getPath());
+    assertFalse(rdr.hasIndex());
+    rdr.close();
+
+    // an index of another stream size is rejected
+
+    assertTrue(stale.renameTo(idx));
+    try
+    {
+      new FileBufferMappedReader(f.getPath());
+      fail("stale index was accepted");
+    }
+    catch (java.io.IOException ex)
+    {
+      assertTrue(ex.getMessage().contains("stream size"));
+    }
+    new FileOutputBuffer(f.getPath()).close();
+    assertFalse(idx.exists());
+    f.delete();
+  }
+}
@@ -0,0 +1,97 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.matrix;
+
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.*;
+
+public class ConcurrentTaskRunnerTest
+{
+  @Test
+  public void testMixedThreadCounts() throws Exception
+  {
+    // several callers with different thread counts share the pool at once
+
+    final AtomicReference<Throwable> err = new AtomicReference<Throwable>();
+    Thread[] callers = new Thread [6];
+    for (int c = 0; c < callers.length; ++c)
+    {
+      final int nThreads = 2 + c;
+      callers[c] = new Thread(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            ConcurrentTaskRunner runner = new ConcurrentTaskRunner(nThreads);
+            for (int k = 0; k < 200; ++k)
+            {
+              final AtomicInteger sum = new AtomicInteger(0);
+              Callable<?>[] tasks = new Callable<?> [3 * nThreads];
+              for (int t = 0; t < tasks.length; ++t)
+              {
+                final int tt = t;
+                tasks[t] = new Callable<Object>()
+                {
+                  @Override
+                  public Object call()
+                  {
+                    sum.addAndGet(tt);
+                    return null;
+                  }
+                };
+              }
+              runner.invokeAll(tasks);
+              assertEquals(tasks.length * (tasks.length - 1) / 2, sum.get());
+            }
+          }
+          catch (Throwable ex)
+          {
+            err.compareAndSet(null, ex);
+          }
+        }
+      });
+      callers[c].start();
+    }
+    for (Thread t : callers) t.join();
+    if (err.get() != null) throw new AssertionError(err.get());
+  }
+}
@@ -0,0 +1,245 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.matrix;
+
+import gov.sandia.gmp.util.containers.arraylist.ArrayListDouble;
+import gov.sandia.gmp.util.numerical.doubledouble.DoubleDoubleKernels;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LSQRDDTest
+{
+  private static final int ROWS = 200;
+  private static final int COLS = 30;
+
+  private static LSQRDD newSolver(LSQRDD.SolveType pm)
+  {
+    LSQRDD lsqr = new LSQRDD();
+    lsqr.getScreenWriterOutput().setScreenOutputOff();
+    lsqr.parallelMode(pm);
+    lsqr.precisionMode(LSQRDD.SolveType.NORM_SCALE_APROD);
+    lsqr.aTol(1.0e-14);
+    lsqr.bTol(1.0e-14);
+    lsqr.iterationLimit(10 * COLS);
+    return lsqr;
+  }
+
+  /**
+   * Builds a random tall sparse system in SparseMatrixVector list form
+   * (row-ordered into rowSprs and column-ordered into colSprs) and returns
+   * the rhs.
+   */
+  private static ArrayListDouble build(Random r,
+                                       ArrayList<SparseMatrixVector> rowSprs,
+                                       ArrayList<SparseMatrixVector> colSprs)
+  {
+    for (int j = 0; j < COLS; ++j) colSprs.add(new SparseMatrixVector());
+    ArrayListDouble rhs = new ArrayListDouble(ROWS);
+    for (int i = 0; i < ROWS; ++i)
+    {
+      SparseMatrixVector smv = new SparseMatrixVector();
+      for (int j = 0; j < COLS; ++j)
+        if ((j == i % COLS) || (r.nextInt(3) == 0))
+        {
+          double a = r.nextDouble() - 0.5 + ((j == i % COLS) ? 2.0 : 0.0);
+          smv.add(j, a);
+          colSprs.get(j).add(i, a);
+        }
+      rowSprs.add(smv);
+      rhs.add(r.nextDouble() - 0.5);
+    }
+    return rhs;
+  }
+
+  @Test
+  public void testFlatMatchesList() throws Exception
+  {
+    LSQRDD.SolveType[] modes = {LSQRDD.SolveType.NONE,
+                                LSQRDD.SolveType.NORM_SCALE_APROD};
+    for (LSQRDD.SolveType pm: modes)
+    {
+      ArrayList<SparseMatrixVector> rowSprs, colSprs;
+      rowSprs = new ArrayList<SparseMatrixVector>();
+      colSprs = new ArrayList<SparseMatrixVector>();
+      ArrayListDouble rhs = build(new Random(5), rowSprs, colSprs);
+
+      SparseMatrixVectorArrayFixed rowFixed, colFixed;
+      rowFixed = SparseMatrixVectorArrayFixed.createFixedSMVArray(rowSprs);
+      colFixed = SparseMatrixVectorArrayFixed.createFixedSMVArray(colSprs);
+      assertEquals(rowSprs.get(7).size(), rowFixed.getSize(7));
+
+      double[] xl = new double [COLS], sel = new double [COLS];
+      newSolver(pm).solve(rowSprs, colSprs, rhs, xl, sel);
+      assertTrue(xl[0] != 0.0);
+
+      // same operations in the same order: the results must be identical
+
+      double[] xf = new double [COLS], sef = new double [COLS];
+      newSolver(pm).solve(rowFixed, colFixed, rhs, xf, sef);
+      for (int j = 0; j < COLS; ++j)
+      {
+        assertEquals(xl[j], xf[j], 0.0);
+        assertEquals(sel[j], sef[j], 0.0);
+      }
+
+      // flattening an assigned list form empties the callers lists
+
+      LSQRDD lsqr = newSolver(pm);
+      lsqr.solve(rowSprs, colSprs, rhs, xl, sel);
+      lsqr.flattenAndClearSparseMatrix();
+      assertEquals(0, rowSprs.size());
+      assertEquals(0, colSprs.size());
+    }
+  }
+
+  @Test
+  public void testPrecisionTiers() throws Exception
+  {
+    ArrayList<SparseMatrixVector> rowSprs, colSprs;
+    rowSprs = new ArrayList<SparseMatrixVector>();
+    colSprs = new ArrayList<SparseMatrixVector>();
+    ArrayListDouble rhs = build(new Random(13), rowSprs, colSprs);
+
+    LSQRDD lsqr = newSolver(LSQRDD.SolveType.NORM_SCALE_APROD);
+    double[] x = new double [COLS], se = new double [COLS];
+    lsqr.solve(rowSprs, colSprs, rhs, x, se);
+
+    // the exact product error is the same with or without a fused
+    // multiply-add: the DoubleDouble results must be identical
+
+    boolean fma = DoubleDoubleKernels.isFMAEnabled();
+    DoubleDoubleKernels.setFMAEnabled(!fma);
+    double[] xd = new double [COLS], sed = new double [COLS];
+    try
+    {
+      newSolver(LSQRDD.SolveType.NORM_SCALE_APROD).solve(rowSprs, colSprs,
+                                                         rhs, xd, sed);
+    }
+    finally
+    {
+      DoubleDoubleKernels.setFMAEnabled(fma);
+    }
+    for (int j = 0; j < COLS; ++j)
+    {
+      assertEquals(x[j], xd[j], 0.0);
+      assertEquals(se[j], sed[j], 0.0);
+    }
+
+    // the compensated tier agrees closely with full DoubleDouble
+
+    LSQRDD.SolveType[] modes = {LSQRDD.SolveType.NONE,
+                                LSQRDD.SolveType.NORM_SCALE_APROD};
+    for (LSQRDD.SolveType pm: modes)
+    {
+      lsqr = newSolver(pm);
+      lsqr.precisionTier(LSQRDD.PrecisionTier.COMPENSATED);
+      double[] xc = new double [COLS], sec = new double [COLS];
+      lsqr.solve(rowSprs, colSprs, rhs, xc, sec);
+      for (int j = 0; j < COLS; ++j)
+      {
+        assertEquals(x[j], xc[j], 1.0e-10 * Math.abs(x[j]) + 1.0e-13);
+        assertEquals(se[j], sec[j], 1.0e-8 * se[j]);
+      }
+    }
+  }
+
+  @Test
+  public void testWarmStart() throws Exception
+  {
+    ArrayList<SparseMatrixVector> rowSprs, colSprs;
+    rowSprs = new ArrayList<SparseMatrixVector>();
+    colSprs = new ArrayList<SparseMatrixVector>();
+    ArrayListDouble rhs = build(new Random(21), rowSprs, colSprs);
+
+    LSQRDD lsqr = newSolver(LSQRDD.SolveType.NORM_SCALE_APROD);
+    double[] x = new double [COLS], se = new double [COLS];
+    lsqr.solve(rowSprs, colSprs, rhs, x, se);
+    int iters = lsqr.iterationCount();
+
+    // perturb the rhs slightly and re-solve warm and cold
+
+    for (int i = 0; i < ROWS; i += 10) rhs.set(i, rhs.get(i) * 1.001);
+    double[] xc = new double [COLS], sec = new double [COLS];
+    newSolver(LSQRDD.SolveType.NORM_SCALE_APROD).solve(rowSprs, colSprs,
+                                                       rhs, xc, sec);
+    lsqr.setInitialSolution(x);
+    lsqr.solve(rowSprs, colSprs, rhs, x, se);
+    assertTrue(lsqr.iterationCount() < iters);
+    for (int j = 0; j < COLS; ++j)
+      assertEquals(xc[j], x[j], 1.0e-10 * Math.abs(xc[j]) + 1.0e-12);
+  }
+
+  @Test
+  public void testCheckpointResume() throws Exception
+  {
+    ArrayList<SparseMatrixVector> rowSprs, colSprs;
+    rowSprs = new ArrayList<SparseMatrixVector>();
+    colSprs = new ArrayList<SparseMatrixVector>();
+    ArrayListDouble rhs = build(new Random(9), rowSprs, colSprs);
+
+    File dir = Files.createTempDirectory("lsqrdd").toFile();
+    String chkPnt = dir.getPath() + File.separator + "chkpnt";
+
+    LSQRDD lsqr = newSolver(LSQRDD.SolveType.NORM_SCALE_APROD);
+    double[] x = new double [COLS], se = new double [COLS];
+    lsqr.solve(rowSprs, colSprs, rhs, x, se);
+    int iters = lsqr.iterationCount();
+
+    lsqr = newSolver(LSQRDD.SolveType.NORM_SCALE_APROD);
+    lsqr.iterationLimit(8);
+    lsqr.setCheckpoint(chkPnt, 2, 0.0);
+    double[] xr = new double [COLS], ser = new double [COLS];
+    lsqr.solve(rowSprs, colSprs, rhs, xr, ser);
+
+    lsqr = newSolver(LSQRDD.SolveType.NORM_SCALE_APROD);
+    lsqr.resume(chkPnt);
+    lsqr.solve(rowSprs, colSprs, rhs, xr, ser);
+    assertEquals(iters, lsqr.iterationCount());
+    for (int j = 0; j < COLS; ++j)
+    {
+      assertEquals(x[j], xr[j], 0.0);
+      assertEquals(se[j], ser[j], 0.0);
+    }
+
+    for (File f: dir.listFiles()) f.delete();
+    dir.delete();
+  }
+}
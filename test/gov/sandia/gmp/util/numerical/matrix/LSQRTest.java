@@ -0,0 +1,768 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.matrix;
+
+import gov.sandia.gmp.util.containers.arraylist.ArrayListDouble;
+import gov.sandia.gmp.util.containers.arraylist.ArrayListInt;
+import gov.sandia.gmp.util.filebuffer.FileOutputBuffer;
+import gov.sandia.gmp.util.numerical.sparse.SparseMatrix;
+import gov.sandia.gmp.util.numerical.sparse.SparseMatrixStandard;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.*;
+
+public class LSQRTest
+{
+  private static final int    ROWS = 300;
+  private static final int    COLS = 40;
+  private static final double TOL  = 1.0e-8;
+
+  /**
+   * Returns a random, well conditioned, tall dense matrix with roughly
+   * one quarter of its entries zero.
+   */
+  private static double[][] random(Random r)
+  {
+    double[][] a = new double [ROWS][COLS];
+    for (int i = 0; i < ROWS; ++i)
+    {
+      for (int j = 0; j < COLS; ++j)
+        if (r.nextInt(4) != 0) a[i][j] = r.nextDouble() - 0.5;
+      a[i][i % COLS] += 2.0;
+    }
+    return a;
+  }
+
+  /**
+   * Returns the infinity norm of A^T (A x - b) relative to the infinity norm
+   * of A^T b.
+   */
+  private static double normalResidual(double[][] a, double[] b, double[] x)
+  {
+    double[] r = new double [ROWS];
+    for (int i = 0; i < ROWS; ++i)
+    {
+      r[i] = -b[i];
+      for (int j = 0; j < COLS; ++j) r[i] += a[i][j] * x[j];
+    }
+
+    double num = 0.0, den = 0.0;
+    for (int j = 0; j < COLS; ++j)
+    {
+      double s = 0.0, t = 0.0;
+      for (int i = 0; i < ROWS; ++i)
+      {
+        s += a[i][j] * r[i];
+        t += a[i][j] * b[i];
+      }
+      num = Math.max(num, Math.abs(s));
+      den = Math.max(den, Math.abs(t));
+    }
+    return num / den;
+  }
+
+  /**
+   * Builds the row-ordered (byRow = true) or column-ordered pointer / index /
+   * value form of the dense matrix a.
+   */
+  private static void compress(double[][] a, boolean byRow,
+                               ArrayListDouble val, ArrayListInt indx,
+                               ArrayListInt ptr)
+  {
+    int n = byRow ? ROWS : COLS, m = byRow ? COLS : ROWS;
+    for (int i = 0; i < n; ++i)
+    {
+      ptr.add(val.size());
+      for (int j = 0; j < m; ++j)
+      {
+        double aij = byRow ? a[i][j] : a[j][i];
+        if (aij != 0.0)
+        {
+          val.add(aij);
+          indx.add(j);
+        }
+      }
+    }
+    ptr.add(val.size());
+  }
+
+  private static LSQR newSolver()
+  {
+    LSQR lsqr = new LSQR();
+    lsqr.getScreenWriterOutput().setScreenOutputOff();
+    lsqr.aTol(1.0e-14);
+    lsqr.bTol(1.0e-14);
+    lsqr.iterationLimit(10 * COLS);
+    return lsqr;
+  }
+
+  @Test
+  public void testConcurrentMatchesSequential() throws Exception
+  {
+    Random rnd = new Random(17);
+    double[][] a = random(rnd);
+    double[] b = new double [ROWS];
+    ArrayListDouble rhs = new ArrayListDouble(ROWS);
+    for (int i = 0; i < ROWS; ++i)
+    {
+      b[i] = rnd.nextDouble() - 0.5;
+      rhs.add(b[i]);
+    }
+
+    // build the row-ordered and column-ordered forms
+
+    ArrayListDouble row = new ArrayListDouble(), col = new ArrayListDouble();
+    ArrayListInt rowIndx = new ArrayListInt(), colIndx = new ArrayListInt();
+    ArrayListInt rowPtr = new ArrayListInt(), colPtr = new ArrayListInt();
+    compress(a, true, row, colIndx, rowPtr);
+    compress(a, false, col, rowIndx, colPtr);
+
+    // solve with the concurrent tasks executed sequentially as a reference
+
+    double[] xs = new double [COLS], ses = new double [COLS];
+    LSQR seq = newSolver();
+    seq.setSequentialUpdateOn();
+    seq.solve(row, col, rowIndx, colIndx, rowPtr, colPtr, rhs, xs, ses);
+    assertEquals(0.0, normalResidual(a, b, xs), TOL);
+
+    // solve concurrently twice with the same solver to exercise reuse of the
+    // worker threads across solves
+
+    LSQR lsqr = newSolver();
+    for (int k = 0; k < 2; ++k)
+    {
+      double[] xc = new double [COLS], sec = new double [COLS];
+      lsqr.solve(row, col, rowIndx, colIndx, rowPtr, colPtr, rhs, xc, sec);
+      assertEquals(0.0, normalResidual(a, b, xc), TOL);
+      for (int j = 0; j < COLS; ++j) assertEquals(xs[j], xc[j], TOL);
+      assertTrue(lsqr.getUTaskTimes().length > 0);
+      assertTrue(lsqr.getVTaskTimes().length > 0);
+    }
+
+    // the transpose-free solution needs only the row-ordered matrix
+
+    for (int k = 0; k < 2; ++k)
+    {
+      double[] xt = new double [COLS], set = new double [COLS];
+      lsqr.solveTransposeFree(row, colIndx, rowPtr, rhs, xt, set);
+      assertEquals(0.0, normalResidual(a, b, xt), TOL);
+      for (int j = 0; j < COLS; ++j) assertEquals(xs[j], xt[j], TOL);
+      for (int j = 0; j < COLS; ++j) assertEquals(ses[j], set[j], TOL);
+    }
+
+    // the compressed (float valued) form agrees with the double form to
+    // roughly single precision, with and without the column-ordered copy
+
+    CompressedSparseMatrix rowC, colC;
+    rowC = new CompressedSparseMatrix(row.getArray(), colIndx.getArray(),
+                                      rowPtr.getArray(), ROWS);
+    colC = new CompressedSparseMatrix(col.getArray(), rowIndx.getArray(),
+                                      colPtr.getArray(), COLS);
+    assertEquals(row.size(), rowC.getEntryCount());
+    for (int j = 0; j < rowPtr.get(1); ++j)
+      assertEquals(colIndx.get(j), rowC.getIndex(0, j));
+    for (int k = 0; k < 2; ++k)
+    {
+      double[] xf = new double [COLS], sef = new double [COLS];
+      lsqr.solve(rowC, (k == 0) ? colC : null, rhs, xf, sef);
+      for (int j = 0; j < COLS; ++j) assertEquals(xs[j], xf[j], 1.0e-5);
+    }
+  }
+
+  @Test
+  public void testLinearOperator() throws Exception
+  {
+    Random rnd = new Random(19);
+    double[][] a = random(rnd);
+    double[] b = new double [ROWS];
+    ArrayListDouble rhs = new ArrayListDouble(ROWS);
+    SparseMatrix sm = new SparseMatrixStandard();
+    for (int i = 0; i < ROWS; ++i)
+    {
+      b[i] = rnd.nextDouble() - 0.5;
+      rhs.add(b[i]);
+      for (int j = 0; j < COLS; ++j)
+        if (a[i][j] != 0.0) sm.add(i, j, a[i][j]);
+    }
+
+    // reference solution from the transpose-free row-ordered form
+
+    ArrayListDouble row = new ArrayListDouble();
+    ArrayListInt colIndx = new ArrayListInt(), rowPtr = new ArrayListInt();
+    compress(a, true, row, colIndx, rowPtr);
+    double[] xs = new double [COLS], ses = new double [COLS];
+    LSQR lsqr = newSolver();
+    lsqr.solveTransposeFree(row, colIndx, rowPtr, rhs, xs, ses);
+
+    // solve the SparseMatrix directly with only the CSR form (A' * u is
+    // scattered) and then with the CSC form (A' * u is gathered)
+
+    for (int k = 0; k < 2; ++k)
+    {
+      if (k == 1) sm.createCSC();
+      double[] x = new double [COLS], se = new double [COLS];
+      lsqr.solve(sm, rhs, x, se);
+      assertEquals(0.0, normalResidual(a, b, x), TOL);
+      for (int j = 0; j < COLS; ++j) assertEquals(xs[j], x[j], TOL);
+      for (int j = 0; j < COLS; ++j) assertEquals(ses[j], se[j], TOL);
+    }
+  }
+
+  @Test
+  public void testPreconditioners() throws Exception
+  {
+    // poorly scaled columns that are strongly coupled within blocks of 8
+    // (the "layers")
+
+    Random rnd = new Random(29);
+    double[][] a = random(rnd);
+    for (int i = 0; i < ROWS; ++i)
+      for (int j = COLS - 1; j >= 0; --j)
+      {
+        a[i][j] += 0.9 * a[i][j - j % 8];
+        a[i][j] *= Math.pow(10.0, j % 5 - 2);
+      }
+    double[] b = new double [ROWS];
+    ArrayListDouble rhs = new ArrayListDouble(ROWS);
+    for (int i = 0; i < ROWS; ++i)
+    {
+      b[i] = rnd.nextDouble() - 0.5;
+      rhs.add(b[i]);
+    }
+
+    ArrayListDouble row = new ArrayListDouble(), col = new ArrayListDouble();
+    ArrayListInt rowIndx = new ArrayListInt(), colIndx = new ArrayListInt();
+    ArrayListInt rowPtr = new ArrayListInt(), colPtr = new ArrayListInt();
+    compress(a, true, row, colIndx, rowPtr);
+    compress(a, false, col, rowIndx, colPtr);
+
+    int[] layers = new int [COLS / 8 + 1];
+    for (int k = 0; k < layers.length; ++k) layers[k] = 8 * k;
+
+    LSQRPreconditioner[] prcnds =
+      {null,
+       new LSQRDiagonalPreconditioner(row, colIndx, COLS),
+       new LSQRBlockJacobiPreconditioner(row, colIndx, rowPtr, layers, true),
+       new LSQRBlockJacobiPreconditioner(row, colIndx, rowPtr, layers,
+                                         false),
+       new LSQRBlockJacobiPreconditioner(row, colIndx, rowPtr,
+                                         new int [] {0, COLS}, false)};
+    int[] iters = new int [prcnds.length];
+    for (int k = 0; k < prcnds.length; ++k)
+    {
+      LSQR lsqr = newSolver();
+      lsqr.iterationLimit(100 * COLS);
+      lsqr.setPreconditioner(prcnds[k]);
+      LSQRConvergenceHistory hist = new LSQRConvergenceHistory();
+      lsqr.setConvergenceHistory(hist);
+      double[] x = new double [COLS], se = new double [COLS];
+      lsqr.solve(row, col, rowIndx, colIndx, rowPtr, colPtr, rhs, x, se);
+      iters[k] = lsqr.iterationCount();
+      assertEquals(iters[k], hist.size());
+      assertEquals(lsqr.rNorm(), hist.getRNorm(iters[k] - 1), 0.0);
+      if (k > 0) assertEquals(0.0, normalResidual(a, b, x), TOL);
+    }
+
+    // each preconditioner is at least as effective as the previous one and
+    // the single block is an exact orthogonalization
+
+    assertTrue(iters[1] < iters[0]);
+    assertTrue(iters[2] < iters[1]);
+    assertTrue(iters[3] <= iters[2]);
+    assertTrue(iters[4] <= 3);
+  }
+
+  @Test
+  public void testWarmStartAppendRows() throws Exception
+  {
+    Random rnd = new Random(37);
+    double[][] a = random(rnd);
+    double[] b = new double [ROWS];
+    ArrayListDouble rhs = new ArrayListDouble(ROWS);
+    for (int i = 0; i < ROWS; ++i)
+    {
+      b[i] = rnd.nextDouble() - 0.5;
+      rhs.add(b[i]);
+    }
+    ArrayListDouble row = new ArrayListDouble(), col = new ArrayListDouble();
+    ArrayListInt rowIndx = new ArrayListInt(), colIndx = new ArrayListInt();
+    ArrayListInt rowPtr = new ArrayListInt(), colPtr = new ArrayListInt();
+    compress(a, true, row, colIndx, rowPtr);
+    compress(a, false, col, rowIndx, colPtr);
+
+    // split off the last few rows ... the base system holds the rest
+
+    int nb = ROWS - 6;
+    ArrayListDouble bRow = new ArrayListDouble(), bCol = new ArrayListDouble();
+    ArrayListInt bRowIndx = new ArrayListInt(), bColIndx = new ArrayListInt();
+    ArrayListInt bRowPtr = new ArrayListInt(), bColPtr = new ArrayListInt();
+    ArrayListDouble nRow = new ArrayListDouble(), bRhs = new ArrayListDouble();
+    ArrayListInt nColIndx = new ArrayListInt(), nRowPtr = new ArrayListInt();
+    for (int e = 0; e < rowPtr.get(nb); ++e)
+    {
+      bRow.add(row.get(e));
+      bColIndx.add(colIndx.get(e));
+    }
+    for (int i = 0; i <= nb; ++i) bRowPtr.add(rowPtr.get(i));
+    for (int e = rowPtr.get(nb); e < rowPtr.get(ROWS); ++e)
+    {
+      nRow.add(row.get(e));
+      nColIndx.add(colIndx.get(e));
+    }
+    for (int i = nb; i <= ROWS; ++i)
+      nRowPtr.add(rowPtr.get(i) - rowPtr.get(nb));
+    for (int j = 0; j < COLS; ++j)
+    {
+      bColPtr.add(bCol.size());
+      for (int e = colPtr.get(j); e < colPtr.get(j + 1); ++e)
+        if (rowIndx.get(e) < nb)
+        {
+          bCol.add(col.get(e));
+          bRowIndx.add(rowIndx.get(e));
+        }
+    }
+    bColPtr.add(bCol.size());
+    for (int i = 0; i < nb; ++i) bRhs.add(b[i]);
+
+    // solve the base system, append the rows in place, and verify that
+    // both forms now equal those of the full system
+
+    LSQR lsqr = newSolver();
+    double[] x = new double [COLS], se = new double [COLS];
+    lsqr.solve(bRow, bCol, bRowIndx, bColIndx, bRowPtr, bColPtr, bRhs, x, se);
+    LSQR.appendRows(bRow, bColIndx, bRowPtr, bCol, bRowIndx, bColPtr,
+                    nRow, nColIndx, nRowPtr);
+    for (int i = nb; i < ROWS; ++i) bRhs.add(b[i]);
+    assertEquals(rowPtr.size(), bRowPtr.size());
+    assertEquals(colPtr.size(), bColPtr.size());
+    for (int i = 0; i < rowPtr.size(); ++i)
+      assertEquals(rowPtr.get(i), bRowPtr.get(i));
+    for (int j = 0; j < colPtr.size(); ++j)
+      assertEquals(colPtr.get(j), bColPtr.get(j));
+    for (int e = 0; e < col.size(); ++e)
+    {
+      assertEquals(colIndx.get(e), bColIndx.get(e));
+      assertEquals(rowIndx.get(e), bRowIndx.get(e));
+      assertEquals(col.get(e), bCol.get(e), 0.0);
+    }
+
+    // a cold solve of the full system is the reference ... the warm start
+    // from the base solution (reusing the extended task partition) reaches
+    // the same solution in fewer iterations
+
+    double[] xc = new double [COLS], sec = new double [COLS];
+    LSQR cold = newSolver();
+    cold.solve(row, col, rowIndx, colIndx, rowPtr, colPtr, rhs, xc, sec);
+
+    lsqr.setInitialSolution(x);
+    lsqr.solve(bRow, bCol, bRowIndx, bColIndx, bRowPtr, bColPtr, bRhs, x, se);
+    assertEquals(0.0, normalResidual(a, b, x), TOL);
+    for (int j = 0; j < COLS; ++j) assertEquals(xc[j], x[j], TOL);
+    assertTrue(lsqr.iterationCount() < cold.iterationCount());
+
+    // the transpose-free form only needs the row-ordered lists
+
+    lsqr.setInitialSolution(xc);
+    double[] xt = new double [COLS], set = new double [COLS];
+    lsqr.solveTransposeFree(bRow, bColIndx, bRowPtr, bRhs, xt, set);
+    for (int j = 0; j < COLS; ++j) assertEquals(xc[j], xt[j], TOL);
+  }
+
+  @Test
+  public void testBalancedPartition()
+  {
+    // heavily skewed row lengths: every 50th row is 100 times longer
+
+    int n = 1000;
+    int[] ptr = new int [n + 1];
+    for (int i = 0; i < n; ++i) ptr[i+1] = ptr[i] + ((i % 50 == 0) ? 500 : 5);
+
+    int nTasks = 16;
+    int[] cut = LSQR.balancedPartition(ptr, n, nTasks, 1.0);
+    assertEquals(0, cut[0]);
+    assertEquals(n, cut[cut.length - 1]);
+    assertTrue(cut.length - 1 <= nTasks);
+
+    double total = ptr[n] + n, max = 0.0;
+    for (int t = 0; t < cut.length - 1; ++t)
+    {
+      assertTrue(cut[t] < cut[t+1]);
+      double cost = ptr[cut[t+1]] - ptr[cut[t]] + (cut[t+1] - cut[t]);
+      max = Math.max(max, cost);
+    }
+
+    // no task may exceed its share by more than the heaviest single row
+
+    assertTrue(max <= total / nTasks + 501.0);
+
+    // a single row heavier than everything else yields no empty tasks
+
+    int[] one = {0, 0, 1000, 1000, 1001};
+    cut = LSQR.balancedPartition(one, 4, 8, 0.0);
+    for (int t = 0; t < cut.length - 1; ++t) assertTrue(cut[t] < cut[t+1]);
+    assertEquals(4, cut[cut.length - 1]);
+  }
+
+  @Test
+  public void testCompressedIndexEscapes()
+  {
+    // unsorted, widely spaced and boundary (65534, 65535) deltas
+
+    int[] index = {3, 1, 70000, 65537, 65535 + 65537, 0, 65534, 131069};
+    double[] value = new double [index.length];
+    for (int j = 0; j < value.length; ++j) value[j] = j + 0.5;
+    int[] ptr = {0, 5, 8};
+    CompressedSparseMatrix c = new CompressedSparseMatrix(value, index,
+                                                          ptr, 2);
+    for (int i = 0; i < 2; ++i)
+      for (int j = 0; j < ptr[i+1] - ptr[i]; ++j)
+      {
+        assertEquals(index[ptr[i] + j], c.getIndex(i, j));
+        assertEquals(value[ptr[i] + j], c.getValue(i, j), 0.0);
+      }
+
+    double[] x = new double [140000];
+    for (int j = 0; j < index.length; ++j) x[index[j]] = 2.0;
+    double[] y = new double [2];
+    c.multiplyAdd(y, x, 1, 2);
+    assertEquals(0.0, y[0], 0.0);
+    assertEquals(2.0 * (5.5 + 6.5 + 7.5), y[1], 0.0);
+  }
+
+  @Test
+  public void testCheckpointResume() throws Exception
+  {
+    Random rnd = new Random(23);
+    double[][] a = random(rnd);
+    ArrayListDouble rhs = new ArrayListDouble(ROWS);
+    for (int i = 0; i < ROWS; ++i) rhs.add(rnd.nextDouble() - 0.5);
+    ArrayListDouble row = new ArrayListDouble(), col = new ArrayListDouble();
+    ArrayListInt rowIndx = new ArrayListInt(), colIndx = new ArrayListInt();
+    ArrayListInt rowPtr = new ArrayListInt(), colPtr = new ArrayListInt();
+    compress(a, true, row, colIndx, rowPtr);
+    compress(a, false, col, rowIndx, colPtr);
+
+    File dir = Files.createTempDirectory("lsqr").toFile();
+    String chkPnt = dir.getPath() + File.separator + "chkpnt";
+
+    // uninterrupted reference solve
+
+    LSQR lsqr = newSolver();
+    double[] x = new double [COLS], se = new double [COLS];
+    lsqr.solve(row, col, rowIndx, colIndx, rowPtr, colPtr, rhs, x, se);
+    int iters = lsqr.iterationCount();
+    assertTrue(iters > 10);
+
+    // "preempted" solve stopped after 10 iterations with a checkpoint every
+    // 3 iterations (the last is written at iteration 9)
+
+    lsqr = newSolver();
+    lsqr.iterationLimit(10);
+    lsqr.setCheckpoint(chkPnt, 3, 0.0);
+    double[] xr = new double [COLS], ser = new double [COLS];
+    lsqr.solve(row, col, rowIndx, colIndx, rowPtr, colPtr, rhs, xr, ser);
+    assertTrue(new File(chkPnt).exists());
+
+    // resume in a new solver and continue to convergence
+
+    lsqr = newSolver();
+    lsqr.resume(chkPnt);
+    lsqr.solve(row, col, rowIndx, colIndx, rowPtr, colPtr, rhs, xr, ser);
+    assertEquals(iters, lsqr.iterationCount());
+    for (int j = 0; j < COLS; ++j)
+    {
+      assertEquals(x[j], xr[j], 0.0);
+      assertEquals(se[j], ser[j], 0.0);
+    }
+
+    for (File f: dir.listFiles()) f.delete();
+    dir.delete();
+  }
+
+  @Test
+  public void testBlockMatchesSingle() throws Exception
+  {
+    Random rnd = new Random(29);
+    double[][] a = random(rnd);
+    ArrayListDouble row = new ArrayListDouble(), col = new ArrayListDouble();
+    ArrayListInt rowIndx = new ArrayListInt(), colIndx = new ArrayListInt();
+    ArrayListInt rowPtr = new ArrayListInt(), colPtr = new ArrayListInt();
+    compress(a, true, row, colIndx, rowPtr);
+    compress(a, false, col, rowIndx, colPtr);
+
+    // five right-hand sides, the third of which is zero (stops immediately)
+
+    int k = 5;
+    double[][] b = new double [k][ROWS];
+    for (int r = 0; r < k; ++r)
+      if (r != 2)
+        for (int i = 0; i < ROWS; ++i) b[r][i] = rnd.nextDouble() - 0.5;
+
+    LSQRBlock blk = new LSQRBlock();
+    blk.aTol(1.0e-14);
+    blk.bTol(1.0e-14);
+    blk.iterationLimit(10 * COLS);
+    double[][] xb = new double [k][COLS], seb = new double [k][COLS];
+    int[] istop = blk.solve(row, col, rowIndx, colIndx, rowPtr, colPtr, b,
+                            xb, seb);
+    assertEquals(0, istop[2]);
+    assertEquals(0, blk.iterationCounts()[2]);
+
+    LSQR lsqr = newSolver();
+    for (int r = 0; r < k; ++r)
+    {
+      ArrayListDouble rhs = new ArrayListDouble(ROWS);
+      for (int i = 0; i < ROWS; ++i) rhs.add(b[r][i]);
+      double[] xs = new double [COLS], ses = new double [COLS];
+      int is = lsqr.solve(row, col, rowIndx, colIndx, rowPtr, colPtr, rhs,
+                          xs, ses);
+      assertEquals(is, istop[r]);
+      for (int j = 0; j < COLS; ++j) assertEquals(xs[j], xb[r][j], TOL);
+      for (int j = 0; j < COLS; ++j) assertEquals(ses[j], seb[r][j], TOL);
+      assertEquals(lsqr.iterationCount(), blk.iterationCounts()[r]);
+    }
+    assertTrue(blk.sweepCount() >= blk.iterationCounts()[0]);
+  }
+
+  @Test
+  public void testBlockPanelTooLarge() throws Exception
+  {
+    // 2^20 rows x 2049 systems exceeds the maximum panel size (only the
+    // row pointer is allocated ... the size is checked before the vectors)
+
+    ArrayListInt rowPtr = new ArrayListInt((1 << 20) + 1);
+    for (int i = 0; i <= (1 << 20); ++i) rowPtr.add(0);
+    ArrayListInt colPtr = new ArrayListInt();
+    colPtr.add(0);
+    colPtr.add(0);
+    int k = 2049;
+    try
+    {
+      new LSQRBlock().solve(new ArrayListDouble(), new ArrayListDouble(),
+                            new ArrayListInt(), new ArrayListInt(), rowPtr,
+                            colPtr, new double [k][], new double [k][],
+                            new double [k][]);
+      fail("expected IOException");
+    }
+    catch (IOException ex)
+    {
+      assertTrue(ex.getMessage().contains("Panel size"));
+    }
+  }
+
+  /**
+   * Writes a compressed matrix in the layout of SparseMatrixHuge.write()
+   * (SparseMatrixHuge itself allocates segments too large for a unit test)
+   * using FileOutputBuffer blocks of blkSize bytes.
+   */
+  private static void writeHuge(String f, String type, ArrayListDouble val,
+                                ArrayListInt indx, ArrayListInt ptr,
+                                int blkSize) throws Exception
+  {
+    FileOutputBuffer fob = new FileOutputBuffer(f);
+    fob.setByteBufferSize(blkSize);
+    fob.writeInt(ROWS);
+    fob.writeInt(COLS);
+    fob.writeBoolean(false);
+    fob.writeBoolean(false);
+    fob.writeString(type);
+    fob.writeInt(ptr.size());
+    for (int i = 0; i < ptr.size(); ++i) fob.writeLong(ptr.get(i));
+    fob.writeLong(indx.size());
+    for (int i = 0; i < indx.size(); ++i) fob.writeInt(indx.get(i));
+    fob.writeLong(val.size());
+    for (int i = 0; i < val.size(); ++i) fob.writeDouble(val.get(i));
+    fob.close();
+  }
+
+  @Test
+  public void testOutOfCoreMatchesInCore() throws Exception
+  {
+    Random rnd = new Random(31);
+    double[][] a = random(rnd);
+    ArrayListDouble rhs = new ArrayListDouble(ROWS);
+    for (int i = 0; i < ROWS; ++i) rhs.add(rnd.nextDouble() - 0.5);
+    ArrayListDouble row = new ArrayListDouble(), col = new ArrayListDouble();
+    ArrayListInt rowIndx = new ArrayListInt(), colIndx = new ArrayListInt();
+    ArrayListInt rowPtr = new ArrayListInt(), colPtr = new ArrayListInt();
+    compress(a, true, row, colIndx, rowPtr);
+    compress(a, false, col, rowIndx, colPtr);
+
+    LSQR lsqr = newSolver();
+    double[] x = new double [COLS], se = new double [COLS];
+    lsqr.solve(row, col, rowIndx, colIndx, rowPtr, colPtr, rhs, x, se);
+
+    // write the matrix as CSR and then as CSC in the SparseMatrixHuge file
+    // layout, the latter with small blocks so that reads span blocks
+
+    File dir = Files.createTempDirectory("lsqr").toFile();
+    String csr = dir.getPath() + File.separator + "csr";
+    String csc = dir.getPath() + File.separator + "csc";
+    writeHuge(csr, "CSR", row, colIndx, rowPtr, 8000000);
+    writeHuge(csc, "CSC", col, rowIndx, colPtr, 1000);
+
+    // stream with small panels (many panel reads per sweep)
+
+    LSQROutOfCore ooc = new LSQROutOfCore();
+    ooc.aTol(1.0e-14);
+    ooc.bTol(1.0e-14);
+    ooc.iterationLimit(10 * COLS);
+    ooc.setPanelSize(500);
+    for (String f: new String [] {csr, csc})
+    {
+      double[] xo = new double [COLS], seo = new double [COLS];
+      ooc.solve(f, rhs, xo, seo);
+      for (int j = 0; j < COLS; ++j) assertEquals(x[j], xo[j], TOL);
+      for (int j = 0; j < COLS; ++j) assertEquals(se[j], seo[j], TOL);
+      assertEquals(lsqr.iterationCount(), ooc.iterationCount());
+      assertTrue(ooc.getBytesRead() >=
+                 12L * row.size() * (ooc.iterationCount() + 1));
+    }
+
+    for (File f: dir.listFiles()) f.delete();
+    dir.delete();
+  }
+
+  @Test
+  public void testHubReleasesPort() throws Exception
+  {
+    // a single process hub accepts no workers ... the port must be free
+    // again for a second hub
+
+    ServerSocket probe = new ServerSocket(0);
+    int port = probe.getLocalPort();
+    probe.close();
+    for (int i = 0; i < 2; ++i) new LSQRSocketTransport(port, 1).close();
+  }
+
+  @Test
+  public void testDistributedMatchesSingle() throws Exception
+  {
+    Random rnd = new Random(37);
+    final double[][] a = random(rnd);
+    final double[] b = new double [ROWS];
+    ArrayListDouble rhs = new ArrayListDouble(ROWS);
+    for (int i = 0; i < ROWS; ++i)
+    {
+      b[i] = rnd.nextDouble() - 0.5;
+      rhs.add(b[i]);
+    }
+    ArrayListDouble row = new ArrayListDouble(), col = new ArrayListDouble();
+    ArrayListInt rowIndx = new ArrayListInt(), colIndx = new ArrayListInt();
+    ArrayListInt rowPtr = new ArrayListInt(), colPtr = new ArrayListInt();
+    compress(a, true, row, colIndx, rowPtr);
+    compress(a, false, col, rowIndx, colPtr);
+
+    LSQR lsqr = newSolver();
+    double[] x = new double [COLS], se = new double [COLS];
+    lsqr.solve(row, col, rowIndx, colIndx, rowPtr, colPtr, rhs, x, se);
+
+    // three ranks over localhost TCP, each owning an uneven block of rows
+
+    final int nRanks = 3;
+    final int[] cut = {0, 70, 210, ROWS};
+    final ServerSocket server = new ServerSocket(0, nRanks,
+                                             InetAddress.getLoopbackAddress());
+    final int port = server.getLocalPort();
+    ExecutorService exec = Executors.newFixedThreadPool(nRanks);
+    Future<?>[] rslt = new Future<?> [nRanks];
+    for (int r = 0; r < nRanks; ++r)
+    {
+      final int rank = r;
+      rslt[r] = exec.submit(new Callable<double[][]>()
+      {
+        @Override
+        public double[][] call() throws Exception
+        {
+          LSQRTransport t = (rank == 0) ?
+            new LSQRSocketTransport(server, nRanks) :
+            new LSQRSocketTransport("localhost", port, rank, nRanks);
+
+          ArrayListDouble val = new ArrayListDouble(), lb;
+          ArrayListInt indx = new ArrayListInt(), ptr = new ArrayListInt();
+          lb = new ArrayListDouble();
+          for (int i = cut[rank]; i < cut[rank + 1]; ++i)
+          {
+            ptr.add(val.size());
+            for (int j = 0; j < COLS; ++j)
+            {
+              if (a[i][j] != 0.0)
+              {
+                val.add(a[i][j]);
+                indx.add(j);
+              }
+            }
+            lb.add(b[i]);
+          }
+          ptr.add(val.size());
+
+          LSQRDistributed d = new LSQRDistributed();
+          d.aTol(1.0e-14);
+          d.bTol(1.0e-14);
+          d.iterationLimit(10 * COLS);
+          d.setThreadCount(2);
+          double[] xd = new double [COLS], sed = new double [COLS];
+          d.solve(t, val, indx, ptr, lb, xd, sed);
+          t.close();
+          return new double [][] {xd, sed, {d.iterationCount()}};
+        }
+      });
+    }
+
+    double[][] r0 = (double[][]) rslt[0].get();
+    for (int r = 0; r < nRanks; ++r)
+    {
+      double[][] rr = (double[][]) rslt[r].get();
+      assertArrayEquals(r0[0], rr[0], 0.0);
+      assertArrayEquals(r0[1], rr[1], 0.0);
+    }
+    exec.shutdown();
+    server.close();
+    for (int j = 0; j < COLS; ++j) assertEquals(x[j], r0[0][j], TOL);
+    for (int j = 0; j < COLS; ++j) assertEquals(se[j], r0[1][j], TOL);
+    assertEquals(lsqr.iterationCount(), (int) r0[2][0]);
+  }
+}
@@ -0,0 +1,300 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.matrixblock;
+
+import gov.sandia.gmp.util.numerical.matrixblock.MatrixBlockManager.MatrixBlockReference;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class MatrixBlockCholeskyTest
+{
+  /**
+   * An IO scheduler that fails the first block read that follows a block
+   * write once it is armed.
+   */
+  private static class FailingScheduler extends MatrixBlockIOScheduler
+  {
+    private boolean aArmed  = true;
+    private int     aWrites = 0;
+
+    private FailingScheduler()
+    {
+      super(4);
+    }
+
+    @Override
+    public long acquire(String srvrTag, String op) throws IOException
+    {
+      synchronized (this)
+      {
+        if (op.equals("WRITE"))
+          ++aWrites;
+        else if (aArmed && (aWrites > 0) && op.equals("READ"))
+        {
+          aArmed = false;
+          throw new IOException("injected read failure");
+        }
+      }
+      return super.acquire(srvrTag, op);
+    }
+  }
+
+  /**
+   * Returns a symmetric positive definite n x n test matrix.
+   */
+  private static double[][] createMatrix(int n)
+  {
+    double[][] a = new double [n][n];
+    for (int i = 0; i < n; ++i)
+      for (int j = 0; j <= i; ++j)
+        a[i][j] = a[j][i] = (double) (j + 1) / (i + 1);
+
+    return a;
+  }
+
+  /**
+   * Writes the lower triangle of a as transposed blocks to pthFilHdr.
+   */
+  private static void writeMatrix(double[][] a, MatrixBlockDefinition mbd,
+                                  String pthFilHdr)
+          throws IOException
+  {
+    int nb = mbd.blockSize();
+    for (int r = 0; r < mbd.blocks(); ++r)
+    {
+      for (int c = 0; c <= r; ++c)
+      {
+        MatrixBlock mb = new MatrixBlock(r, c, mbd);
+        mb.createBlock();
+        double[][] blk = mb.getLockedBlock(false);
+        for (int i = 0; i < mbd.getBlockElementRows(r); ++i)
+          for (int j = 0; j < mbd.getBlockElementRows(c); ++j)
+            if ((r > c) || (j <= i)) blk[j][i] = a[r * nb + i][c * nb + j];
+        mb.releaseLock(false);
+        mb.writeBlock(pthFilHdr);
+        mb.unLoad();
+      }
+    }
+  }
+
+  /**
+   * Returns element i,j (i >= j) of the lower triangular matrix owned by
+   * mngr.
+   */
+  private static double get(MatrixBlockManager mngr, int i, int j)
+          throws IOException
+  {
+    int nb = mngr.getMatrixBlockDefinition().blockSize();
+    MatrixBlockReference mbr = mngr.getBlock(i / nb, j / nb);
+    double v = mbr.getLockedBlock(false)[j % nb][i % nb];
+    mbr.releaseLock(false);
+    return v;
+  }
+
+  /**
+   * Returns the lower triangular in-core Cholesky factor of a.
+   */
+  private static double[][] cholesky(double[][] a)
+  {
+    int n = a.length;
+    double[][] l = new double [n][n];
+    for (int j = 0; j < n; ++j)
+    {
+      double s = a[j][j];
+      for (int k = 0; k < j; ++k) s -= l[j][k] * l[j][k];
+      l[j][j] = Math.sqrt(s);
+      for (int i = j + 1; i < n; ++i)
+      {
+        s = a[i][j];
+        for (int k = 0; k < j; ++k) s -= l[i][k] * l[j][k];
+        l[i][j] = s / l[j][j];
+      }
+    }
+    return l;
+  }
+
+  @Test
+  public void testRejectsSubBlockedDefinition() throws IOException
+  {
+    File dir = Files.createTempDirectory("mbc").toFile();
+    MatrixBlockDefinition mbd = new MatrixBlockDefinition(20, 10, 5);
+    MatrixBlockManager mngr = new MatrixBlockManager(mbd,
+                                  dir.getPath() + File.separator + "L",
+                                  dir.getPath() + File.separator + "L", 4);
+    try
+    {
+      new MatrixBlockCholesky(mngr, 2);
+      fail("expected IllegalArgumentException");
+    }
+    catch (IllegalArgumentException ex)
+    {
+      // the callers definition is not modified
+
+      assertEquals(5, mbd.subBlockSize());
+    }
+  }
+
+  @Test
+  public void testDecomposeRestartAndInvert() throws IOException
+  {
+    File dir = Files.createTempDirectory("mbc").toFile();
+    String pthFilHdr = dir.getPath() + File.separator + "L";
+    String invPthHdr = dir.getPath() + File.separator + "G";
+    String chkPnt    = dir.getPath() + File.separator + "chkpnt";
+
+    // 23 x 23 matrix with 5 x 5 blocks (last block is partial)
+
+    int n = 23;
+    double[][] a = createMatrix(n);
+    MatrixBlockDefinition mbd = new MatrixBlockDefinition(n, 5, 5);
+    writeMatrix(a, mbd, pthFilHdr);
+
+    // decompose the first two block columns, stop, and restart with a new
+    // engine and manager from the checkpoint
+
+    MatrixBlockManager mngr = new MatrixBlockManager(mbd, pthFilHdr,
+                                                     pthFilHdr, 4);
+    MatrixBlockCholesky chol = new MatrixBlockCholesky(mngr, 3);
+    chol.setCheckpoint(chkPnt, 1);
+    chol.decompose(2);
+    assertEquals(2, chol.getCompletedColumns());
+    chol.shutdown();
+    mngr.unLoadAll();
+
+    mngr = new MatrixBlockManager(mbd, pthFilHdr, pthFilHdr, 4);
+    chol = new MatrixBlockCholesky(mngr, 3);
+    chol.setCheckpoint(chkPnt, 2);
+    chol.setPrefetch(2, 4);
+    chol.decompose();
+    assertEquals(mbd.blocks(), chol.getCompletedColumns());
+    assertTrue(chol.getPrefetchHitCount() > 0);
+
+    // compare with the in-core factor
+
+    double[][] l = cholesky(a);
+    for (int i = 0; i < n; ++i)
+      for (int j = 0; j <= i; ++j)
+        assertEquals(l[i][j], get(mngr, i, j), 1.0e-10);
+
+    // invert and verify A * A^-1 = I
+
+    MatrixBlockManager g = new MatrixBlockManager(mbd, invPthHdr,
+                                                  invPthHdr, 4);
+    chol.invert(g);
+    chol.shutdown();
+    double[][] ainv = new double [n][n];
+    for (int i = 0; i < n; ++i)
+      for (int j = 0; j <= i; ++j)
+        ainv[i][j] = ainv[j][i] = get(g, i, j);
+
+    for (int i = 0; i < n; ++i)
+    {
+      for (int j = 0; j < n; ++j)
+      {
+        double s = 0.0;
+        for (int k = 0; k < n; ++k) s += a[i][k] * ainv[k][j];
+        assertEquals((i == j) ? 1.0 : 0.0, s, 1.0e-8);
+      }
+    }
+
+    for (File f: dir.listFiles()) f.delete();
+    dir.delete();
+  }
+
+  @Test
+  public void testRestartAfterAbortedSegment() throws IOException
+  {
+    File dir = Files.createTempDirectory("mbc").toFile();
+    String pthFilHdr = dir.getPath() + File.separator + "L";
+    String chkPnt    = dir.getPath() + File.separator + "chkpnt";
+
+    int n = 23;
+    double[][] a = createMatrix(n);
+    MatrixBlockDefinition mbd = new MatrixBlockDefinition(n, 5, 5);
+    writeMatrix(a, mbd, pthFilHdr);
+
+    // complete the first block column, then abort the second segment on the
+    // first read after an eviction wrote a modified block
+
+    MatrixBlockManager mngr = new MatrixBlockManager(mbd, pthFilHdr,
+                                                     pthFilHdr, 4);
+    MatrixBlockCholesky chol = new MatrixBlockCholesky(mngr, 1);
+    chol.setCheckpoint(chkPnt, 1);
+    chol.decompose(1);
+
+    FailingScheduler ios = new FailingScheduler();
+    MatrixBlock.setIOScheduler(ios);
+    try
+    {
+      chol.decompose();
+      fail("expected IOException");
+    }
+    catch (IOException ex)
+    {
+      assertTrue(ios.aWrites > 0);
+    }
+    finally
+    {
+      MatrixBlock.setIOScheduler(null);
+      chol.shutdown();
+    }
+    assertEquals(1, chol.getCompletedColumns());
+
+    // resume with a new engine and manager and compare with the in-core
+    // factor
+
+    mngr = new MatrixBlockManager(mbd, pthFilHdr, pthFilHdr, 4);
+    chol = new MatrixBlockCholesky(mngr, 1);
+    chol.setCheckpoint(chkPnt, 1);
+    chol.decompose();
+    chol.shutdown();
+
+    double[][] l = cholesky(a);
+    for (int i = 0; i < n; ++i)
+      for (int j = 0; j <= i; ++j)
+        assertEquals(l[i][j], get(mngr, i, j), 1.0e-10);
+
+    for (File f: dir.listFiles())
+      assertFalse(f.getName().contains(MatrixBlockManager.STAGE_SUFFIX));
+
+    for (File f: dir.listFiles()) f.delete();
+    dir.delete();
+  }
+}
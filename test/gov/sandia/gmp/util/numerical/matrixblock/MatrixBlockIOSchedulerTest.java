@@ -0,0 +1,141 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.matrixblock;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class MatrixBlockIOSchedulerTest
+{
+  @Test
+  public void testServerLimit() throws Exception
+  {
+    final MatrixBlockIOScheduler ios = new MatrixBlockIOScheduler(2);
+    final AtomicInteger active = new AtomicInteger(0);
+    final AtomicInteger maxActive = new AtomicInteger(0);
+
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    for (int i = 0; i < 8; ++i)
+    {
+      final String op = (i % 2 == 0) ? "READ" : "WRITE";
+      Thread t = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            ios.acquire("srvr", op);
+            int n = active.incrementAndGet();
+            synchronized (maxActive)
+            {
+              if (n > maxActive.get()) maxActive.set(n);
+            }
+            Thread.sleep(20);
+            active.decrementAndGet();
+            ios.release("srvr", op);
+          }
+          catch (Exception ex)
+          {
+            fail(ex.getMessage());
+          }
+        }
+      };
+      threads.add(t);
+      t.start();
+    }
+    for (Thread t: threads) t.join();
+
+    assertTrue(maxActive.get() <= 2);
+    assertEquals(8, ios.getOperationCount("srvr"));
+    assertEquals(0, ios.getActiveCount("srvr"));
+    assertTrue(ios.getWaitTime("srvr") > 0);
+  }
+
+  @Test
+  public void testReadPriority() throws Exception
+  {
+    final MatrixBlockIOScheduler ios = new MatrixBlockIOScheduler(1);
+    ios.setReadPriority(2);
+    final List<String> order = Collections.synchronizedList(
+                                 new ArrayList<String>());
+
+    // hold the only slot while a write and then three reads are queued
+
+    ios.acquire("srvr", "WRITE");
+    ArrayList<Thread> threads = new ArrayList<Thread>();
+    String[] ops = {"WRITE", "READ", "READ", "READ"};
+    for (final String op: ops)
+    {
+      Thread t = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            ios.acquire("srvr", op);
+            order.add(op);
+            ios.release("srvr", op);
+          }
+          catch (IOException ex)
+          {
+            fail(ex.getMessage());
+          }
+        }
+      };
+      threads.add(t);
+      t.start();
+      while (ios.getQueuedCount("srvr") < threads.size()) Thread.sleep(1);
+    }
+    ios.release("srvr", "WRITE");
+    for (Thread t: threads) t.join();
+
+    // two reads bypass the queued write before it is admitted
+
+    assertEquals("READ",  order.get(0));
+    assertEquals("READ",  order.get(1));
+    assertEquals("WRITE", order.get(2));
+    assertEquals("READ",  order.get(3));
+  }
+}
@@ -0,0 +1,129 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.matrixblock;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class MatrixBlockIOTest
+{
+  /**
+   * Returns the test value assigned to element i,j of sub-block si,sj.
+   */
+  private static double value(int si, int sj, int i, int j)
+  {
+    return 1000.0 * si + 100.0 * sj + 10.0 * i + j + 0.25;
+  }
+
+  /**
+   * Writes every block of mbd with all sub-block entries set and verifies
+   * that the read block contains exactly the stored entries: the upper
+   * triangle of each diagonal sub-block of a diagonal block, and the defined
+   * sub-block columns of the last block row.
+   */
+  private void roundTrip(MatrixBlockDefinition mbd, String pthFilHdr)
+          throws IOException
+  {
+    for (int row = 0; row < mbd.blocks(); ++row)
+    {
+      for (int col = 0; col <= row; ++col)
+      {
+        MatrixBlock mb = new MatrixBlock(row, col, mbd);
+        mb.createBlock();
+        double[][][][] sb = mb.getLockedSubBlocks(false);
+        for (int si = 0; si < sb.length; ++si)
+          for (int sj = 0; sj < sb.length; ++sj)
+            for (int i = 0; i < sb[0][0].length; ++i)
+              for (int j = 0; j < sb[0][0].length; ++j)
+                sb[si][sj][i][j] = value(si, sj, i, j);
+        mb.releaseLock(false);
+        mb.writeBlock(pthFilHdr);
+
+        MatrixBlock mbIn = new MatrixBlock(row, col, mbd);
+        mbIn.readBlock(pthFilHdr);
+        double[][][][] sbIn = mbIn.getLockedSubBlocks(false);
+        mbIn.releaseLock(false);
+
+        // compare every entry with its expected stored value (or zero)
+
+        int nbsbLast = mbd.getBlockSubBlockRows(row, mbd.subBlockSize());
+        for (int si = 0; si < sb.length; ++si)
+        {
+          for (int sj = 0; sj < sb.length; ++sj)
+          {
+            int nr = mbd.getBlockSubBlockElementRows(row, si,
+                                                     mbd.subBlockSize());
+            int nc = mbd.getBlockSubBlockElementRows(row, sj,
+                                                     mbd.subBlockSize());
+            for (int i = 0; i < sb[0][0].length; ++i)
+            {
+              for (int j = 0; j < sb[0][0].length; ++j)
+              {
+                boolean stored;
+                if (row == col)
+                  stored = (si <= sj) && (sj < nbsbLast) && (i < nr) &&
+                           (j < nc) && ((si < sj) || (j >= i));
+                else
+                  stored = (sj < nbsbLast) && (j < nc);
+                assertEquals(stored ? value(si, sj, i, j) : 0.0,
+                             sbIn[si][sj][i][j], 0.0);
+              }
+            }
+          }
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException
+  {
+    File dir = Files.createTempDirectory("mbio").toFile();
+    String pthFilHdr = dir.getPath() + File.separator + "blk";
+
+    // 23 x 23 matrix with 6 x 6 blocks and 3 x 3 sub-blocks ... the last
+    // block and its last sub-block are partial
+
+    roundTrip(new MatrixBlockDefinition(23, 6, 3), pthFilHdr);
+
+    for (File f: dir.listFiles()) f.delete();
+    dir.delete();
+  }
+}
@@ -0,0 +1,214 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.matrixblock;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MatrixBlockKernelsTest
+{
+  private static final double TOL = 1.0e-9;
+
+  private static double[][] random(Random r, int m, int n)
+  {
+    double[][] a = new double [m][n];
+    for (int i = 0; i < m; ++i)
+      for (int j = 0; j < n; ++j) a[i][j] = r.nextDouble() - 0.5;
+
+    return a;
+  }
+
+  private static double[][] copy(double[][] a)
+  {
+    double[][] c = new double [a.length][];
+    for (int i = 0; i < a.length; ++i) c[i] = a[i].clone();
+    return c;
+  }
+
+  /**
+   * Returns a random n x n symmetric positive definite matrix.
+   */
+  private static double[][] spd(Random r, int n)
+  {
+    double[][] g = random(r, n, n);
+    double[][] a = new double [n][n];
+    for (int i = 0; i < n; ++i)
+    {
+      a[i][i] = n;
+      for (int j = 0; j < n; ++j)
+        for (int k = 0; k < n; ++k) a[i][j] += g[i][k] * g[j][k];
+    }
+    return a;
+  }
+
+  @Test
+  public void testGemmAndSyrk()
+  {
+    Random r = new Random(17);
+    int[][] sizes = {{3, 5, 2}, {37, 29, 41}, {150, 133, 300}};
+    for (int[] sz: sizes)
+    {
+      int m = sz[0], n = sz[1], k = sz[2];
+      for (int t = 0; t < 4; ++t)
+      {
+        boolean ta = (t & 1) != 0, tb = (t & 2) != 0;
+        double[][] a = ta ? random(r, k, m) : random(r, m, k);
+        double[][] b = tb ? random(r, n, k) : random(r, k, n);
+        double[][] c = random(r, m, n);
+        double[][] e = copy(c);
+        for (int i = 0; i < m; ++i)
+          for (int j = 0; j < n; ++j)
+            for (int p = 0; p < k; ++p)
+              e[i][j] -= (ta ? a[p][i] : a[i][p]) * (tb ? b[j][p] : b[p][j]);
+
+        MatrixBlockKernels.gemm(c, a, ta, b, tb, m, n, k);
+        for (int i = 0; i < m; ++i)
+          assertArrayEquals(e[i], c[i], TOL);
+      }
+
+      // syrk lower/upper leaves the other triangle untouched
+
+      double[][] a = random(r, m, k);
+      for (int u = 0; u < 2; ++u)
+      {
+        double[][] c = random(r, m, m);
+        double[][] e = copy(c);
+        for (int i = 0; i < m; ++i)
+          for (int j = 0; j < m; ++j)
+            if ((u == 0) ? (j <= i) : (j >= i))
+              for (int p = 0; p < k; ++p) e[i][j] -= a[i][p] * a[j][p];
+
+        MatrixBlockKernels.syrk(c, a, false, m, k, u == 1);
+        for (int i = 0; i < m; ++i)
+          assertArrayEquals(e[i], c[i], TOL);
+      }
+    }
+  }
+
+  @Test
+  public void testInlineMatchesPool()
+  {
+    // row blocks are independent so the inline and fork-join updates are
+    // identical
+
+    Random r = new Random(19);
+    int m = 300, n = 133, k = 300;
+    double[][] a = random(r, m, k), b = random(r, n, k);
+    double[][] c = random(r, m, n), ci = copy(c);
+    MatrixBlockKernels.gemmNT(c, a, b, m, n, k);
+    MatrixBlockKernels.setInlineForCurrentThread(true);
+    try
+    {
+      MatrixBlockKernels.gemmNT(ci, a, b, m, n, k);
+    }
+    finally
+    {
+      MatrixBlockKernels.setInlineForCurrentThread(false);
+    }
+    for (int i = 0; i < m; ++i) assertArrayEquals(c[i], ci[i], 0.0);
+  }
+
+  @Test
+  public void testPotrfAndTrsm()
+  {
+    Random r = new Random(23);
+    for (int n: new int[] {1, 7, 64, 150})
+    {
+      double[][] a = spd(r, n);
+
+      // lower: A = L L^T
+
+      double[][] l = copy(a);
+      assertTrue(MatrixBlockKernels.potrf(l, n, false));
+      for (int i = 0; i < n; ++i)
+        for (int j = 0; j <= i; ++j)
+        {
+          double s = 0.0;
+          for (int p = 0; p <= j; ++p) s += l[i][p] * l[j][p];
+          assertEquals(a[i][j], s, TOL * n);
+        }
+
+      // upper: A = U^T U with U = L^T
+
+      double[][] u = copy(a);
+      assertTrue(MatrixBlockKernels.potrf(u, n, true));
+      for (int i = 0; i < n; ++i)
+        for (int j = i; j < n; ++j) assertEquals(l[j][i], u[i][j], TOL);
+
+      // B L^-T and U^-T B
+
+      int m = 45;
+      double[][] b = random(r, m, n);
+      double[][] x = copy(b);
+      MatrixBlockKernels.trsmLowerTransposeRight(x, l, m, n);
+      for (int i = 0; i < m; ++i)
+        for (int j = 0; j < n; ++j)
+        {
+          double s = 0.0;
+          for (int p = 0; p <= j; ++p) s += x[i][p] * l[j][p];
+          assertEquals(b[i][j], s, TOL * n);
+        }
+
+      b = random(r, n, m);
+      x = copy(b);
+      MatrixBlockKernels.trsmUpperTransposeLeft(x, u, n, m);
+      for (int i = 0; i < n; ++i)
+        for (int j = 0; j < m; ++j)
+        {
+          double s = 0.0;
+          for (int p = 0; p <= i; ++p) s += u[p][i] * x[p][j];
+          assertEquals(b[i][j], s, TOL * n);
+        }
+    }
+
+    // not positive definite
+
+    assertFalse(MatrixBlockKernels.potrf(new double[][] {{1, 2}, {2, 1}}, 2,
+                                         false));
+  }
+
+  @Test
+  public void testTranspose()
+  {
+    double[][] a = random(new Random(5), 70, 70);
+    double[][] t = copy(a);
+    MatrixBlockKernels.transpose(t, 70);
+    for (int i = 0; i < 70; ++i)
+      for (int j = 0; j < 70; ++j) assertEquals(a[i][j], t[j][i], 0.0);
+  }
+}
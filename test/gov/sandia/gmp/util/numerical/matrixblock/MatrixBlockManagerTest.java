@@ -0,0 +1,177 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+
+package gov.sandia.gmp.util.numerical.matrixblock;
+
+import gov.sandia.gmp.util.numerical.matrixblock.MatrixBlockManager.MatrixBlockReference;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+
+import static org.junit.Assert.*;
+
+public class MatrixBlockManagerTest
+{
+  /**
+   * Returns the test value assigned to element i,j of block row,col.
+   */
+  private static double value(int row, int col, int i, int j)
+  {
+    return 1000.0 * row + 100.0 * col + 10.0 * i + j;
+  }
+
+  /**
+   * Fills (fill = true) or validates (fill = false) the stored elements of
+   * the input block.
+   */
+  private static void fillOrCheck(MatrixBlockReference mbr, boolean fill)
+          throws IOException
+  {
+    int row = mbr.getBlockRow();
+    int col = mbr.getBlockColumn();
+    double[][] blk = mbr.getLockedBlock(false);
+    for (int i = 0; i < blk.length; ++i)
+    {
+      int jstrt = (row == col) ? i : 0;
+      for (int j = jstrt; j < blk.length; ++j)
+      {
+        if (fill)
+          blk[i][j] = value(row, col, i, j);
+        else
+          assertEquals(value(row, col, i, j), blk[i][j], 0.0);
+      }
+    }
+    if (fill) mbr.setModified();
+    mbr.releaseLock(false);
+  }
+
+  @Test
+  public void testEvictionAndWriteBack() throws IOException
+  {
+    File dir = Files.createTempDirectory("mbm").toFile();
+    String pthFilHdr = dir.getPath() + File.separator + "chol";
+
+    // 20 x 20 matrix with 5 x 5 blocks (4 block rows, 10 blocks) ... budget
+    // holds only a few loaded blocks
+
+    MatrixBlockDefinition mbd = new MatrixBlockDefinition(20, 5, 5);
+    MatrixBlockManager mngr = new MatrixBlockManager(mbd, pthFilHdr,
+                                                     pthFilHdr, 3);
+    mngr.setMaxMemory(16 * mbd.coreMemoryStorage());
+
+    // create and fill every block ... earlier blocks are written back as
+    // they are evicted
+
+    for (int row = 0; row < mbd.blocks(); ++row)
+      for (int col = 0; col <= row; ++col)
+        fillOrCheck(mngr.createBlock(row, col, 0.0), true);
+
+    assertTrue(mngr.getEvictionCount() > 0);
+    assertEquals(mngr.getEvictionCount(), mngr.getWriteBackCount());
+
+    // revisit the last block (hit) and then all blocks (reloads)
+
+    fillOrCheck(mngr.getBlock(mbd.blocks() - 1, mbd.blocks() - 1), false);
+    assertEquals(1, mngr.getHitCount());
+
+    for (int row = 0; row < mbd.blocks(); ++row)
+      for (int col = 0; col <= row; ++col)
+        fillOrCheck(mngr.getBlock(row, col), false);
+
+    assertTrue(mngr.getMissCount() > 0);
+    assertEquals(mngr.getMissCount(), mngr.getLoadCount());
+    assertTrue(mngr.getAllocatedMemory() <= mngr.getMaxMemory() +
+                                            mbd.coreMemoryStorage() * 2);
+
+    // flush remaining modified blocks and unload everything
+
+    mngr.unLoadAll();
+    for (int row = 0; row < mbd.blocks(); ++row)
+      for (int col = 0; col <= row; ++col)
+        assertFalse(mngr.isBlockLoaded(row, col));
+
+    for (File f: dir.listFiles()) f.delete();
+    dir.delete();
+  }
+
+  @Test
+  public void testPrefetchAndWriteBehind() throws IOException
+  {
+    File dir = Files.createTempDirectory("mbp").toFile();
+    String pthFilHdr = dir.getPath() + File.separator + "chol";
+    MatrixBlockDefinition mbd = new MatrixBlockDefinition(20, 5, 5);
+
+    // write all blocks
+
+    MatrixBlockManager mngr = new MatrixBlockManager(mbd, pthFilHdr,
+                                                     pthFilHdr, 100);
+    ArrayList<int[]> order = new ArrayList<int[]>();
+    for (int row = 0; row < mbd.blocks(); ++row)
+      for (int col = 0; col <= row; ++col)
+      {
+        fillOrCheck(mngr.createBlock(row, col, 0.0), true);
+        order.add(new int[] {row, col});
+      }
+    mngr.unLoadAll();
+
+    // stream all blocks through a new manager with prefetch and write-behind
+
+    mngr = new MatrixBlockManager(mbd, pthFilHdr, pthFilHdr, 100);
+    MatrixBlockIOPipeline pipe = new MatrixBlockIOPipeline(mngr, 2, 3,
+                                     2 * mbd.coreMemoryStorage());
+    pipe.setAccessOrder(order);
+    MatrixBlockReference mbr;
+    while ((mbr = pipe.next()) != null)
+    {
+      fillOrCheck(mbr, false);
+      mbr.setModified();
+      pipe.writeBehind(mbr, true);
+    }
+    pipe.shutdown();
+
+    assertEquals(order.size(), pipe.getPrefetchHitCount());
+    assertEquals(order.size(), mngr.getLoadCount());
+    assertEquals(order.size(), mngr.getHitCount());
+    assertEquals(0, mngr.getMissCount());
+    assertEquals(order.size(), mngr.getWriteBackCount());
+    assertEquals(0, pipe.getWriteBehindMemory());
+
+    for (File f: dir.listFiles()) f.delete();
+    dir.delete();
+  }
+}
@@ -0,0 +1,143 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.matrixblock;
+
+import gov.sandia.gmp.util.numerical.sparse.SparseMatrix;
+import gov.sandia.gmp.util.numerical.sparse.SparseMatrixStandard;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class MatrixBlockNormalBuilderTest
+{
+  /**
+   * Builds the blocks of A^T S A (or A^T A if s is null) and compares every
+   * stored element with the dense product.
+   */
+  private void check(SparseMatrix a, double[][] ad, double[] s,
+                     MatrixBlockDefinition mbd, String pthFilHdr,
+                     int nThreads) throws IOException
+  {
+    MatrixBlockNormalBuilder bldr = new MatrixBlockNormalBuilder(a, mbd);
+    bldr.setWeights(s);
+    bldr.setThreadCount(nThreads);
+    bldr.build(pthFilHdr);
+
+    int n = mbd.size(), nb = mbd.blockSize(), nsb = mbd.subBlockSize();
+    for (int r = 0; r < mbd.blocks(); ++r)
+    {
+      for (int c = 0; c <= r; ++c)
+      {
+        MatrixBlock mb = new MatrixBlock(r, c, mbd);
+        mb.readBlock(pthFilHdr);
+        double[][][][] sb = mb.getLockedSubBlocks(false);
+        mb.releaseLock(false);
+        for (int i = r * nb; i < Math.min(n, (r + 1) * nb); ++i)
+        {
+          for (int j = c * nb; j < Math.min(n, (c + 1) * nb); ++j)
+          {
+            if ((r == c) && (j > i)) continue;
+            double e = 0.0;
+            for (int k = 0; k < ad.length; ++k)
+              e += ((s == null) ? 1.0 : s[k]) * ad[k][i] * ad[k][j];
+            int ii = i - r * nb, jj = j - c * nb;
+            assertEquals(e, sb[jj / nsb][ii / nsb][jj % nsb][ii % nsb],
+                         1.0e-12);
+          }
+        }
+        mb.unLoad();
+      }
+    }
+  }
+
+  @Test
+  public void testBuild() throws IOException
+  {
+    File dir = Files.createTempDirectory("mbn").toFile();
+    String pthFilHdr = dir.getPath() + File.separator + "ata";
+
+    // 40 x 23 random sparse A with 6 x 6 blocks and 3 x 3 sub-blocks ... the
+    // last block and its last sub-block are partial
+
+    int nRows = 40, nCols = 23;
+    Random rnd = new Random(7);
+    SparseMatrix a = new SparseMatrixStandard();
+    double[][] ad = new double [nRows][nCols];
+    double[] s = new double [nRows];
+    for (int k = 0; k < nRows; ++k)
+    {
+      s[k] = (k % 9 == 0) ? 0.0 : rnd.nextDouble() + 0.5;
+      for (int j = 0; j < nCols; ++j)
+      {
+        if (rnd.nextDouble() < 0.2)
+        {
+          ad[k][j] = rnd.nextGaussian();
+          a.add(k, j, ad[k][j]);
+        }
+      }
+    }
+
+    MatrixBlockDefinition mbd = new MatrixBlockDefinition(nCols, 6, 3);
+    check(a, ad, null, mbd, pthFilHdr, 1);
+    check(a, ad, s, mbd, pthFilHdr, 4);
+
+    for (File f: dir.listFiles()) f.delete();
+    dir.delete();
+  }
+
+  @Test
+  public void testRejectsPendingColumns()
+  {
+    // the column that exceeds the definition is only known after the build
+
+    SparseMatrix a = new SparseMatrixStandard();
+    a.addConcurrent(0, 0, 1.0);
+    a.addConcurrent(1, 12, 1.0);
+    try
+    {
+      new MatrixBlockNormalBuilder(a, new MatrixBlockDefinition(12, 6, 3));
+      fail("pending column count was not checked");
+    }
+    catch (IOException ex)
+    {
+      assertTrue(ex.getMessage().contains("column count (13)"));
+    }
+  }
+}
@@ -0,0 +1,243 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.sparse;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SparseMatrixCSBuilderTest
+{
+  /**
+   * Adds the same random entries (no doubles) to each input matrix.
+   */
+  private static void fill(SparseMatrix[] m, int nRows, int nCols, int n)
+          throws IOException
+  {
+    Random r = new Random(11);
+    HashSet<Long> used = new HashSet<Long>();
+    while (used.size() < n)
+    {
+      int i = r.nextInt(nRows), j = r.nextInt(nCols);
+      if (!used.add((long) i * nCols + j)) continue;
+      double v = r.nextGaussian();
+      for (SparseMatrix s : m) s.add(i, j, v);
+    }
+  }
+
+  /**
+   * Asserts that the CSR and CSC forms of a and b are identical.
+   */
+  private static void assertSame(SparseMatrix a, SparseMatrix b, int nRows,
+                                 int nCols) throws IOException
+  {
+    assertEquals(a.entryCount(), b.entryCount());
+    for (int i = 0; i < nRows; ++i)
+    {
+      assertEquals(a.getCSRVectorLength(i), b.getCSRVectorLength(i));
+      for (int k = 0; k < a.getCSRVectorLength(i); ++k)
+      {
+        assertEquals(a.getCSRColumn(i, k), b.getCSRColumn(i, k), 0.0);
+        assertEquals(a.getCSRValue(i, k), b.getCSRValue(i, k), 0.0);
+      }
+    }
+    for (int j = 0; j < nCols; ++j)
+    {
+      assertEquals(a.getCSCVectorLength(j), b.getCSCVectorLength(j));
+      for (int k = 0; k < a.getCSCVectorLength(j); ++k)
+      {
+        assertEquals(a.getCSCRow(j, k), b.getCSCRow(j, k), 0.0);
+        assertEquals(a.getCSCValue(j, k), b.getCSCValue(j, k), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testParallelBuild() throws IOException
+  {
+    int nRows = 300, nCols = 120, n = 6000;
+    SparseMatrix[] m = {new SparseMatrixStandard(), new SparseMatrixStandard(),
+                        new SparseMatrixStandard()};
+    m[0].setBuildThreadCount(0);
+    m[1].setBuildThreadCount(3);
+    m[2].setBuildThreadCount(5);
+    fill(m, nRows, nCols, n);
+
+    // CSR from the triplet form then CSC from the CSR form, and the reverse
+
+    for (int i = 0; i < 2; ++i)
+    {
+      m[i].createCSR();
+      m[i].createCSC();
+    }
+    m[2].createCSC();
+    m[2].createCSR();
+    assertSame(m[0], m[1], nRows, nCols);
+    assertSame(m[0], m[2], nRows, nCols);
+
+    // build directly from small segments (as used by SparseMatrixHuge) so
+    // that rows span segments
+
+    int seg = 7, ns = (n + seg - 1) / seg;
+    int[][] a = new int [ns][seg], b = new int [ns][seg];
+    int[][] bo = new int [ns][seg];
+    double[][] v = new double [ns][seg], vo = new double [ns][seg];
+    for (int k = 0, j = 0; j < nCols; ++j)
+    {
+      // enter the entries column by column in reverse row order
+
+      for (int e = m[0].getCSCVectorLength(j) - 1; e >= 0; --e, ++k)
+      {
+        a[k / seg][k % seg] = (int) m[0].getCSCRow(j, e);
+        b[k / seg][k % seg] = j;
+        v[k / seg][k % seg] = m[0].getCSCValue(j, e);
+      }
+    }
+    // with one count table per task, and with a limit that forces fewer
+    // count tables than tasks (the tasks then divide the row range)
+
+    for (int c = 0; c < 2; ++c)
+    {
+      SparseMatrixCSBuilder bldr = new SparseMatrixCSBuilder(a, b, v, n, seg,
+                                                             6);
+      if (c == 1) bldr.setMaxCountTableBytes(0);
+      long[] ptr = bldr.build(bo, vo, true, true);
+      assertEquals(nRows + 1, ptr.length);
+      for (int i = 0; i < nRows; ++i)
+      {
+        assertEquals(m[0].getCSRVectorLength(i), ptr[i + 1] - ptr[i]);
+        for (int k = 0; k < m[0].getCSRVectorLength(i); ++k)
+        {
+          long p = ptr[i] + k;
+          int si = (int) (p / seg), ei = (int) (p % seg);
+          assertEquals(m[0].getCSRColumn(i, k), bo[si][ei], 0.0);
+          assertEquals(m[0].getCSRValue(i, k), vo[si][ei], 0.0);
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testDoubleEntry() throws IOException
+  {
+    SparseMatrix s = new SparseMatrixStandard();
+    s.setBuildThreadCount(2);
+    s.add(0, 1, 1.0);
+    s.add(3, 2, 1.0);
+    s.add(0, 1, 2.0);
+    try
+    {
+      s.createCSR();
+      fail("double entry was not detected");
+    }
+    catch (IOException ex)
+    {
+      assertTrue(ex.getMessage().contains("Double Entry"));
+    }
+  }
+
+  @Test
+  public void testTripletBufferAddAll()
+  {
+    // merge a buffer of 3 entry chunks into a default chunk size buffer
+
+    SparseMatrixTripletBuffer small = new SparseMatrixTripletBuffer(3);
+    for (int i = 0; i < 7; ++i) small.add(i, i + 1, i);
+    SparseMatrixTripletBuffer buf = new SparseMatrixTripletBuffer();
+    buf.add(0, 0, 1.0);
+    buf.addAll(small);
+
+    int[] len = buf.getChunkLengths();
+    int[][] rows = buf.getRowChunks();
+    assertEquals(8, buf.getEntryCount());
+    assertArrayEquals(new int[] {1, 3, 3, 1}, len);
+    for (int c = 1, n = 0; c < len.length; ++c)
+      for (int k = 0; k < len[c]; ++k, ++n) assertEquals(n, rows[c][k]);
+  }
+
+  @Test
+  public void testConcurrentAdd() throws Exception
+  {
+    final int nRows = 400, nCols = 150, nThreads = 8;
+    SparseMatrix ref = new SparseMatrixStandard();
+    ref.setBuildThreadCount(0);
+    fill(new SparseMatrix[] {ref}, nRows, nCols, 9000);
+    ref.createCSR();
+    ref.createCSC();
+
+    // add rows 0 and 1 serially and the remaining rows from 8 threads
+
+    final SparseMatrix m = new SparseMatrixStandard();
+    for (int i = 0; i < 2; ++i)
+      for (int k = 0; k < ref.getCSRVectorLength(i); ++k)
+        m.add(i, (int) ref.getCSRColumn(i, k), ref.getCSRValue(i, k));
+    final SparseMatrix r = ref;
+    Thread[] t = new Thread [nThreads];
+    for (int j = 0; j < nThreads; ++j)
+    {
+      final int jj = j;
+      t[j] = new Thread()
+      {
+        @Override
+        public void run()
+        {
+          try
+          {
+            for (int i = 2 + jj; i < nRows; i += nThreads)
+              for (int k = r.getCSRVectorLength(i) - 1; k >= 0; --k)
+                m.addConcurrent(i, (int) r.getCSRColumn(i, k),
+                                r.getCSRValue(i, k));
+          }
+          catch (IOException ex)
+          {
+            throw new IllegalStateException(ex);
+          }
+        }
+      };
+      t[j].start();
+    }
+    for (int j = 0; j < nThreads; ++j) t[j].join();
+    assertTrue(m.hasConcurrentInput());
+    m.createCSC();
+    assertFalse(m.hasConcurrentInput());
+    assertEquals(ref.getMaxRow(), m.getMaxRow());
+    assertEquals(ref.getMaxCol(), m.getMaxCol());
+    assertSame(ref, m, nRows, nCols);
+  }
+}
@@ -0,0 +1,129 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.sparse;
+
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.zip.Deflater;
+
+import static org.junit.Assert.*;
+
+public class SparseMatrixChunkedFileTest
+{
+  /**
+   * Asserts that rows r0 to r1-1 of a and b are identical and that all other
+   * rows of b are empty.
+   */
+  private static void assertRows(SparseMatrix a, SparseMatrix b, int r0,
+                                 int r1) throws IOException
+  {
+    assertEquals(r1, b.getRowCount());
+    assertEquals(a.getColumnCount(), b.getColumnCount());
+    for (int i = 0; i < r1; ++i)
+    {
+      if (i < r0)
+      {
+        assertEquals(0, b.getCSRVectorLength(i));
+        continue;
+      }
+      assertEquals(a.getCSRVectorLength(i), b.getCSRVectorLength(i));
+      for (int k = 0; k < a.getCSRVectorLength(i); ++k)
+      {
+        assertEquals(a.getCSRColumn(i, k), b.getCSRColumn(i, k), 0.0);
+        assertEquals(a.getCSRValue(i, k), b.getCSRValue(i, k), 0.0);
+      }
+    }
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException
+  {
+    // random matrix with every 7th row empty and a wide column range so that
+    // some column deltas need multi-byte var-ints
+
+    int nRows = 2000, nCols = 100000;
+    Random r = new Random(3);
+    SparseMatrix a = new SparseMatrixStandard();
+    HashSet<Long> used = new HashSet<Long>();
+    while (used.size() < 40000)
+    {
+      int i = r.nextInt(nRows), j = r.nextInt(nCols);
+      if ((i % 7 == 0) || !used.add((long) i * nCols + j)) continue;
+      a.add(i, j, (r.nextInt(2000) - 1000) / 8.0);
+    }
+    a.add(nRows - 1, nCols - 1, 1.0);
+    a.createCSR();
+
+    File f = File.createTempFile("smcf", ".bin");
+    SparseMatrixChunkedFile smcf = new SparseMatrixChunkedFile();
+    smcf.setChunkEntries(1000);
+    smcf.setThreadCount(4);
+    for (int level = Deflater.NO_COMPRESSION; level <= Deflater.BEST_SPEED;
+         ++level)
+    {
+      // write and read all rows
+
+      smcf.setCompressionLevel(level);
+      smcf.write(a, f.getPath());
+      assertTrue(smcf.getChunkCount() > 30);
+      if (level == Deflater.NO_COMPRESSION)
+        assertEquals(smcf.getEncodedSize(), smcf.getStoredSize());
+      else
+        assertTrue(smcf.getStoredSize() < smcf.getEncodedSize());
+
+      SparseMatrixChunkedFile rdr = new SparseMatrixChunkedFile();
+      rdr.readHeader(f.getPath());
+      assertEquals(nRows, rdr.getRowCount());
+      assertEquals(nCols, rdr.getColumnCount());
+      assertEquals(a.entryCount(), rdr.getEntryCount());
+      assertEquals(smcf.getChunkCount(), rdr.getChunkCount());
+
+      SparseMatrix b = new SparseMatrixStandard();
+      rdr.read(f.getPath(), b);
+      assertRows(a, b, 0, nRows);
+
+      // read a row range that starts and ends inside chunks into a matrix
+      // that already holds entries
+
+      rdr.read(f.getPath(), b, 555, 1313);
+      assertRows(a, b, 555, 1313);
+    }
+    f.delete();
+  }
+}
@@ -0,0 +1,162 @@
+//- ****************************************************************************
+//-
+//- Copyright 2009 Sandia Corporation. Under the terms of Contract
+//- DE-AC04-94AL85000 with Sandia Corporation, the U.S. Government
+//- retains certain rights in this software.
+//-
+//- BSD Open Source License.
+//- All rights reserved.
+//-
+//- Redistribution and use in source and binary forms, with or without
+//- modification, are permitted provided that the following conditions are met:
+//-
+//-    * Redistributions of source code must retain the above copyright notice,
+//-      this list of conditions and the following disclaimer.
+//-    * Redistributions in binary form must reproduce the above copyright
+//-      notice, this list of conditions and the following disclaimer in the
+//-      documentation and/or other materials provided with the distribution.
+//-    * Neither the name of Sandia National Laboratories nor the names of its
+//-      contributors may be used to endorse or promote products derived from
+//-      this software without specific prior written permission.
+//-
+//- THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+//- AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+//- IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+//- ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+//- LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+//- CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+//- SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+//- INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+//- CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+//- ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+//- POSSIBILITY OF SUCH DAMAGE.
+//-
+//- ****************************************************************************
+package gov.sandia.gmp.util.numerical.sparse;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class SparseMatrixProductTest
+{
+  /**
+   * Returns the dense product A * x (transpose = false) or A' * x.
+   */
+  private static double[] product(double[][] a, double[] x, boolean transpose)
+  {
+    int n = transpose ? a[0].length : a.length;
+    double[] y = new double [n];
+    for (int i = 0; i < a.length; ++i)
+      for (int j = 0; j < a[0].length; ++j)
+        if (transpose)
+          y[j] += a[i][j] * x[i];
+        else
+          y[i] += a[i][j] * x[j];
+    return y;
+  }
+
+  /**
+   * Compares the single and multi-vector products of m (and its transpose)
+   * with the dense products of a. The output vectors are one entry longer
+   * than required and pre-filled to verify that they are overwritten.
+   */
+  private static void check(SparseMatrix m, double[][] a, Random r)
+          throws IOException
+  {
+    int nRows = a.length, nCols = a[0].length, nv = 3;
+    double[][] x = new double [nv][nCols], u = new double [nv][nRows];
+    double[][] y = new double [nv][nRows + 1], v = new double [nv][nCols + 1];
+    for (int k = 0; k < nv; ++k)
+    {
+      for (int j = 0; j < nCols; ++j) x[k][j] = r.nextDouble() - 0.5;
+      for (int i = 0; i < nRows; ++i) u[k][i] = r.nextDouble() - 0.5;
+      Arrays.fill(y[k], 9.0);
+      Arrays.fill(v[k], 9.0);
+    }
+
+    double[] y0 = new double [nRows + 1], v0 = new double [nCols + 1];
+    m.multiply(x[0], y0);
+    m.multiplyTranspose(u[0], v0);
+    m.multiply(x, y);
+    m.multiplyTranspose(u, v);
+    for (int k = 0; k < nv; ++k)
+    {
+      double[] ye = product(a, x[k], false), ve = product(a, u[k], true);
+      for (int i = 0; i < nRows; ++i) assertEquals(ye[i], y[k][i], 1.0e-12);
+      for (int j = 0; j < nCols; ++j) assertEquals(ve[j], v[k][j], 1.0e-12);
+      assertEquals(0.0, y[k][nRows], 0.0);
+      assertEquals(0.0, v[k][nCols], 0.0);
+      if (k == 0)
+      {
+        for (int i = 0; i < nRows; ++i) assertEquals(ye[i], y0[i], 1.0e-12);
+        for (int j = 0; j < nCols; ++j) assertEquals(ve[j], v0[j], 1.0e-12);
+      }
+    }
+  }
+
+  @Test
+  public void testProducts() throws IOException
+  {
+    // large enough that the products are split over several tasks
+
+    int nRows = 3000, nCols = 700;
+    Random r = new Random(5);
+    double[][] a = new double [nRows][nCols];
+    SparseMatrix m = new SparseMatrixStandard();
+    for (int n = 0; n < 90000; ++n)
+    {
+      int i = r.nextInt(nRows), j = r.nextInt(nCols);
+      if (a[i][j] != 0.0) continue;
+      a[i][j] = r.nextGaussian();
+      m.add(i, j, a[i][j]);
+    }
+    a[nRows - 1][nCols - 1] = 1.0;
+    m.add(nRows - 1, nCols - 1, 1.0);
+    assertEquals(nRows, m.getRowCount());
+    assertEquals(nCols, m.getColumnCount());
+
+    // both forms (both gather), CSR only (A' * u scatters), and CSC only
+    // (A * x scatters), each with one and several threads
+
+    for (int t = 1; t <= 4; t += 3)
+    {
+      m.setProductThreadCount(t);
+      m.createCSR();
+      m.createCSC();
+      check(m, a, r);
+      m.clearCSC();
+      check(m, a, r);
+      m.createCSC();
+      m.clearCSR();
+      check(m, a, r);
+    }
+  }
+
+  @Test
+  public void testProductAfterConcurrentAdd() throws IOException
+  {
+    // the dimensions come from concurrent input that has not been built
+
+    SparseMatrix s = new SparseMatrixStandard();
+    s.addConcurrent(0, 0, 1.0);
+    s.addConcurrent(1, 1, 2.0);
+    double[][] y = new double [1][2];
+    s.multiply(new double[][] {{1.0, 1.0}}, y);
+    assertArrayEquals(new double[] {1.0, 2.0}, y[0], 0.0);
+
+    // grow the matrix with concurrent input after a build
+
+    s.addConcurrent(2, 1, 5.0);
+    y = new double [1][3];
+    s.multiply(new double[][] {{1.0, 1.0}}, y);
+    assertArrayEquals(new double[] {1.0, 2.0, 5.0}, y[0], 0.0);
+    double[][] v = new double [1][2];
+    s.multiplyTranspose(new double[][] {{1.0, 1.0, 1.0}}, v);
+    assertArrayEquals(new double[] {1.0, 7.0}, v[0], 0.0);
+  }
+}